@@ -0,0 +1,189 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.nio.ByteBuffer;
+import java.util.zip.ZipException;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.component.Destroyable;
+
+/**
+ * {@link ContentDecoder} for the "deflate" encoding.
+ * <p />
+ * RFC 2616 defines the "deflate" encoding as deflate data wrapped in the zlib format,
+ * but some servers send raw deflate data; the format is detected from the first bytes.
+ * Bytes that follow the end of the deflate data are discarded.
+ */
+public class DeflateContentDecoder extends InflatingContentDecoder
+{
+    private final InflaterPool zlibInflaterPool;
+    private final InflaterPool rawInflaterPool;
+    private State state = State.INITIAL;
+
+    public DeflateContentDecoder()
+    {
+        this(2048);
+    }
+
+    public DeflateContentDecoder(int bufferSize)
+    {
+        this(null, null, null, bufferSize);
+    }
+
+    /**
+     * @param zlibInflaterPool the pool to take the inflater from for zlib data, or null to create a new one
+     * @param rawInflaterPool the pool to take the inflater from for raw deflate data, or null to create a new one
+     * @param bufferPool the pool to take the buffers holding the decoded bytes from, or null to allocate them
+     * @param bufferSize the initial size of the buffers holding the decoded bytes
+     */
+    public DeflateContentDecoder(InflaterPool zlibInflaterPool, InflaterPool rawInflaterPool, ByteBufferPool bufferPool, int bufferSize)
+    {
+        super(bufferPool, bufferSize);
+        this.zlibInflaterPool = zlibInflaterPool;
+        this.rawInflaterPool = rawInflaterPool;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>If the decoding did not produce any output, it returns a buffer with zero capacity.</p>
+     * <p>The buffer returned should be {@link #release(ByteBuffer) released} once its bytes have been consumed.</p>
+     */
+    @Override
+    public synchronized ByteBuffer decode(ByteBuffer buffer)
+    {
+        try
+        {
+            switch (state)
+            {
+                case INITIAL:
+                {
+                    if (!buffer.hasRemaining())
+                        return BufferUtil.EMPTY_BUFFER;
+                    if (isZlib(buffer))
+                        setInflater(zlibInflaterPool, false);
+                    else
+                        setInflater(rawInflaterPool, true);
+                    state = State.DATA;
+                    // Fall through to inflate
+                }
+                case DATA:
+                {
+                    inflate(buffer);
+                    if (getInflater().finished())
+                        state = State.FINISHED;
+                    // Fall through to discard the bytes after the deflate data
+                }
+                case FINISHED:
+                {
+                    if (state == State.FINISHED)
+                        buffer.position(buffer.limit());
+                    return take();
+                }
+                default:
+                    throw new ZipException();
+            }
+        }
+        catch (ZipException x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+
+    private boolean isZlib(ByteBuffer buffer)
+    {
+        // The zlib header has the deflate compression method and a window
+        // size of at most 32 KiB, and is a multiple of 31 as a 16 bit value
+        int cmf = buffer.get(buffer.position()) & 0xFF;
+        if ((cmf & 0x0F) != 8 || (cmf >> 4) > 7)
+            return false;
+        if (buffer.remaining() < 2)
+            return true;
+        int flg = buffer.get(buffer.position() + 1) & 0xFF;
+        return ((cmf << 8) + flg) % 31 == 0;
+    }
+
+    protected boolean isFinished()
+    {
+        return state == State.FINISHED;
+    }
+
+    /**
+     * Specialized {@link ContentDecoder.Factory} for the "deflate" encoding.
+     * <p />
+     * The decoders created by this factory share {@link InflaterPool}s and, if one is given,
+     * a {@link ByteBufferPool}.
+     */
+    public static class Factory extends ContentDecoder.Factory implements Destroyable
+    {
+        private final InflaterPool zlibInflaterPool;
+        private final InflaterPool rawInflaterPool;
+        private final ByteBufferPool bufferPool;
+        private final int bufferSize;
+
+        public Factory()
+        {
+            this(null, 2048);
+        }
+
+        public Factory(ByteBufferPool bufferPool)
+        {
+            this(bufferPool, 2048);
+        }
+
+        public Factory(ByteBufferPool bufferPool, int bufferSize)
+        {
+            super("deflate");
+            this.zlibInflaterPool = new InflaterPool(64, false);
+            this.rawInflaterPool = new InflaterPool(64, true);
+            this.bufferPool = bufferPool;
+            this.bufferSize = bufferSize;
+        }
+
+        public InflaterPool getZlibInflaterPool()
+        {
+            return zlibInflaterPool;
+        }
+
+        public InflaterPool getRawInflaterPool()
+        {
+            return rawInflaterPool;
+        }
+
+        @Override
+        public ContentDecoder newContentDecoder()
+        {
+            return new DeflateContentDecoder(zlibInflaterPool, rawInflaterPool, bufferPool, bufferSize);
+        }
+
+        @Override
+        public void destroy()
+        {
+            zlibInflaterPool.clear();
+            rawInflaterPool.clear();
+        }
+    }
+
+    private enum State
+    {
+        INITIAL, DATA, FINISHED
+    }
+}
@@ -19,21 +19,18 @@
 package org.eclipse.jetty.client;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
-import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 import java.util.zip.ZipException;
 
+import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.component.Destroyable;
 
 /**
  * {@link ContentDecoder} for the "gzip" encoding.
  */
-public class GZIPContentDecoder implements ContentDecoder
+public class GZIPContentDecoder extends InflatingContentDecoder
 {
-    private final Inflater inflater = new Inflater(true);
-    private final byte[] bytes;
-    private byte[] output;
     private State state;
     private int size;
     private int value;
@@ -46,7 +43,18 @@ public class GZIPContentDecoder implements ContentDecoder
 
     public GZIPContentDecoder(int bufferSize)
     {
-        this.bytes = new byte[bufferSize];
+        this(null, null, bufferSize);
+    }
+
+    /**
+     * @param inflaterPool the pool to take the {@link Inflater} from, or null to create a new one
+     * @param bufferPool the pool to take the buffers holding the decoded bytes from, or null to allocate them
+     * @param bufferSize the initial size of the buffers holding the decoded bytes
+     */
+    public GZIPContentDecoder(InflaterPool inflaterPool, ByteBufferPool bufferPool, int bufferSize)
+    {
+        super(bufferPool, bufferSize);
+        setInflater(inflaterPool, true);
         reset();
     }
 
@@ -59,14 +67,33 @@ public class GZIPContentDecoder implements ContentDecoder
      * the decoding.</p>
      * <p>The decoding may be finished without consuming the buffer completely if the buffer contains
      * gzip bytes plus other bytes (either plain or gzipped).</p>
+     * <p>The buffer returned should be {@link #release(ByteBuffer) released} once its bytes have been consumed.</p>
      */
     @Override
-    public ByteBuffer decode(ByteBuffer buffer)
+    public synchronized ByteBuffer decode(ByteBuffer buffer)
     {
         try
         {
-            while (buffer.hasRemaining())
+            while (true)
             {
+                if (state == State.DATA)
+                {
+                    // Inflates also when there is no input left, if the output was full
+                    inflate(buffer);
+                    if (getInflater().finished())
+                    {
+                        state = State.CRC;
+                        size = 0;
+                        value = 0;
+                        continue;
+                    }
+                    // All the input has been inflated, or the output is full,
+                    // return the bytes inflated so far
+                    return take();
+                }
+
+                if (!buffer.hasRemaining())
+                    break;
                 byte currByte = buffer.get();
                 switch (state)
                 {
@@ -200,67 +227,6 @@ public class GZIPContentDecoder implements ContentDecoder
                         }
                         break;
                     }
-                    case DATA:
-                    {
-                        buffer.position(buffer.position() - 1);
-                        while (true)
-                        {
-                            int decoded = inflate(bytes);
-                            if (decoded == 0)
-                            {
-                                if (inflater.needsInput())
-                                {
-                                    if (buffer.hasRemaining())
-                                    {
-                                        byte[] input = new byte[buffer.remaining()];
-                                        buffer.get(input);
-                                        inflater.setInput(input);
-                                    }
-                                    else
-                                    {
-                                        if (output != null)
-                                        {
-                                            ByteBuffer result = ByteBuffer.wrap(output);
-                                            output = null;
-                                            return result;
-                                        }
-                                        break;
-                                    }
-                                }
-                                else if (inflater.finished())
-                                {
-                                    int remaining = inflater.getRemaining();
-                                    buffer.position(buffer.limit() - remaining);
-                                    state = State.CRC;
-                                    size = 0;
-                                    value = 0;
-                                    break;
-                                }
-                                else
-                                {
-                                    throw new ZipException("Invalid inflater state");
-                                }
-                            }
-                            else
-                            {
-                                if (output == null)
-                                {
-                                    // Save the inflated bytes and loop to see if we have finished
-                                    output = new byte[decoded];
-                                    System.arraycopy(bytes, 0, output, 0, decoded);
-                                }
-                                else
-                                {
-                                    // Accumulate inflated bytes and loop to see if we have finished
-                                    byte[] newOutput = new byte[output.length + decoded];
-                                    System.arraycopy(output, 0, newOutput, 0, output.length);
-                                    System.arraycopy(bytes, 0, newOutput, output.length, decoded);
-                                    output = newOutput;
-                                }
-                            }
-                        }
-                        break;
-                    }
                     case CRC:
                     {
                         value += (currByte & 0xFF) << 8 * size;
@@ -280,10 +246,10 @@ public class GZIPContentDecoder implements ContentDecoder
                         ++size;
                         if (size == 4)
                         {
-                            if (value != inflater.getBytesWritten())
+                            if (value != getInflater().getBytesWritten())
                                 throw new ZipException("Invalid input size");
 
-                            ByteBuffer result = output == null ? BufferUtil.EMPTY_BUFFER : ByteBuffer.wrap(output);
+                            ByteBuffer result = take();
                             reset();
                             return result;
                         }
@@ -301,23 +267,9 @@ public class GZIPContentDecoder implements ContentDecoder
         }
     }
 
-    private int inflate(byte[] bytes) throws ZipException
-    {
-        try
-        {
-            return inflater.inflate(bytes);
-        }
-        catch (DataFormatException x)
-        {
-            throw new ZipException(x.getMessage());
-        }
-    }
-
     private void reset()
     {
-        inflater.reset();
-        Arrays.fill(bytes, (byte)0);
-        output = null;
+        resetInflater();
         state = State.INITIAL;
         size = 0;
         value = 0;
@@ -331,9 +283,14 @@ public class GZIPContentDecoder implements ContentDecoder
 
     /**
      * Specialized {@link ContentDecoder.Factory} for the "gzip" encoding.
+     * <p />
+     * The decoders created by this factory share an {@link InflaterPool} and, if one is given,
+     * a {@link ByteBufferPool}.
      */
-    public static class Factory extends ContentDecoder.Factory
+    public static class Factory extends ContentDecoder.Factory implements Destroyable
     {
+        private final InflaterPool inflaterPool;
+        private final ByteBufferPool bufferPool;
         private final int bufferSize;
 
         public Factory()
@@ -342,15 +299,44 @@ public class GZIPContentDecoder implements ContentDecoder
         }
 
         public Factory(int bufferSize)
+        {
+            this(null, bufferSize);
+        }
+
+        public Factory(ByteBufferPool bufferPool)
+        {
+            this(bufferPool, 2048);
+        }
+
+        public Factory(ByteBufferPool bufferPool, int bufferSize)
+        {
+            this(new InflaterPool(64, true), bufferPool, bufferSize);
+        }
+
+        public Factory(InflaterPool inflaterPool, ByteBufferPool bufferPool, int bufferSize)
         {
             super("gzip");
+            this.inflaterPool = inflaterPool;
+            this.bufferPool = bufferPool;
             this.bufferSize = bufferSize;
         }
 
+        public InflaterPool getInflaterPool()
+        {
+            return inflaterPool;
+        }
+
         @Override
         public ContentDecoder newContentDecoder()
         {
-            return new GZIPContentDecoder(bufferSize);
+            return new GZIPContentDecoder(inflaterPool, bufferPool, bufferSize);
+        }
+
+        @Override
+        public void destroy()
+        {
+            if (inflaterPool != null)
+                inflaterPool.clear();
         }
     }
 
@@ -0,0 +1,588 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * <p>{@link HedgingPolicy} sends idempotent requests with hedging: if the response to a request
+ * has not begun after a delay, a copy of the request is sent, the first of the two responses
+ * that begins is notified to the listener, and the other request is aborted.</p>
+ * <p>The delay is either fixed, or a percentile (by default the 95th) of the latencies observed
+ * by this policy, so that only the slowest requests are hedged.
+ * The latencies are measured from the send of the original request, also when a hedge wins,
+ * so that the latency of the slow requests is not replaced by the latency of their hedges.
+ * A request that fails before its response begins, because of a failure of the connection,
+ * is retried immediately, as a hedge; a request aborted by the application, or by its
+ * total timeout, is not retried and its hedge, if any, is aborted as well.</p>
+ * <p>Hedges are bounded by a budget, so that they cannot amplify the load on the servers
+ * during outages: each request sent deposits {@link #getBudgetRatio() a fraction of a token},
+ * the budget is also refilled with {@link #getMinHedgesPerSecond() a minimum number of tokens}
+ * per second, and each hedge withdraws a token; a request is not hedged if the budget has no
+ * tokens left.</p>
+ * <p>Only the listener passed to {@link #send(Request, Response.CompleteListener)} is notified
+ * of the winning response; the response listeners added to the request itself are notified
+ * of the events of that request only.</p>
+ * <p>Typical usage:</p>
+ * <pre>
+ * HedgingPolicy hedging = new HedgingPolicy(httpClient);
+ * Request request = httpClient.newRequest("http://localhost:8080/resource");
+ * FutureResponseListener listener = new FutureResponseListener(request);
+ * hedging.send(request, listener);
+ * ContentResponse response = listener.get(5, TimeUnit.SECONDS);
+ * </pre>
+ */
+public class HedgingPolicy
+{
+    private static final Logger LOG = Log.getLogger(HedgingPolicy.class);
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(Arrays.asList(
+            HttpMethod.GET.asString(), HttpMethod.HEAD.asString(), HttpMethod.OPTIONS.asString(),
+            HttpMethod.TRACE.asString(), HttpMethod.PUT.asString(), HttpMethod.DELETE.asString()));
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong hedgesDenied = new AtomicLong();
+    private final HttpClient client;
+    private final long[] latencies;
+    private int latencyIndex;
+    private int latencyCount;
+    private int latencyUpdates;
+    private volatile long latencyThreshold = -1;
+    private volatile long delay;
+    private volatile long minDelay = 10;
+    private volatile double percentile = 95;
+    private volatile int minSamples = 20;
+    private volatile double budgetRatio = 0.1;
+    private volatile double minHedgesPerSecond = 10;
+    private volatile double maxBudget = 100;
+    private double budget;
+    private long budgetRefill = System.nanoTime();
+
+    public HedgingPolicy(HttpClient client)
+    {
+        this(client, 1000);
+    }
+
+    /**
+     * @param client the {@link HttpClient} that sends the requests
+     * @param samples the number of most recent latencies the delay percentile is computed on
+     */
+    public HedgingPolicy(HttpClient client, int samples)
+    {
+        this.client = client;
+        this.latencies = new long[samples];
+        this.budget = minHedgesPerSecond;
+    }
+
+    /**
+     * @return the fixed delay in milliseconds after which requests are hedged,
+     * or 0 if the delay is a {@link #getPercentile() percentile} of the observed latencies
+     */
+    public long getDelay()
+    {
+        return delay;
+    }
+
+    public void setDelay(long delay)
+    {
+        this.delay = delay;
+    }
+
+    /**
+     * @return the min delay in milliseconds after which requests are hedged, when the delay is
+     * a percentile of the observed latencies
+     */
+    public long getMinDelay()
+    {
+        return minDelay;
+    }
+
+    public void setMinDelay(long minDelay)
+    {
+        this.minDelay = minDelay;
+    }
+
+    /**
+     * @return the percentile of the observed latencies after which requests are hedged
+     */
+    public double getPercentile()
+    {
+        return percentile;
+    }
+
+    public void setPercentile(double percentile)
+    {
+        if (percentile <= 0 || percentile > 100)
+            throw new IllegalArgumentException("Invalid percentile " + percentile);
+        this.percentile = percentile;
+    }
+
+    /**
+     * @return the number of latencies to observe before requests are hedged,
+     * when the delay is a percentile of the observed latencies
+     */
+    public int getMinSamples()
+    {
+        return minSamples;
+    }
+
+    public void setMinSamples(int minSamples)
+    {
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * @return the fraction of a hedge that each request deposits in the budget
+     */
+    public double getBudgetRatio()
+    {
+        return budgetRatio;
+    }
+
+    public void setBudgetRatio(double budgetRatio)
+    {
+        this.budgetRatio = budgetRatio;
+    }
+
+    /**
+     * @return the number of hedges per second that the budget allows regardless of the number of requests
+     */
+    public double getMinHedgesPerSecond()
+    {
+        return minHedgesPerSecond;
+    }
+
+    public void setMinHedgesPerSecond(double minHedgesPerSecond)
+    {
+        this.minHedgesPerSecond = minHedgesPerSecond;
+        synchronized (this)
+        {
+            budget = Math.min(budget, minHedgesPerSecond);
+        }
+    }
+
+    /**
+     * @return the max number of hedges the budget accumulates
+     */
+    public double getMaxBudget()
+    {
+        return maxBudget;
+    }
+
+    public void setMaxBudget(double maxBudget)
+    {
+        this.maxBudget = maxBudget;
+    }
+
+    /**
+     * @return the delay in milliseconds after which the requests are currently hedged, or -1 if they are not hedged
+     */
+    public long getHedgeDelay()
+    {
+        long delay = this.delay;
+        if (delay > 0)
+            return delay;
+        long threshold = latencyThreshold;
+        return threshold < 0 ? -1 : Math.max(minDelay, threshold);
+    }
+
+    /**
+     * @return the number of requests sent through this policy
+     */
+    public long getRequests()
+    {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of hedged requests sent
+     */
+    public long getHedges()
+    {
+        return hedges.get();
+    }
+
+    /**
+     * @return the number of hedged requests whose response was notified instead of the response to the original request
+     */
+    public long getHedgesWon()
+    {
+        return hedgesWon.get();
+    }
+
+    /**
+     * @return the number of hedged requests not sent because the budget had no tokens left
+     */
+    public long getHedgesDenied()
+    {
+        return hedgesDenied.get();
+    }
+
+    /**
+     * <p>Sends the given request, and a hedged copy of it if its response has not begun after
+     * the {@link #getHedgeDelay() hedge delay}.</p>
+     *
+     * @param request the request to send
+     * @param listener the listener notified of the first response that begins
+     */
+    public void send(Request request, Response.CompleteListener listener)
+    {
+        requests.incrementAndGet();
+        deposit();
+        new Hedge(request, listener).send();
+    }
+
+    /**
+     * @param request the request to hedge
+     * @return whether the request can be hedged, by default if it has an idempotent method and
+     * its content, if any, can be sent again
+     */
+    protected boolean isHedgeable(Request request)
+    {
+        if (!IDEMPOTENT_METHODS.contains(request.getMethod()))
+            return false;
+        ContentProvider content = request.getContent();
+        return content == null || content instanceof BytesContentProvider;
+    }
+
+    /**
+     * <p>Creates the hedged copy of the given request.</p>
+     * <p>Subclasses may override to send the copy to another destination.</p>
+     *
+     * @param request the request to copy
+     * @return the copy of the request
+     */
+    protected Request newHedgeRequest(Request request)
+    {
+        Request hedge = client.newRequest(request.getURI())
+                .method(request.getMethod())
+                .version(request.getVersion())
+                .content(request.getContent())
+                .agent(request.getAgent())
+                .idleTimeout(request.getIdleTimeout(), TimeUnit.MILLISECONDS)
+                .timeout(request.getTimeout(), TimeUnit.MILLISECONDS)
+                .followRedirects(request.isFollowRedirects());
+        for (HttpField field : request.getHeaders())
+            hedge.header(field.getName(), field.getValue());
+        for (Map.Entry<String, Object> attribute : request.getAttributes().entrySet())
+            hedge.attribute(attribute.getKey(), attribute.getValue());
+        return hedge;
+    }
+
+    /**
+     * @param latency the time, in milliseconds, from the send of the original request to the begin
+     * of the first response, which is a lower bound of the latency of the original request
+     * when its hedge wins
+     */
+    private void onLatency(long latency)
+    {
+        synchronized (latencies)
+        {
+            latencies[latencyIndex] = latency;
+            latencyIndex = (latencyIndex + 1) % latencies.length;
+            if (latencyCount < latencies.length)
+                ++latencyCount;
+            if (latencyCount < minSamples)
+                return;
+
+            // Sorting is amortized over a tenth of the samples
+            if (++latencyUpdates < Math.max(1, latencyCount / 10) && latencyThreshold >= 0)
+                return;
+            latencyUpdates = 0;
+            long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            int index = (int)Math.ceil(percentile * latencyCount / 100) - 1;
+            latencyThreshold = sorted[Math.max(0, index)];
+        }
+    }
+
+    private synchronized void deposit()
+    {
+        refill();
+        budget = Math.min(maxBudget, budget + budgetRatio);
+    }
+
+    private synchronized boolean withdraw()
+    {
+        refill();
+        if (budget < 1)
+            return false;
+        budget -= 1;
+        return true;
+    }
+
+    private void refill()
+    {
+        long now = System.nanoTime();
+        double elapsed = (now - budgetRefill) / (double)TimeUnit.SECONDS.toNanos(1);
+        budgetRefill = now;
+        budget = Math.min(maxBudget, budget + elapsed * minHedgesPerSecond);
+    }
+
+    private class Hedge implements Runnable
+    {
+        private final Request request;
+        private final List<Response.ResponseListener> listeners;
+        private final ResponseNotifier notifier;
+        private final boolean hedgeable;
+        private Attempt primary;
+        private Attempt hedge;
+        private volatile Attempt winner;
+        private boolean hedged;
+        private Scheduler.Task task;
+
+        private Hedge(Request request, Response.CompleteListener listener)
+        {
+            this.request = request;
+            this.listeners = Collections.<Response.ResponseListener>singletonList(listener);
+            this.notifier = new ResponseNotifier(client);
+            this.hedgeable = isHedgeable(request);
+        }
+
+        private void send()
+        {
+            Attempt attempt = new Attempt(request, false);
+            long delay = hedgeable ? getHedgeDelay() : -1;
+            synchronized (this)
+            {
+                primary = attempt;
+                if (delay > 0)
+                    task = client.getScheduler().schedule(this, delay, TimeUnit.MILLISECONDS);
+            }
+            attempt.send();
+        }
+
+        @Override
+        public void run()
+        {
+            Attempt attempt = newHedge();
+            if (attempt != null)
+            {
+                LOG.debug("Hedging {} after {} ms", request, getHedgeDelay());
+                attempt.send();
+            }
+        }
+
+        private synchronized Attempt newHedge()
+        {
+            if (winner != null || hedged)
+                return null;
+            hedged = true;
+            if (!withdraw())
+            {
+                hedgesDenied.incrementAndGet();
+                LOG.debug("Hedging {} denied by budget", request);
+                return null;
+            }
+            hedges.incrementAndGet();
+            hedge = new Attempt(newHedgeRequest(request), true);
+            return hedge;
+        }
+
+        /**
+         * @return whether the given attempt is the one whose events are notified
+         */
+        private boolean win(Attempt attempt)
+        {
+            Attempt loser;
+            synchronized (this)
+            {
+                if (winner != null)
+                    return winner == attempt;
+                winner = attempt;
+                if (task != null)
+                    task.cancel();
+                loser = attempt == primary ? hedge : primary;
+                if (loser != null)
+                    loser.lost = true;
+            }
+            if (attempt.hedge)
+                hedgesWon.incrementAndGet();
+            if (loser != null)
+                loser.request.abort(new HttpRequestException("Lost to a hedged request", loser.request));
+            return true;
+        }
+
+        /**
+         * @return whether the failure of the given attempt, before its response began, must be notified
+         */
+        private boolean fail(Attempt attempt)
+        {
+            Attempt retry = null;
+            Attempt abort = null;
+            Throwable abortCause = attempt.request.getAbortCause();
+            synchronized (this)
+            {
+                // The original request was aborted by the application or by its total timeout
+                boolean aborted = attempt == primary && !attempt.lost && abortCause != null;
+                if (winner != null)
+                {
+                    if (winner == attempt)
+                        return true;
+                    if (!aborted)
+                        return false;
+                    // Abort the hedge that won, its failure is notified instead
+                    abort = winner;
+                }
+                else
+                {
+                    attempt.failed = true;
+                    Attempt other = attempt == primary ? hedge : primary;
+                    if (aborted)
+                    {
+                        if (task != null)
+                            task.cancel();
+                        winner = attempt;
+                        abort = other;
+                    }
+                    else
+                    {
+                        if (other != null && !other.failed)
+                            return false;
+                        if (hedgeable && !hedged)
+                        {
+                            if (task != null)
+                                task.cancel();
+                            retry = newHedge();
+                        }
+                        if (retry == null)
+                            winner = attempt;
+                    }
+                }
+            }
+            if (abort != null)
+            {
+                LOG.debug("Aborting {} after abort of {}", abort.request, request);
+                abort.request.abort(abortCause);
+                return winner == attempt;
+            }
+            if (retry == null)
+                return true;
+            LOG.debug("Retrying {}", request);
+            retry.send();
+            return false;
+        }
+
+        private class Attempt implements Response.Listener, Response.AsyncContentListener
+        {
+            private final Request request;
+            private final boolean hedge;
+            private volatile long begin;
+            private volatile boolean failed;
+            private boolean lost;
+
+            private Attempt(Request request, boolean hedge)
+            {
+                this.request = request;
+                this.hedge = hedge;
+            }
+
+            private void send()
+            {
+                begin = System.nanoTime();
+                request.send(this);
+            }
+
+            @Override
+            public void onBegin(Response response)
+            {
+                if (win(this))
+                {
+                    onLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - primary.begin));
+                    notifier.notifyBegin(listeners, response);
+                }
+                else
+                {
+                    response.abort(new HttpRequestException("Lost to a hedged request", request));
+                }
+            }
+
+            @Override
+            public boolean onHeader(Response response, HttpField field)
+            {
+                return winner != this || notifier.notifyHeader(listeners, response, field);
+            }
+
+            @Override
+            public void onHeaders(Response response)
+            {
+                if (winner == this)
+                    notifier.notifyHeaders(listeners, response);
+            }
+
+            @Override
+            public void onContent(Response response, ByteBuffer content)
+            {
+                // Content is notified via onContent(Response, ByteBuffer, Callback)
+            }
+
+            @Override
+            public void onContent(Response response, ByteBuffer content, Callback callback)
+            {
+                if (winner == this)
+                    notifier.notifyContent(listeners, response, content, callback);
+                else
+                    callback.succeeded();
+            }
+
+            @Override
+            public void onSuccess(Response response)
+            {
+                if (winner == this)
+                    notifier.notifySuccess(listeners, response);
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable failure)
+            {
+                if (fail(this))
+                    notifier.notifyFailure(listeners, response, failure);
+            }
+
+            @Override
+            public void onComplete(Result result)
+            {
+                if (winner == this)
+                    notifier.notifyComplete(listeners, result);
+            }
+        }
+    }
+}
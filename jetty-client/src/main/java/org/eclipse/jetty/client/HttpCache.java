@@ -0,0 +1,938 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A private HTTP cache of the responses received by a {@link HttpClient}.</p>
+ * <p>Once installed with {@link HttpClient#setHttpCache(HttpCache)}, responses to GET requests are
+ * stored according to their Cache-Control, Expires, Last-Modified and Vary headers, and fresh
+ * cached responses are notified to the response listeners without sending the request.
+ * Stale cached responses with an ETag or a Last-Modified header are revalidated by adding
+ * validators to the request; a 304 response refreshes the cached response, which is then
+ * notified instead of the 304 response.</p>
+ * <p>Response contents are stored in buffers of the {@link HttpClient#getByteBufferPool() client pool},
+ * and the least recently used responses are evicted when the cache exceeds {@link #getMaxSize()}.</p>
+ * <p>Concurrent requests for the same URI are coalesced: while a request fetches or revalidates
+ * the resource, the others wait for it to complete and are then served with the response it
+ * stored or revalidated, even if that response must be revalidated for later requests;
+ * if there is no such response, they are sent without waiting again. Requests aborted while
+ * waiting, for example because their timeout expired, are failed immediately.
+ * URIs whose responses cannot be stored are remembered for {@link #getPassTime() a while},
+ * so that their requests are not made to wait.</p>
+ * <p>Requests served from the cache are not notified to request listeners, and their responses
+ * have an Age header. Requests with their own validators, a Range header or an Authorization
+ * header bypass the cache.</p>
+ */
+public class HttpCache
+{
+    private static final Logger LOG = Log.getLogger(HttpCache.class);
+    private static final Set<Integer> CACHEABLE_STATUSES = new HashSet<>(Arrays.asList(200, 203, 300, 301, 404, 410));
+    private static final long MAX_HEURISTIC_LIFETIME = TimeUnit.DAYS.toMillis(1);
+    private static final int MAX_PASSES = 1024;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, List<Waiter>> pending = new HashMap<>();
+    private final Map<String, Long> passes = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final HttpClient client;
+    private final RequestNotifier requestNotifier;
+    private final ResponseNotifier notifier;
+    private long size;
+    private volatile long maxSize = 32 * 1024 * 1024;
+    private volatile int maxEntrySize = 1024 * 1024;
+    private volatile long passTime = 30000;
+
+    public HttpCache(HttpClient client)
+    {
+        this.client = client;
+        this.requestNotifier = new RequestNotifier(client);
+        this.notifier = new ResponseNotifier(client);
+    }
+
+    /**
+     * @return the max size in bytes of the cached responses
+     */
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the max size in bytes of a cached response content
+     */
+    public int getMaxEntrySize()
+    {
+        return maxEntrySize;
+    }
+
+    public void setMaxEntrySize(int maxEntrySize)
+    {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * @return the time in milliseconds during which the requests for a URI whose response
+     * could not be stored are sent without waiting for each other
+     */
+    public long getPassTime()
+    {
+        return passTime;
+    }
+
+    public void setPassTime(long passTime)
+    {
+        this.passTime = passTime;
+    }
+
+    /**
+     * @return the number of requests served with a fresh cached response
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of requests that found a stale cached response, and were sent to revalidate it
+     */
+    public long getStaleHits()
+    {
+        return staleHits.get();
+    }
+
+    /**
+     * @return the number of requests that found no cached response
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of stale cached responses revalidated by the server
+     */
+    public long getRevalidations()
+    {
+        return revalidations.get();
+    }
+
+    /**
+     * @return the number of requests that waited for another request of the same URI
+     */
+    public long getCoalesced()
+    {
+        return coalesced.get();
+    }
+
+    /**
+     * @return the number of responses stored
+     */
+    public long getStores()
+    {
+        return stores.get();
+    }
+
+    /**
+     * @return the number of cached responses evicted to make room for others
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * @return the size in bytes of the cached responses
+     */
+    public synchronized long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the number of cached responses
+     */
+    public synchronized int getEntries()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Removes all the cached responses, returning their buffers to the pool
+     * once they are no longer being notified.
+     */
+    public void clear()
+    {
+        List<Entry> removed;
+        synchronized (this)
+        {
+            removed = new ArrayList<>(entries.values());
+            entries.clear();
+            passes.clear();
+            size = 0;
+        }
+        for (Entry entry : removed)
+            entry.release();
+    }
+
+    /**
+     * @param request the request
+     * @return whether the response to the given request may be served from and stored in the cache
+     */
+    protected boolean isCacheable(Request request)
+    {
+        if (!HttpMethod.GET.is(request.getMethod()) || request.getContent() != null)
+            return false;
+        HttpFields headers = request.getHeaders();
+        if (headers.containsKey(HttpHeader.AUTHORIZATION.asString()) ||
+                headers.containsKey(HttpHeader.RANGE.asString()) ||
+                headers.containsKey(HttpHeader.IF_NONE_MATCH.asString()) ||
+                headers.containsKey(HttpHeader.IF_MODIFIED_SINCE.asString()))
+            return false;
+        return !getDirectives(headers.getValues(HttpHeader.CACHE_CONTROL.asString())).containsKey("no-store");
+    }
+
+    /**
+     * <p>Sends the given request, serving it from the cache if possible.</p>
+     *
+     * @param request the request to send
+     * @param listeners the response listeners
+     * @return true if the request has been served from the cache or has been sent by the cache,
+     * false if the request is not cacheable and must be sent
+     */
+    protected boolean send(HttpRequest request, List<Response.ResponseListener> listeners)
+    {
+        if (!isCacheable(request))
+            return false;
+
+        String key = request.getURI().toString();
+        Entry entry;
+        boolean fresh = false;
+        synchronized (this)
+        {
+            entry = entries.get(key);
+            if (entry != null && !entry.matches(request))
+                entry = null;
+            if (entry != null && entry.isFresh(request))
+            {
+                fresh = true;
+            }
+            else
+            {
+                Long passUntil = passes.get(key);
+                if (passUntil != null && passUntil - System.nanoTime() > 0)
+                    return false;
+                passes.remove(key);
+
+                List<Waiter> waiters = pending.get(key);
+                if (waiters != null)
+                {
+                    waiters.add(new Waiter(request, listeners));
+                    coalesced.incrementAndGet();
+                    return true;
+                }
+                pending.put(key, new ArrayList<Waiter>());
+                if (entry != null && !entry.hasValidators())
+                    entry = null;
+            }
+            // Prevent the buffer from being released while it is notified
+            if (entry != null)
+                entry.retain();
+        }
+
+        if (fresh)
+        {
+            hits.incrementAndGet();
+            LOG.debug("Cache hit {}", entry);
+            serve(entry, request, listeners);
+            return true;
+        }
+
+        if (entry == null)
+        {
+            misses.incrementAndGet();
+        }
+        else
+        {
+            staleHits.incrementAndGet();
+            LOG.debug("Revalidating {}", entry);
+            String etag = entry.getHeaders().get(HttpHeader.ETAG);
+            if (etag != null)
+                request.header(HttpHeader.IF_NONE_MATCH, etag);
+            String lastModified = entry.getHeaders().get(HttpHeader.LAST_MODIFIED);
+            if (lastModified != null)
+                request.header(HttpHeader.IF_MODIFIED_SINCE, lastModified);
+        }
+
+        Response.ResponseListener fetch = new Fetch(key, request, listeners, entry);
+        client.doSend(request, Collections.singletonList(fetch));
+        return true;
+    }
+
+    /**
+     * <p>Aborts the given request if it is waiting for another request of the same URI.</p>
+     *
+     * @param request the request to abort
+     * @param cause the abort cause
+     * @return true if the request was waiting and has been failed, false otherwise
+     */
+    protected boolean abort(HttpRequest request, Throwable cause)
+    {
+        Waiter waiter = null;
+        synchronized (this)
+        {
+            List<Waiter> waiters = pending.get(request.getURI().toString());
+            if (waiters != null)
+            {
+                for (Iterator<Waiter> iterator = waiters.iterator(); iterator.hasNext();)
+                {
+                    Waiter candidate = iterator.next();
+                    if (candidate.request == request)
+                    {
+                        iterator.remove();
+                        waiter = candidate;
+                        break;
+                    }
+                }
+            }
+        }
+        if (waiter == null)
+            return false;
+        LOG.debug("Aborting while waiting {}: {}", request, cause);
+        fail(waiter, cause);
+        return true;
+    }
+
+    private void fail(Waiter waiter, Throwable cause)
+    {
+        HttpResponse response = new HttpResponse(waiter.request, waiter.listeners);
+        requestNotifier.notifyFailure(waiter.request, cause);
+        notifier.notifyFailure(waiter.listeners, response, cause);
+        notifier.notifyComplete(waiter.listeners, new Result(waiter.request, cause, response, cause));
+    }
+
+    private void serve(final Entry entry, Request request, final List<Response.ResponseListener> listeners)
+    {
+        final HttpResponse response = new HttpResponse(request, listeners);
+        response.version(HttpVersion.HTTP_1_1).status(entry.getStatus()).reason(entry.getReason());
+        HttpFields headers = response.getHeaders();
+        for (HttpField field : entry.getHeaders())
+        {
+            if (field.getHeader() != HttpHeader.AGE)
+                headers.add(field);
+        }
+        headers.put(HttpHeader.AGE, String.valueOf(entry.getAge()));
+
+        notifier.notifyBegin(listeners, response);
+        for (HttpField field : headers)
+            notifier.notifyHeader(listeners, response, field);
+        notifier.notifyHeaders(listeners, response);
+        notifier.notifyContent(listeners, response, entry.getContent(), new Callback()
+        {
+            @Override
+            public void succeeded()
+            {
+                entry.release();
+                notifier.notifySuccess(listeners, response);
+                notifier.notifyComplete(listeners, new Result(response.getRequest(), response));
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                entry.release();
+                notifier.notifyFailure(listeners, response, x);
+                notifier.notifyComplete(listeners, new Result(response.getRequest(), response, x));
+            }
+        });
+    }
+
+    private void store(Entry entry)
+    {
+        List<Entry> removed = new ArrayList<>();
+        synchronized (this)
+        {
+            Entry existing = entries.put(entry.key, entry);
+            if (existing != null)
+            {
+                size -= existing.size();
+                removed.add(existing);
+            }
+            size += entry.size();
+
+            for (Iterator<Entry> iterator = entries.values().iterator(); size > maxSize && iterator.hasNext();)
+            {
+                Entry eldest = iterator.next();
+                iterator.remove();
+                size -= eldest.size();
+                evictions.incrementAndGet();
+                removed.add(eldest);
+            }
+        }
+        stores.incrementAndGet();
+        LOG.debug("Stored {}", entry);
+        for (Entry stale : removed)
+            stale.release();
+    }
+
+    /**
+     * <p>Completes the fetch of the given URI, releasing the requests waiting for it.</p>
+     *
+     * @param key the URI
+     * @param pass whether the requests for the URI should not wait for each other for a while
+     * @param entry the entry stored or revalidated by the fetch, or null;
+     * the caller must hold a reference to it during this call
+     */
+    private void release(String key, boolean pass, Entry entry)
+    {
+        List<Waiter> waiters;
+        synchronized (this)
+        {
+            waiters = pending.remove(key);
+            if (pass && passTime > 0)
+            {
+                if (passes.size() >= MAX_PASSES)
+                    purgePasses();
+                passes.put(key, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(passTime));
+            }
+        }
+        if (waiters != null)
+        {
+            for (Waiter waiter : waiters)
+            {
+                // The request has been aborted after it was taken from the pending ones
+                Throwable cause = waiter.request.getAbortCause();
+                if (cause != null)
+                {
+                    fail(waiter, cause);
+                }
+                else if (entry != null && entry.matches(waiter.request))
+                {
+                    // Serve the response just received, also if it must be revalidated for later requests
+                    hits.incrementAndGet();
+                    entry.retain();
+                    serve(entry, waiter.request, waiter.listeners);
+                }
+                else
+                {
+                    // The request has already waited, so it is not made to wait again
+                    client.doSend(waiter.request, waiter.listeners);
+                }
+            }
+        }
+    }
+
+    private void purgePasses()
+    {
+        long now = System.nanoTime();
+        for (Iterator<Long> iterator = passes.values().iterator(); iterator.hasNext();)
+        {
+            if (iterator.next() - now <= 0)
+                iterator.remove();
+        }
+        if (passes.size() >= MAX_PASSES)
+            passes.clear();
+    }
+
+    private static Map<String, String> getDirectives(Enumeration<String> values)
+    {
+        if (values == null || !values.hasMoreElements())
+            return Collections.emptyMap();
+        Map<String, String> result = new HashMap<>();
+        while (values.hasMoreElements())
+        {
+            String value = values.nextElement();
+            if (value == null)
+                continue;
+            for (String directive : value.split(","))
+            {
+                directive = directive.trim();
+                if (directive.length() == 0)
+                    continue;
+                int equals = directive.indexOf('=');
+                if (equals < 0)
+                {
+                    result.put(directive.toLowerCase(Locale.ENGLISH), null);
+                }
+                else
+                {
+                    String argument = directive.substring(equals + 1).trim();
+                    if (argument.length() > 1 && argument.startsWith("\"") && argument.endsWith("\""))
+                        argument = argument.substring(1, argument.length() - 1);
+                    result.put(directive.substring(0, equals).trim().toLowerCase(Locale.ENGLISH), argument);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static long getSeconds(Map<String, String> directives, String name)
+    {
+        String value = directives.get(name);
+        if (value == null)
+            return -1;
+        try
+        {
+            return Math.max(0, Long.parseLong(value));
+        }
+        catch (NumberFormatException x)
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the date of the given header, -1 if it is missing, 0 if it is invalid
+     */
+    private static long getDate(HttpFields headers, HttpHeader header)
+    {
+        try
+        {
+            return headers.getDateField(header.asString());
+        }
+        catch (IllegalArgumentException x)
+        {
+            return 0;
+        }
+    }
+
+    private static String[] getVary(HttpFields headers)
+    {
+        List<String> result = new ArrayList<>();
+        Enumeration<String> values = headers.getValues(HttpHeader.VARY.asString(), ",");
+        while (values.hasMoreElements())
+        {
+            String name = values.nextElement().trim();
+            if (name.length() > 0)
+                result.add(name);
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    private static String getVaryValue(Request request, String name)
+    {
+        Enumeration<String> values = request.getHeaders().getValues(name);
+        if (values == null || !values.hasMoreElements())
+            return null;
+        StringBuilder builder = new StringBuilder(values.nextElement());
+        while (values.hasMoreElements())
+            builder.append(',').append(values.nextElement());
+        return builder.toString();
+    }
+
+    /**
+     * A cached response, whose content buffer is returned to the pool when the entry
+     * has been removed from the cache and is no longer being notified.
+     */
+    private class Entry
+    {
+        private final AtomicInteger references = new AtomicInteger(1);
+        private final String key;
+        private final int status;
+        private final String reason;
+        private final String[] varyNames;
+        private final String[] varyValues;
+        private final ByteBuffer content;
+        private final long size;
+        private HttpFields headers;
+        private long responseTime;
+        private long initialAge;
+        private long lifetime;
+
+        private Entry(String key, Request request, Response response, ByteBuffer content)
+        {
+            this.key = key;
+            this.status = response.getStatus();
+            this.reason = response.getReason();
+            this.varyNames = getVary(response.getHeaders());
+            this.varyValues = new String[varyNames.length];
+            for (int i = 0; i < varyNames.length; ++i)
+                varyValues[i] = getVaryValue(request, varyNames[i]);
+            this.content = content;
+            update(response.getHeaders());
+            long size = content.capacity();
+            for (HttpField field : response.getHeaders())
+                size += field.getName().length() + field.getValue().length() + 4;
+            this.size = size;
+        }
+
+        private synchronized void update(HttpFields headers)
+        {
+            this.headers = headers;
+            this.responseTime = System.nanoTime();
+            this.initialAge = TimeUnit.SECONDS.toMillis(Math.max(0, headers.getLongField(HttpHeader.AGE.asString())));
+            this.lifetime = lifetime(headers);
+        }
+
+        private int getStatus()
+        {
+            return status;
+        }
+
+        private String getReason()
+        {
+            return reason;
+        }
+
+        private synchronized HttpFields getHeaders()
+        {
+            return headers;
+        }
+
+        private ByteBuffer getContent()
+        {
+            return content.duplicate();
+        }
+
+        /**
+         * @return the age in seconds of this response
+         */
+        private long getAge()
+        {
+            return TimeUnit.MILLISECONDS.toSeconds(getAgeMillis());
+        }
+
+        private synchronized long getAgeMillis()
+        {
+            return initialAge + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - responseTime);
+        }
+
+        private boolean isFresh(Request request)
+        {
+            long age = getAgeMillis();
+            synchronized (this)
+            {
+                if (age >= lifetime)
+                    return false;
+            }
+            HttpFields requestHeaders = request.getHeaders();
+            Map<String, String> directives = getDirectives(requestHeaders.getValues(HttpHeader.CACHE_CONTROL.asString()));
+            if (directives.containsKey("no-cache"))
+                return false;
+            if (directives.isEmpty() && "no-cache".equalsIgnoreCase(requestHeaders.get(HttpHeader.PRAGMA)))
+                return false;
+            long maxAge = getSeconds(directives, "max-age");
+            return maxAge < 0 || age <= TimeUnit.SECONDS.toMillis(maxAge);
+        }
+
+        private boolean hasValidators()
+        {
+            HttpFields headers = getHeaders();
+            return headers.containsKey(HttpHeader.ETAG.asString()) || headers.containsKey(HttpHeader.LAST_MODIFIED.asString());
+        }
+
+        private boolean matches(Request request)
+        {
+            for (int i = 0; i < varyNames.length; ++i)
+            {
+                String value = getVaryValue(request, varyNames[i]);
+                if (value == null ? varyValues[i] != null : !value.equals(varyValues[i]))
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Refreshes this entry with the headers of a 304 response.
+         */
+        private void refresh(HttpFields notModified)
+        {
+            HttpFields refreshed = new HttpFields();
+            refreshed.add(getHeaders());
+            for (HttpField field : notModified)
+            {
+                if (field.getHeader() != HttpHeader.CONTENT_LENGTH)
+                    refreshed.remove(field.getName());
+            }
+            for (HttpField field : notModified)
+            {
+                if (field.getHeader() != HttpHeader.CONTENT_LENGTH)
+                    refreshed.add(field);
+            }
+            update(refreshed);
+            revalidations.incrementAndGet();
+        }
+
+        private long size()
+        {
+            return size;
+        }
+
+        private void retain()
+        {
+            references.incrementAndGet();
+        }
+
+        private void release()
+        {
+            if (references.decrementAndGet() == 0)
+                client.getByteBufferPool().release(content);
+        }
+
+        private long lifetime(HttpFields headers)
+        {
+            Map<String, String> directives = getDirectives(headers.getValues(HttpHeader.CACHE_CONTROL.asString()));
+            if (directives.containsKey("no-cache"))
+                return 0;
+            long seconds = getSeconds(directives, "max-age");
+            if (seconds >= 0)
+                return TimeUnit.SECONDS.toMillis(seconds);
+
+            long date = getDate(headers, HttpHeader.DATE);
+            if (date < 0)
+                date = System.currentTimeMillis();
+            if (headers.containsKey(HttpHeader.EXPIRES.asString()))
+                return Math.max(0, getDate(headers, HttpHeader.EXPIRES) - date);
+
+            // Heuristic freshness, not applied to query results as they are often dynamic
+            long lastModified = getDate(headers, HttpHeader.LAST_MODIFIED);
+            if (lastModified > 0 && key.indexOf('?') < 0)
+                return Math.min(MAX_HEURISTIC_LIFETIME, Math.max(0, date - lastModified) / 10);
+            return 0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s,%d]", getClass().getSimpleName(), hashCode(), key, status);
+        }
+    }
+
+    private static class Waiter
+    {
+        private final HttpRequest request;
+        private final List<Response.ResponseListener> listeners;
+
+        private Waiter(HttpRequest request, List<Response.ResponseListener> listeners)
+        {
+            this.request = request;
+            this.listeners = listeners;
+        }
+    }
+
+    /**
+     * Forwards the response events to the listeners of the request while storing the response,
+     * or serves the stale cached response if the server replies that it has not been modified.
+     */
+    private class Fetch implements Response.Listener, Response.AsyncContentListener
+    {
+        private final String key;
+        private final HttpRequest request;
+        private final List<Response.ResponseListener> listeners;
+        private final Entry stale;
+        private boolean notModified;
+        private boolean storable;
+        private ByteBuffer buffer;
+
+        private Fetch(String key, HttpRequest request, List<Response.ResponseListener> listeners, Entry stale)
+        {
+            this.key = key;
+            this.request = request;
+            this.listeners = listeners;
+            this.stale = stale;
+        }
+
+        @Override
+        public void onBegin(Response response)
+        {
+            // Responses to redirected or authenticated requests are not stored under the original URI
+            boolean original = response.getRequest() == request;
+            notModified = original && stale != null && response.getStatus() == 304;
+            storable = original && CACHEABLE_STATUSES.contains(response.getStatus());
+            if (!notModified)
+                notifier.notifyBegin(listeners, response);
+        }
+
+        @Override
+        public boolean onHeader(Response response, HttpField field)
+        {
+            return notModified || notifier.notifyHeader(listeners, response, field);
+        }
+
+        @Override
+        public void onHeaders(Response response)
+        {
+            if (notModified)
+                return;
+            if (storable)
+                storable = allocate(response.getHeaders());
+            notifier.notifyHeaders(listeners, response);
+        }
+
+        private boolean allocate(HttpFields headers)
+        {
+            Map<String, String> directives = getDirectives(headers.getValues(HttpHeader.CACHE_CONTROL.asString()));
+            if (directives.containsKey("no-store"))
+                return false;
+            if (!directives.containsKey("max-age") && !directives.containsKey("no-cache") &&
+                    !headers.containsKey(HttpHeader.EXPIRES.asString()) &&
+                    !headers.containsKey(HttpHeader.ETAG.asString()) &&
+                    !headers.containsKey(HttpHeader.LAST_MODIFIED.asString()))
+                return false;
+            for (String name : getVary(headers))
+            {
+                if ("*".equals(name))
+                    return false;
+            }
+            long length = headers.getLongField(HttpHeader.CONTENT_LENGTH.asString());
+            if (length > getMaxEntrySize())
+                return false;
+            buffer = client.getByteBufferPool().acquire(length > 0 ? (int)length : 4096, false);
+            return true;
+        }
+
+        @Override
+        public void onContent(Response response, ByteBuffer content)
+        {
+            // Content is notified via onContent(Response, ByteBuffer, Callback)
+        }
+
+        @Override
+        public void onContent(Response response, ByteBuffer content, Callback callback)
+        {
+            if (storable)
+                append(content.slice());
+            notifier.notifyContent(listeners, response, content, callback);
+        }
+
+        private void append(ByteBuffer content)
+        {
+            int length = buffer.remaining() + content.remaining();
+            if (length > getMaxEntrySize())
+            {
+                discard();
+                return;
+            }
+            ByteBufferPool pool = client.getByteBufferPool();
+            if (BufferUtil.space(buffer) < content.remaining())
+            {
+                ByteBuffer larger = pool.acquire(Math.max(length, 2 * buffer.capacity()), false);
+                int position = BufferUtil.flipToFill(larger);
+                larger.put(buffer);
+                BufferUtil.flipToFlush(larger, position);
+                pool.release(buffer);
+                buffer = larger;
+            }
+            int position = BufferUtil.flipToFill(buffer);
+            buffer.put(content);
+            BufferUtil.flipToFlush(buffer, position);
+        }
+
+        private void discard()
+        {
+            storable = false;
+            if (buffer != null)
+            {
+                client.getByteBufferPool().release(buffer);
+                buffer = null;
+            }
+        }
+
+        @Override
+        public void onSuccess(Response response)
+        {
+            if (!notModified)
+                notifier.notifySuccess(listeners, response);
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable failure)
+        {
+            if (notModified)
+                notifier.notifyBegin(listeners, response);
+            notifier.notifyFailure(listeners, response, failure);
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            if (notModified && result.isSucceeded())
+            {
+                stale.refresh(result.getResponse().getHeaders());
+                LOG.debug("Revalidated {}", stale);
+                release(key, false, stale);
+                serve(stale, request, listeners);
+                return;
+            }
+
+            Entry entry = null;
+            if (storable && result.isSucceeded())
+            {
+                entry = new Entry(key, request, result.getResponse(), buffer);
+                buffer = null;
+                // Prevent the buffer from being released, if the entry is evicted, while the waiters are served
+                entry.retain();
+                store(entry);
+            }
+            else
+            {
+                discard();
+            }
+            if (stale != null)
+                stale.release();
+            // Failed requests may be retried, so they do not mark the URI as not cacheable
+            release(key, entry == null && result.isSucceeded(), entry);
+            if (entry != null)
+                entry.release();
+            notifier.notifyComplete(listeners, result);
+        }
+    }
+}
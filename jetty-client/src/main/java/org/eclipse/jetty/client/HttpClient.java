@@ -22,6 +22,8 @@ import java.io.IOException;
 import java.net.CookieManager;
 import java.net.CookiePolicy;
 import java.net.CookieStore;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.URI;
 import java.nio.channels.SocketChannel;
@@ -59,6 +61,7 @@ import org.eclipse.jetty.util.Jetty;
 import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.SocketAddressResolver;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.component.Destroyable;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
@@ -119,6 +122,7 @@ public class HttpClient extends ContainerLifeCycle
     private volatile ByteBufferPool byteBufferPool;
     private volatile Scheduler scheduler;
     private volatile SocketAddressResolver resolver;
+    private volatile HttpCache cache;
     private volatile HttpField agentField = new HttpField(HttpHeader.USER_AGENT, "Jetty/" + Jetty.VERSION);
     private volatile boolean followRedirects = true;
     private volatile int maxConnectionsPerDestination = 64;
@@ -129,6 +133,7 @@ public class HttpClient extends ContainerLifeCycle
     private volatile SocketAddress bindAddress;
     private volatile long connectTimeout = 15000;
     private volatile long addressResolutionTimeout = 15000;
+    private volatile long connectAttemptDelay = 250;
     private volatile long idleTimeout;
     private volatile boolean tcpNoDelay = true;
     private volatile boolean dispatchIO = true;
@@ -205,14 +210,15 @@ public class HttpClient extends ContainerLifeCycle
         addBean(transport);
         transport.setHttpClient(this);
 
-        resolver = new SocketAddressResolver(executor, scheduler, getAddressResolutionTimeout());
+        if (resolver == null)
+            resolver = new SocketAddressResolver(executor, scheduler, getAddressResolutionTimeout());
 
         handlers.add(new ContinueProtocolHandler(this));
         handlers.add(new RedirectProtocolHandler(this));
         handlers.add(new WWWAuthenticationProtocolHandler(this));
         handlers.add(new ProxyAuthenticationProtocolHandler(this));
 
-        decoderFactories.add(new GZIPContentDecoder.Factory());
+        decoderFactories.add(new GZIPContentDecoder.Factory(byteBufferPool));
 
         cookieManager = newCookieManager();
         cookieStore = cookieManager.getCookieStore();
@@ -230,6 +236,13 @@ public class HttpClient extends ContainerLifeCycle
     {
         cookieStore.removeAll();
         cookieStore = null;
+        if (cache != null)
+            cache.clear();
+        for (ContentDecoder.Factory factory : decoderFactories)
+        {
+            if (factory instanceof Destroyable)
+                ((Destroyable)factory).destroy();
+        }
         decoderFactories.clear();
         handlers.clear();
 
@@ -295,6 +308,9 @@ public class HttpClient extends ContainerLifeCycle
     /**
      * Returns a <em>non</em> thread-safe set of {@link ContentDecoder.Factory}s that can be modified before
      * performing requests.
+     * <p />
+     * By default only the "gzip" encoding is accepted; the "deflate" encoding, which servers send either
+     * as zlib or as raw deflate data, can be accepted by adding a {@link DeflateContentDecoder.Factory}.
      *
      * @return a set of {@link ContentDecoder.Factory} that can be used to add and remove content decoder factories
      */
@@ -478,6 +494,14 @@ public class HttpClient extends ContainerLifeCycle
         if (!HttpScheme.HTTP.is(scheme) && !HttpScheme.HTTPS.is(scheme))
             throw new IllegalArgumentException("Invalid protocol " + scheme);
 
+        HttpCache cache = this.cache;
+        if (cache == null || !cache.send(request, listeners))
+            doSend(request, listeners);
+    }
+
+    protected void doSend(HttpRequest request, List<Response.ResponseListener> listeners)
+    {
+        String scheme = request.getScheme().toLowerCase(Locale.ENGLISH);
         HttpDestination destination = destinationFor(scheme, request.getHost(), request.getPort());
         destination.send(request, listeners);
     }
@@ -485,15 +509,22 @@ public class HttpClient extends ContainerLifeCycle
     protected void newConnection(final HttpDestination destination, final Promise<Connection> promise)
     {
         Origin.Address address = destination.getConnectAddress();
-        resolver.resolve(address.getHost(), address.getPort(), new Promise<SocketAddress>()
+        resolver.resolveAll(address.getHost(), address.getPort(), new Promise<List<SocketAddress>>()
         {
             @Override
-            public void succeeded(SocketAddress socketAddress)
+            public void succeeded(List<SocketAddress> socketAddresses)
             {
-                Map<String, Object> context = new HashMap<>();
-                context.put(HttpClientTransport.HTTP_DESTINATION_CONTEXT_KEY, destination);
-                context.put(HttpClientTransport.HTTP_CONNECTION_PROMISE_CONTEXT_KEY, promise);
-                transport.connect(socketAddress, context);
+                if (socketAddresses.size() == 1)
+                {
+                    Map<String, Object> context = new HashMap<>();
+                    context.put(HttpClientTransport.HTTP_DESTINATION_CONTEXT_KEY, destination);
+                    context.put(HttpClientTransport.HTTP_CONNECTION_PROMISE_CONTEXT_KEY, promise);
+                    transport.connect(socketAddresses.get(0), context);
+                }
+                else
+                {
+                    new ConnectRace(destination, socketAddresses, promise).connect();
+                }
             }
 
             @Override
@@ -560,6 +591,32 @@ public class HttpClient extends ContainerLifeCycle
         this.connectTimeout = connectTimeout;
     }
 
+    /**
+     * @return the time, in milliseconds, to wait for a connection attempt to one of the addresses
+     * of a destination before a concurrent attempt to the next address is started
+     */
+    public long getConnectAttemptDelay()
+    {
+        return connectAttemptDelay;
+    }
+
+    /**
+     * <p>When the {@link #getSocketAddressResolver() resolver} returns multiple addresses for the host
+     * of a destination, as {@link org.eclipse.jetty.util.CachingSocketAddressResolver} does, the destination
+     * is connected as in the "Happy Eyeballs" algorithm (RFC 6555): the addresses are tried in turn,
+     * alternating between IPv6 and IPv4 addresses, and an attempt to the next address is started when the
+     * previous attempt fails or has not completed after this delay.
+     * The first connection established is used, and the others are closed.</p>
+     *
+     * @param connectAttemptDelay the time, in milliseconds, to wait for a connection attempt to one of the
+     * addresses of a destination before a concurrent attempt to the next address is started,
+     * or a non-positive value to wait for each attempt to fail before trying the next address
+     */
+    public void setConnectAttemptDelay(long connectAttemptDelay)
+    {
+        this.connectAttemptDelay = connectAttemptDelay;
+    }
+
     /**
      * @return the timeout, in milliseconds, for the DNS resolution of host addresses
      */
@@ -679,6 +736,41 @@ public class HttpClient extends ContainerLifeCycle
         this.scheduler = scheduler;
     }
 
+    /**
+     * @return the {@link HttpCache} of this {@link HttpClient}, or null if responses are not cached
+     */
+    public HttpCache getHttpCache()
+    {
+        return cache;
+    }
+
+    /**
+     * @param cache the {@link HttpCache} of this {@link HttpClient}, or null to not cache responses
+     */
+    public void setHttpCache(HttpCache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * @return the {@link SocketAddressResolver} of this {@link HttpClient}
+     */
+    public SocketAddressResolver getSocketAddressResolver()
+    {
+        return resolver;
+    }
+
+    /**
+     * @param resolver the {@link SocketAddressResolver} of this {@link HttpClient}, for example
+     * a {@link org.eclipse.jetty.util.CachingSocketAddressResolver} to cache the addresses of destinations
+     * and race connections to them
+     * @see #setConnectAttemptDelay(long)
+     */
+    public void setSocketAddressResolver(SocketAddressResolver resolver)
+    {
+        this.resolver = resolver;
+    }
+
     /**
      * @return the max number of connections that this {@link HttpClient} opens to {@link Destination}s
      */
@@ -1008,4 +1100,135 @@ public class HttpClient extends ContainerLifeCycle
             }
         }
     }
+
+    /**
+     * Connects to one of the addresses of a destination, starting a new attempt
+     * when the previous ones failed or did not complete within the connect attempt delay.
+     */
+    private class ConnectRace implements Runnable
+    {
+        private final HttpDestination destination;
+        private final List<SocketAddress> addresses;
+        private final Promise<Connection> promise;
+        private int next;
+        private int pending;
+        private boolean complete;
+        private Scheduler.Task task;
+
+        private ConnectRace(HttpDestination destination, List<SocketAddress> addresses, Promise<Connection> promise)
+        {
+            this.destination = destination;
+            this.addresses = interleave(addresses);
+            this.promise = promise;
+        }
+
+        /**
+         * @return the addresses alternating address families, starting from the family of the first address
+         */
+        private List<SocketAddress> interleave(List<SocketAddress> addresses)
+        {
+            List<SocketAddress> first = new ArrayList<>();
+            List<SocketAddress> second = new ArrayList<>();
+            boolean ipv6 = isIPv6(addresses.get(0));
+            for (SocketAddress address : addresses)
+            {
+                if (isIPv6(address) == ipv6)
+                    first.add(address);
+                else
+                    second.add(address);
+            }
+            List<SocketAddress> result = new ArrayList<>(addresses.size());
+            for (int i = 0; i < Math.max(first.size(), second.size()); ++i)
+            {
+                if (i < first.size())
+                    result.add(first.get(i));
+                if (i < second.size())
+                    result.add(second.get(i));
+            }
+            return result;
+        }
+
+        private boolean isIPv6(SocketAddress address)
+        {
+            return address instanceof InetSocketAddress && ((InetSocketAddress)address).getAddress() instanceof Inet6Address;
+        }
+
+        @Override
+        public void run()
+        {
+            LOG.debug("Connect attempt delay expired for {}", destination);
+            connect();
+        }
+
+        private void connect()
+        {
+            SocketAddress address;
+            synchronized (this)
+            {
+                if (complete || next == addresses.size())
+                    return;
+                address = addresses.get(next++);
+                ++pending;
+                long delay = getConnectAttemptDelay();
+                if (delay > 0 && next < addresses.size())
+                    task = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+            }
+
+            LOG.debug("Connecting to {} for {}", address, destination);
+            Map<String, Object> context = new HashMap<>();
+            context.put(HttpClientTransport.HTTP_DESTINATION_CONTEXT_KEY, destination);
+            context.put(HttpClientTransport.HTTP_CONNECTION_PROMISE_CONTEXT_KEY, new Attempt());
+            transport.connect(address, context);
+        }
+
+        private class Attempt implements Promise<Connection>
+        {
+            @Override
+            public void succeeded(Connection connection)
+            {
+                boolean won;
+                synchronized (ConnectRace.this)
+                {
+                    --pending;
+                    won = !complete;
+                    complete = true;
+                    if (task != null)
+                        task.cancel();
+                }
+                if (won)
+                    promise.succeeded(connection);
+                else
+                    connection.close();
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                boolean retry = false;
+                boolean fail = false;
+                synchronized (ConnectRace.this)
+                {
+                    --pending;
+                    if (complete)
+                        return;
+                    if (next < addresses.size())
+                    {
+                        if (task != null)
+                            task.cancel();
+                        retry = true;
+                    }
+                    else if (pending == 0)
+                    {
+                        complete = true;
+                        fail = true;
+                    }
+                }
+                LOG.debug("Connect attempt failed for " + destination, x);
+                if (retry)
+                    connect();
+                else if (fail)
+                    promise.failed(x);
+            }
+        }
+    }
 }
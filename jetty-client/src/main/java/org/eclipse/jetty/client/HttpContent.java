@@ -26,6 +26,7 @@ import java.util.Iterator;
 import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.util.DeferredContentProvider;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -62,8 +63,12 @@ import org.eclipse.jetty.util.log.Logger;
  * moves the cursor to a position that provides {@code null} {@link #getByteBuffer() buffer} and
  * {@link #getContent() content}. When the deferred content is available, a further call to {@link #advance()}
  * will move the cursor to a position that provides non {@code null} buffer and content.
+ * <p />
+ * {@link HttpContent} is also the callback of the content at the cursor's position: it is completed
+ * when that content has been sent, or when the request fails, and forwards the completion to the
+ * iterator of the {@link ContentProvider}, if it is a {@link Callback}.
  */
-public class HttpContent implements Closeable
+public class HttpContent implements Callback, Closeable
 {
     private static final Logger LOG = Log.getLogger(HttpContent.class);
     private static final ByteBuffer AFTER = ByteBuffer.allocate(0);
@@ -151,6 +156,20 @@ public class HttpContent implements Closeable
         return content == AFTER;
     }
 
+    @Override
+    public void succeeded()
+    {
+        if (iterator instanceof Callback)
+            ((Callback)iterator).succeeded();
+    }
+
+    @Override
+    public void failed(Throwable x)
+    {
+        if (iterator instanceof Callback)
+            ((Callback)iterator).failed(x);
+    }
+
     @Override
     public void close()
     {
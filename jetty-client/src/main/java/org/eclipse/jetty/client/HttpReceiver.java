@@ -33,6 +33,9 @@ import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IteratingCallback;
+import org.eclipse.jetty.util.component.Destroyable;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -48,8 +51,8 @@ import org.eclipse.jetty.util.log.Logger;
  * is available</li>
  * <li>{@link #responseHeader(HttpExchange, HttpField)}, when a HTTP field is available</li>
  * <li>{@link #responseHeaders(HttpExchange)}, when all HTTP headers are available</li>
- * <li>{@link #responseContent(HttpExchange, ByteBuffer)}, when HTTP content is available; this is the only method
- * that may be invoked multiple times with different buffers containing different content</li>
+ * <li>{@link #responseContent(HttpExchange, ByteBuffer, Callback)}, when HTTP content is available; this is the only
+ * method that may be invoked multiple times with different buffers containing different content</li>
  * <li>{@link #responseSuccess(HttpExchange)}, when the response is complete</li>
  * </ol>
  * At any time, subclasses may invoke {@link #responseFailure(Throwable)} to indicate that the response has failed
@@ -244,14 +247,15 @@ public abstract class HttpReceiver
         Enumeration<String> contentEncodings = response.getHeaders().getValues(HttpHeader.CONTENT_ENCODING.asString(), ",");
         if (contentEncodings != null)
         {
-            for (ContentDecoder.Factory factory : getHttpDestination().getHttpClient().getContentDecoderFactories())
+            out: while (contentEncodings.hasMoreElements())
             {
-                while (contentEncodings.hasMoreElements())
+                String contentEncoding = contentEncodings.nextElement();
+                for (ContentDecoder.Factory factory : getHttpDestination().getHttpClient().getContentDecoderFactories())
                 {
-                    if (factory.getEncoding().equalsIgnoreCase(contentEncodings.nextElement()))
+                    if (factory.getEncoding().equalsIgnoreCase(contentEncoding))
                     {
                         this.decoder = factory.newContentDecoder();
-                        break;
+                        break out;
                     }
                 }
             }
@@ -264,12 +268,35 @@ public abstract class HttpReceiver
      * Method to be invoked when response HTTP content is available.
      * <p />
      * This method takes case of decoding the content, if necessary, and notifying {@link org.eclipse.jetty.client.api.Response.ContentListener}s.
+     * The content is assumed to be consumed when this method returns.
      *
      * @param exchange the HTTP exchange
      * @param buffer the response HTTP content buffer
      * @return whether the processing should continue
+     * @see #responseContent(HttpExchange, ByteBuffer, Callback)
      */
     protected boolean responseContent(HttpExchange exchange, ByteBuffer buffer)
+    {
+        return responseContent(exchange, buffer, new Callback.Adapter());
+    }
+
+    /**
+     * Method to be invoked when response HTTP content is available.
+     * <p />
+     * This method takes case of decoding the content, if necessary, and notifying
+     * {@link org.eclipse.jetty.client.api.Response.ContentListener}s and
+     * {@link org.eclipse.jetty.client.api.Response.AsyncContentListener}s.
+     * <p />
+     * The given callback is completed when all the listeners have consumed the content; subclasses
+     * should not read more content, nor reuse the buffer, until then.
+     * If this method returns false, the content has not been notified and the callback will not be completed.
+     *
+     * @param exchange the HTTP exchange
+     * @param buffer the response HTTP content buffer
+     * @param callback the callback completed when the content has been consumed
+     * @return whether the processing should continue
+     */
+    protected boolean responseContent(HttpExchange exchange, ByteBuffer buffer, Callback callback)
     {
         out: while (true)
         {
@@ -295,15 +322,15 @@ public abstract class HttpReceiver
             LOG.debug("Response content {}{}{}", response, System.getProperty("line.separator"), BufferUtil.toDetailString(buffer));
 
         ContentDecoder decoder = this.decoder;
-        if (decoder != null)
+        if (decoder == null)
         {
-            buffer = decoder.decode(buffer);
-            if (LOG.isDebugEnabled())
-                LOG.debug("Response content decoded ({}) {}{}{}", decoder, response, System.getProperty("line.separator"), BufferUtil.toDetailString(buffer));
+            ResponseNotifier notifier = getHttpDestination().getResponseNotifier();
+            notifier.notifyContent(exchange.getConversation().getResponseListeners(), response, buffer, callback);
+        }
+        else
+        {
+            new Decoder(exchange, decoder, buffer, callback).iterate();
         }
-
-        ResponseNotifier notifier = getHttpDestination().getResponseNotifier();
-        notifier.notifyContent(exchange.getConversation().getResponseListeners(), response, buffer);
 
         return true;
     }
@@ -415,7 +442,7 @@ public abstract class HttpReceiver
      */
     protected void reset()
     {
-        decoder = null;
+        destroyDecoder();
         responseState.set(ResponseState.IDLE);
     }
 
@@ -428,10 +455,20 @@ public abstract class HttpReceiver
      */
     protected void dispose()
     {
-        decoder = null;
+        // The decoder may be in use by the thread that receives the content,
+        // but destroying it waits for the decoding in progress, if any, to finish
+        destroyDecoder();
         responseState.set(ResponseState.FAILURE);
     }
 
+    private void destroyDecoder()
+    {
+        ContentDecoder decoder = this.decoder;
+        this.decoder = null;
+        if (decoder instanceof Destroyable)
+            ((Destroyable)decoder).destroy();
+    }
+
     public boolean abort(Throwable cause)
     {
         return responseFailure(cause);
@@ -445,6 +482,80 @@ public abstract class HttpReceiver
         return updated;
     }
 
+    /**
+     * <p>Decodes a content buffer into decoded buffers, notifying each one to the listeners
+     * and releasing it to the decoder once the listeners have consumed it.</p>
+     * <p>The callback is completed when all the content buffer has been decoded and consumed.</p>
+     */
+    private class Decoder extends IteratingCallback
+    {
+        private final HttpExchange exchange;
+        private final ContentDecoder decoder;
+        private final ByteBuffer buffer;
+        private final Callback callback;
+        private ByteBuffer decoded;
+
+        private Decoder(HttpExchange exchange, ContentDecoder decoder, ByteBuffer buffer, Callback callback)
+        {
+            this.exchange = exchange;
+            this.decoder = decoder;
+            this.buffer = buffer;
+            this.callback = callback;
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            release();
+            while (true)
+            {
+                ByteBuffer decoded = decoder.decode(buffer);
+                if (decoded.hasRemaining())
+                {
+                    this.decoded = decoded;
+                    HttpResponse response = exchange.getResponse();
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Response content decoded ({}) {}{}{}", decoder, response, System.getProperty("line.separator"), BufferUtil.toDetailString(decoded));
+                    ResponseNotifier notifier = getHttpDestination().getResponseNotifier();
+                    notifier.notifyContent(exchange.getConversation().getResponseListeners(), response, decoded, this);
+                    return Action.SCHEDULED;
+                }
+                release(decoded);
+                if (!buffer.hasRemaining())
+                    return Action.SUCCEEDED;
+            }
+        }
+
+        @Override
+        protected void completed()
+        {
+            callback.succeeded();
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            release();
+            super.failed(x);
+            callback.failed(x);
+        }
+
+        private void release()
+        {
+            ByteBuffer decoded = this.decoded;
+            this.decoded = null;
+            if (decoded != null)
+                release(decoded);
+        }
+
+        private void release(ByteBuffer decoded)
+        {
+            // Only the decoders that pool their buffers need them back
+            if (decoder instanceof InflatingContentDecoder)
+                ((InflatingContentDecoder)decoder).release(decoded);
+        }
+    }
+
     /**
      * The request states {@link HttpReceiver} goes through when receiving a response.
      */
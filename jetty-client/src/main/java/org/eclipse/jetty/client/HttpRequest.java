@@ -50,6 +50,7 @@ import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.Fields;
 
 public class HttpRequest implements Request
@@ -448,6 +449,20 @@ public class HttpRequest implements Request
         return this;
     }
 
+    @Override
+    public Request onResponseContentAsync(final Response.AsyncContentListener listener)
+    {
+        this.responseListeners.add(new Response.AsyncContentListener()
+        {
+            @Override
+            public void onContent(Response response, ByteBuffer content, Callback callback)
+            {
+                listener.onContent(response, content, callback);
+            }
+        });
+        return this;
+    }
+
     @Override
     public Request onResponseSuccess(final Response.SuccessListener listener)
     {
@@ -609,7 +624,15 @@ public class HttpRequest implements Request
     @Override
     public boolean abort(Throwable cause)
     {
-        return aborted.compareAndSet(null, Objects.requireNonNull(cause)) && conversation.abort(cause);
+        if (aborted.compareAndSet(null, Objects.requireNonNull(cause)))
+        {
+            if (conversation.abort(cause))
+                return true;
+            // The request may be waiting in the cache for another request of the same URI
+            HttpCache cache = client.getHttpCache();
+            return cache != null && cache.abort(this, cause);
+        }
+        return false;
     }
 
     @Override
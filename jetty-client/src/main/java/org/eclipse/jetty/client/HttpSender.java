@@ -320,6 +320,11 @@ public abstract class HttpSender implements AsyncContentProvider.Listener
         if (!completed)
             return false;
 
+        // Fail the content not yet sent
+        HttpContent content = this.content;
+        if (content != null)
+            content.failed(failure);
+
         // Dispose to avoid further requests
         RequestState requestState = dispose();
 
@@ -643,6 +648,7 @@ public abstract class HttpSender implements AsyncContentProvider.Listener
                 {
                     if (!someToContent(request, contentBuffer))
                         return;
+                    content.succeeded();
                 }
 
                 while (true)
@@ -746,24 +752,24 @@ public abstract class HttpSender implements AsyncContentProvider.Listener
             {
                 if (!someToContent(request, contentBuffer))
                     return Action.IDLE;
+                content.succeeded();
             }
 
-            if (content.advance())
+            while (true)
             {
-                // There is more content to send
-                sendContent(exchange, content, this);
-                return Action.SCHEDULED;
-            }
-            
+                if (content.advance())
+                {
+                    // There is more content to send
+                    sendContent(exchange, content, this);
+                    return Action.SCHEDULED;
+                }
 
-            if (content.isConsumed())
-            {
-                sendContent(exchange, content, lastCallback);
-                return Action.SCHEDULED;
-            }
+                if (content.isConsumed())
+                {
+                    sendContent(exchange, content, lastCallback);
+                    return Action.SCHEDULED;
+                }
 
-            while (true)
-            {
                 SenderState current = senderState.get();
                 switch (current)
                 {
@@ -778,13 +784,9 @@ public abstract class HttpSender implements AsyncContentProvider.Listener
                     }
                     case SENDING_WITH_CONTENT:
                     {
+                        // Deferred content arrived after the last advance(), advance again to send it.
                         if (updateSenderState(current, SenderState.SENDING))
-                        {
                             LOG.debug("Deferred content available for {}", request);
-                            // TODO: this case is not covered by tests
-                            sendContent(exchange, content, this);
-                            return Action.SCHEDULED;
-                        }
                         break;
                     }
                     default:
@@ -0,0 +1,149 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Inflater;
+
+/**
+ * <p>A bounded pool of {@link Inflater}s.</p>
+ * <p>An {@link Inflater} holds native zlib state that is only freed by {@link Inflater#end()}
+ * or by finalization, so allocating one per response churns native memory.
+ * This pool keeps up to {@code capacity} idle inflaters for reuse, and ends the inflaters
+ * released while the pool is full.</p>
+ */
+public class InflaterPool
+{
+    private final Queue<Inflater> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong ended = new AtomicLong();
+    private final int capacity;
+    private final boolean nowrap;
+
+    /**
+     * @param capacity the max number of idle inflaters kept in the pool
+     * @param nowrap whether the inflaters expect raw deflate data, without the zlib header and checksum
+     */
+    public InflaterPool(int capacity, boolean nowrap)
+    {
+        this.capacity = capacity;
+        this.nowrap = nowrap;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public boolean isNowrap()
+    {
+        return nowrap;
+    }
+
+    /**
+     * @return an idle inflater from the pool, or a new one if the pool is empty
+     */
+    public Inflater acquire()
+    {
+        Inflater inflater = pool.poll();
+        if (inflater == null)
+        {
+            created.incrementAndGet();
+            return new Inflater(nowrap);
+        }
+        size.decrementAndGet();
+        return inflater;
+    }
+
+    /**
+     * <p>Returns the given inflater to the pool, or ends it if the pool is full.</p>
+     *
+     * @param inflater the inflater to release, which must not be used after this call
+     */
+    public void release(Inflater inflater)
+    {
+        if (inflater == null)
+            return;
+
+        if (size.incrementAndGet() > capacity)
+        {
+            size.decrementAndGet();
+            end(inflater);
+            return;
+        }
+
+        inflater.reset();
+        pool.offer(inflater);
+    }
+
+    /**
+     * <p>Ends all the idle inflaters in the pool.</p>
+     */
+    public void clear()
+    {
+        Inflater inflater = pool.poll();
+        while (inflater != null)
+        {
+            size.decrementAndGet();
+            end(inflater);
+            inflater = pool.poll();
+        }
+    }
+
+    /**
+     * @return the number of idle inflaters in the pool
+     */
+    public int getIdle()
+    {
+        return size.get();
+    }
+
+    /**
+     * @return the number of inflaters created by this pool
+     */
+    public long getCreated()
+    {
+        return created.get();
+    }
+
+    /**
+     * @return the number of inflaters ended by this pool
+     */
+    public long getEnded()
+    {
+        return ended.get();
+    }
+
+    private void end(Inflater inflater)
+    {
+        ended.incrementAndGet();
+        inflater.end();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[idle=%d/%d,created=%d,ended=%d]", getClass().getSimpleName(), hashCode(), getIdle(), capacity, getCreated(), getEnded());
+    }
+}
@@ -0,0 +1,254 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.component.Destroyable;
+
+/**
+ * <p>Base class for {@link ContentDecoder}s of deflate based encodings.</p>
+ * <p>The {@link Inflater} may be taken from an {@link InflaterPool}, and is returned to it when
+ * this decoder is {@link #destroy() destroyed}.
+ * The bytes are inflated into buffers of a fixed size taken from a {@link ByteBufferPool}, if one
+ * is given, that are returned to it when {@link #release(ByteBuffer) released}; when a buffer is
+ * full it is returned by {@link #decode(ByteBuffer)}, which must be called again to inflate the
+ * rest of the input, so that a small input cannot make the decoder allocate unbounded memory.
+ * The inflater reads directly from the array of heap buffers, so that the encoded bytes are
+ * not copied.</p>
+ * <p>Subclasses must decode while holding the lock of this decoder, as {@link #destroy()} does,
+ * so that a decoder may be destroyed by a thread other than the one decoding, for example when
+ * the response is aborted, without returning to the pool an inflater that is still inflating.</p>
+ */
+public abstract class InflatingContentDecoder implements ContentDecoder, Destroyable
+{
+    private final ByteBufferPool bufferPool;
+    private final int bufferSize;
+    private InflaterPool inflaterPool;
+    private Inflater inflater;
+    private byte[] input;
+    private int inputLength;
+    private ByteBuffer output;
+    private boolean full;
+    private boolean destroyed;
+
+    /**
+     * @param bufferPool the pool to take the buffers holding the decoded bytes from, or null to allocate them
+     * @param bufferSize the size of the buffers holding the decoded bytes
+     */
+    protected InflatingContentDecoder(ByteBufferPool bufferPool, int bufferSize)
+    {
+        this.bufferPool = bufferPool;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @param inflaterPool the pool to take the inflater from, or null to create a new inflater
+     * @param nowrap whether the inflater must expect raw deflate data, used only if {@code inflaterPool} is null
+     */
+    protected void setInflater(InflaterPool inflaterPool, boolean nowrap)
+    {
+        checkDestroyed();
+        this.inflaterPool = inflaterPool;
+        this.inflater = inflaterPool == null ? new Inflater(nowrap) : inflaterPool.acquire();
+    }
+
+    protected Inflater getInflater()
+    {
+        checkDestroyed();
+        return inflater;
+    }
+
+    private void checkDestroyed()
+    {
+        if (destroyed)
+            throw new IllegalStateException("Destroyed " + this);
+    }
+
+    /**
+     * <p>Releases a buffer returned by {@link #decode(ByteBuffer)}, once its bytes have been consumed,
+     * returning it to the {@link ByteBufferPool}.</p>
+     *
+     * @param decoded the buffer returned by {@link #decode(ByteBuffer)}
+     */
+    public void release(ByteBuffer decoded)
+    {
+        if (bufferPool != null && decoded != BufferUtil.EMPTY_BUFFER)
+            bufferPool.release(decoded);
+    }
+
+    /**
+     * <p>Returns the {@link Inflater} to the {@link InflaterPool}, or ends it if there is no pool.</p>
+     * <p>This decoder must not be used after this call, and further decoding fails.</p>
+     */
+    @Override
+    public synchronized void destroy()
+    {
+        if (destroyed)
+            return;
+        destroyed = true;
+        if (output != null)
+        {
+            release(output);
+            output = null;
+        }
+        if (inflater != null)
+        {
+            if (inflaterPool == null)
+                inflater.end();
+            else
+                inflaterPool.release(inflater);
+            inflater = null;
+        }
+    }
+
+    /**
+     * <p>Inflates the bytes of the given buffer until the inflater needs more input than
+     * the buffer has, until the deflate data is finished, or until the output buffer is full.</p>
+     * <p>The position of the buffer is moved past the bytes consumed by the inflater;
+     * the inflated bytes accumulate until {@link #take() taken}. If the output buffer is full,
+     * {@link #isFull()} returns true and this method must be called again once it has been taken,
+     * even if the given buffer has no remaining bytes.</p>
+     *
+     * @param buffer the buffer containing deflate data
+     * @throws ZipException if the deflate data is invalid
+     */
+    protected void inflate(ByteBuffer buffer) throws ZipException
+    {
+        checkDestroyed();
+        if (!buffer.hasRemaining() && !full)
+            return;
+        full = false;
+        setInput(buffer);
+        while (true)
+        {
+            if (output == null)
+            {
+                output = acquire(bufferSize);
+            }
+            else if (BufferUtil.space(output) == 0)
+            {
+                // Return the bytes inflated so far, the rest is inflated by the next call
+                full = true;
+                return;
+            }
+
+            int decoded = inflate(output.array(), output.arrayOffset() + output.limit(), BufferUtil.space(output));
+            output.limit(output.limit() + decoded);
+
+            int remaining = inflater.getRemaining();
+            buffer.position(buffer.position() + inputLength - remaining);
+            inputLength = remaining;
+
+            if (inflater.finished())
+                return;
+
+            if (decoded == 0)
+            {
+                if (inflater.needsInput())
+                {
+                    if (!buffer.hasRemaining())
+                        return;
+                    setInput(buffer);
+                }
+                else
+                {
+                    throw new ZipException("Invalid inflater state");
+                }
+            }
+        }
+    }
+
+    private void setInput(ByteBuffer buffer)
+    {
+        if (buffer.hasArray())
+        {
+            inputLength = buffer.remaining();
+            inflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.position(), inputLength);
+        }
+        else
+        {
+            // Copy only a chunk, the position is moved by the bytes actually consumed
+            if (input == null)
+                input = new byte[bufferSize];
+            inputLength = Math.min(buffer.remaining(), input.length);
+            int position = buffer.position();
+            buffer.get(input, 0, inputLength);
+            buffer.position(position);
+            inflater.setInput(input, 0, inputLength);
+        }
+    }
+
+    private int inflate(byte[] bytes, int offset, int length) throws ZipException
+    {
+        try
+        {
+            return inflater.inflate(bytes, offset, length);
+        }
+        catch (DataFormatException x)
+        {
+            throw new ZipException(x.getMessage());
+        }
+    }
+
+    private ByteBuffer acquire(int capacity)
+    {
+        return bufferPool == null ? BufferUtil.allocate(capacity) : bufferPool.acquire(capacity, false);
+    }
+
+    /**
+     * @return whether the last {@link #inflate(ByteBuffer)} stopped because the output buffer was full,
+     * so that there may be more inflated bytes even without more input
+     */
+    protected boolean isFull()
+    {
+        return full;
+    }
+
+    /**
+     * @return the bytes inflated so far, or an empty buffer if there are none
+     */
+    protected ByteBuffer take()
+    {
+        ByteBuffer result = output;
+        output = null;
+        if (result == null)
+            return BufferUtil.EMPTY_BUFFER;
+        if (result.hasRemaining())
+            return result;
+        release(result);
+        return BufferUtil.EMPTY_BUFFER;
+    }
+
+    /**
+     * <p>Resets the inflater, to inflate another deflate data.</p>
+     */
+    protected void resetInflater()
+    {
+        inflater.reset();
+        inputLength = 0;
+        full = false;
+    }
+}
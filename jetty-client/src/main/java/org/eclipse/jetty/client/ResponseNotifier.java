@@ -21,12 +21,14 @@ package org.eclipse.jetty.client;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -115,18 +117,43 @@ public class ResponseNotifier
         }
     }
 
-    @SuppressWarnings("ForLoopReplaceableByForEach")
     public void notifyContent(List<Response.ResponseListener> listeners, Response response, ByteBuffer buffer)
+    {
+        notifyContent(listeners, response, buffer, new Callback.Adapter());
+    }
+
+    /**
+     * Notifies the content listeners of the given content buffer.
+     * <p />
+     * {@link Response.ContentListener}s are notified synchronously, while {@link Response.AsyncContentListener}s
+     * may consume the content asynchronously: the given callback is completed only when all of them have
+     * completed theirs, so that callers can stop reading more content until the buffer has been consumed.
+     *
+     * @param listeners the response listeners
+     * @param response the response
+     * @param buffer the content buffer
+     * @param callback the callback completed when all the listeners have consumed the content
+     */
+    @SuppressWarnings("ForLoopReplaceableByForEach")
+    public void notifyContent(List<Response.ResponseListener> listeners, Response response, ByteBuffer buffer, Callback callback)
     {
         // Slice the buffer to avoid that listeners peek into data they should not look at.
         buffer = buffer.slice();
         if (!buffer.hasRemaining())
+        {
+            callback.succeeded();
             return;
+        }
+        int asyncListeners = 0;
         // Optimized to avoid allocations of iterator instances
         for (int i = 0; i < listeners.size(); ++i)
         {
             Response.ResponseListener listener = listeners.get(i);
-            if (listener instanceof Response.ContentListener)
+            if (listener instanceof Response.AsyncContentListener)
+            {
+                ++asyncListeners;
+            }
+            else if (listener instanceof Response.ContentListener)
             {
                 // The buffer was sliced, so we always clear it (position=0, limit=capacity)
                 // before passing it to the listener that may consume it.
@@ -134,6 +161,26 @@ public class ResponseNotifier
                 notifyContent((Response.ContentListener)listener, response, buffer);
             }
         }
+
+        if (asyncListeners == 0)
+        {
+            callback.succeeded();
+            return;
+        }
+
+        if (asyncListeners > 1)
+            callback = new CountingCallback(callback, asyncListeners);
+        for (int i = 0; i < listeners.size(); ++i)
+        {
+            Response.ResponseListener listener = listeners.get(i);
+            if (listener instanceof Response.AsyncContentListener)
+            {
+                // Each asynchronous listener may consume the content at a later time,
+                // so each one of them is given its own view of the buffer.
+                buffer.clear();
+                notifyContent((Response.AsyncContentListener)listener, response, asyncListeners == 1 ? buffer : buffer.slice(), callback);
+            }
+        }
     }
 
     private void notifyContent(Response.ContentListener listener, Response response, ByteBuffer buffer)
@@ -148,6 +195,19 @@ public class ResponseNotifier
         }
     }
 
+    private void notifyContent(Response.AsyncContentListener listener, Response response, ByteBuffer buffer, Callback callback)
+    {
+        try
+        {
+            listener.onContent(response, buffer, callback);
+        }
+        catch (Exception x)
+        {
+            LOG.info("Exception while notifying listener " + listener, x);
+            callback.failed(x);
+        }
+    }
+
     @SuppressWarnings("ForLoopReplaceableByForEach")
     public void notifySuccess(List<Response.ResponseListener> listeners, Response response)
     {
@@ -261,4 +321,55 @@ public class ResponseNotifier
         forwardFailure(listeners, response, responseFailure);
         notifyComplete(listeners, new Result(request, requestFailure, response, responseFailure));
     }
+
+    /**
+     * A {@link Callback} that completes the wrapped callback when it has been succeeded
+     * a given number of times, or as soon as it is failed.
+     */
+    private static class CountingCallback implements Callback
+    {
+        private final Callback callback;
+        private final AtomicInteger count;
+
+        private CountingCallback(Callback callback, int count)
+        {
+            this.callback = callback;
+            this.count = new AtomicInteger(count);
+        }
+
+        @Override
+        public void succeeded()
+        {
+            while (true)
+            {
+                int current = count.get();
+                // Already completed
+                if (current <= 0)
+                    return;
+                if (count.compareAndSet(current, current - 1))
+                {
+                    if (current == 1)
+                        callback.succeeded();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void failed(Throwable failure)
+        {
+            while (true)
+            {
+                int current = count.get();
+                // Already completed
+                if (current <= 0)
+                    return;
+                if (count.compareAndSet(current, 0))
+                {
+                    callback.failed(failure);
+                    return;
+                }
+            }
+        }
+    }
 }
@@ -26,6 +26,7 @@ import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.util.Callback;
 
 /**
  * <p>{@link Response} represents a HTTP response and offers methods to retrieve status code, HTTP version
@@ -152,6 +153,30 @@ public interface Response
         public void onContent(Response response, ByteBuffer content);
     }
 
+    /**
+     * Asynchronous listener for the response content events.
+     * <p/>
+     * Differently from {@link ContentListener}, the {@code content} buffer may be consumed after
+     * returning from {@link #onContent(Response, ByteBuffer, Callback)}, and no further content
+     * is read from the network until the {@code callback} is completed.
+     * This allows applications to apply back pressure, for example when the content is written
+     * to a slow consumer, without copying the content buffer.
+     */
+    public interface AsyncContentListener extends ResponseListener
+    {
+        /**
+         * Callback method invoked when the response content has been received.
+         * This method may be invoked multiple times, and the {@code content} buffer must be consumed
+         * before completing the {@code callback}.
+         *
+         * @param response the response containing the response line data and the headers
+         * @param content the content bytes received
+         * @param callback the callback to complete when the content has been consumed, either
+         * succeeded to read more content, or failed to abort the response
+         */
+        public void onContent(Response response, ByteBuffer content, Callback callback);
+    }
+
     /**
      * Listener for the response succeeded event.
      */
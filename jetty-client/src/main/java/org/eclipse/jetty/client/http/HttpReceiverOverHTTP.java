@@ -20,6 +20,7 @@ package org.eclipse.jetty.client.http;
 
 import java.io.EOFException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.HttpExchange;
@@ -34,10 +35,14 @@ import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.EofException;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
 
 public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.ResponseHandler<ByteBuffer>
 {
     private final HttpParser parser = new HttpParser(this);
+    private final ContentCallback contentCallback = new ContentCallback();
+    private ByteBuffer buffer;
+    private HttpExchange completed;
 
     public HttpReceiverOverHTTP(HttpChannelOverHTTP channel)
     {
@@ -61,9 +66,18 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
         EndPoint endPoint = connection.getEndPoint();
         HttpClient client = getHttpDestination().getHttpClient();
         ByteBufferPool bufferPool = client.getByteBufferPool();
-        ByteBuffer buffer = bufferPool.acquire(client.getResponseBufferSize(), true);
+        // The buffer may have been retained, with unparsed bytes, while
+        // waiting for the content to be consumed by the response listeners
+        ByteBuffer buffer = this.buffer;
+        if (buffer == null)
+            buffer = this.buffer = bufferPool.acquire(client.getResponseBufferSize(), true);
+        boolean pending = false;
+        boolean interested = false;
         try
         {
+            // The response may have completed while its last content was being consumed
+            succeed();
+
             while (true)
             {
                 // Connection may be closed in a parser callback
@@ -74,22 +88,31 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
                 }
                 else
                 {
-                    int read = endPoint.fill(buffer);
-                    if (LOG.isDebugEnabled()) // Avoid boxing of variable 'read'
-                        LOG.debug("Read {} bytes from {}", read, endPoint);
-                    if (read > 0)
-                    {
-                        parse(buffer);
-                    }
-                    else if (read == 0)
+                    if (!buffer.hasRemaining())
                     {
-                        fillInterested();
-                        break;
+                        int read = endPoint.fill(buffer);
+                        if (LOG.isDebugEnabled()) // Avoid boxing of variable 'read'
+                            LOG.debug("Read {} bytes from {}", read, endPoint);
+                        if (read == 0)
+                        {
+                            interested = true;
+                            break;
+                        }
+                        else if (read < 0)
+                        {
+                            shutdown();
+                            break;
+                        }
                     }
-                    else
+
+                    if (parse(buffer))
                     {
-                        shutdown();
-                        break;
+                        // The content is consumed asynchronously: keep the buffer,
+                        // which the content refers to, and do not read further;
+                        // receive() is called again when the content is consumed
+                        LOG.debug("Waiting for content to be consumed {}", this);
+                        pending = true;
+                        return;
                     }
                 }
             }
@@ -106,14 +129,48 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
         }
         finally
         {
-            bufferPool.release(buffer);
+            if (!pending)
+            {
+                this.buffer = null;
+                bufferPool.release(buffer);
+            }
         }
+
+        // Only after the buffer is released, since the next
+        // call to receive() may happen on a different thread
+        if (interested)
+            fillInterested();
     }
 
-    private void parse(ByteBuffer buffer)
+    /**
+     * Parses the given buffer.
+     *
+     * @param buffer the buffer to parse
+     * @return true if the parsing stopped because the content is being consumed asynchronously
+     */
+    private boolean parse(ByteBuffer buffer)
     {
         while (buffer.hasRemaining())
-            parser.parseNext(buffer);
+        {
+            // The parser stops after content that has not been consumed yet
+            if (parser.parseNext(buffer))
+            {
+                if (contentCallback.await())
+                    return true;
+                succeed();
+            }
+        }
+        return false;
+    }
+
+    private void succeed()
+    {
+        HttpExchange exchange = completed;
+        if (exchange != null)
+        {
+            completed = null;
+            responseSuccess(exchange);
+        }
     }
 
     private void fillInterested()
@@ -182,8 +239,14 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
         if (exchange == null)
             return false;
 
-        responseContent(exchange, buffer);
-        return false;
+        contentCallback.notifying();
+        if (!responseContent(exchange, buffer, contentCallback))
+        {
+            contentCallback.reset();
+            return false;
+        }
+        // Stop the parser if the content has not been consumed yet
+        return contentCallback.isNotifying();
     }
 
     @Override
@@ -193,7 +256,13 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
         if (exchange == null)
             return false;
 
-        responseSuccess(exchange);
+        // With a known content length the parser completes the message in the same
+        // pass that notifies the last content: if that content has not been consumed
+        // yet, the response succeeds only after it is, when the parsing is resumed
+        if (contentCallback.isNotifying())
+            completed = exchange;
+        else
+            responseSuccess(exchange);
         return true;
     }
 
@@ -240,4 +309,106 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
     {
         return String.format("%s@%x on %s", getClass().getSimpleName(), hashCode(), getHttpConnection());
     }
+
+    /**
+     * The states of the notification of a response content chunk.
+     */
+    private enum ContentState
+    {
+        /**
+         * The content has been consumed, or no content is being notified
+         */
+        IDLE,
+        /**
+         * The content is being notified to the response listeners
+         */
+        NOTIFYING,
+        /**
+         * The content is being consumed asynchronously and the parsing has stopped
+         */
+        PENDING
+    }
+
+    /**
+     * The {@link Callback} that the response listeners complete when they have consumed a content chunk.
+     * <p />
+     * If the content is consumed synchronously, the parsing continues as usual; otherwise the parsing
+     * stops and is resumed by the thread that completes the callback.
+     */
+    private class ContentCallback implements Callback
+    {
+        private final AtomicReference<ContentState> state = new AtomicReference<>(ContentState.IDLE);
+
+        private void notifying()
+        {
+            state.set(ContentState.NOTIFYING);
+        }
+
+        private boolean isNotifying()
+        {
+            return state.get() == ContentState.NOTIFYING;
+        }
+
+        private void reset()
+        {
+            state.set(ContentState.IDLE);
+        }
+
+        /**
+         * @return true if the content has not been consumed yet, and this callback
+         * will resume the parsing when it is completed
+         */
+        private boolean await()
+        {
+            return state.compareAndSet(ContentState.NOTIFYING, ContentState.PENDING);
+        }
+
+        /**
+         * @return true if the parsing has stopped and must be resumed
+         */
+        private boolean complete()
+        {
+            while (true)
+            {
+                ContentState current = state.get();
+                switch (current)
+                {
+                    case NOTIFYING:
+                    {
+                        if (state.compareAndSet(current, ContentState.IDLE))
+                            return false;
+                        break;
+                    }
+                    case PENDING:
+                    {
+                        if (state.compareAndSet(current, ContentState.IDLE))
+                            return true;
+                        break;
+                    }
+                    default:
+                    {
+                        // Already completed
+                        return false;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void succeeded()
+        {
+            if (complete())
+                receive();
+        }
+
+        @Override
+        public void failed(Throwable failure)
+        {
+            boolean resume = complete();
+            failAndClose(failure);
+            // Receiving again releases the retained buffer, since the connection is closed
+            if (resume)
+                receive();
+        }
+    }
 }
@@ -31,6 +31,7 @@ import org.eclipse.jetty.client.AsyncContentProvider;
 import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.util.Callback;
 
 /**
  * A {@link ContentProvider} that allows to add content after {@link Request#send(Response.CompleteListener)}
@@ -55,6 +56,10 @@ import org.eclipse.jetty.client.api.Response;
  * The deferred content must be provided through {@link #offer(ByteBuffer)}, which can be invoked multiple
  * times, and when all content has been provided it must be signaled with a call to {@link #close()}.
  * <p />
+ * Content offered with {@link #offer(ByteBuffer, Callback)} is owned by this provider until the callback
+ * is completed, that is when the content has been sent or the request has failed; applications can use
+ * the callback to offer more content only once the previous has been sent, and to reuse the buffer.
+ * <p />
  * Example usage:
  * <pre>
  * HttpClient httpClient = ...;
@@ -80,9 +85,10 @@ import org.eclipse.jetty.client.api.Response;
  */
 public class DeferredContentProvider implements AsyncContentProvider, Closeable
 {
-    private static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+    private static final Callback EMPTY_CALLBACK = new Callback.Adapter();
+    private static final Chunk CLOSE = new Chunk(ByteBuffer.allocate(0), EMPTY_CALLBACK);
 
-    private final Queue<ByteBuffer> chunks = new ConcurrentLinkedQueue<>();
+    private final Queue<Chunk> chunks = new ConcurrentLinkedQueue<>();
     private final AtomicReference<Listener> listener = new AtomicReference<>();
     private final Iterator<ByteBuffer> iterator = new DeferredContentProviderIterator();
     private final AtomicBoolean closed = new AtomicBoolean();
@@ -95,7 +101,7 @@ public class DeferredContentProvider implements AsyncContentProvider, Closeable
     public DeferredContentProvider(ByteBuffer... buffers)
     {
         for (ByteBuffer buffer : buffers)
-            chunks.offer(buffer);
+            chunks.offer(new Chunk(buffer, EMPTY_CALLBACK));
     }
 
     @Override
@@ -121,7 +127,22 @@ public class DeferredContentProvider implements AsyncContentProvider, Closeable
      */
     public boolean offer(ByteBuffer buffer)
     {
-        boolean result = chunks.offer(buffer);
+        return offer(buffer, EMPTY_CALLBACK);
+    }
+
+    /**
+     * Adds the given content buffer to this content provider
+     * and notifies the listener that content is available.
+     * <p />
+     * The buffer must not be modified until the callback is completed.
+     *
+     * @param buffer the content to add
+     * @param callback the callback completed when the content has been sent, or failed if the request fails
+     * @return true if the content was added, false otherwise
+     */
+    public boolean offer(ByteBuffer buffer, Callback callback)
+    {
+        boolean result = chunks.offer(new Chunk(buffer, callback));
         notifyListener();
         return result;
     }
@@ -152,8 +173,14 @@ public class DeferredContentProvider implements AsyncContentProvider, Closeable
         return iterator;
     }
 
-    private class DeferredContentProviderIterator implements Iterator<ByteBuffer>
+    /**
+     * The iterator is also the callback of the chunk last returned by {@link #next()},
+     * completed by the request sender when the chunk has been sent.
+     */
+    private class DeferredContentProviderIterator implements Iterator<ByteBuffer>, Callback
     {
+        private volatile Chunk current;
+
         @Override
         public boolean hasNext()
         {
@@ -163,10 +190,35 @@ public class DeferredContentProvider implements AsyncContentProvider, Closeable
         @Override
         public ByteBuffer next()
         {
-            ByteBuffer element = chunks.poll();
+            Chunk element = chunks.poll();
             if (element == CLOSE)
                 throw new NoSuchElementException();
-            return element;
+            current = element;
+            return element == null ? null : element.buffer;
+        }
+
+        @Override
+        public void succeeded()
+        {
+            Chunk chunk = current;
+            current = null;
+            if (chunk != null)
+                chunk.callback.succeeded();
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            // The request failed, the current chunk and the queued ones will never be sent
+            Chunk chunk = current;
+            current = null;
+            if (chunk != null)
+                chunk.callback.failed(x);
+            while ((chunk = chunks.poll()) != null)
+            {
+                if (chunk != CLOSE)
+                    chunk.callback.failed(x);
+            }
         }
 
         @Override
@@ -175,4 +227,16 @@ public class DeferredContentProvider implements AsyncContentProvider, Closeable
             throw new UnsupportedOperationException();
         }
     }
+
+    private static class Chunk
+    {
+        private final ByteBuffer buffer;
+        private final Callback callback;
+
+        private Chunk(ByteBuffer buffer, Callback callback)
+        {
+            this.buffer = buffer;
+            this.callback = callback;
+        }
+    }
 }
@@ -0,0 +1,190 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.toolchain.test.TestTracker;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class DeflateContentDecoderTest
+{
+    @Rule
+    public final TestTracker tracker = new TestTracker();
+
+    private static String data()
+    {
+        String data = "0123456789ABCDEF";
+        for (int i = 0; i < 10; ++i)
+            data += data;
+        return data;
+    }
+
+    private static byte[] deflate(String data, boolean nowrap) throws Exception
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DeflaterOutputStream output = new DeflaterOutputStream(baos, new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap));
+        output.write(data.getBytes(StandardCharsets.UTF_8));
+        output.close();
+        return baos.toByteArray();
+    }
+
+    private static String decode(InflatingContentDecoder decoder, ByteBuffer buffer)
+    {
+        String result = "";
+        while (true)
+        {
+            ByteBuffer decoded = decoder.decode(buffer);
+            boolean empty = !decoded.hasRemaining();
+            result += StandardCharsets.UTF_8.decode(decoded).toString();
+            decoder.release(decoded);
+            // The decoded buffers are bounded, so decode until there is nothing left
+            if (empty && !buffer.hasRemaining())
+                return result;
+        }
+    }
+
+    @Test
+    public void testZlib() throws Exception
+    {
+        String data = data();
+        DeflateContentDecoder decoder = new DeflateContentDecoder();
+        Assert.assertEquals(data, decode(decoder, ByteBuffer.wrap(deflate(data, false))));
+        Assert.assertTrue(decoder.isFinished());
+    }
+
+    @Test
+    public void testRaw() throws Exception
+    {
+        String data = data();
+        DeflateContentDecoder decoder = new DeflateContentDecoder();
+        Assert.assertEquals(data, decode(decoder, ByteBuffer.wrap(deflate(data, true))));
+        Assert.assertTrue(decoder.isFinished());
+    }
+
+    @Test
+    public void testZlibOneByteAtATime() throws Exception
+    {
+        String data = data();
+        byte[] bytes = deflate(data, false);
+
+        DeflateContentDecoder decoder = new DeflateContentDecoder(64);
+        String result = "";
+        for (byte b : bytes)
+            result += decode(decoder, ByteBuffer.wrap(new byte[]{b}));
+        Assert.assertEquals(data, result);
+        Assert.assertTrue(decoder.isFinished());
+    }
+
+    @Test
+    public void testExtraBytesDiscarded() throws Exception
+    {
+        String data = data();
+        byte[] bytes1 = deflate(data, false);
+        byte[] bytes2 = "HELLO".getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[bytes1.length + bytes2.length];
+        System.arraycopy(bytes1, 0, bytes, 0, bytes1.length);
+        System.arraycopy(bytes2, 0, bytes, bytes1.length, bytes2.length);
+
+        DeflateContentDecoder decoder = new DeflateContentDecoder();
+        Assert.assertEquals(data, decode(decoder, ByteBuffer.wrap(bytes)));
+        Assert.assertTrue(decoder.isFinished());
+    }
+
+    @Test
+    public void testPooledDecoding() throws Exception
+    {
+        String data = data();
+        ByteBufferPool bufferPool = new MappedByteBufferPool();
+        DeflateContentDecoder.Factory factory = new DeflateContentDecoder.Factory(bufferPool, 256);
+        for (boolean nowrap : new boolean[]{false, true})
+        {
+            DeflateContentDecoder decoder = (DeflateContentDecoder)factory.newContentDecoder();
+            Assert.assertEquals(data, decode(decoder, ByteBuffer.wrap(deflate(data, nowrap))));
+            decoder.destroy();
+        }
+
+        Assert.assertEquals(1, factory.getZlibInflaterPool().getIdle());
+        Assert.assertEquals(1, factory.getRawInflaterPool().getIdle());
+
+        factory.destroy();
+        Assert.assertEquals(0, factory.getZlibInflaterPool().getIdle());
+        Assert.assertEquals(1, factory.getRawInflaterPool().getEnded());
+    }
+
+    @Test
+    public void testDecodeAfterDestroyFails() throws Exception
+    {
+        String data = data();
+        byte[] bytes = deflate(data, false);
+        DeflateContentDecoder.Factory factory = new DeflateContentDecoder.Factory(new MappedByteBufferPool(), 256);
+        DeflateContentDecoder decoder = (DeflateContentDecoder)factory.newContentDecoder();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        decoder.release(decoder.decode(buffer));
+
+        // Destroyed while the response is still being decoded, as when it is aborted
+        decoder.destroy();
+        Assert.assertEquals(1, factory.getZlibInflaterPool().getIdle());
+
+        try
+        {
+            decoder.decode(buffer);
+            Assert.fail();
+        }
+        catch (IllegalStateException x)
+        {
+            // Expected
+        }
+        Assert.assertEquals(1, factory.getZlibInflaterPool().getIdle());
+    }
+
+    @Test
+    public void testDecodedBuffersAreBounded() throws Exception
+    {
+        // Highly compressible data, so that a small input inflates to a large output
+        String data = new String(new byte[1024 * 1024], StandardCharsets.UTF_8);
+        byte[] bytes = deflate(data, false);
+        Assert.assertTrue(bytes.length < 4096);
+
+        int bufferSize = 1024;
+        DeflateContentDecoder decoder = new DeflateContentDecoder(null, null, new MappedByteBufferPool(), bufferSize);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int total = 0;
+        while (true)
+        {
+            ByteBuffer decoded = decoder.decode(buffer);
+            if (!decoded.hasRemaining() && !buffer.hasRemaining())
+                break;
+            Assert.assertTrue(decoded.remaining() <= bufferSize);
+            total += decoded.remaining();
+            decoder.release(decoded);
+        }
+        Assert.assertEquals(data.length(), total);
+        Assert.assertTrue(decoder.isFinished());
+    }
+}
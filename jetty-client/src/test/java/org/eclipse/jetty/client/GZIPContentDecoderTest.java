@@ -26,10 +26,16 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.toolchain.test.TestTracker;
+import org.eclipse.jetty.toolchain.test.annotation.Slow;
+import org.eclipse.jetty.util.BufferUtil;
 import org.junit.Rule;
 import org.junit.Test;
 
@@ -247,9 +253,15 @@ public class GZIPContentDecoderTest
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
         while (buffer.hasRemaining())
         {
-            ByteBuffer decoded = decoder.decode(ByteBuffer.wrap(new byte[]{buffer.get()}));
-            if (decoded.hasRemaining())
+            ByteBuffer chunk = ByteBuffer.wrap(new byte[]{buffer.get()});
+            while (true)
+            {
+                // A single byte may inflate to more than a decoded buffer
+                ByteBuffer decoded = decoder.decode(chunk);
+                if (!decoded.hasRemaining() && !chunk.hasRemaining())
+                    break;
                 result += StandardCharsets.UTF_8.decode(decoded).toString();
+            }
         }
         assertEquals(data, result);
         assertTrue(decoder.isFinished());
@@ -289,4 +301,98 @@ public class GZIPContentDecoderTest
         assertTrue(buffer.hasRemaining());
         assertEquals(data2, StandardCharsets.UTF_8.decode(buffer).toString());
     }
+
+    @Test
+    public void testPooledDecoding() throws Exception
+    {
+        String data = "0123456789ABCDEF";
+        for (int i = 0; i < 12; ++i)
+            data += data;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        GZIPOutputStream output = new GZIPOutputStream(baos);
+        output.write(data.getBytes(StandardCharsets.UTF_8));
+        output.close();
+        byte[] bytes = baos.toByteArray();
+
+        InflaterPool inflaterPool = new InflaterPool(1, true);
+        ByteBufferPool bufferPool = new MappedByteBufferPool();
+        for (int i = 0; i < 2; ++i)
+        {
+            GZIPContentDecoder decoder = new GZIPContentDecoder(inflaterPool, bufferPool, 1024);
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            // Decode direct buffers, that are copied in chunks to the inflater
+            for (int offset = 0; offset < bytes.length; offset += 4096)
+            {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(Math.min(4096, bytes.length - offset));
+                buffer.put(bytes, offset, buffer.capacity()).flip();
+                while (true)
+                {
+                    ByteBuffer decoded = decoder.decode(buffer);
+                    boolean empty = !decoded.hasRemaining();
+                    result.write(BufferUtil.toArray(decoded));
+                    decoder.release(decoded);
+                    if (empty && !buffer.hasRemaining())
+                        break;
+                }
+            }
+            assertTrue(decoder.isFinished());
+            assertEquals(data, new String(result.toByteArray(), StandardCharsets.UTF_8));
+
+            decoder.destroy();
+            assertEquals(1, inflaterPool.getIdle());
+        }
+        assertEquals(1, inflaterPool.getCreated());
+    }
+
+    @Slow
+    @Test
+    public void testDecodingThroughput() throws Exception
+    {
+        byte[] data = new byte[1024 * 1024];
+        Random random = new Random();
+        for (int i = 0; i < data.length; ++i)
+            data[i] = (byte)('A' + random.nextInt(16));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        GZIPOutputStream output = new GZIPOutputStream(baos);
+        output.write(data);
+        output.close();
+        byte[] bytes = baos.toByteArray();
+
+        GZIPContentDecoder.Factory unpooled = new GZIPContentDecoder.Factory(null, null, 2048);
+        GZIPContentDecoder.Factory pooled = new GZIPContentDecoder.Factory(new MappedByteBufferPool());
+
+        // Warm up
+        decode(unpooled, bytes, 200);
+        decode(pooled, bytes, 200);
+
+        int iterations = 500;
+        long unpooledTime = decode(unpooled, bytes, iterations);
+        long pooledTime = decode(pooled, bytes, iterations);
+        System.err.printf("Decoded %d MiB: unpooled=%d MiB/s pooled=%d MiB/s%n", iterations,
+                iterations * 1000L / Math.max(1, unpooledTime), iterations * 1000L / Math.max(1, pooledTime));
+        assertEquals(1, pooled.getInflaterPool().getCreated());
+    }
+
+    private long decode(ContentDecoder.Factory factory, byte[] bytes, int iterations)
+    {
+        long begin = System.nanoTime();
+        for (int i = 0; i < iterations; ++i)
+        {
+            GZIPContentDecoder decoder = (GZIPContentDecoder)factory.newContentDecoder();
+            for (int offset = 0; offset < bytes.length; offset += 16384)
+            {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, Math.min(16384, bytes.length - offset));
+                while (true)
+                {
+                    ByteBuffer decoded = decoder.decode(buffer);
+                    boolean empty = !decoded.hasRemaining();
+                    decoder.release(decoded);
+                    if (empty && !buffer.hasRemaining())
+                        break;
+                }
+            }
+            decoder.destroy();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+    }
 }
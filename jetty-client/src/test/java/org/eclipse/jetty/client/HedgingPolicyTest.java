@@ -0,0 +1,370 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.FutureResponseListener;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HedgingPolicyTest extends AbstractHttpClientServerTest
+{
+    public HedgingPolicyTest(SslContextFactory sslContextFactory)
+    {
+        super(sslContextFactory);
+    }
+
+    @Test
+    public void testSlowRequestIsHedged() throws Exception
+    {
+        final AtomicInteger requests = new AtomicInteger();
+        final CountDownLatch slowLatch = new CountDownLatch(1);
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                if (requests.incrementAndGet() == 2)
+                {
+                    // The first request after the warmup is slow, so that it is hedged
+                    try
+                    {
+                        slowLatch.await(5, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException x)
+                    {
+                        throw new ServletException(x);
+                    }
+                }
+                response.getWriter().print(request.getHeader("X-Test"));
+            }
+        });
+
+        // Warm up so that the first request is sent on an already opened connection
+        Assert.assertEquals(200, client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .timeout(5, TimeUnit.SECONDS)
+                .send().getStatus());
+
+        HedgingPolicy hedging = new HedgingPolicy(client);
+        hedging.setDelay(100);
+
+        Request request = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .header("X-Test", "hedged");
+        FutureResponseListener listener = new FutureResponseListener(request);
+        hedging.send(request, listener);
+        ContentResponse response = listener.get(5, TimeUnit.SECONDS);
+        slowLatch.countDown();
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("hedged", response.getContentAsString());
+        Assert.assertEquals(3, requests.get());
+        Assert.assertEquals(1, hedging.getHedges());
+        Assert.assertEquals(1, hedging.getHedgesWon());
+        Assert.assertNotNull(request.getAbortCause());
+    }
+
+    @Test
+    public void testFastRequestIsNotHedged() throws Exception
+    {
+        start(new EmptyServerHandler());
+
+        HedgingPolicy hedging = new HedgingPolicy(client);
+        hedging.setDelay(1000);
+
+        for (int i = 0; i < 5; ++i)
+        {
+            Request request = client.newRequest("localhost", connector.getLocalPort()).scheme(scheme);
+            FutureResponseListener listener = new FutureResponseListener(request);
+            hedging.send(request, listener);
+            Assert.assertEquals(200, listener.get(5, TimeUnit.SECONDS).getStatus());
+        }
+
+        Assert.assertEquals(5, hedging.getRequests());
+        Assert.assertEquals(0, hedging.getHedges());
+    }
+
+    @Test
+    public void testHedgeDeniedByBudget() throws Exception
+    {
+        final AtomicInteger requests = new AtomicInteger();
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                requests.incrementAndGet();
+                try
+                {
+                    TimeUnit.MILLISECONDS.sleep(500);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new ServletException(x);
+                }
+            }
+        });
+
+        HedgingPolicy hedging = new HedgingPolicy(client);
+        hedging.setDelay(100);
+        hedging.setBudgetRatio(0);
+        hedging.setMinHedgesPerSecond(0);
+
+        Request request = client.newRequest("localhost", connector.getLocalPort()).scheme(scheme);
+        FutureResponseListener listener = new FutureResponseListener(request);
+        hedging.send(request, listener);
+
+        Assert.assertEquals(200, listener.get(5, TimeUnit.SECONDS).getStatus());
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(0, hedging.getHedges());
+        Assert.assertEquals(1, hedging.getHedgesDenied());
+    }
+
+    @Test
+    public void testNonIdempotentRequestIsNotHedged() throws Exception
+    {
+        final AtomicInteger requests = new AtomicInteger();
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                requests.incrementAndGet();
+                try
+                {
+                    TimeUnit.MILLISECONDS.sleep(500);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new ServletException(x);
+                }
+            }
+        });
+
+        HedgingPolicy hedging = new HedgingPolicy(client);
+        hedging.setDelay(100);
+
+        Request request = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .method(HttpMethod.POST)
+                .content(new StringContentProvider("data"));
+        FutureResponseListener listener = new FutureResponseListener(request);
+        hedging.send(request, listener);
+
+        Assert.assertEquals(200, listener.get(5, TimeUnit.SECONDS).getStatus());
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(0, hedging.getHedges());
+        Assert.assertEquals(0, hedging.getHedgesDenied());
+    }
+
+    @Test
+    public void testFailedRequestIsRetried() throws Exception
+    {
+        final AtomicInteger requests = new AtomicInteger();
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                // Close the connection without responding to the first request
+                if (requests.incrementAndGet() == 1)
+                    baseRequest.getHttpChannel().getEndPoint().close();
+            }
+        });
+
+        HedgingPolicy hedging = new HedgingPolicy(client);
+
+        Request request = client.newRequest("localhost", connector.getLocalPort()).scheme(scheme);
+        FutureResponseListener listener = new FutureResponseListener(request);
+        hedging.send(request, listener);
+
+        Assert.assertEquals(200, listener.get(5, TimeUnit.SECONDS).getStatus());
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(1, hedging.getHedges());
+        Assert.assertEquals(1, hedging.getHedgesWon());
+    }
+
+    @Test
+    public void testTimedOutRequestIsNotRetried() throws Exception
+    {
+        final AtomicInteger requests = new AtomicInteger();
+        final CountDownLatch serverLatch = new CountDownLatch(1);
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                requests.incrementAndGet();
+                try
+                {
+                    serverLatch.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new ServletException(x);
+                }
+            }
+        });
+
+        HedgingPolicy hedging = new HedgingPolicy(client);
+        hedging.setDelay(5000);
+
+        Request request = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .timeout(500, TimeUnit.MILLISECONDS);
+        FutureResponseListener listener = new FutureResponseListener(request);
+        hedging.send(request, listener);
+
+        try
+        {
+            listener.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        }
+        catch (ExecutionException x)
+        {
+            Assert.assertThat(x.getCause(), Matchers.instanceOf(TimeoutException.class));
+        }
+        finally
+        {
+            serverLatch.countDown();
+        }
+
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(0, hedging.getHedges());
+    }
+
+    @Test
+    public void testAbortedRequestAbortsHedge() throws Exception
+    {
+        final CountDownLatch requestsLatch = new CountDownLatch(2);
+        final CountDownLatch serverLatch = new CountDownLatch(1);
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                requestsLatch.countDown();
+                try
+                {
+                    serverLatch.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new ServletException(x);
+                }
+            }
+        });
+
+        final AtomicReference<Request> hedgeRef = new AtomicReference<>();
+        HedgingPolicy hedging = new HedgingPolicy(client)
+        {
+            @Override
+            protected Request newHedgeRequest(Request request)
+            {
+                Request hedge = super.newHedgeRequest(request);
+                hedgeRef.set(hedge);
+                return hedge;
+            }
+        };
+        hedging.setDelay(100);
+
+        Request request = client.newRequest("localhost", connector.getLocalPort()).scheme(scheme);
+        FutureResponseListener listener = new FutureResponseListener(request);
+        hedging.send(request, listener);
+
+        try
+        {
+            // Wait for the request and its hedge to arrive to the server
+            Assert.assertTrue(requestsLatch.await(5, TimeUnit.SECONDS));
+
+            Exception cause = new Exception("explicitly aborted");
+            request.abort(cause);
+
+            try
+            {
+                listener.get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            }
+            catch (ExecutionException x)
+            {
+                Assert.assertSame(cause, x.getCause());
+            }
+            Assert.assertEquals(1, hedging.getHedges());
+            Assert.assertSame(cause, hedgeRef.get().getAbortCause());
+        }
+        finally
+        {
+            serverLatch.countDown();
+        }
+    }
+
+    @Test
+    public void testDelayIsPercentileOfLatencies() throws Exception
+    {
+        start(new EmptyServerHandler());
+
+        HedgingPolicy hedging = new HedgingPolicy(client);
+        hedging.setMinSamples(10);
+        hedging.setMinDelay(1000);
+        Assert.assertEquals(-1, hedging.getHedgeDelay());
+
+        for (int i = 0; i < 10; ++i)
+        {
+            Request request = client.newRequest("localhost", connector.getLocalPort()).scheme(scheme);
+            FutureResponseListener listener = new FutureResponseListener(request);
+            hedging.send(request, listener);
+            Assert.assertEquals(200, listener.get(5, TimeUnit.SECONDS).getStatus());
+        }
+
+        // Local requests are fast, so the delay is the min delay
+        Assert.assertEquals(1000, hedging.getHedgeDelay());
+        Assert.assertEquals(0, hedging.getHedges());
+        hedging.setMinDelay(0);
+        Assert.assertThat(hedging.getHedgeDelay(), Matchers.allOf(Matchers.greaterThanOrEqualTo(0L), Matchers.lessThan(1000L)));
+
+        hedging.setDelay(200);
+        Assert.assertThat(hedging.getHedgeDelay(), Matchers.is(200L));
+    }
+}
@@ -0,0 +1,284 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.FutureResponseListener;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HttpCacheTest extends AbstractHttpClientServerTest
+{
+    public HttpCacheTest(SslContextFactory sslContextFactory)
+    {
+        super(sslContextFactory);
+    }
+
+    private HttpCache start(final AtomicInteger requests, final String cacheControl, final long delay) throws Exception
+    {
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                requests.incrementAndGet();
+                if (delay > 0)
+                    sleep(delay);
+                String etag = "\"" + target.hashCode() + "\"";
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), cacheControl);
+                response.setHeader(HttpHeader.ETAG.asString(), etag);
+                if (etag.equals(request.getHeader(HttpHeader.IF_NONE_MATCH.asString())))
+                {
+                    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+                response.getOutputStream().print("content of " + target);
+            }
+        });
+        HttpCache cache = new HttpCache(client);
+        client.setHttpCache(cache);
+        return cache;
+    }
+
+    private void sleep(long delay) throws ServletException
+    {
+        try
+        {
+            TimeUnit.MILLISECONDS.sleep(delay);
+        }
+        catch (InterruptedException x)
+        {
+            throw new ServletException(x);
+        }
+    }
+
+    private ContentResponse send(String path) throws Exception
+    {
+        return client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .path(path)
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+    }
+
+    @Test
+    public void testFreshResponseIsServedFromCache() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        HttpCache cache = start(requests, "max-age=60", 0);
+
+        ContentResponse response1 = send("/fresh");
+        Assert.assertEquals(200, response1.getStatus());
+        Assert.assertEquals("content of /fresh", response1.getContentAsString());
+
+        ContentResponse response2 = send("/fresh");
+        Assert.assertEquals(200, response2.getStatus());
+        Assert.assertEquals("content of /fresh", response2.getContentAsString());
+        Assert.assertNotNull(response2.getHeaders().get(HttpHeader.AGE));
+
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getEntries());
+    }
+
+    @Test
+    public void testStaleResponseIsRevalidated() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        HttpCache cache = start(requests, "no-cache", 0);
+
+        Assert.assertEquals("content of /stale", send("/stale").getContentAsString());
+
+        ContentResponse response = send("/stale");
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("content of /stale", response.getContentAsString());
+
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(1, cache.getStaleHits());
+        Assert.assertEquals(1, cache.getRevalidations());
+    }
+
+    @Test
+    public void testNoStoreResponseIsNotCached() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        HttpCache cache = start(requests, "no-store", 0);
+
+        Assert.assertEquals(200, send("/no-store").getStatus());
+        Assert.assertEquals(200, send("/no-store").getStatus());
+
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(0, cache.getEntries());
+        Assert.assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testRequestNoCacheRevalidates() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        HttpCache cache = start(requests, "max-age=60", 0);
+
+        Assert.assertEquals(200, send("/reload").getStatus());
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .path("/reload")
+                .header(HttpHeader.CACHE_CONTROL, "no-cache")
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("content of /reload", response.getContentAsString());
+
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(1, cache.getRevalidations());
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        HttpCache cache = start(requests, "max-age=60", 500);
+
+        List<FutureResponseListener> listeners = new ArrayList<>();
+        for (int i = 0; i < 5; ++i)
+        {
+            Request request = client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scheme)
+                    .path("/coalesced");
+            FutureResponseListener listener = new FutureResponseListener(request);
+            request.send(listener);
+            listeners.add(listener);
+        }
+
+        for (FutureResponseListener listener : listeners)
+        {
+            ContentResponse response = listener.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals("content of /coalesced", response.getContentAsString());
+        }
+
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(4, cache.getCoalesced());
+        Assert.assertEquals(4, cache.getHits());
+    }
+
+    @Test
+    public void testConcurrentRequestsForNotFreshResponseAreCoalesced() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        HttpCache cache = start(requests, "no-cache", 500);
+
+        List<FutureResponseListener> listeners = new ArrayList<>();
+        for (int i = 0; i < 5; ++i)
+        {
+            Request request = client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scheme)
+                    .path("/no-cache");
+            FutureResponseListener listener = new FutureResponseListener(request);
+            request.send(listener);
+            listeners.add(listener);
+        }
+
+        for (FutureResponseListener listener : listeners)
+        {
+            ContentResponse response = listener.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals("content of /no-cache", response.getContentAsString());
+        }
+
+        // The waiters are served with the stored response, although it is never fresh
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(4, cache.getCoalesced());
+    }
+
+    @Test
+    public void testWaitingRequestTimesOut() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(requests, "max-age=60", 1000);
+
+        Request request1 = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .path("/timeout");
+        FutureResponseListener listener1 = new FutureResponseListener(request1);
+        request1.send(listener1);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .path("/timeout")
+                .timeout(200, TimeUnit.MILLISECONDS)
+                .send(new Response.CompleteListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        if (result.getFailure() instanceof TimeoutException)
+                            latch.countDown();
+                    }
+                });
+
+        // The waiting request fails before the request it waits for completes
+        Assert.assertTrue(latch.await(500, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(listener1.isDone());
+
+        Assert.assertEquals("content of /timeout", listener1.get(5, TimeUnit.SECONDS).getContentAsString());
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testCacheSizeIsBounded() throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        HttpCache cache = start(requests, "max-age=60", 0);
+        cache.setMaxSize(4 * 1024);
+
+        for (String path : Arrays.asList("/a", "/b", "/c", "/d", "/e", "/f"))
+            Assert.assertEquals(200, send(path).getStatus());
+
+        Assert.assertTrue(cache.getSize() <= 4 * 1024);
+        Assert.assertTrue(cache.getEvictions() > 0);
+        Assert.assertEquals(6, cache.getStores());
+
+        // The most recently used response is still cached
+        Assert.assertEquals("content of /f", send("/f").getContentAsString());
+        Assert.assertEquals(6, requests.get());
+    }
+}
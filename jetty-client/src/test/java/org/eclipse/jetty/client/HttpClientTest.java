@@ -21,6 +21,9 @@ package org.eclipse.jetty.client;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.HttpCookie;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.ByteBuffer;
@@ -42,6 +45,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPOutputStream;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -64,7 +69,10 @@ import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.eclipse.jetty.toolchain.test.TestingDir;
 import org.eclipse.jetty.toolchain.test.annotation.Slow;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.SocketAddressResolver;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.junit.Assert;
 import org.junit.Rule;
@@ -687,6 +695,68 @@ public class HttpClientTest extends AbstractHttpClientServerTest
         Assert.assertArrayEquals(data, response.getContent());
     }
 
+    @Test
+    public void test_GZIP_ContentEncoding_BigContent() throws Exception
+    {
+        final byte[] data = new byte[1024 * 1024];
+        for (int i = 0; i < data.length; ++i)
+            data[i] = (byte)(i % 31);
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.setHeader("Content-Encoding", "gzip");
+                GZIPOutputStream gzipOutput = new GZIPOutputStream(response.getOutputStream());
+                gzipOutput.write(data);
+                gzipOutput.finish();
+            }
+        });
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertArrayEquals(data, response.getContent());
+    }
+
+    @Test
+    public void test_Deflate_ContentEncoding() throws Exception
+    {
+        final byte[] data = new byte[64 * 1024];
+        for (int i = 0; i < data.length; ++i)
+            data[i] = (byte)(i % 31);
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.setHeader("Content-Encoding", "deflate");
+                // Raw deflate data if requested, otherwise zlib data
+                DeflaterOutputStream deflateOutput = new DeflaterOutputStream(response.getOutputStream(), new Deflater(Deflater.DEFAULT_COMPRESSION, request.getParameter("raw") != null));
+                deflateOutput.write(data);
+                deflateOutput.finish();
+            }
+        });
+        client.getContentDecoderFactories().add(new DeflateContentDecoder.Factory(client.getByteBufferPool()));
+
+        for (String path : new String[]{"/", "/?raw=true"})
+        {
+            ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scheme)
+                    .path(path)
+                    .timeout(5, TimeUnit.SECONDS)
+                    .send();
+
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertArrayEquals(data, response.getContent());
+        }
+    }
+
     @Slow
     @Test
     public void test_Request_IdleTimeout() throws Exception
@@ -1052,6 +1122,69 @@ public class HttpClientTest extends AbstractHttpClientServerTest
         Assert.assertArrayEquals(content, response.getContent());
     }
 
+    @Test
+    public void testAsyncResponseContentIsDemandDriven() throws Exception
+    {
+        final byte[] content = new byte[1024 * 1024];
+        new Random().nextBytes(content);
+        start(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                response.setContentLength(content.length);
+                response.getOutputStream().write(content);
+            }
+        });
+
+        final AtomicInteger chunks = new AtomicInteger();
+        final AtomicLong received = new AtomicLong();
+        final List<Callback> callbacks = new ArrayList<>();
+        final CountDownLatch contentLatch = new CountDownLatch(1);
+        final CountDownLatch completeLatch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .onResponseContentAsync(new Response.AsyncContentListener()
+                {
+                    @Override
+                    public void onContent(Response response, ByteBuffer buffer, Callback callback)
+                    {
+                        received.addAndGet(buffer.remaining());
+                        // Hold the first chunk, the others are consumed immediately
+                        if (chunks.incrementAndGet() == 1)
+                        {
+                            callbacks.add(callback);
+                            contentLatch.countDown();
+                        }
+                        else
+                        {
+                            callback.succeeded();
+                        }
+                    }
+                })
+                .send(new Response.CompleteListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        if (result.isSucceeded())
+                            completeLatch.countDown();
+                    }
+                });
+
+        Assert.assertTrue(contentLatch.await(5, TimeUnit.SECONDS));
+
+        // No more content is notified until the first chunk is consumed
+        Assert.assertFalse(completeLatch.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, chunks.get());
+
+        callbacks.get(0).succeeded();
+
+        Assert.assertTrue(completeLatch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(content.length, received.get());
+    }
+
     @Test
     public void testCustomHostHeader() throws Exception
     {
@@ -1073,4 +1206,69 @@ public class HttpClientTest extends AbstractHttpClientServerTest
 
         Assert.assertEquals(200, response.getStatus());
     }
+
+    @Test
+    public void testConnectFallsBackToNextAddress() throws Exception
+    {
+        start(new EmptyServerHandler());
+
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0))
+        {
+            closedPort = socket.getLocalPort();
+        }
+        client.setSocketAddressResolver(new FixedSocketAddressResolver(client,
+                new InetSocketAddress("127.0.0.1", closedPort),
+                new InetSocketAddress("127.0.0.1", connector.getLocalPort())));
+        client.setConnectAttemptDelay(0);
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(200, response.getStatus());
+    }
+
+    @Test
+    public void testDefaultResolveAllUsesResolve() throws Exception
+    {
+        start(new EmptyServerHandler());
+
+        final AtomicInteger resolutions = new AtomicInteger();
+        client.setSocketAddressResolver(new SocketAddressResolver(client.getExecutor(), client.getScheduler(), client.getAddressResolutionTimeout())
+        {
+            @Override
+            public void resolve(String host, int port, Promise<SocketAddress> promise)
+            {
+                resolutions.incrementAndGet();
+                super.resolve(host, port, promise);
+            }
+        });
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scheme)
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(1, resolutions.get());
+    }
+
+    private static class FixedSocketAddressResolver extends SocketAddressResolver
+    {
+        private final List<SocketAddress> addresses;
+
+        private FixedSocketAddressResolver(HttpClient client, SocketAddress... addresses)
+        {
+            super(client.getExecutor(), client.getScheduler(), client.getAddressResolutionTimeout());
+            this.addresses = Arrays.asList(addresses);
+        }
+
+        @Override
+        public void resolveAll(String host, int port, Promise<List<SocketAddress>> promise)
+        {
+            promise.succeeded(addresses);
+        }
+    }
 }
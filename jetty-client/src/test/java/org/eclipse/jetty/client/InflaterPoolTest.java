@@ -0,0 +1,63 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.util.zip.Inflater;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InflaterPoolTest
+{
+    @Test
+    public void testReuse() throws Exception
+    {
+        InflaterPool pool = new InflaterPool(2, true);
+
+        Inflater inflater = pool.acquire();
+        Assert.assertEquals(0, pool.getIdle());
+        pool.release(inflater);
+        Assert.assertEquals(1, pool.getIdle());
+
+        Assert.assertSame(inflater, pool.acquire());
+        Assert.assertEquals(1, pool.getCreated());
+    }
+
+    @Test
+    public void testBounded() throws Exception
+    {
+        InflaterPool pool = new InflaterPool(2, false);
+
+        Inflater i1 = pool.acquire();
+        Inflater i2 = pool.acquire();
+        Inflater i3 = pool.acquire();
+        Assert.assertEquals(3, pool.getCreated());
+
+        pool.release(i1);
+        pool.release(i2);
+        pool.release(i3);
+        Assert.assertEquals(2, pool.getIdle());
+        Assert.assertEquals(1, pool.getEnded());
+
+        pool.clear();
+        Assert.assertEquals(0, pool.getIdle());
+        Assert.assertEquals(3, pool.getEnded());
+    }
+}
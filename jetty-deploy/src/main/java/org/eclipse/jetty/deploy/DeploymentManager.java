@@ -26,8 +26,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import org.eclipse.jetty.deploy.bindings.OrderedGroupBinding;
 import org.eclipse.jetty.deploy.bindings.StandardDeployer;
 import org.eclipse.jetty.deploy.bindings.StandardStarter;
 import org.eclipse.jetty.deploy.bindings.StandardStopper;
@@ -45,6 +51,7 @@ import org.eclipse.jetty.util.annotation.Name;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.ThreadPool;
 
 /**
  * The Deployment Manager.
@@ -59,6 +66,13 @@ import org.eclipse.jetty.util.log.Logger;
  * </ol>
  * <p>
  * <img src="doc-files/DeploymentManager.png">
+ * <p>
+ * If {@link #setMaxConcurrentStarts(int)} is greater than 1, then the apps discovered by the
+ * {@link AppProvider}s while the DeploymentManager is starting are moved to the default lifecycle goal
+ * together, one lifecycle node at a time: every app completes a node before any app proceeds to the
+ * next node, and the {@link AppLifeCycle#STARTING} node is run concurrently for all apps by the server
+ * thread pool, bounded by the max concurrent starts. The bindings of an {@link OrderedGroupBinding} are
+ * run for one app at a time, while the other bindings of the node still run concurrently.
  */
 @ManagedObject("Deployment Manager")
 public class DeploymentManager extends ContainerLifeCycle
@@ -90,7 +104,12 @@ public class DeploymentManager extends ContainerLifeCycle
         /**
          * Tracking the various AppState timestamps (in system milliseconds)
          */
-        private Map<Node, Long> stateTimestamps = new HashMap<Node, Long>();
+        private Map<Node, Long> stateTimestamps = new ConcurrentHashMap<Node, Long>();
+
+        /**
+         * Tracking the time taken to run the bindings of each AppState (in milliseconds)
+         */
+        private Map<Node, Long> stateDurations = new ConcurrentHashMap<Node, Long>();
 
         public App getApp()
         {
@@ -107,6 +126,14 @@ public class DeploymentManager extends ContainerLifeCycle
             return stateTimestamps;
         }
 
+        /**
+         * @return the time in milliseconds taken by the bindings of each node most recently reached
+         */
+        public Map<Node, Long> getStateDurations()
+        {
+            return stateDurations;
+        }
+
         public int getVersion()
         {
             return version;
@@ -126,6 +153,8 @@ public class DeploymentManager extends ContainerLifeCycle
     private ContextHandlerCollection _contexts;
     private boolean _useStandardBindings = true;
     private String _defaultLifeCycleGoal = AppLifeCycle.STARTED;
+    private int _maxConcurrentStarts = 1;
+    private volatile List<AppEntry> _startupApps;
 
     /**
      * Receive an app for processing.
@@ -140,7 +169,16 @@ public class DeploymentManager extends ContainerLifeCycle
         entry.setLifeCycleNode(_lifecycle.getNodeByName("undeployed"));
         _apps.add(entry);
 
-        if (isRunning() && _defaultLifeCycleGoal != null)
+        List<AppEntry> startupApps = _startupApps;
+        if (startupApps != null)
+        {
+            // Deferred until all the providers have started
+            synchronized (startupApps)
+            {
+                startupApps.add(entry);
+            }
+        }
+        else if (isRunning() && _defaultLifeCycleGoal != null)
         {
             // Immediately attempt to go to default lifecycle state
             this.requestAppGoal(entry,_defaultLifeCycleGoal);
@@ -230,9 +268,21 @@ public class DeploymentManager extends ContainerLifeCycle
         }
 
         // Start all of the AppProviders
-        for (AppProvider provider : _providers)
+        if (_maxConcurrentStarts > 1)
+            _startupApps = new ArrayList<AppEntry>();
+        try
+        {
+            for (AppProvider provider : _providers)
+            {
+                startAppProvider(provider);
+            }
+        }
+        finally
         {
-            startAppProvider(provider);
+            List<AppEntry> startupApps = _startupApps;
+            _startupApps = null;
+            if (startupApps != null && _defaultLifeCycleGoal != null)
+                requestAppGoal(startupApps,_defaultLifeCycleGoal);
         }
         super.doStart();
     }
@@ -494,9 +544,7 @@ public class DeploymentManager extends ContainerLifeCycle
                 while (it.hasNext())
                 {
                     Node node = it.next();
-                    LOG.debug("Executing Node {}",node);
-                    _lifecycle.runBindings(node,appentry.app,this);
-                    appentry.setLifeCycleNode(node);
+                    runNode(appentry,node);
                 }
             }
         }
@@ -506,6 +554,169 @@ public class DeploymentManager extends ContainerLifeCycle
         }
     }
 
+    /**
+     * Run the bindings of a node for an app and move the app to that node.
+     */
+    private void runNode(AppEntry appentry, Node node) throws Throwable
+    {
+        LOG.debug("Executing Node {}",node);
+        long start = System.nanoTime();
+        _lifecycle.runBindings(node,appentry.app,this);
+        appentry.setLifeCycleNode(node);
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        appentry.stateDurations.put(node,duration);
+        LOG.debug("Executed Node {} for {} in {}ms",node,appentry.app,duration);
+    }
+
+    /**
+     * Move a batch of apps through the {@link AppLifeCycle} to the desired {@link Node}.
+     * <p>
+     * Apps at the same lifecycle node are moved together, one node at a time, so that each node acts as a
+     * barrier. The {@link AppLifeCycle#STARTING} node is executed concurrently, with at most
+     * {@link #getMaxConcurrentStarts()} apps starting at once; an {@link OrderedGroupBinding} only
+     * serializes its own bindings.
+     * Apps that fail to reach a node are not moved any further.
+     * 
+     * @param appentries
+     *            the internal appentries to move through the process
+     * @param nodeName
+     *            the name of the node to attain
+     */
+    private void requestAppGoal(List<AppEntry> appentries, String nodeName)
+    {
+        Node destinationNode = _lifecycle.getNodeByName(nodeName);
+        if (destinationNode == null)
+        {
+            throw new IllegalStateException("Node not present in Deployment Manager: " + nodeName);
+        }
+
+        // Group the apps by their current node, as each group has its own path
+        Map<Node, List<AppEntry>> groups = new HashMap<Node, List<AppEntry>>();
+        for (AppEntry appentry : appentries)
+        {
+            List<AppEntry> group = groups.get(appentry.lifecyleNode);
+            if (group == null)
+            {
+                group = new ArrayList<AppEntry>();
+                groups.put(appentry.lifecyleNode,group);
+            }
+            group.add(appentry);
+        }
+
+        for (Map.Entry<Node, List<AppEntry>> group : groups.entrySet())
+        {
+            Path path = _lifecycle.getPath(group.getKey(),destinationNode);
+            List<AppEntry> pending = new ArrayList<AppEntry>(group.getValue());
+
+            Iterator<Node> it = path.getNodes().iterator();
+            if (it.hasNext())
+                it.next(); // skip the start node
+            while (it.hasNext() && !pending.isEmpty())
+            {
+                Node node = it.next();
+                if (AppLifeCycle.STARTING.equals(node.getName()))
+                    pending = runNodeConcurrently(pending,node,nodeName);
+                else
+                    pending = runNodeSerially(pending,node,nodeName);
+            }
+        }
+    }
+
+    private List<AppEntry> runNodeSerially(List<AppEntry> appentries, Node node, String nodeName)
+    {
+        List<AppEntry> completed = new ArrayList<AppEntry>(appentries.size());
+        for (AppEntry appentry : appentries)
+        {
+            try
+            {
+                runNode(appentry,node);
+                completed.add(appentry);
+            }
+            catch (Throwable t)
+            {
+                LOG.warn("Unable to reach node goal: " + nodeName,t);
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Run a node for the apps with the server thread pool, with at most {@link #getMaxConcurrentStarts()}
+     * apps at once. The calling thread is one of the workers, so that the apps are run even if the
+     * thread pool has no thread to spare.
+     */
+    private List<AppEntry> runNodeConcurrently(List<AppEntry> appentries, final Node node, final String nodeName)
+    {
+        Server server = getServer();
+        ThreadPool threadPool = server == null?null:server.getThreadPool();
+        int workers = Math.min(_maxConcurrentStarts,appentries.size());
+        if (threadPool == null || workers <= 1)
+            return runNodeSerially(appentries,node,nodeName);
+
+        final Queue<AppEntry> queue = new ConcurrentLinkedQueue<AppEntry>(appentries);
+        final Set<AppEntry> reached = Collections.newSetFromMap(new ConcurrentHashMap<AppEntry, Boolean>());
+        final CountDownLatch latch = new CountDownLatch(workers);
+        Runnable worker = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    AppEntry appentry;
+                    while ((appentry = queue.poll()) != null)
+                    {
+                        try
+                        {
+                            runNode(appentry,node);
+                            reached.add(appentry);
+                        }
+                        catch (Throwable t)
+                        {
+                            LOG.warn("Unable to reach node goal: " + nodeName,t);
+                        }
+                    }
+                }
+                finally
+                {
+                    latch.countDown();
+                }
+            }
+        };
+
+        for (int i = 1; i < workers; i++)
+        {
+            try
+            {
+                threadPool.execute(worker);
+            }
+            catch (RejectedExecutionException e)
+            {
+                LOG.debug(e);
+                latch.countDown();
+            }
+        }
+        worker.run();
+
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            LOG.warn("Interrupted reaching node goal: " + nodeName,e);
+            queue.clear();
+            Thread.currentThread().interrupt();
+        }
+
+        // Keep the order of the apps
+        List<AppEntry> completed = new ArrayList<AppEntry>(reached.size());
+        for (AppEntry appentry : appentries)
+            if (reached.contains(appentry))
+                completed.add(appentry);
+        return completed;
+    }
+
     /**
      * Move an {@link App} through the {@link AppLifeCycle} to the desired {@link Node}, executing each lifecycle step
      * in the process to reach the desired state.
@@ -574,6 +785,31 @@ public class DeploymentManager extends ContainerLifeCycle
         }
     }
 
+    /**
+     * @return the maximum number of apps that are started concurrently when the DeploymentManager starts
+     */
+    @ManagedAttribute("maximum number of apps started concurrently")
+    public int getMaxConcurrentStarts()
+    {
+        return _maxConcurrentStarts;
+    }
+
+    /**
+     * Set the maximum number of apps that are started concurrently when the DeploymentManager starts.
+     * <p>
+     * A value of 1 (the default) deploys and starts each app in turn as it is provided.
+     * Apps provided after the DeploymentManager has started are always deployed individually.
+     * 
+     * @param maxConcurrentStarts
+     *            the maximum number of concurrent app starts
+     */
+    public void setMaxConcurrentStarts(int maxConcurrentStarts)
+    {
+        if (isRunning())
+            throw new IllegalStateException();
+        _maxConcurrentStarts = maxConcurrentStarts;
+    }
+
     public boolean isUseStandardBindings()
     {
         return _useStandardBindings;
@@ -27,7 +27,9 @@ import org.eclipse.jetty.deploy.graph.Node;
 /**
  * Provides a way of forcing the ordered execution of bindings within 
  * a declared binding target.
- * 
+ * <p>
+ * When apps move through a binding target concurrently, the bindings of
+ * the group are run for one app at a time.
  */
 public class OrderedGroupBinding implements AppLifeCycle.Binding
 {
@@ -68,7 +70,7 @@ public class OrderedGroupBinding implements AppLifeCycle.Binding
         return _bindingTargets;
     }
 
-    public void processBinding(Node node, App app) throws Exception
+    public synchronized void processBinding(Node node, App app) throws Exception
     {
         for ( AppLifeCycle.Binding binding : _orderedBindings )
         {
@@ -19,16 +19,23 @@
 package org.eclipse.jetty.deploy.jmx;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
 import org.eclipse.jetty.deploy.App;
+import org.eclipse.jetty.deploy.AppLifeCycle;
 import org.eclipse.jetty.deploy.AppProvider;
 import org.eclipse.jetty.deploy.DeploymentManager;
 import org.eclipse.jetty.deploy.graph.Node;
 import org.eclipse.jetty.jmx.ObjectMBean;
 import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.annotation.Name;
 
+@ManagedObject("MBean Wrapper for DeploymentManager")
 public class DeploymentManagerMBean extends ObjectMBean
 {
     private final DeploymentManager _manager;
@@ -63,6 +70,41 @@ public class DeploymentManagerMBean extends ObjectMBean
         return apps;
     }
     
+    @ManagedAttribute("time in ms taken by each app of the apps attribute to start, -1 if not started")
+    public long[] getAppStartingTimes()
+    {
+        Node starting=_manager.getLifeCycle().getNodeByName(AppLifeCycle.STARTING);
+        List<DeploymentManager.AppEntry> entries=new ArrayList<DeploymentManager.AppEntry>(_manager.getAppEntries());
+        long[] times=new long[entries.size()];
+        for (int i=0;i<times.length;i++)
+            times[i]=getDuration(entries.get(i),starting);
+        return times;
+    }
+
+    @ManagedOperation(value="time in ms taken by an app to reach each node of the nodes attribute, -1 if not reached", impact="INFO")
+    public long[] getAppLifeCycleTimings(@Name("appId") String appId)
+    {
+        List<Node> nodes=new ArrayList<Node>(_manager.getNodes());
+        long[] timings=new long[nodes.size()];
+        Arrays.fill(timings,-1);
+        for (DeploymentManager.AppEntry entry: _manager.getAppEntries())
+        {
+            if (entry.getApp().getOriginId().equals(appId))
+            {
+                for (int i=0;i<timings.length;i++)
+                    timings[i]=getDuration(entry,nodes.get(i));
+                break;
+            }
+        }
+        return timings;
+    }
+
+    private long getDuration(DeploymentManager.AppEntry entry, Node node)
+    {
+        Long duration=entry.getStateDurations().get(node);
+        return duration==null?-1:duration;
+    }
+
     public Collection<ContextHandler> getContexts() throws Exception
     {
         List<ContextHandler> apps=new ArrayList<ContextHandler>();
@@ -63,6 +63,7 @@ import org.eclipse.jetty.xml.XmlConfiguration;
 public class WebAppProvider extends ScanningAppProvider
 {
     private boolean _extractWars = false;
+    private boolean _mapWars = false;
     private boolean _parentLoaderPriority = false;
     private ConfigurationManager _configurationManager;
     private String _defaultsDescriptor;
@@ -156,6 +157,26 @@ public class WebAppProvider extends ScanningAppProvider
         _extractWars = extractWars;
     }
 
+    /* ------------------------------------------------------------ */
+    /** Get the mapWars.
+     * @return the mapWars
+     */
+    @ManagedAttribute("serve war files from a memory mapped index")
+    public boolean isMapWars()
+    {
+        return _mapWars;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Set the mapWars.
+     * @param mapWars true if war files are served from a memory mapped index rather than extracted
+     * @see WebAppContext#setMapWAR(boolean)
+     */
+    public void setMapWars(boolean mapWars)
+    {
+        _mapWars = mapWars;
+    }
+
     /* ------------------------------------------------------------ */
     /** Get the parentLoaderPriority.
      * @return the parentLoaderPriority
@@ -342,6 +363,7 @@ public class WebAppProvider extends ScanningAppProvider
             webAppContext.setDefaultsDescriptor(_defaultsDescriptor);
         }
         webAppContext.setExtractWAR(_extractWars);
+        webAppContext.setMapWAR(_mapWars);
         webAppContext.setParentLoaderPriority(_parentLoaderPriority);
         if (_configurationClasses != null)
         {
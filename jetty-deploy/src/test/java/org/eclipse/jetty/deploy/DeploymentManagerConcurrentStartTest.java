@@ -0,0 +1,195 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.deploy;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.deploy.bindings.OrderedGroupBinding;
+import org.eclipse.jetty.deploy.bindings.StandardDeployer;
+import org.eclipse.jetty.deploy.bindings.StandardStarter;
+import org.eclipse.jetty.deploy.graph.Node;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.ContextHandlerCollection;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DeploymentManagerConcurrentStartTest
+{
+    private static final int APPS = 8;
+
+    private final AtomicInteger starting = new AtomicInteger();
+    private final AtomicInteger maxStarting = new AtomicInteger();
+    private QueuedThreadPool threadPool;
+
+    @After
+    public void dispose() throws Exception
+    {
+        if (threadPool != null)
+            threadPool.stop();
+    }
+
+    @Test
+    public void testSerialStart() throws Exception
+    {
+        DeploymentManager depman = newDeploymentManager();
+        depman.start();
+
+        assertAllStarted(depman);
+        Assert.assertEquals("Max concurrent starts",1,maxStarting.get());
+        depman.stop();
+    }
+
+    @Test
+    public void testConcurrentStart() throws Exception
+    {
+        DeploymentManager depman = newDeploymentManager();
+        depman.setMaxConcurrentStarts(4);
+        depman.start();
+
+        assertAllStarted(depman);
+        Assert.assertTrue("Concurrent starts",maxStarting.get() > 1);
+        Assert.assertTrue("Bounded starts",maxStarting.get() <= 4);
+
+        for (DeploymentManager.AppEntry entry : depman.getAppEntries())
+        {
+            Long duration = entry.getStateDurations().get(depman.getLifeCycle().getNodeByName(AppLifeCycle.STARTING));
+            Assert.assertNotNull("Starting duration",duration);
+            Assert.assertTrue("Starting duration",duration >= 50);
+        }
+        depman.stop();
+    }
+
+    @Test
+    public void testOrderedGroupIsSerial() throws Exception
+    {
+        DeploymentManager depman = newDeploymentManager();
+        depman.setMaxConcurrentStarts(4);
+        depman.setUseStandardBindings(false);
+        depman.addLifeCycleBinding(new StandardDeployer());
+        OrderedGroupBinding group = new OrderedGroupBinding(new String[]{AppLifeCycle.STARTING});
+        group.addBinding(new StandardStarter());
+        depman.addLifeCycleBinding(group);
+        depman.start();
+
+        assertAllStarted(depman);
+        Assert.assertEquals("Max concurrent starts",1,maxStarting.get());
+        depman.stop();
+    }
+
+    @Test
+    public void testOnlyOrderedGroupIsSerial() throws Exception
+    {
+        final AtomicInteger grouped = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        DeploymentManager depman = newDeploymentManager();
+        depman.setMaxConcurrentStarts(4);
+        OrderedGroupBinding group = new OrderedGroupBinding(new String[]{AppLifeCycle.STARTING});
+        group.addBinding(new AppLifeCycle.Binding()
+        {
+            @Override
+            public String[] getBindingTargets()
+            {
+                return new String[]{AppLifeCycle.STARTING};
+            }
+
+            @Override
+            public void processBinding(Node node, App app) throws Exception
+            {
+                if (grouped.incrementAndGet() > 1)
+                    overlapped.set(true);
+                Thread.sleep(10);
+                grouped.decrementAndGet();
+            }
+        });
+        depman.addLifeCycleBinding(group);
+        depman.start();
+
+        assertAllStarted(depman);
+        Assert.assertFalse("Concurrent grouped bindings",overlapped.get());
+        Assert.assertTrue("Concurrent starts",maxStarting.get() > 1);
+        depman.stop();
+    }
+
+    private DeploymentManager newDeploymentManager() throws Exception
+    {
+        // The apps are started by the server thread pool, but the contexts are started by the deployment manager
+        threadPool = new QueuedThreadPool();
+        threadPool.start();
+        Server server = new Server(threadPool);
+        ContextHandlerCollection contexts = new ContextHandlerCollection();
+        server.setHandler(contexts);
+        DeploymentManager depman = new DeploymentManager();
+        depman.setContexts(contexts);
+        depman.addAppProvider(new SlowAppProvider());
+        return depman;
+    }
+
+    private void assertAllStarted(DeploymentManager depman)
+    {
+        Assert.assertEquals("Apps",APPS,depman.getApps().size());
+        Assert.assertEquals("Started apps",APPS,depman.getApps(AppLifeCycle.STARTED).size());
+    }
+
+    public class SlowAppProvider extends AbstractLifeCycle implements AppProvider
+    {
+        private DeploymentManager deployMan;
+
+        @Override
+        public void setDeploymentManager(DeploymentManager deploymentManager)
+        {
+            this.deployMan = deploymentManager;
+        }
+
+        @Override
+        protected void doStart() throws Exception
+        {
+            for (int i = 0; i < APPS; i++)
+                deployMan.addApp(new App(deployMan,this,"slow-" + i));
+        }
+
+        @Override
+        public ContextHandler createContextHandler(App app) throws Exception
+        {
+            ContextHandler context = new ContextHandler()
+            {
+                @Override
+                protected void doStart() throws Exception
+                {
+                    int now = starting.incrementAndGet();
+                    while (true)
+                    {
+                        int max = maxStarting.get();
+                        if (now <= max || maxStarting.compareAndSet(max,now))
+                            break;
+                    }
+                    Thread.sleep(50);
+                    starting.decrementAndGet();
+                    super.doStart();
+                }
+            };
+            context.setContextPath("/" + app.getOriginId());
+            return context;
+        }
+    }
+}
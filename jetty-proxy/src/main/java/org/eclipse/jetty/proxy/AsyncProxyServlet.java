@@ -0,0 +1,383 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritePendingException;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IteratingCallback;
+
+/**
+ * Servlet 3.1 asynchronous proxy servlet.
+ * <p/>
+ * Both the request processing and the I/O are asynchronous, so that no thread is blocked
+ * waiting for a slow client or a slow server:
+ * <ul>
+ * <li>the request content is read from the client with a {@link ReadListener} and forwarded
+ * to the server through a {@link DeferredContentProvider}.
+ * More request content is read from the client only when the previous content has been
+ * sent to the server, so that a slow server applies back pressure to the client;</li>
+ * <li>the response content is received from the server by an asynchronous content listener,
+ * and written to the client with a {@link WriteListener}, passing the content buffer by
+ * reference rather than copying it.
+ * More response content is read from the server only when the previous content has been
+ * written to the client, so that a slow client applies back pressure to the server.</li>
+ * </ul>
+ *
+ * @see ProxyServlet
+ */
+public class AsyncProxyServlet extends ProxyServlet
+{
+    private static final String WRITE_LISTENER_ATTRIBUTE = AsyncProxyServlet.class.getName() + ".writeListener";
+
+    @Override
+    protected ContentProvider proxyRequestContent(Request proxyRequest, HttpServletRequest request) throws IOException
+    {
+        ServletInputStream input = request.getInputStream();
+        DeferredContentProvider provider = new DeferredContentProvider();
+        input.setReadListener(newReadListener(proxyRequest, request, provider));
+        return provider;
+    }
+
+    protected ReadListener newReadListener(Request proxyRequest, HttpServletRequest request, DeferredContentProvider provider)
+    {
+        return new StreamReader(proxyRequest, request, provider);
+    }
+
+    @Override
+    protected Response.Listener newProxyResponseListener(HttpServletRequest request, HttpServletResponse response)
+    {
+        return new AsyncProxyResponseListener(request, response);
+    }
+
+    protected StreamWriter newWriteListener(HttpServletRequest request, Response proxyResponse)
+    {
+        return new StreamWriter(request, proxyResponse);
+    }
+
+    /**
+     * Writes asynchronously the given response content to the client.
+     *
+     * @param request the request from the client
+     * @param response the response to the client
+     * @param proxyResponse the response from the server
+     * @param content the response content, which must not be modified until the callback is completed
+     * @param callback the callback to complete when the content has been written
+     */
+    protected void onResponseContent(HttpServletRequest request, HttpServletResponse response, Response proxyResponse, ByteBuffer content, Callback callback)
+    {
+        try
+        {
+            if (_log.isDebugEnabled())
+                _log.debug("{} proxying content to downstream: {} bytes", getRequestId(request), content.remaining());
+            StreamWriter writeListener = (StreamWriter)request.getAttribute(WRITE_LISTENER_ATTRIBUTE);
+            if (writeListener == null)
+            {
+                writeListener = newWriteListener(request, proxyResponse);
+                request.setAttribute(WRITE_LISTENER_ATTRIBUTE, writeListener);
+
+                // Set the content to write before calling setWriteListener(), because
+                // setWriteListener() may trigger the call to onWritePossible() on a
+                // different thread and we would have a race.
+                writeListener.data(content, callback);
+
+                // Setting the WriteListener triggers an invocation to onWritePossible().
+                response.getOutputStream().setWriteListener(writeListener);
+            }
+            else
+            {
+                writeListener.data(content, callback);
+                writeListener.onWritePossible();
+            }
+        }
+        catch (Throwable x)
+        {
+            callback.failed(x);
+            proxyResponse.abort(x);
+        }
+    }
+
+    protected class AsyncProxyResponseListener extends ProxyResponseListener implements Response.AsyncContentListener
+    {
+        public AsyncProxyResponseListener(HttpServletRequest request, HttpServletResponse response)
+        {
+            super(request, response);
+        }
+
+        @Override
+        public void onContent(Response proxyResponse, ByteBuffer content, Callback callback)
+        {
+            onResponseContent(request, response, proxyResponse, content, callback);
+        }
+    }
+
+    /**
+     * Reads the request content from the client when it is available, and offers it to the request to the server.
+     * <p/>
+     * The content is read into a single buffer, and more content is read only when the previous content has been
+     * sent to the server, so that a slow server applies back pressure to the client.
+     */
+    protected class StreamReader extends IteratingCallback implements ReadListener
+    {
+        private final byte[] buffer = new byte[getHttpClient().getRequestBufferSize()];
+        private final Request proxyRequest;
+        private final HttpServletRequest request;
+        private final DeferredContentProvider provider;
+
+        protected StreamReader(Request proxyRequest, HttpServletRequest request, DeferredContentProvider provider)
+        {
+            this.proxyRequest = proxyRequest;
+            this.request = request;
+            this.provider = provider;
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException
+        {
+            _log.debug("{} asynchronous read available on {}", getRequestId(request), request.getInputStream());
+            iterate();
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            int requestId = getRequestId(request);
+            ServletInputStream input = request.getInputStream();
+
+            // First check for isReady() because it has
+            // side effects, and then for isFinished().
+            while (input.isReady() && !input.isFinished())
+            {
+                int read = input.read(buffer);
+                if (_log.isDebugEnabled())
+                    _log.debug("{} asynchronous read {} bytes on {}", requestId, read, input);
+                if (read > 0)
+                {
+                    _log.debug("{} proxying content to upstream: {} bytes", requestId, read);
+                    // The buffer is reused, and more content read, only when this content has been sent.
+                    provider.offer(ByteBuffer.wrap(buffer, 0, read), this);
+                    return Action.SCHEDULED;
+                }
+            }
+
+            if (input.isFinished())
+            {
+                _log.debug("{} asynchronous read complete on {}", requestId, input);
+                return Action.SUCCEEDED;
+            }
+            else
+            {
+                _log.debug("{} asynchronous read pending on {}", requestId, input);
+                return Action.IDLE;
+            }
+        }
+
+        @Override
+        protected void completed()
+        {
+            // The provider is closed by onAllDataRead()
+        }
+
+        @Override
+        public void onAllDataRead() throws IOException
+        {
+            _log.debug("{} proxying content to upstream completed", getRequestId(request));
+            provider.close();
+        }
+
+        @Override
+        public void onError(Throwable failure)
+        {
+            failed(failure);
+        }
+
+        @Override
+        public void failed(Throwable failure)
+        {
+            super.failed(failure);
+            _log.debug(getRequestId(request) + " proxying content to upstream failed", failure);
+            proxyRequest.abort(failure);
+        }
+    }
+
+    /**
+     * Writes the response content to the client when the client is able to receive it, and completes
+     * the callback of each content chunk when it has been written.
+     */
+    protected class StreamWriter implements WriteListener
+    {
+        private final HttpServletRequest request;
+        private final Response proxyResponse;
+        private WriteState state;
+        private ByteBuffer content;
+        private Callback callback;
+
+        protected StreamWriter(HttpServletRequest request, Response proxyResponse)
+        {
+            this.request = request;
+            this.proxyResponse = proxyResponse;
+            this.state = WriteState.IDLE;
+        }
+
+        protected void data(ByteBuffer content, Callback callback)
+        {
+            synchronized (this)
+            {
+                if (state != WriteState.IDLE)
+                    throw new WritePendingException();
+                this.state = WriteState.READY;
+                this.content = content;
+                this.callback = callback;
+            }
+        }
+
+        @Override
+        public void onWritePossible() throws IOException
+        {
+            int requestId = getRequestId(request);
+            ServletOutputStream output = request.getAsyncContext().getResponse().getOutputStream();
+            // The state is written by the HttpClient thread calling data() and
+            // by the container threads calling this method, so it is guarded.
+            WriteState state;
+            ByteBuffer content = null;
+            synchronized (this)
+            {
+                state = this.state;
+                if (state == WriteState.READY)
+                {
+                    content = this.content;
+                    // The write is pending before it is issued, because the completion of
+                    // the last write may call onWritePossible() from a different thread.
+                    this.state = WriteState.PENDING;
+                }
+            }
+
+            if (state == WriteState.READY)
+            {
+                // There is content to write.
+                int length = content.remaining();
+                write(output, content);
+                if (output.isReady())
+                {
+                    if (_log.isDebugEnabled())
+                        _log.debug("{} asynchronous write complete of {} bytes on {}", requestId, length, output);
+                    complete();
+                }
+                else
+                {
+                    if (_log.isDebugEnabled())
+                        _log.debug("{} asynchronous write pending of {} bytes on {}", requestId, length, output);
+                }
+            }
+            else if (state == WriteState.PENDING)
+            {
+                // The write did not complete immediately, but now it is complete.
+                _log.debug("{} asynchronous write complete on {}", requestId, output);
+                complete();
+            }
+            else
+            {
+                // No content to write.
+                _log.debug("{} asynchronous write idle on {}", requestId, output);
+            }
+        }
+
+        private void write(ServletOutputStream output, ByteBuffer content) throws IOException
+        {
+            // Write the buffer without copying it, if possible.
+            if (output instanceof HttpOutput)
+            {
+                ((HttpOutput)output).write(content);
+            }
+            else if (content.hasArray())
+            {
+                output.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+            }
+            else
+            {
+                output.write(BufferUtil.toArray(content));
+            }
+        }
+
+        private void complete()
+        {
+            Callback callback;
+            synchronized (this)
+            {
+                // The completion may be seen both by the writing thread and by
+                // a concurrent onWritePossible(), but is notified only once.
+                if (state != WriteState.PENDING)
+                    return;
+                callback = this.callback;
+                this.content = null;
+                this.callback = null;
+                this.state = WriteState.IDLE;
+            }
+            // Complete the callback only after the whole state has been reset,
+            // because the callback may trigger a reentrant call to data().
+            callback.succeeded();
+        }
+
+        @Override
+        public void onError(Throwable failure)
+        {
+            Callback callback;
+            synchronized (this)
+            {
+                callback = this.callback;
+                this.content = null;
+                this.callback = null;
+                this.state = WriteState.IDLE;
+            }
+            if (callback != null)
+                callback.failed(failure);
+            proxyResponse.abort(failure);
+        }
+    }
+
+    private enum WriteState
+    {
+        /**
+         * There is no content to write
+         */
+        IDLE,
+        /**
+         * There is content ready to be written
+         */
+        READY,
+        /**
+         * The content is being written
+         */
+        PENDING
+    }
+}
@@ -0,0 +1,218 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+
+/**
+ * A backend server of a {@link BalancerServlet}, with the statistics used by the
+ * {@link BalancerStrategy}s to pick it and by the servlet to eject it.
+ * <p/>
+ * The latency is an exponentially weighted moving average of the time taken by the
+ * exchanges with the backend, so that recent exchanges count more than old ones.
+ * A member is available when it is neither ejected after too many consecutive failures
+ * nor marked unhealthy by the active health checks.
+ */
+@ManagedObject("Balancer member")
+public class BalancerMember
+{
+    private static final double LATENCY_DECAY = 0.3;
+
+    private final AtomicInteger _outstanding = new AtomicInteger();
+    private final AtomicLong _requests = new AtomicLong();
+    private final AtomicLong _failures = new AtomicLong();
+    private final AtomicInteger _consecutiveFailures = new AtomicInteger();
+    private final AtomicLong _ejections = new AtomicLong();
+    private final String _name;
+    private final String _proxyTo;
+    private final URI _backendURI;
+    private final int _weight;
+    private volatile double _latency;
+    private volatile long _ejectedUntil;
+    private volatile boolean _healthy = true;
+
+    public BalancerMember(String name, String proxyTo)
+    {
+        this(name, proxyTo, 1);
+    }
+
+    public BalancerMember(String name, String proxyTo, int weight)
+    {
+        if (weight <= 0)
+            throw new IllegalArgumentException("Invalid weight " + weight + " for balancer member " + name);
+        _name = name;
+        _proxyTo = proxyTo;
+        _backendURI = URI.create(_proxyTo).normalize();
+        _weight = weight;
+    }
+
+    @ManagedAttribute(value = "The name of this member", readonly = true)
+    public String getName()
+    {
+        return _name;
+    }
+
+    @ManagedAttribute(value = "The URI requests are proxied to", readonly = true)
+    public String getProxyTo()
+    {
+        return _proxyTo;
+    }
+
+    public URI getBackendURI()
+    {
+        return _backendURI;
+    }
+
+    @ManagedAttribute(value = "The weight of this member for weighted round robin", readonly = true)
+    public int getWeight()
+    {
+        return _weight;
+    }
+
+    @ManagedAttribute(value = "The number of requests in progress", readonly = true)
+    public int getOutstandingRequests()
+    {
+        return _outstanding.get();
+    }
+
+    @ManagedAttribute(value = "The total number of requests", readonly = true)
+    public long getRequests()
+    {
+        return _requests.get();
+    }
+
+    @ManagedAttribute(value = "The total number of failed requests", readonly = true)
+    public long getFailures()
+    {
+        return _failures.get();
+    }
+
+    @ManagedAttribute(value = "The number of times this member has been ejected", readonly = true)
+    public long getEjections()
+    {
+        return _ejections.get();
+    }
+
+    /**
+     * @return the moving average of the latency, in nanoseconds
+     */
+    public double getLatency()
+    {
+        return _latency;
+    }
+
+    @ManagedAttribute(value = "The moving average of the latency in milliseconds", readonly = true)
+    public long getLatencyMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis((long)_latency);
+    }
+
+    @ManagedAttribute(value = "Whether this member is ejected after consecutive failures", readonly = true)
+    public boolean isEjected()
+    {
+        return _ejectedUntil - System.nanoTime() > 0;
+    }
+
+    @ManagedAttribute(value = "Whether the last health check of this member succeeded", readonly = true)
+    public boolean isHealthy()
+    {
+        return _healthy;
+    }
+
+    void setHealthy(boolean healthy)
+    {
+        _healthy = healthy;
+    }
+
+    public boolean isAvailable()
+    {
+        return isHealthy() && !isEjected();
+    }
+
+    void onRequestBegin()
+    {
+        _outstanding.incrementAndGet();
+        _requests.incrementAndGet();
+    }
+
+    /**
+     * @param latency the time taken by the exchange, in nanoseconds, only used if the exchange did not fail,
+     * since failures may be faster than successful exchanges and would attract more requests to this member
+     * @param failed whether the exchange failed or the backend replied with a server error
+     * @param maxFailures the number of consecutive failures that eject this member, or 0 to never eject it
+     * @param ejectionTime the time this member stays ejected, in milliseconds
+     */
+    void onRequestEnd(long latency, boolean failed, int maxFailures, long ejectionTime)
+    {
+        _outstanding.decrementAndGet();
+        if (failed)
+        {
+            _failures.incrementAndGet();
+            if (_consecutiveFailures.incrementAndGet() == maxFailures)
+            {
+                _consecutiveFailures.set(0);
+                _ejectedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ejectionTime);
+                _ejections.incrementAndGet();
+            }
+        }
+        else
+        {
+            _consecutiveFailures.set(0);
+            updateLatency(latency);
+        }
+    }
+
+    private synchronized void updateLatency(long latency)
+    {
+        double current = _latency;
+        _latency = current == 0 ? latency : current + LATENCY_DECAY * (latency - current);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[name=%s,proxyTo=%s]", getClass().getSimpleName(), _name, _proxyTo);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return _name.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        BalancerMember that = (BalancerMember)obj;
+        return _name.equals(that._name);
+    }
+}
@@ -25,16 +25,51 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletException;
 import javax.servlet.UnavailableException;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
-
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * A {@link ProxyServlet} that balances the requests among a set of backend servers.
+ * <p/>
+ * Besides the init parameters of {@link ProxyServlet}, the following init parameters may be used:
+ * <ul>
+ * <li>balancerMember.&lt;name&gt;.proxyTo - the URI of the backend server called &lt;name&gt;</li>
+ * <li>balancerMember.&lt;name&gt;.weight - the weight of the backend server for weightedRoundRobin, 1 by default</li>
+ * <li>stickySessions - whether requests of a session go to the backend server that created it</li>
+ * <li>proxyPassReverse - whether redirects to a backend server are rewritten to this servlet</li>
+ * <li>balancerStrategy - roundRobin (the default), weightedRoundRobin, leastOutstanding, powerOfTwoChoices
+ * or the class name of a {@link BalancerStrategy}</li>
+ * <li>maxFailures - the number of consecutive failures or server errors after which a backend server is
+ * ejected, 5 by default, 0 to never eject</li>
+ * <li>ejectionTime - the time in milliseconds an ejected backend server receives no requests, 30000 by default</li>
+ * <li>healthCheckPath - the path requested on each backend server to check its health, no checks by default</li>
+ * <li>healthCheckInterval - the time in milliseconds between health checks, 10000 by default</li>
+ * </ul>
+ * <p/>
+ * The health checks start when the servlet is initialized, so it should be loaded on startup when they are enabled.
+ * <p/>
+ * When no backend server is available, the requests are balanced among all of them rather than being rejected.
+ * <p/>
+ * Like the {@link org.eclipse.jetty.client.HttpClient}, each {@link BalancerMember} is set as context attribute,
+ * named after the servlet's name followed by ".balancerMember.&lt;name&gt;", so that its statistics can be
+ * exposed via JMX through ContextHandler.MANAGED_ATTRIBUTES.
+ */
 public class BalancerServlet extends ProxyServlet
 {
     private static final String BALANCER_MEMBER_PREFIX = "balancerMember.";
+    private static final String BALANCER_MEMBER_ATTRIBUTE = BalancerServlet.class.getName() + ".balancerMember";
+    private static final String REQUEST_BEGIN_ATTRIBUTE = BalancerServlet.class.getName() + ".requestBegin";
     private static final List<String> FORBIDDEN_CONFIG_PARAMETERS;
 
     static
@@ -61,9 +96,15 @@ public class BalancerServlet extends ProxyServlet
     private static final String JSESSIONID_URL_PREFIX = JSESSIONID + "=";
 
     private final List<BalancerMember> _balancerMembers = new ArrayList<>();
-    private final AtomicLong counter = new AtomicLong();
     private boolean _stickySessions;
     private boolean _proxyPassReverse;
+    private BalancerStrategy _strategy;
+    private int _maxFailures;
+    private long _ejectionTime;
+    private String _healthCheckPath;
+    private long _healthCheckInterval;
+    private volatile Scheduler.Task _healthCheckTask;
+    private volatile boolean _destroyed;
 
     @Override
     public void init() throws ServletException
@@ -73,6 +114,19 @@ public class BalancerServlet extends ProxyServlet
         initStickySessions();
         initBalancers();
         initProxyPassReverse();
+        initStrategy();
+        initEjection();
+        initHealthChecks();
+    }
+
+    @Override
+    public void destroy()
+    {
+        _destroyed = true;
+        Scheduler.Task task = _healthCheckTask;
+        if (task != null)
+            task.cancel();
+        super.destroy();
     }
 
     private void validateConfig() throws ServletException
@@ -100,9 +154,18 @@ public class BalancerServlet extends ProxyServlet
             String proxyTo = getServletConfig().getInitParameter(memberProxyToParam);
             if (proxyTo == null || proxyTo.trim().length() == 0)
                 throw new UnavailableException(memberProxyToParam + " parameter is empty.");
-            members.add(new BalancerMember(balancerName, proxyTo));
+            String memberWeightParam = BALANCER_MEMBER_PREFIX + balancerName + ".weight";
+            int weight = getIntInitParameter(memberWeightParam, 1);
+            if (weight <= 0)
+                throw new UnavailableException(memberWeightParam + " parameter must be positive.");
+            members.add(new BalancerMember(balancerName, proxyTo, weight));
         }
         _balancerMembers.addAll(members);
+
+        // Put the members in the context to leverage ContextHandler.MANAGED_ATTRIBUTES
+        String prefix = getServletConfig().getServletName() + ".balancerMember.";
+        for (BalancerMember member : _balancerMembers)
+            getServletContext().setAttribute(prefix + member.getName(), member);
     }
 
     private void initProxyPassReverse()
@@ -110,6 +173,91 @@ public class BalancerServlet extends ProxyServlet
         _proxyPassReverse = Boolean.parseBoolean(getServletConfig().getInitParameter("proxyPassReverse"));
     }
 
+    private void initStrategy() throws ServletException
+    {
+        String strategy = getServletConfig().getInitParameter("balancerStrategy");
+        _strategy = newBalancerStrategy(strategy == null ? "roundRobin" : strategy.trim());
+    }
+
+    /**
+     * @param name the value of the balancerStrategy init parameter, roundRobin by default
+     * @return the strategy that picks the member each request is proxied to
+     * @throws ServletException if the strategy cannot be created
+     */
+    protected BalancerStrategy newBalancerStrategy(String name) throws ServletException
+    {
+        switch (name)
+        {
+            case "roundRobin":
+                return new BalancerStrategy.RoundRobin();
+            case "weightedRoundRobin":
+                return new BalancerStrategy.WeightedRoundRobin();
+            case "leastOutstanding":
+                return new BalancerStrategy.LeastOutstanding();
+            case "powerOfTwoChoices":
+                return new BalancerStrategy.PowerOfTwoChoices();
+            default:
+            {
+                try
+                {
+                    return (BalancerStrategy)getClass().getClassLoader().loadClass(name).newInstance();
+                }
+                catch (Exception x)
+                {
+                    throw new UnavailableException("Invalid balancerStrategy " + name + ": " + x);
+                }
+            }
+        }
+    }
+
+    private void initEjection() throws ServletException
+    {
+        _maxFailures = getIntInitParameter("maxFailures", 5);
+        _ejectionTime = getLongInitParameter("ejectionTime", 30000);
+    }
+
+    private void initHealthChecks() throws ServletException
+    {
+        _healthCheckPath = getServletConfig().getInitParameter("healthCheckPath");
+        _healthCheckInterval = getLongInitParameter("healthCheckInterval", 10000);
+        if (_healthCheckPath != null)
+        {
+            if (_healthCheckInterval <= 0)
+                throw new UnavailableException("healthCheckInterval parameter must be positive.");
+            scheduleHealthChecks();
+        }
+    }
+
+    private int getIntInitParameter(String name, int defaultValue) throws ServletException
+    {
+        String value = getServletConfig().getInitParameter(name);
+        if (value == null)
+            return defaultValue;
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException x)
+        {
+            throw new UnavailableException(name + " parameter is not a number: " + value);
+        }
+    }
+
+    private long getLongInitParameter(String name, long defaultValue) throws ServletException
+    {
+        String value = getServletConfig().getInitParameter(name);
+        if (value == null)
+            return defaultValue;
+        try
+        {
+            return Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException x)
+        {
+            throw new UnavailableException(name + " parameter is not a number: " + value);
+        }
+    }
+
     private Set<String> getBalancerNames() throws ServletException
     {
         Set<String> names = new HashSet<>();
@@ -132,6 +280,7 @@ public class BalancerServlet extends ProxyServlet
     {
         BalancerMember balancerMember = selectBalancerMember(request);
         _log.debug("Selected {}", balancerMember);
+        request.setAttribute(BALANCER_MEMBER_ATTRIBUTE, balancerMember);
         String path = request.getRequestURI();
         String query = request.getQueryString();
         if (query != null)
@@ -139,6 +288,27 @@ public class BalancerServlet extends ProxyServlet
         return URI.create(balancerMember.getProxyTo() + "/" + path).normalize();
     }
 
+    @Override
+    protected void customizeProxyRequest(Request proxyRequest, final HttpServletRequest request)
+    {
+        super.customizeProxyRequest(proxyRequest, request);
+        final BalancerMember balancerMember = (BalancerMember)request.getAttribute(BALANCER_MEMBER_ATTRIBUTE);
+        if (balancerMember == null)
+            return;
+        // The request is outstanding once it has been queued to the balancer member,
+        // so that requests waiting for a connection and connection failures are
+        // accounted to the member; requests that fail before being queued are not counted
+        proxyRequest.onRequestQueued(new Request.QueuedListener()
+        {
+            @Override
+            public void onQueued(Request proxyRequest)
+            {
+                balancerMember.onRequestBegin();
+                request.setAttribute(REQUEST_BEGIN_ATTRIBUTE, System.nanoTime());
+            }
+        });
+    }
+
     private BalancerMember selectBalancerMember(HttpServletRequest request)
     {
         if (_stickySessions)
@@ -147,12 +317,88 @@ public class BalancerServlet extends ProxyServlet
             if (name != null)
             {
                 BalancerMember balancerMember = findBalancerMemberByName(name);
-                if (balancerMember != null)
+                if (balancerMember != null && balancerMember.isAvailable())
                     return balancerMember;
             }
         }
-        int index = (int)(counter.getAndIncrement() % _balancerMembers.size());
-        return _balancerMembers.get(index);
+        List<BalancerMember> available = new ArrayList<>(_balancerMembers.size());
+        for (BalancerMember balancerMember : _balancerMembers)
+        {
+            if (balancerMember.isAvailable())
+                available.add(balancerMember);
+        }
+        if (available.isEmpty())
+            available = _balancerMembers;
+        return _strategy.select(available);
+    }
+
+    @Override
+    protected void onResponseSuccess(HttpServletRequest request, HttpServletResponse response, Response proxyResponse)
+    {
+        onRequestEnd(request, proxyResponse.getStatus() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        super.onResponseSuccess(request, response, proxyResponse);
+    }
+
+    @Override
+    protected void onResponseFailure(HttpServletRequest request, HttpServletResponse response, Response proxyResponse, Throwable failure)
+    {
+        onRequestEnd(request, true);
+        super.onResponseFailure(request, response, proxyResponse, failure);
+    }
+
+    private void onRequestEnd(HttpServletRequest request, boolean failed)
+    {
+        BalancerMember balancerMember = (BalancerMember)request.getAttribute(BALANCER_MEMBER_ATTRIBUTE);
+        if (balancerMember == null)
+            return;
+        request.removeAttribute(BALANCER_MEMBER_ATTRIBUTE);
+        Long begin = (Long)request.getAttribute(REQUEST_BEGIN_ATTRIBUTE);
+        // Not counted if it failed before being queued
+        if (begin == null)
+            return;
+        long latency = System.nanoTime() - begin;
+        boolean ejected = balancerMember.isEjected();
+        balancerMember.onRequestEnd(latency, failed, _maxFailures, _ejectionTime);
+        if (!ejected && balancerMember.isEjected())
+            _log.info("Ejected {} for {} ms after {} consecutive failures", balancerMember, _ejectionTime, _maxFailures);
+    }
+
+    private void scheduleHealthChecks()
+    {
+        if (_destroyed)
+            return;
+        _healthCheckTask = getHttpClient().getScheduler().schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                checkHealth();
+            }
+        }, _healthCheckInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkHealth()
+    {
+        final AtomicInteger pending = new AtomicInteger(_balancerMembers.size());
+        for (final BalancerMember balancerMember : _balancerMembers)
+        {
+            getHttpClient().newRequest(balancerMember.getProxyTo() + _healthCheckPath)
+                    .timeout(_healthCheckInterval, TimeUnit.MILLISECONDS)
+                    .send(new Response.CompleteListener()
+                    {
+                        @Override
+                        public void onComplete(Result result)
+                        {
+                            int status = result.getResponse().getStatus();
+                            boolean healthy = result.isSucceeded() && status >= 200 && status < 400;
+                            if (balancerMember.isHealthy() != healthy)
+                                _log.info("{} is {}", balancerMember, healthy ? "healthy" : "unhealthy");
+                            balancerMember.setHealthy(healthy);
+                            if (pending.decrementAndGet() == 0)
+                                scheduleHealthChecks();
+                        }
+                    });
+        }
     }
 
     private BalancerMember findBalancerMemberByName(String name)
@@ -255,58 +501,4 @@ public class BalancerServlet extends ProxyServlet
     {
         return true;
     }
-
-    private static class BalancerMember
-    {
-        private final String _name;
-        private final String _proxyTo;
-        private final URI _backendURI;
-
-        public BalancerMember(String name, String proxyTo)
-        {
-            _name = name;
-            _proxyTo = proxyTo;
-            _backendURI = URI.create(_proxyTo).normalize();
-        }
-
-        public String getName()
-        {
-            return _name;
-        }
-
-        public String getProxyTo()
-        {
-            return _proxyTo;
-        }
-
-        public URI getBackendURI()
-        {
-            return _backendURI;
-        }
-
-        @Override
-        public String toString()
-        {
-            return String.format("%s[name=%s,proxyTo=%s]", getClass().getSimpleName(), _name, _proxyTo);
-        }
-
-        @Override
-        public int hashCode()
-        {
-            return _name.hashCode();
-        }
-
-        @Override
-        public boolean equals(Object obj)
-        {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
-                return false;
-            BalancerMember that = (BalancerMember)obj;
-            return _name.equals(that._name);
-        }
-    }
 }
@@ -0,0 +1,147 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The strategy used by {@link BalancerServlet} to pick the {@link BalancerMember}
+ * a request is proxied to.
+ */
+public interface BalancerStrategy
+{
+    /**
+     * @param members the available members, never empty
+     * @return the member to proxy the request to
+     */
+    public BalancerMember select(List<BalancerMember> members);
+
+    /**
+     * Picks the members in turn.
+     */
+    public static class RoundRobin implements BalancerStrategy
+    {
+        private final AtomicLong counter = new AtomicLong();
+
+        @Override
+        public BalancerMember select(List<BalancerMember> members)
+        {
+            int index = (int)(counter.getAndIncrement() % members.size());
+            return members.get(index);
+        }
+    }
+
+    /**
+     * Picks the members in turn, in proportion to their {@link BalancerMember#getWeight() weight}.
+     * <p/>
+     * The picks of a member are spread among the picks of the others rather than being
+     * made in a burst, as nginx does.
+     */
+    public static class WeightedRoundRobin implements BalancerStrategy
+    {
+        private final Map<BalancerMember, Integer> currentWeights = new IdentityHashMap<>();
+
+        @Override
+        public synchronized BalancerMember select(List<BalancerMember> members)
+        {
+            BalancerMember result = null;
+            int resultWeight = 0;
+            int totalWeight = 0;
+            for (BalancerMember member : members)
+            {
+                Integer current = currentWeights.get(member);
+                int weight = (current == null ? 0 : current) + member.getWeight();
+                currentWeights.put(member, weight);
+                totalWeight += member.getWeight();
+                if (result == null || weight > resultWeight)
+                {
+                    result = member;
+                    resultWeight = weight;
+                }
+            }
+            currentWeights.put(result, resultWeight - totalWeight);
+            return result;
+        }
+    }
+
+    /**
+     * Picks the member with the least requests in progress, and in turn among those that have as many.
+     */
+    public static class LeastOutstanding implements BalancerStrategy
+    {
+        private final AtomicLong counter = new AtomicLong();
+
+        @Override
+        public BalancerMember select(List<BalancerMember> members)
+        {
+            int size = members.size();
+            int start = (int)(counter.getAndIncrement() % size);
+            BalancerMember result = null;
+            int resultOutstanding = Integer.MAX_VALUE;
+            for (int i = 0; i < size; ++i)
+            {
+                BalancerMember member = members.get((start + i) % size);
+                int outstanding = member.getOutstandingRequests();
+                if (outstanding < resultOutstanding)
+                {
+                    result = member;
+                    resultOutstanding = outstanding;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Picks two members at random and chooses the one with the lowest cost, that is the
+     * {@link BalancerMember#getLatency() latency} multiplied by the number of requests in progress.
+     * <p/>
+     * Choosing between two random members costs constant time whatever the number of members,
+     * and avoids sending every request to the same member until its statistics catch up, as
+     * always picking the best member would.
+     */
+    public static class PowerOfTwoChoices implements BalancerStrategy
+    {
+        @Override
+        public BalancerMember select(List<BalancerMember> members)
+        {
+            int size = members.size();
+            if (size == 1)
+                return members.get(0);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first)
+                ++second;
+            BalancerMember member1 = members.get(first);
+            BalancerMember member2 = members.get(second);
+            return cost(member2) < cost(member1) ? member2 : member1;
+        }
+
+        private double cost(BalancerMember member)
+        {
+            return member.getLatency() * (member.getOutstandingRequests() + 1);
+        }
+    }
+}
@@ -28,6 +28,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
@@ -50,20 +51,34 @@ import org.eclipse.jetty.server.handler.HandlerWrapper;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.TypeUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.statistic.CounterStatistic;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
 
 /**
  * <p>Implementation of a {@link Handler} that supports HTTP CONNECT.</p>
+ * <p>The tunnels acquire buffers only while data is in flight, see {@link ProxyConnection},
+ * and their number, duration, throughput and bytes relayed in each direction are recorded
+ * when they close.</p>
  */
+@ManagedObject("HTTP CONNECT tunnelling handler")
 public class ConnectHandler extends HandlerWrapper
 {
     protected static final Logger LOG = Log.getLogger(ConnectHandler.class);
 
     private final Set<String> whiteList = new HashSet<>();
     private final Set<String> blackList = new HashSet<>();
+    private final CounterStatistic tunnelStats = new CounterStatistic();
+    private final SampleStatistic tunnelDurationStats = new SampleStatistic();
+    private final SampleStatistic tunnelRateStats = new SampleStatistic();
+    private final AtomicLong bytesUpstream = new AtomicLong();
+    private final AtomicLong bytesDownstream = new AtomicLong();
     private Executor executor;
     private Scheduler scheduler;
     private ByteBufferPool bufferPool;
@@ -71,6 +86,8 @@ public class ConnectHandler extends HandlerWrapper
     private long connectTimeout = 15000;
     private long idleTimeout = 30000;
     private int bufferSize = 4096;
+    private int maxBufferSize = 64 * 1024;
+    private boolean coalesceWrites;
 
     public ConnectHandler()
     {
@@ -144,6 +161,10 @@ public class ConnectHandler extends HandlerWrapper
         this.idleTimeout = idleTimeout;
     }
 
+    /**
+     * @return the initial and minimum size of the buffers used to read from each side of a tunnel
+     */
+    @ManagedAttribute("The initial size of the tunnel buffers")
     public int getBufferSize()
     {
         return bufferSize;
@@ -154,6 +175,105 @@ public class ConnectHandler extends HandlerWrapper
         this.bufferSize = bufferSize;
     }
 
+    /**
+     * @return the size the buffers grow up to while reads fill them, or 0 to always use {@link #getBufferSize()}
+     */
+    @ManagedAttribute("The max size of the tunnel buffers")
+    public int getMaxBufferSize()
+    {
+        return maxBufferSize;
+    }
+
+    public void setMaxBufferSize(int maxBufferSize)
+    {
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    /**
+     * @return whether the data immediately available is read until the buffer is full before being written
+     * @see ProxyConnection#isCoalesceWrites()
+     */
+    @ManagedAttribute("Whether tunnels coalesce the data available into fewer writes")
+    public boolean isCoalesceWrites()
+    {
+        return coalesceWrites;
+    }
+
+    public void setCoalesceWrites(boolean coalesceWrites)
+    {
+        this.coalesceWrites = coalesceWrites;
+    }
+
+    @ManagedAttribute("The total number of tunnels")
+    public long getTunnels()
+    {
+        return tunnelStats.getTotal();
+    }
+
+    @ManagedAttribute("The number of open tunnels")
+    public long getTunnelsOpen()
+    {
+        return tunnelStats.getCurrent();
+    }
+
+    @ManagedAttribute("The max number of open tunnels")
+    public long getTunnelsOpenMax()
+    {
+        return tunnelStats.getMax();
+    }
+
+    @ManagedAttribute("Tunnel duration maximum in ms")
+    public long getTunnelDurationMax()
+    {
+        return tunnelDurationStats.getMax();
+    }
+
+    @ManagedAttribute("Tunnel duration mean in ms")
+    public double getTunnelDurationMean()
+    {
+        return tunnelDurationStats.getMean();
+    }
+
+    @ManagedAttribute("Tunnel duration standard deviation")
+    public double getTunnelDurationStdDev()
+    {
+        return tunnelDurationStats.getStdDev();
+    }
+
+    @ManagedAttribute("Tunnel throughput maximum in bytes/s")
+    public long getTunnelRateMax()
+    {
+        return tunnelRateStats.getMax();
+    }
+
+    @ManagedAttribute("Tunnel throughput mean in bytes/s")
+    public double getTunnelRateMean()
+    {
+        return tunnelRateStats.getMean();
+    }
+
+    @ManagedAttribute("Bytes relayed from clients to servers by closed tunnels")
+    public long getBytesUpstream()
+    {
+        return bytesUpstream.get();
+    }
+
+    @ManagedAttribute("Bytes relayed from servers to clients by closed tunnels")
+    public long getBytesDownstream()
+    {
+        return bytesDownstream.get();
+    }
+
+    @ManagedOperation(value = "Resets the tunnel statistics", impact = "ACTION")
+    public void statsReset()
+    {
+        tunnelStats.reset(tunnelStats.getCurrent());
+        tunnelDurationStats.reset();
+        tunnelRateStats.reset();
+        bytesUpstream.set(0);
+        bytesDownstream.set(0);
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -283,7 +403,7 @@ public class ConnectHandler extends HandlerWrapper
 
         EndPoint downstreamEndPoint = httpConnection.getEndPoint();
         DownstreamConnection downstreamConnection = newDownstreamConnection(downstreamEndPoint, context, buffer);
-        downstreamConnection.setInputBufferSize(getBufferSize());
+        configure(downstreamConnection);
 
         upstreamConnection.setConnection(downstreamConnection);
         downstreamConnection.setConnection(upstreamConnection);
@@ -348,6 +468,32 @@ public class ConnectHandler extends HandlerWrapper
     {
     }
 
+    private void configure(ProxyConnection connection)
+    {
+        connection.setInputBufferSize(getBufferSize());
+        connection.setMaxInputBufferSize(getMaxBufferSize());
+        connection.setCoalesceWrites(isCoalesceWrites());
+    }
+
+    private void onTunnelOpened(DownstreamConnection connection)
+    {
+        tunnelStats.increment();
+    }
+
+    private void onTunnelClosed(DownstreamConnection connection)
+    {
+        // The downstream side counts the bytes read from and written to the client
+        long duration = System.currentTimeMillis() - connection.getCreatedTimeStamp();
+        long upstream = connection.getBytesIn();
+        long downstream = connection.getBytesOut();
+        tunnelStats.decrement();
+        tunnelDurationStats.set(duration);
+        tunnelRateStats.set((upstream + downstream) * 1000 / Math.max(1, duration));
+        bytesUpstream.addAndGet(upstream);
+        bytesDownstream.addAndGet(downstream);
+        LOG.debug("Tunnel {} closed after {} ms, {} bytes upstream, {} bytes downstream", connection, duration, upstream, downstream);
+    }
+
     private void upgradeConnection(HttpServletRequest request, HttpServletResponse response, Connection connection)
     {
         // Set the new connection as request attribute and change the status to 101
@@ -450,7 +596,7 @@ public class ConnectHandler extends HandlerWrapper
             ConnectHandler.LOG.debug("Connected to {}", channel.getRemoteAddress());
             ConnectContext connectContext = (ConnectContext)attachment;
             UpstreamConnection connection = newUpstreamConnection(endpoint, connectContext);
-            connection.setInputBufferSize(getBufferSize());
+            configure(connection);
             return connection;
         }
 
@@ -549,13 +695,19 @@ public class ConnectHandler extends HandlerWrapper
         public void onOpen()
         {
             super.onOpen();
+            onTunnelOpened(this);
             final int remaining = buffer.remaining();
+            onBytesIn(remaining);
             write(getConnection().getEndPoint(), buffer, new Callback()
             {
                 @Override
                 public void succeeded()
                 {
                     LOG.debug("{} wrote initial {} bytes to server", DownstreamConnection.this, remaining);
+                    release();
+                    Connection connection = getConnection();
+                    if (connection instanceof ProxyConnection)
+                        ((ProxyConnection)connection).onBytesOut(remaining);
                     fillInterested();
                 }
 
@@ -563,12 +715,26 @@ public class ConnectHandler extends HandlerWrapper
                 public void failed(Throwable x)
                 {
                     LOG.debug(this + " failed to write initial " + remaining + " bytes to server", x);
+                    release();
                     close();
                     getConnection().close();
                 }
             });
         }
 
+        private void release()
+        {
+            if (buffer != BufferUtil.EMPTY_BUFFER)
+                getByteBufferPool().release(buffer);
+        }
+
+        @Override
+        public void onClose()
+        {
+            super.onClose();
+            onTunnelClosed(this);
+        }
+
         @Override
         protected int read(EndPoint endPoint, ByteBuffer buffer) throws IOException
         {
@@ -0,0 +1,1103 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * A shared HTTP cache of the responses proxied by {@link ProxyServlet}.
+ * <p/>
+ * Responses to GET requests are stored according to their Cache-Control, Expires, Last-Modified
+ * and Vary headers, in a memory tier bounded by {@link #getMaxMemorySize()} and, when a
+ * {@link #setDirectory(File) directory} is configured, in a disk tier of memory-mapped files
+ * bounded by {@link #getMaxDiskSize()}, to which the least recently used entries of the memory
+ * tier are moved. Stale entries with an ETag or a Last-Modified header are revalidated with a
+ * conditional request.
+ * <p/>
+ * Concurrent requests for the same resource are coalesced: while a request fetches or revalidates
+ * the resource, the others wait for it to complete and are then served from the cache.
+ * Resources whose responses cannot be stored are remembered for a while, so that their requests
+ * are not made to wait.
+ */
+@ManagedObject("Proxy response cache")
+public class ProxyCache extends AbstractLifeCycle
+{
+    private static final Logger LOG = Log.getLogger(ProxyCache.class);
+    private static final Set<Integer> CACHEABLE_STATUSES = new HashSet<>(Arrays.asList(200, 203, 204, 300, 301, 404, 405, 410, 414, 501));
+    private static final long MAX_HEURISTIC_LIFETIME = TimeUnit.DAYS.toMillis(1);
+    private static final int MAX_PASSES = 1024;
+
+    private final Map<String, List<Entry>> _memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, List<Entry>> _disk = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, List<AsyncContext>> _pending = new HashMap<>();
+    private final Map<String, Long> _passes = new HashMap<>();
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _staleHits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _revalidations = new AtomicLong();
+    private final AtomicLong _coalesced = new AtomicLong();
+    private final AtomicLong _stores = new AtomicLong();
+    private final AtomicLong _evictions = new AtomicLong();
+    private final AtomicLong _files = new AtomicLong();
+    private long _memorySize;
+    private long _diskSize;
+    private long _maxMemorySize = 64 * 1024 * 1024;
+    private long _maxDiskSize = 1024 * 1024 * 1024;
+    private int _maxEntrySize = 1024 * 1024;
+    private long _passTime = 30000;
+    private File _directory;
+    private Executor _executor;
+
+    @ManagedAttribute("The max size in bytes of the memory tier")
+    public long getMaxMemorySize()
+    {
+        return _maxMemorySize;
+    }
+
+    public void setMaxMemorySize(long maxMemorySize)
+    {
+        _maxMemorySize = maxMemorySize;
+    }
+
+    @ManagedAttribute("The max size in bytes of the disk tier")
+    public long getMaxDiskSize()
+    {
+        return _maxDiskSize;
+    }
+
+    public void setMaxDiskSize(long maxDiskSize)
+    {
+        _maxDiskSize = maxDiskSize;
+    }
+
+    @ManagedAttribute("The max size in bytes of a cached response content")
+    public int getMaxEntrySize()
+    {
+        return _maxEntrySize;
+    }
+
+    public void setMaxEntrySize(int maxEntrySize)
+    {
+        _maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * @return the time in milliseconds during which the requests for a resource whose response
+     * could not be stored are proxied without waiting for each other
+     */
+    @ManagedAttribute("The time in milliseconds uncacheable resources are proxied without coalescing")
+    public long getPassTime()
+    {
+        return _passTime;
+    }
+
+    public void setPassTime(long passTime)
+    {
+        _passTime = passTime;
+    }
+
+    public Executor getExecutor()
+    {
+        return _executor;
+    }
+
+    /**
+     * @param executor the executor that writes the entries evicted from memory to the disk tier,
+     * or null to write them in the thread that stores a response
+     */
+    public void setExecutor(Executor executor)
+    {
+        _executor = executor;
+    }
+
+    @ManagedAttribute(value = "The directory of the disk tier", readonly = true)
+    public File getDirectory()
+    {
+        return _directory;
+    }
+
+    /**
+     * @param directory the directory of the disk tier, or null to only cache in memory
+     */
+    public void setDirectory(File directory)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        _directory = directory;
+    }
+
+    @ManagedAttribute(value = "The number of requests served with a fresh cached response", readonly = true)
+    public long getHits()
+    {
+        return _hits.get();
+    }
+
+    @ManagedAttribute(value = "The number of requests that found a stale cached response", readonly = true)
+    public long getStaleHits()
+    {
+        return _staleHits.get();
+    }
+
+    @ManagedAttribute(value = "The number of requests that found no cached response", readonly = true)
+    public long getMisses()
+    {
+        return _misses.get();
+    }
+
+    @ManagedAttribute(value = "The number of stale cached responses revalidated by the server", readonly = true)
+    public long getRevalidations()
+    {
+        return _revalidations.get();
+    }
+
+    @ManagedAttribute(value = "The number of requests that waited for another request of the same resource", readonly = true)
+    public long getCoalesced()
+    {
+        return _coalesced.get();
+    }
+
+    @ManagedAttribute(value = "The number of responses stored", readonly = true)
+    public long getStores()
+    {
+        return _stores.get();
+    }
+
+    @ManagedAttribute(value = "The number of entries evicted from the memory tier", readonly = true)
+    public long getEvictions()
+    {
+        return _evictions.get();
+    }
+
+    @ManagedAttribute(value = "The size in bytes of the memory tier", readonly = true)
+    public synchronized long getMemorySize()
+    {
+        return _memorySize;
+    }
+
+    @ManagedAttribute(value = "The size in bytes of the disk tier", readonly = true)
+    public synchronized long getDiskSize()
+    {
+        return _diskSize;
+    }
+
+    @ManagedAttribute(value = "The number of cached responses", readonly = true)
+    public synchronized int getEntries()
+    {
+        int result = 0;
+        for (List<Entry> variants : _memory.values())
+            result += variants.size();
+        for (List<Entry> variants : _disk.values())
+            result += variants.size();
+        return result;
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _hits.set(0);
+        _staleHits.set(0);
+        _misses.set(0);
+        _revalidations.set(0);
+        _coalesced.set(0);
+        _stores.set(0);
+        _evictions.set(0);
+    }
+
+    @ManagedOperation(value = "Removes all the cached responses", impact = "ACTION")
+    public void clear()
+    {
+        List<Entry> removed = new ArrayList<>();
+        synchronized (this)
+        {
+            for (List<Entry> variants : _disk.values())
+                removed.addAll(variants);
+            _memory.clear();
+            _disk.clear();
+            _passes.clear();
+            _memorySize = 0;
+            _diskSize = 0;
+        }
+        delete(removed);
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (_directory != null && !_directory.isDirectory() && !_directory.mkdirs())
+            throw new IOException("Cannot create cache directory " + _directory);
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        clear();
+        super.doStop();
+    }
+
+    /**
+     * @param request the request from the client
+     * @return whether the response to the given request may be served from and stored in the cache
+     */
+    public static boolean isCacheable(HttpServletRequest request)
+    {
+        if (!HttpMethod.GET.is(request.getMethod()))
+            return false;
+        if (request.getHeader(HttpHeader.AUTHORIZATION.asString()) != null)
+            return false;
+        return !getDirectives(request.getHeaders(HttpHeader.CACHE_CONTROL.asString())).containsKey("no-store");
+    }
+
+    /**
+     * @param request the request from the client
+     * @return whether the request carries its own validators
+     */
+    public static boolean isConditional(HttpServletRequest request)
+    {
+        return request.getHeader(HttpHeader.IF_NONE_MATCH.asString()) != null ||
+                request.getHeader(HttpHeader.IF_MODIFIED_SINCE.asString()) != null;
+    }
+
+    /**
+     * @param request the request from the client
+     * @return the key of the cached responses to the given request
+     */
+    public static String getKey(HttpServletRequest request)
+    {
+        StringBuffer key = request.getRequestURL();
+        String query = request.getQueryString();
+        if (query != null)
+            key.append('?').append(query);
+        return key.toString();
+    }
+
+    /**
+     * Looks up the cached response to the given request, and counts a hit if it is fresh,
+     * a stale hit if it must be revalidated, and a miss if there is none.
+     *
+     * @param key the key of the request
+     * @param request the request from the client
+     * @return the cached response matching the Vary header, or null if there is none
+     */
+    public Entry lookup(String key, HttpServletRequest request)
+    {
+        Entry result = null;
+        synchronized (this)
+        {
+            List<Entry> variants = _memory.get(key);
+            if (variants == null)
+                variants = _disk.get(key);
+            if (variants != null)
+            {
+                for (Entry entry : variants)
+                {
+                    if (entry.matches(request))
+                    {
+                        result = entry;
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (result == null)
+            _misses.incrementAndGet();
+        else if (result.isFresh(request))
+            _hits.incrementAndGet();
+        else
+            _staleHits.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Suspends the given request if another request for the same key is already in progress.
+     * The suspended request is dispatched again when the other request completes.
+     *
+     * @param key the key of the request
+     * @param request the request from the client
+     * @return whether the request has been suspended
+     */
+    public boolean await(String key, HttpServletRequest request)
+    {
+        synchronized (this)
+        {
+            List<AsyncContext> waiters = _pending.get(key);
+            if (waiters == null)
+                return false;
+            AsyncContext asyncContext = request.startAsync();
+            asyncContext.setTimeout(0);
+            waiters.add(asyncContext);
+        }
+        _coalesced.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Creates the listener that stores the response to the given request.
+     * The listener must be added to the request to the server, and requests
+     * for the same key will {@link #await(String, HttpServletRequest) wait} for it.
+     *
+     * @param key the key of the request
+     * @param request the request from the client
+     * @param entry the stale cached response being revalidated, or null
+     * @return the listener that stores the response, or null if another request for
+     * the same key is in progress or if the response for the key cannot be stored
+     */
+    public Store newStore(String key, HttpServletRequest request, Entry entry)
+    {
+        synchronized (this)
+        {
+            if (_pending.containsKey(key))
+                return null;
+            Long passUntil = _passes.get(key);
+            if (passUntil != null)
+            {
+                if (passUntil - System.nanoTime() > 0)
+                    return null;
+                _passes.remove(key);
+            }
+            _pending.put(key, new ArrayList<AsyncContext>());
+        }
+        return new Store(key, request, entry);
+    }
+
+    private void release(String key, boolean pass)
+    {
+        List<AsyncContext> waiters;
+        synchronized (this)
+        {
+            waiters = _pending.remove(key);
+            if (pass && _passTime > 0)
+            {
+                if (_passes.size() >= MAX_PASSES)
+                    purgePasses();
+                _passes.put(key, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(_passTime));
+            }
+        }
+        if (waiters != null)
+        {
+            for (AsyncContext waiter : waiters)
+                waiter.dispatch();
+        }
+    }
+
+    private void purgePasses()
+    {
+        long now = System.nanoTime();
+        for (Iterator<Long> iterator = _passes.values().iterator(); iterator.hasNext();)
+        {
+            if (iterator.next() - now <= 0)
+                iterator.remove();
+        }
+        if (_passes.size() >= MAX_PASSES)
+            _passes.clear();
+    }
+
+    private void store(Entry entry)
+    {
+        List<Entry> evicted = new ArrayList<>();
+        List<Entry> removed = new ArrayList<>();
+        synchronized (this)
+        {
+            List<Entry> variants = _memory.remove(entry._key);
+            List<Entry> stale = _disk.remove(entry._key);
+            if (stale != null)
+            {
+                removed.addAll(stale);
+                _diskSize -= size(stale);
+            }
+            List<Entry> updated = new ArrayList<>();
+            updated.add(entry);
+            if (variants != null)
+            {
+                _memorySize -= size(variants);
+                for (Entry variant : variants)
+                {
+                    if (!variant.sameVariant(entry))
+                        updated.add(variant);
+                }
+            }
+            _memory.put(entry._key, updated);
+            _memorySize += size(updated);
+
+            for (Iterator<List<Entry>> iterator = _memory.values().iterator(); _memorySize > _maxMemorySize && iterator.hasNext();)
+            {
+                List<Entry> eldest = iterator.next();
+                iterator.remove();
+                _memorySize -= size(eldest);
+                _evictions.incrementAndGet();
+                evicted.addAll(eldest);
+            }
+        }
+        _stores.incrementAndGet();
+        delete(removed);
+        if (_directory != null && !evicted.isEmpty())
+            spill(evicted);
+    }
+
+    private void spill(final List<Entry> entries)
+    {
+        // Writing and mapping the files is done away from the thread completing the response
+        Executor executor = _executor;
+        if (executor == null)
+        {
+            write(entries);
+            return;
+        }
+        try
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    write(entries);
+                }
+            });
+        }
+        catch (RejectedExecutionException x)
+        {
+            // The entries have already been evicted from memory, so are just dropped
+            LOG.debug("Cannot spill entries", x);
+        }
+    }
+
+    private void write(List<Entry> entries)
+    {
+        List<Entry> spilled = new ArrayList<>(entries.size());
+        for (Entry entry : entries)
+        {
+            File file = new File(_directory, "entry-" + _files.incrementAndGet());
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+            {
+                FileChannel channel = raf.getChannel();
+                ByteBuffer content = entry.getContent();
+                while (content.hasRemaining())
+                    channel.write(content);
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                spilled.add(new Entry(entry, entry._headers, mapped, file));
+            }
+            catch (IOException x)
+            {
+                LOG.warn("Cannot write cache entry to " + file, x);
+                if (!file.delete())
+                    LOG.debug("Cannot delete {}", file);
+            }
+        }
+
+        List<Entry> removed = new ArrayList<>();
+        synchronized (this)
+        {
+            for (Entry entry : spilled)
+            {
+                if (!isRunning() || _memory.containsKey(entry._key))
+                {
+                    // Stopped, or a newer response has been stored meanwhile
+                    removed.add(entry);
+                    continue;
+                }
+                List<Entry> variants = _disk.get(entry._key);
+                List<Entry> updated = new ArrayList<>();
+                updated.add(entry);
+                if (variants != null)
+                    updated.addAll(variants);
+                _disk.put(entry._key, updated);
+                _diskSize += entry.size();
+            }
+
+            for (Iterator<List<Entry>> iterator = _disk.values().iterator(); _diskSize > _maxDiskSize && iterator.hasNext();)
+            {
+                List<Entry> eldest = iterator.next();
+                iterator.remove();
+                _diskSize -= size(eldest);
+                removed.addAll(eldest);
+            }
+        }
+        delete(removed);
+    }
+
+    private Entry refresh(Entry entry, HttpFields headers)
+    {
+        HttpFields refreshed = new HttpFields();
+        refreshed.add(entry._headers);
+        for (HttpField field : headers)
+        {
+            if (isRefreshable(field))
+                refreshed.remove(field.getName());
+        }
+        for (HttpField field : headers)
+        {
+            if (isRefreshable(field))
+                refreshed.add(field);
+        }
+        Entry result = new Entry(entry, refreshed, entry._content, entry._file);
+
+        synchronized (this)
+        {
+            Map<String, List<Entry>> tier = entry._file == null ? _memory : _disk;
+            List<Entry> variants = tier.get(entry._key);
+            if (variants != null)
+            {
+                int index = variants.indexOf(entry);
+                if (index >= 0)
+                {
+                    List<Entry> updated = new ArrayList<>(variants);
+                    updated.set(index, result);
+                    tier.put(entry._key, updated);
+                }
+            }
+        }
+        _revalidations.incrementAndGet();
+        return result;
+    }
+
+    private boolean isRefreshable(HttpField field)
+    {
+        return field.getHeader() != HttpHeader.CONTENT_LENGTH && !ProxyServlet.isHopHeader(field.getName());
+    }
+
+    private void delete(List<Entry> entries)
+    {
+        for (Entry entry : entries)
+        {
+            File file = entry._file;
+            if (file != null && !file.delete())
+                LOG.debug("Cannot delete {}", file);
+        }
+    }
+
+    private static long size(List<Entry> entries)
+    {
+        long result = 0;
+        for (Entry entry : entries)
+            result += entry.size();
+        return result;
+    }
+
+    private static Map<String, String> getDirectives(Enumeration<String> values)
+    {
+        if (values == null || !values.hasMoreElements())
+            return Collections.emptyMap();
+        Map<String, String> result = new HashMap<>();
+        while (values.hasMoreElements())
+        {
+            String value = values.nextElement();
+            if (value == null)
+                continue;
+            for (String directive : value.split(","))
+            {
+                directive = directive.trim();
+                if (directive.length() == 0)
+                    continue;
+                int equals = directive.indexOf('=');
+                if (equals < 0)
+                {
+                    result.put(directive.toLowerCase(Locale.ENGLISH), null);
+                }
+                else
+                {
+                    String argument = directive.substring(equals + 1).trim();
+                    if (argument.length() > 1 && argument.startsWith("\"") && argument.endsWith("\""))
+                        argument = argument.substring(1, argument.length() - 1);
+                    result.put(directive.substring(0, equals).trim().toLowerCase(Locale.ENGLISH), argument);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static long getSeconds(Map<String, String> directives, String name)
+    {
+        String value = directives.get(name);
+        if (value == null)
+            return -1;
+        try
+        {
+            return Math.max(0, Long.parseLong(value));
+        }
+        catch (NumberFormatException x)
+        {
+            return 0;
+        }
+    }
+
+    private static String[] getVary(HttpFields headers)
+    {
+        List<String> result = new ArrayList<>();
+        Enumeration<String> values = headers.getValues(HttpHeader.VARY.asString(), ",");
+        while (values.hasMoreElements())
+        {
+            String name = values.nextElement().trim();
+            if (name.length() > 0)
+                result.add(name);
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    private static String getVaryValue(HttpServletRequest request, String name)
+    {
+        Enumeration<String> values = request.getHeaders(name);
+        if (values == null || !values.hasMoreElements())
+            return null;
+        StringBuilder builder = new StringBuilder(values.nextElement());
+        while (values.hasMoreElements())
+            builder.append(',').append(values.nextElement());
+        return builder.toString();
+    }
+
+    /**
+     * A cached response.
+     */
+    public static class Entry
+    {
+        private final String _key;
+        private final int _status;
+        private final String _reason;
+        private final HttpFields _headers;
+        private final String[] _varyNames;
+        private final String[] _varyValues;
+        private final ByteBuffer _content;
+        private final File _file;
+        private final long _responseTime;
+        private final long _initialAge;
+        private final long _lifetime;
+
+        private Entry(String key, int status, String reason, HttpFields headers, String[] varyNames, String[] varyValues, ByteBuffer content, File file)
+        {
+            _key = key;
+            _status = status;
+            _reason = reason;
+            _headers = headers;
+            _varyNames = varyNames;
+            _varyValues = varyValues;
+            _content = content;
+            _file = file;
+            _responseTime = System.nanoTime();
+            _initialAge = TimeUnit.SECONDS.toMillis(Math.max(0, parseLong(headers.get(HttpHeader.AGE))));
+            _lifetime = lifetime(key, headers);
+        }
+
+        private Entry(Entry entry, HttpFields headers, ByteBuffer content, File file)
+        {
+            this(entry._key, entry._status, entry._reason, headers, entry._varyNames, entry._varyValues, content, file);
+        }
+
+        public int getStatus()
+        {
+            return _status;
+        }
+
+        public String getReason()
+        {
+            return _reason;
+        }
+
+        public HttpFields getHeaders()
+        {
+            return _headers;
+        }
+
+        /**
+         * @return a view of the cached content, which may be a memory-mapped file
+         */
+        public ByteBuffer getContent()
+        {
+            return _content.duplicate();
+        }
+
+        /**
+         * @return the age in seconds of this response
+         */
+        public long getAge()
+        {
+            return TimeUnit.MILLISECONDS.toSeconds(getAgeMillis());
+        }
+
+        private long getAgeMillis()
+        {
+            return _initialAge + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - _responseTime);
+        }
+
+        /**
+         * @param request the request from the client
+         * @return whether this response may be served to the given request without revalidation
+         */
+        public boolean isFresh(HttpServletRequest request)
+        {
+            long age = getAgeMillis();
+            if (age >= _lifetime)
+                return false;
+            Map<String, String> directives = getDirectives(request.getHeaders(HttpHeader.CACHE_CONTROL.asString()));
+            if (directives.containsKey("no-cache"))
+                return false;
+            if (directives.isEmpty() && "no-cache".equalsIgnoreCase(request.getHeader(HttpHeader.PRAGMA.asString())))
+                return false;
+            long maxAge = getSeconds(directives, "max-age");
+            return maxAge < 0 || age <= TimeUnit.SECONDS.toMillis(maxAge);
+        }
+
+        /**
+         * @return whether this response can be revalidated with a conditional request
+         */
+        public boolean hasValidators()
+        {
+            return _headers.containsKey(HttpHeader.ETAG.asString()) || _headers.containsKey(HttpHeader.LAST_MODIFIED.asString());
+        }
+
+        /**
+         * @param request the request from the client
+         * @return whether the validators of the given request match this response
+         */
+        public boolean isNotModified(HttpServletRequest request)
+        {
+            String ifNoneMatch = request.getHeader(HttpHeader.IF_NONE_MATCH.asString());
+            if (ifNoneMatch != null)
+            {
+                String etag = _headers.get(HttpHeader.ETAG);
+                if (etag == null)
+                    return false;
+                etag = weak(etag);
+                for (String tag : ifNoneMatch.split(","))
+                {
+                    tag = tag.trim();
+                    if ("*".equals(tag) || weak(tag).equals(etag))
+                        return true;
+                }
+                return false;
+            }
+            try
+            {
+                long since = request.getDateHeader(HttpHeader.IF_MODIFIED_SINCE.asString());
+                long lastModified = getDate(_headers, HttpHeader.LAST_MODIFIED);
+                return since >= 0 && lastModified > 0 && lastModified <= since;
+            }
+            catch (IllegalArgumentException x)
+            {
+                return false;
+            }
+        }
+
+        private static String weak(String etag)
+        {
+            return etag.startsWith("W/") ? etag.substring(2) : etag;
+        }
+
+        private boolean matches(HttpServletRequest request)
+        {
+            for (int i = 0; i < _varyNames.length; ++i)
+            {
+                String value = getVaryValue(request, _varyNames[i]);
+                if (value == null ? _varyValues[i] != null : !value.equals(_varyValues[i]))
+                    return false;
+            }
+            return true;
+        }
+
+        private boolean sameVariant(Entry that)
+        {
+            return Arrays.equals(_varyNames, that._varyNames) && Arrays.equals(_varyValues, that._varyValues);
+        }
+
+        private long size()
+        {
+            long result = _content.capacity();
+            for (HttpField field : _headers)
+                result += field.getName().length() + field.getValue().length() + 4;
+            return result;
+        }
+
+        private static long lifetime(String key, HttpFields headers)
+        {
+            Map<String, String> directives = getDirectives(headers.getValues(HttpHeader.CACHE_CONTROL.asString()));
+            if (directives.containsKey("no-cache"))
+                return 0;
+            long seconds = getSeconds(directives, "s-maxage");
+            if (seconds < 0)
+                seconds = getSeconds(directives, "max-age");
+            if (seconds >= 0)
+                return TimeUnit.SECONDS.toMillis(seconds);
+
+            long date = getDate(headers, HttpHeader.DATE);
+            if (date < 0)
+                date = System.currentTimeMillis();
+            if (headers.containsKey(HttpHeader.EXPIRES.asString()))
+                return Math.max(0, getDate(headers, HttpHeader.EXPIRES) - date);
+
+            // Heuristic freshness, not applied to query results as they are often dynamic
+            long lastModified = getDate(headers, HttpHeader.LAST_MODIFIED);
+            if (lastModified > 0 && key.indexOf('?') < 0)
+                return Math.min(MAX_HEURISTIC_LIFETIME, Math.max(0, date - lastModified) / 10);
+            return 0;
+        }
+
+        /**
+         * @return the date of the given header, -1 if it is missing, 0 if it is invalid
+         */
+        private static long getDate(HttpFields headers, HttpHeader header)
+        {
+            try
+            {
+                return headers.getDateField(header.asString());
+            }
+            catch (IllegalArgumentException x)
+            {
+                return 0;
+            }
+        }
+
+        private static long parseLong(String value)
+        {
+            if (value == null)
+                return -1;
+            try
+            {
+                return Long.parseLong(value.trim());
+            }
+            catch (NumberFormatException x)
+            {
+                return -1;
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s,%d,%s]", getClass().getSimpleName(), hashCode(), _key, _status, _file == null ? "memory" : _file);
+        }
+    }
+
+    /**
+     * Stores the response to a request, or revalidates a stale cached response.
+     * <p/>
+     * The response is stored, and the requests waiting for the same key are released, as soon as
+     * its content is complete and before it is written to the client, so that the next request
+     * of the client is a hit.
+     * The requests waiting are released early if the response is known not to be stored.
+     */
+    public class Store implements Response.HeadersListener, Response.ContentListener, Response.SuccessListener, Response.CompleteListener
+    {
+        private final AtomicBoolean _released = new AtomicBoolean();
+        private final String _key;
+        private final HttpServletRequest _request;
+        private final Entry _entry;
+        private volatile Entry _revalidated;
+        private ByteArrayOutputStream _content;
+        private long _length;
+        private HttpFields _headers;
+        private String[] _varyNames;
+        private String[] _varyValues;
+
+        private Store(String key, HttpServletRequest request, Entry entry)
+        {
+            _key = key;
+            _request = request;
+            _entry = entry;
+        }
+
+        /**
+         * @return the stale cached response to revalidate, or null
+         */
+        public Entry getEntry()
+        {
+            return _entry;
+        }
+
+        /**
+         * @return the revalidated cached response, or null if the server did not reply 304
+         */
+        public Entry getRevalidated()
+        {
+            return _revalidated;
+        }
+
+        @Override
+        public void onHeaders(Response response)
+        {
+            if (response.getStatus() == 304 && _entry != null)
+            {
+                _revalidated = refresh(_entry, response.getHeaders());
+                LOG.debug("Revalidated {}", _revalidated);
+                release(false);
+                return;
+            }
+
+            if (!isStorable(response))
+            {
+                LOG.debug("Not storing {} {}", _key, response);
+                release(true);
+                return;
+            }
+
+            HttpFields headers = new HttpFields();
+            for (HttpField field : response.getHeaders())
+            {
+                if (!ProxyServlet.isHopHeader(field.getName()))
+                    headers.add(field);
+            }
+            _headers = headers;
+            _varyNames = getVary(headers);
+            _varyValues = new String[_varyNames.length];
+            for (int i = 0; i < _varyNames.length; ++i)
+                _varyValues[i] = getVaryValue(_request, _varyNames[i]);
+            _length = response.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH.asString());
+            _content = new ByteArrayOutputStream(_length > 0 ? (int)_length : 1024);
+        }
+
+        private boolean isStorable(Response response)
+        {
+            if (!CACHEABLE_STATUSES.contains(response.getStatus()))
+                return false;
+            HttpFields headers = response.getHeaders();
+            Map<String, String> directives = getDirectives(headers.getValues(HttpHeader.CACHE_CONTROL.asString()));
+            if (directives.containsKey("no-store") || directives.containsKey("private"))
+                return false;
+            if (headers.containsKey(HttpHeader.SET_COOKIE.asString()) || headers.containsKey(HttpHeader.SET_COOKIE2.asString()))
+                return false;
+            for (String name : getVary(headers))
+            {
+                if ("*".equals(name))
+                    return false;
+            }
+            try
+            {
+                if (headers.getLongField(HttpHeader.CONTENT_LENGTH.asString()) > _maxEntrySize)
+                    return false;
+            }
+            catch (NumberFormatException x)
+            {
+                return false;
+            }
+            return Entry.lifetime(_key, headers) > 0 ||
+                    headers.containsKey(HttpHeader.ETAG.asString()) ||
+                    headers.containsKey(HttpHeader.LAST_MODIFIED.asString());
+        }
+
+        @Override
+        public void onContent(Response response, ByteBuffer content)
+        {
+            ByteArrayOutputStream output = _content;
+            if (output == null)
+                return;
+            int length = content.remaining();
+            if (output.size() + length > _maxEntrySize)
+            {
+                LOG.debug("Not storing {}, content larger than {} bytes", _key, _maxEntrySize);
+                _content = null;
+                release(true);
+                return;
+            }
+            if (content.hasArray())
+            {
+                output.write(content.array(), content.arrayOffset() + content.position(), length);
+            }
+            else
+            {
+                byte[] bytes = new byte[length];
+                content.slice().get(bytes);
+                output.write(bytes, 0, length);
+            }
+
+            // The client may receive the last content, and send its next request,
+            // before the response succeeds; the content is complete, store it now
+            if (output.size() == _length)
+                store(response);
+        }
+
+        @Override
+        public void onSuccess(Response response)
+        {
+            store(response);
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            _content = null;
+            release(false);
+        }
+
+        /**
+         * Releases the requests waiting for this store, when the request to the server is not sent.
+         */
+        public void cancel()
+        {
+            _content = null;
+            release(false);
+        }
+
+        private void store(Response response)
+        {
+            ByteArrayOutputStream output = _content;
+            _content = null;
+            if (output != null)
+            {
+                Entry entry = new Entry(_key, response.getStatus(), response.getReason(), _headers, _varyNames, _varyValues,
+                        ByteBuffer.wrap(output.toByteArray()), null);
+                ProxyCache.this.store(entry);
+                LOG.debug("Stored {}", entry);
+            }
+            release(false);
+        }
+
+        private void release(boolean pass)
+        {
+            if (_released.compareAndSet(false, true))
+                ProxyCache.this.release(_key, pass);
+        }
+    }
+}
@@ -27,10 +27,20 @@ import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.ForkInvoker;
 import org.eclipse.jetty.util.log.Logger;
 
+/**
+ * <p>One side of a tunnel, that reads from its own {@link EndPoint} and writes to the {@link EndPoint}
+ * of the {@link #getConnection() other side}.</p>
+ * <p>A buffer is acquired from the {@link ByteBufferPool} only when there is data to read, and released
+ * as soon as the data is written, so that idle tunnels hold no buffers. The size of the buffers starts
+ * from the {@link #getInputBufferSize() input buffer size}, grows up to the
+ * {@link #getMaxInputBufferSize() max input buffer size} while reads fill the buffers, as for bulk
+ * transfers, and shrinks back when reads are small, as for interactive traffic.</p>
+ */
 public abstract class ProxyConnection extends AbstractConnection
 {
     protected static final Logger LOG = ConnectHandler.LOG;
@@ -38,6 +48,11 @@ public abstract class ProxyConnection extends AbstractConnection
     private final ByteBufferPool bufferPool;
     private final ConcurrentMap<String, Object> context;
     private Connection connection;
+    private int maxInputBufferSize;
+    private boolean coalesceWrites;
+    private int bufferSize;
+    private volatile long bytesIn;
+    private volatile long bytesOut;
 
     protected ProxyConnection(EndPoint endp, Executor executor, ByteBufferPool bufferPool, ConcurrentMap<String, Object> context)
     {
@@ -66,30 +81,125 @@ public abstract class ProxyConnection extends AbstractConnection
         this.connection = connection;
     }
 
+    /**
+     * @return the max size of the buffers used to read, or 0 if it is the {@link #getInputBufferSize() input buffer size}
+     */
+    public int getMaxInputBufferSize()
+    {
+        return maxInputBufferSize;
+    }
+
+    public void setMaxInputBufferSize(int maxInputBufferSize)
+    {
+        this.maxInputBufferSize = maxInputBufferSize;
+    }
+
+    /**
+     * @return whether reads continue while data is available and the buffer is not full,
+     * so that fewer and larger writes are made to the other side
+     */
+    public boolean isCoalesceWrites()
+    {
+        return coalesceWrites;
+    }
+
+    public void setCoalesceWrites(boolean coalesceWrites)
+    {
+        this.coalesceWrites = coalesceWrites;
+    }
+
+    /**
+     * @return the number of bytes read from this side of the tunnel
+     */
+    @Override
+    public long getBytesIn()
+    {
+        return bytesIn;
+    }
+
+    /**
+     * @return the number of bytes written to this side of the tunnel
+     */
+    @Override
+    public long getBytesOut()
+    {
+        return bytesOut;
+    }
+
+    protected void onBytesIn(int bytes)
+    {
+        bytesIn += bytes;
+    }
+
+    protected void onBytesOut(int bytes)
+    {
+        bytesOut += bytes;
+    }
+
+    private int getBufferSize()
+    {
+        int minimum = getInputBufferSize();
+        if (bufferSize < minimum)
+            bufferSize = minimum;
+        return bufferSize;
+    }
+
+    private void adaptBufferSize(int filled)
+    {
+        int minimum = getInputBufferSize();
+        if (filled >= bufferSize)
+            bufferSize = Math.min(bufferSize * 2, Math.max(minimum, maxInputBufferSize));
+        else if (filled <= bufferSize / 4)
+            bufferSize = Math.max(bufferSize / 2, minimum);
+    }
+
     @Override
     public void onFillable()
     {
-        final ByteBuffer buffer = getByteBufferPool().acquire(getInputBufferSize(), true);
+        final ByteBuffer buffer = getByteBufferPool().acquire(getBufferSize(), true);
         try
         {
-            final int filled = read(getEndPoint(), buffer);
+            int filled = read(getEndPoint(), buffer);
+            boolean shutdown = filled < 0;
+            if (filled > 0 && isCoalesceWrites())
+            {
+                while (BufferUtil.space(buffer) > 0)
+                {
+                    int more = read(getEndPoint(), buffer);
+                    if (more <= 0)
+                    {
+                        shutdown = more < 0;
+                        break;
+                    }
+                    filled += more;
+                }
+            }
             LOG.debug("{} filled {} bytes", this, filled);
             if (filled > 0)
             {
+                onBytesIn(filled);
+                adaptBufferSize(filled);
+                final int length = filled;
+                final boolean eof = shutdown;
                 write(getConnection().getEndPoint(), buffer, new Callback()
                 {
                     @Override
                     public void succeeded()
                     {
-                        LOG.debug("{} wrote {} bytes", this, filled);
+                        LOG.debug("{} wrote {} bytes", this, length);
                         bufferPool.release(buffer);
-                        invoker.invoke(null);
+                        if (connection instanceof ProxyConnection)
+                            ((ProxyConnection)connection).onBytesOut(length);
+                        if (eof)
+                            connection.getEndPoint().shutdownOutput();
+                        else
+                            invoker.invoke(null);
                     }
 
                     @Override
                     public void failed(Throwable x)
                     {
-                        LOG.debug(this + " failed to write " + filled + " bytes", x);
+                        LOG.debug(this + " failed to write " + length + " bytes", x);
                         bufferPool.release(buffer);
                         connection.close();
                     }
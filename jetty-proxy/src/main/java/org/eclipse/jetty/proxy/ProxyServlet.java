@@ -18,6 +18,7 @@
 
 package org.eclipse.jetty.proxy;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.URI;
@@ -35,12 +36,14 @@ import javax.servlet.AsyncContext;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.UnavailableException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
@@ -49,6 +52,7 @@ import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.util.HttpCookieStore;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -73,13 +77,17 @@ import org.eclipse.jetty.util.thread.QueuedThreadPool;
  * </ul>
  * <p/>
  * In addition, see {@link #createHttpClient()} for init parameters used to configure
- * the {@link HttpClient} instance.
+ * the {@link HttpClient} instance, and {@link #createProxyCache()} for init parameters
+ * used to cache the responses.
  *
  * @see ConnectHandler
  */
 public class ProxyServlet extends HttpServlet
 {
     protected static final String ASYNC_CONTEXT = ProxyServlet.class.getName() + ".asyncContext";
+    private static final String CACHE_STORE_ATTRIBUTE = ProxyServlet.class.getName() + ".cacheStore";
+    private static final String CACHE_WAITED_ATTRIBUTE = ProxyServlet.class.getName() + ".cacheWaited";
+    private static final String CACHE_REVALIDATED_ATTRIBUTE = ProxyServlet.class.getName() + ".cacheRevalidated";
     private static final Set<String> HOP_HEADERS = new HashSet<>();
     static
     {
@@ -101,6 +109,7 @@ public class ProxyServlet extends HttpServlet
     private String _hostHeader;
     private String _viaHost;
     private HttpClient _client;
+    private ProxyCache _cache;
     private long _timeout;
 
     @Override
@@ -123,6 +132,10 @@ public class ProxyServlet extends HttpServlet
             // Put the HttpClient in the context to leverage ContextHandler.MANAGED_ATTRIBUTES
             getServletContext().setAttribute(config.getServletName() + ".HttpClient", _client);
 
+            _cache = createProxyCache();
+            if (_cache != null)
+                getServletContext().setAttribute(config.getServletName() + ".ProxyCache", _cache);
+
             String whiteList = config.getInitParameter("whiteList");
             if (whiteList != null)
                 getWhiteListHosts().addAll(parseList(whiteList));
@@ -142,6 +155,19 @@ public class ProxyServlet extends HttpServlet
         return _viaHost;
     }
 
+    protected HttpClient getHttpClient()
+    {
+        return _client;
+    }
+
+    /**
+     * @return the cache of the responses, or null if responses are not cached
+     */
+    protected ProxyCache getProxyCache()
+    {
+        return _cache;
+    }
+
     public long getTimeout()
     {
         return _timeout;
@@ -189,6 +215,8 @@ public class ProxyServlet extends HttpServlet
         try
         {
             _client.stop();
+            if (_cache != null)
+                _cache.stop();
         }
         catch (Exception x)
         {
@@ -325,6 +353,81 @@ public class ProxyServlet extends HttpServlet
         return new HttpClient();
     }
 
+    /**
+     * Creates a {@link ProxyCache} instance, configured with init parameters of this servlet.
+     * <p/>
+     * Responses are cached only if the cacheMaxMemorySize init parameter is set.
+     * The init parameters used to configure the {@link ProxyCache} instance are:
+     * <table>
+     * <thead>
+     * <tr>
+     * <th>init-param</th>
+     * <th>default</th>
+     * <th>description</th>
+     * </tr>
+     * </thead>
+     * <tbody>
+     * <tr>
+     * <td>cacheMaxMemorySize</td>
+     * <td>-</td>
+     * <td>The max size in bytes of the responses cached in memory, see {@link ProxyCache#setMaxMemorySize(long)}</td>
+     * </tr>
+     * <tr>
+     * <td>cacheMaxEntrySize</td>
+     * <td>1048576</td>
+     * <td>The max size in bytes of a cached response content, see {@link ProxyCache#setMaxEntrySize(int)}</td>
+     * </tr>
+     * <tr>
+     * <td>cacheDirectory</td>
+     * <td>-</td>
+     * <td>The directory of the memory-mapped files the responses evicted from memory are moved to, see {@link ProxyCache#setDirectory(File)}</td>
+     * </tr>
+     * <tr>
+     * <td>cacheMaxDiskSize</td>
+     * <td>1073741824</td>
+     * <td>The max size in bytes of the responses cached on disk, see {@link ProxyCache#setMaxDiskSize(long)}</td>
+     * </tr>
+     * </tbody>
+     * </table>
+     *
+     * @return a {@link ProxyCache} configured from the {@link #getServletConfig() servlet configuration}, or null
+     * @throws ServletException if the {@link ProxyCache} cannot be created
+     */
+    protected ProxyCache createProxyCache() throws ServletException
+    {
+        ServletConfig config = getServletConfig();
+
+        String value = config.getInitParameter("cacheMaxMemorySize");
+        if (value == null)
+            return null;
+
+        ProxyCache cache = new ProxyCache();
+        cache.setExecutor(_client.getExecutor());
+        cache.setMaxMemorySize(Long.parseLong(value));
+
+        value = config.getInitParameter("cacheMaxEntrySize");
+        if (value != null)
+            cache.setMaxEntrySize(Integer.parseInt(value));
+
+        value = config.getInitParameter("cacheDirectory");
+        if (value != null)
+            cache.setDirectory(new File(value));
+
+        value = config.getInitParameter("cacheMaxDiskSize");
+        if (value != null)
+            cache.setMaxDiskSize(Long.parseLong(value));
+
+        try
+        {
+            cache.start();
+            return cache;
+        }
+        catch (Exception x)
+        {
+            throw new ServletException(x);
+        }
+    }
+
     private Set<String> parseList(String list)
     {
         Set<String> result = new HashSet<>();
@@ -373,6 +476,35 @@ public class ProxyServlet extends HttpServlet
     {
         final int requestId = getRequestId(request);
 
+        // Requests dispatched again after the server revalidated the cached response
+        ProxyCache.Entry revalidated = (ProxyCache.Entry)request.getAttribute(CACHE_REVALIDATED_ATTRIBUTE);
+        if (revalidated != null)
+        {
+            request.removeAttribute(CACHE_REVALIDATED_ATTRIBUTE);
+            onCachedResponse(request, response, revalidated);
+            return;
+        }
+
+        if (_cache != null && serviceFromCache(request, response))
+            return;
+
+        try
+        {
+            sendProxyRequest(request, response, requestId);
+        }
+        catch (Throwable x)
+        {
+            // A store reserved by serviceFromCache() is otherwise only released by the
+            // response listener, and would keep the requests waiting for it forever
+            ProxyCache.Store store = (ProxyCache.Store)request.getAttribute(CACHE_STORE_ATTRIBUTE);
+            if (store != null)
+                store.cancel();
+            throw x;
+        }
+    }
+
+    private void sendProxyRequest(final HttpServletRequest request, final HttpServletResponse response, int requestId) throws ServletException, IOException
+    {
         URI rewrittenURI = rewriteURI(request);
 
         if (_log.isDebugEnabled())
@@ -385,6 +517,9 @@ public class ProxyServlet extends HttpServlet
 
         if (rewrittenURI == null)
         {
+            ProxyCache.Store store = (ProxyCache.Store)request.getAttribute(CACHE_STORE_ATTRIBUTE);
+            if (store != null)
+                store.cancel();
             response.sendError(HttpServletResponse.SC_FORBIDDEN);
             return;
         }
@@ -427,30 +562,14 @@ public class ProxyServlet extends HttpServlet
         addViaHeader(proxyRequest);
         addXForwardedHeaders(proxyRequest, request);
 
-        if (hasContent)
-        {
-            proxyRequest.content(new InputStreamContentProvider(request.getInputStream())
-            {
-                @Override
-                public long getLength()
-                {
-                    return request.getContentLength();
-                }
-
-                @Override
-                protected ByteBuffer onRead(byte[] buffer, int offset, int length)
-                {
-                    _log.debug("{} proxying content to upstream: {} bytes", requestId, length);
-                    return super.onRead(buffer, offset, length);
-                }
-            });
-        }
-
         final AsyncContext asyncContext = request.startAsync();
         // We do not timeout the continuation, but the proxy request
         asyncContext.setTimeout(0);
         request.setAttribute(ASYNC_CONTEXT, asyncContext);
 
+        if (hasContent)
+            proxyRequest.content(proxyRequestContent(proxyRequest, request));
+
         customizeProxyRequest(proxyRequest, request);
 
         if (_log.isDebugEnabled())
@@ -486,8 +605,164 @@ public class ProxyServlet extends HttpServlet
                     proxyRequest.getHeaders().toString().trim());
         }
 
+        if (_cache != null)
+            addProxyCacheListener(proxyRequest, request);
+
         proxyRequest.timeout(getTimeout(), TimeUnit.MILLISECONDS);
-        proxyRequest.send(new ProxyResponseListener(request, response));
+        proxyRequest.send(newProxyResponseListener(request, response));
+    }
+
+    /**
+     * @return true if the request has been served from the cache, or is waiting for another request
+     * of the same resource to be dispatched again
+     */
+    private boolean serviceFromCache(HttpServletRequest request, HttpServletResponse response) throws IOException
+    {
+        if (!ProxyCache.isCacheable(request))
+            return false;
+
+        String key = ProxyCache.getKey(request);
+        ProxyCache.Entry entry = _cache.lookup(key, request);
+        if (entry != null && entry.isFresh(request))
+        {
+            _log.debug("{} serving from cache {}", getRequestId(request), entry);
+            onCachedResponse(request, response, entry);
+            return true;
+        }
+
+        // Requests with their own validators are proxied as is
+        if (ProxyCache.isConditional(request))
+            return false;
+
+        // Create the store now, so that the requests that arrive from now on wait for it
+        ProxyCache.Store store = _cache.newStore(key, request, entry != null && entry.hasValidators() ? entry : null);
+        if (store != null)
+        {
+            request.setAttribute(CACHE_STORE_ATTRIBUTE, store);
+            return false;
+        }
+
+        // Requests dispatched again after waiting do not wait twice
+        if (request.getAttribute(CACHE_WAITED_ATTRIBUTE) == null)
+        {
+            request.setAttribute(CACHE_WAITED_ATTRIBUTE, Boolean.TRUE);
+            if (_cache.await(key, request))
+            {
+                _log.debug("{} waiting for {}", getRequestId(request), key);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addProxyCacheListener(Request proxyRequest, HttpServletRequest request)
+    {
+        ProxyCache.Store store = (ProxyCache.Store)request.getAttribute(CACHE_STORE_ATTRIBUTE);
+        if (store == null)
+            return;
+
+        ProxyCache.Entry entry = store.getEntry();
+        if (entry != null)
+        {
+            String etag = entry.getHeaders().get(HttpHeader.ETAG);
+            if (etag != null)
+                proxyRequest.header(HttpHeader.IF_NONE_MATCH, etag);
+            String lastModified = entry.getHeaders().get(HttpHeader.LAST_MODIFIED);
+            if (lastModified != null)
+                proxyRequest.header(HttpHeader.IF_MODIFIED_SINCE, lastModified);
+        }
+
+        proxyRequest.onResponseHeaders(store).onResponseContent(store).onResponseSuccess(store).onComplete(store);
+    }
+
+    /**
+     * @return the cached response revalidated by the given response from the server, or null
+     */
+    private ProxyCache.Store getRevalidation(HttpServletRequest request, Response proxyResponse)
+    {
+        if (proxyResponse.getStatus() != HttpServletResponse.SC_NOT_MODIFIED)
+            return null;
+        ProxyCache.Store store = (ProxyCache.Store)request.getAttribute(CACHE_STORE_ATTRIBUTE);
+        return store == null || store.getEntry() == null ? null : store;
+    }
+
+    /**
+     * Writes a cached response to the client, or a 304 response if the validators
+     * of the request match the cached response.
+     *
+     * @param request the request from the client
+     * @param response the response to the client
+     * @param entry the cached response
+     * @throws IOException if the response cannot be written
+     */
+    protected void onCachedResponse(HttpServletRequest request, HttpServletResponse response, ProxyCache.Entry entry) throws IOException
+    {
+        boolean notModified = entry.isNotModified(request);
+        response.setStatus(notModified ? HttpServletResponse.SC_NOT_MODIFIED : entry.getStatus());
+        for (HttpField field : entry.getHeaders())
+        {
+            String headerName = field.getName();
+            if (notModified && field.getHeader() == HttpHeader.CONTENT_LENGTH)
+                continue;
+
+            String newHeaderValue = filterResponseHeader(request, headerName, field.getValue());
+            if (newHeaderValue == null || newHeaderValue.trim().length() == 0)
+                continue;
+
+            response.addHeader(headerName, newHeaderValue);
+        }
+        response.setHeader(HttpHeader.AGE.asString(), String.valueOf(entry.getAge()));
+        if (notModified)
+            return;
+
+        ByteBuffer content = entry.getContent();
+        ServletOutputStream output = response.getOutputStream();
+        if (output instanceof HttpOutput)
+        {
+            ((HttpOutput)output).write(content);
+        }
+        else
+        {
+            byte[] bytes = new byte[content.remaining()];
+            content.get(bytes);
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * @param proxyRequest the request to the server
+     * @param request the request from the client
+     * @return the content provider of the request to the server, which reads the content of the request from the client
+     * @throws IOException if the request content cannot be read
+     */
+    protected ContentProvider proxyRequestContent(final Request proxyRequest, final HttpServletRequest request) throws IOException
+    {
+        final int requestId = getRequestId(request);
+        return new InputStreamContentProvider(request.getInputStream())
+        {
+            @Override
+            public long getLength()
+            {
+                return request.getContentLength();
+            }
+
+            @Override
+            protected ByteBuffer onRead(byte[] buffer, int offset, int length)
+            {
+                _log.debug("{} proxying content to upstream: {} bytes", requestId, length);
+                return super.onRead(buffer, offset, length);
+            }
+        };
+    }
+
+    /**
+     * @param request the request from the client
+     * @param response the response to the client
+     * @return the listener of the response from the server, that forwards the response to the client
+     */
+    protected Response.Listener newProxyResponseListener(HttpServletRequest request, HttpServletResponse response)
+    {
+        return new ProxyResponseListener(request, response);
     }
 
     protected Request addViaHeader(Request proxyRequest)
@@ -503,13 +778,17 @@ public class ProxyServlet extends HttpServlet
         proxyRequest.header(HttpHeader.X_FORWARDED_SERVER, request.getLocalName());
     }
 
+    static boolean isHopHeader(String headerName)
+    {
+        return HOP_HEADERS.contains(headerName.toLowerCase(Locale.ENGLISH));
+    }
+
     protected void onResponseHeaders(HttpServletRequest request, HttpServletResponse response, Response proxyResponse)
     {
         for (HttpField field : proxyResponse.getHeaders())
         {
             String headerName = field.getName();
-            String lowerHeaderName = headerName.toLowerCase(Locale.ENGLISH);
-            if (HOP_HEADERS.contains(lowerHeaderName))
+            if (isHopHeader(headerName))
                 continue;
 
             String newHeaderValue = filterResponseHeader(request, headerName, field.getValue());
@@ -529,7 +808,11 @@ public class ProxyServlet extends HttpServlet
     protected void onResponseSuccess(HttpServletRequest request, HttpServletResponse response, Response proxyResponse)
     {
         AsyncContext asyncContext = (AsyncContext)request.getAttribute(ASYNC_CONTEXT);
-        asyncContext.complete();
+        // A revalidated cached response is written by the request dispatched again
+        if (request.getAttribute(CACHE_REVALIDATED_ATTRIBUTE) != null)
+            asyncContext.dispatch();
+        else
+            asyncContext.complete();
         _log.debug("{} proxying successful", getRequestId(request));
     }
 
@@ -670,10 +953,10 @@ public class ProxyServlet extends HttpServlet
         }
     }
 
-    private class ProxyResponseListener extends Response.Listener.Adapter
+    protected class ProxyResponseListener extends Response.Listener.Adapter
     {
-        private final HttpServletRequest request;
-        private final HttpServletResponse response;
+        protected final HttpServletRequest request;
+        protected final HttpServletResponse response;
 
         public ProxyResponseListener(HttpServletRequest request, HttpServletResponse response)
         {
@@ -684,12 +967,25 @@ public class ProxyServlet extends HttpServlet
         @Override
         public void onBegin(Response proxyResponse)
         {
-            response.setStatus(proxyResponse.getStatus());
+            if (getRevalidation(request, proxyResponse) == null)
+                response.setStatus(proxyResponse.getStatus());
         }
 
         @Override
         public void onHeaders(Response proxyResponse)
         {
+            ProxyCache.Store revalidation = getRevalidation(request, proxyResponse);
+            if (revalidation != null)
+            {
+                // The server confirmed that the cached response is still valid; it is
+                // written when the request is dispatched again, not by this thread
+                ProxyCache.Entry entry = revalidation.getRevalidated();
+                if (entry == null)
+                    entry = revalidation.getEntry();
+                request.setAttribute(CACHE_REVALIDATED_ATTRIBUTE, entry);
+                return;
+            }
+
             onResponseHeaders(request, response, proxyResponse);
 
             if (_log.isDebugEnabled())
@@ -757,6 +1053,7 @@ public class ProxyServlet extends HttpServlet
         @Override
         public void onFailure(Response proxyResponse, Throwable failure)
         {
+            request.removeAttribute(CACHE_REVALIDATED_ATTRIBUTE);
             onResponseFailure(request, response, proxyResponse, failure);
         }
 
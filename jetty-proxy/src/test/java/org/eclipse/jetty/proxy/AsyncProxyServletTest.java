@@ -0,0 +1,439 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpProxy;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+import org.eclipse.jetty.client.util.FutureResponseListener;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.toolchain.test.AdvancedRunner;
+import org.eclipse.jetty.toolchain.test.TestTracker;
+import org.eclipse.jetty.toolchain.test.annotation.Slow;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AdvancedRunner.class)
+public class AsyncProxyServletTest
+{
+    private static final String PROXIED_HEADER = "X-Proxied";
+    @Rule
+    public final TestTracker tracker = new TestTracker();
+    private HttpClient client;
+    private QueuedThreadPool proxyThreadPool;
+    private Server proxy;
+    private ServerConnector proxyConnector;
+    private Server server;
+    private ServerConnector serverConnector;
+
+    private void prepareProxy(ProxyServlet proxyServlet) throws Exception
+    {
+        proxyThreadPool = new QueuedThreadPool();
+        proxyThreadPool.setName("proxy");
+        proxy = new Server(proxyThreadPool);
+        proxyConnector = new ServerConnector(proxy);
+        proxy.addConnector(proxyConnector);
+
+        ServletContextHandler proxyCtx = new ServletContextHandler(proxy, "/", true, false);
+        ServletHolder proxyServletHolder = new ServletHolder(proxyServlet);
+        proxyCtx.addServlet(proxyServletHolder, "/*");
+
+        proxy.start();
+
+        client = new HttpClient();
+        client.getProxyConfiguration().getProxies().add(new HttpProxy("localhost", proxyConnector.getLocalPort()));
+        client.start();
+    }
+
+    private void prepareServer(HttpServlet servlet) throws Exception
+    {
+        server = new Server();
+        serverConnector = new ServerConnector(server);
+        server.addConnector(serverConnector);
+
+        ServletContextHandler appCtx = new ServletContextHandler(server, "/", true, false);
+        ServletHolder appServletHolder = new ServletHolder(servlet);
+        appCtx.addServlet(appServletHolder, "/*");
+
+        server.start();
+    }
+
+    @After
+    public void dispose() throws Exception
+    {
+        if (client != null)
+            client.stop();
+        if (proxy != null)
+            proxy.stop();
+        if (server != null)
+            server.stop();
+    }
+
+    @Test
+    public void testProxyWithLargeResponseContent() throws Exception
+    {
+        prepareProxy(new AsyncProxyServlet());
+
+        final byte[] content = new byte[2 * 1024 * 1024];
+        new Random().nextBytes(content);
+        prepareServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+            {
+                if (req.getHeader("Via") != null)
+                    resp.addHeader(PROXIED_HEADER, "true");
+                resp.getOutputStream().write(content);
+            }
+        });
+
+        ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertTrue(response.getHeaders().containsKey(PROXIED_HEADER));
+        Assert.assertArrayEquals(content, response.getContent());
+    }
+
+    @Test
+    public void testProxyWithRequestContentAndResponseContent() throws Exception
+    {
+        prepareProxy(new AsyncProxyServlet());
+        prepareServer(new HttpServlet()
+        {
+            @Override
+            protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+            {
+                if (req.getHeader("Via") != null)
+                    resp.addHeader(PROXIED_HEADER, "true");
+                IO.copy(req.getInputStream(), resp.getOutputStream());
+            }
+        });
+
+        byte[] content = new byte[512 * 1024];
+        new Random().nextBytes(content);
+        ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+                .method(HttpMethod.POST)
+                .content(new BytesContentProvider(content))
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertTrue(response.getHeaders().containsKey(PROXIED_HEADER));
+        Assert.assertArrayEquals(content, response.getContent());
+    }
+
+    @Test
+    public void testSlowClientStopsUpstreamReads() throws Exception
+    {
+        prepareProxy(new AsyncProxyServlet());
+
+        // Large enough to exceed the buffering of the network and of the proxy
+        final long length = 128 * 1024 * 1024;
+        final AtomicLong written = new AtomicLong();
+        prepareServer(new SourceServlet(length, written));
+
+        StallingContentListener listener = new StallingContentListener();
+        final CountDownLatch latch = new CountDownLatch(1);
+        client.newRequest("localhost", serverConnector.getLocalPort())
+                .onResponseContentAsync(listener)
+                .send(new Response.CompleteListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        if (result.isSucceeded() && result.getResponse().getStatus() == 200)
+                            latch.countDown();
+                    }
+                });
+
+        // Wait for the server to be blocked by the proxy not reading
+        long stalled = awaitStable(written);
+        Assert.assertThat(stalled, Matchers.lessThan(length));
+
+        listener.release();
+
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(length, written.get());
+        Assert.assertEquals(length, listener.getReceived());
+    }
+
+    @Test
+    public void testSlowServerStopsDownstreamReads() throws Exception
+    {
+        prepareProxy(new AsyncProxyServlet());
+
+        final CountDownLatch serverLatch = new CountDownLatch(1);
+        prepareServer(new HttpServlet()
+        {
+            @Override
+            protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                try
+                {
+                    // Do not read the request content until released
+                    serverLatch.await(30, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new ServletException(x);
+                }
+                ServletInputStream input = request.getInputStream();
+                byte[] buffer = new byte[64 * 1024];
+                long read = 0;
+                while (true)
+                {
+                    int count = input.read(buffer);
+                    if (count < 0)
+                        break;
+                    read += count;
+                }
+                response.getOutputStream().print(String.valueOf(read));
+            }
+        });
+
+        // Large enough to exceed the buffering of the network and of the proxy
+        final long length = 64 * 1024 * 1024;
+        final AtomicLong sent = new AtomicLong();
+        final DeferredContentProvider provider = new DeferredContentProvider();
+        Request request = client.newRequest("localhost", serverConnector.getLocalPort())
+                .method(HttpMethod.POST)
+                .header(HttpHeader.CONTENT_TYPE, "application/octet-stream")
+                .content(provider);
+        FutureResponseListener listener = new FutureResponseListener(request);
+        request.send(listener);
+
+        // Offer the next chunk only when the previous has been sent, as a client reading a file would
+        Thread producer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                final Semaphore semaphore = new Semaphore(1);
+                final byte[] chunk = new byte[64 * 1024];
+                try
+                {
+                    for (long offered = 0; offered < length; offered += chunk.length)
+                    {
+                        semaphore.acquire();
+                        provider.offer(ByteBuffer.wrap(chunk), new Callback.Adapter()
+                        {
+                            @Override
+                            public void succeeded()
+                            {
+                                sent.addAndGet(chunk.length);
+                                semaphore.release();
+                            }
+                        });
+                    }
+                    provider.close();
+                }
+                catch (InterruptedException x)
+                {
+                    provider.close();
+                }
+            }
+        };
+        producer.start();
+
+        // Wait for the client to be blocked by the proxy not reading
+        long stalled = awaitStable(sent);
+        Assert.assertThat(stalled, Matchers.greaterThan(0L));
+        Assert.assertThat(stalled, Matchers.lessThan(length));
+
+        serverLatch.countDown();
+
+        ContentResponse response = listener.get(30, TimeUnit.SECONDS);
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(String.valueOf(length), response.getContentAsString());
+        producer.join(5000);
+    }
+
+    @Slow
+    @Test
+    public void testThreadUsageWithSlowClients() throws Exception
+    {
+        int clients = 10;
+        int blocking = busyThreadsWithSlowClients(new ProxyServlet(), clients);
+        int async = busyThreadsWithSlowClients(new AsyncProxyServlet(), clients);
+        System.err.printf("Proxy threads busy with %d slow clients: ProxyServlet=%d AsyncProxyServlet=%d%n", clients, blocking, async);
+
+        // Each slow client blocks a thread of ProxyServlet, but none of AsyncProxyServlet
+        Assert.assertThat(blocking, Matchers.greaterThanOrEqualTo(clients));
+        Assert.assertThat(async, Matchers.lessThan(clients));
+    }
+
+    private int busyThreadsWithSlowClients(ProxyServlet proxyServlet, int clients) throws Exception
+    {
+        prepareProxy(proxyServlet);
+        AtomicLong written = new AtomicLong();
+        prepareServer(new SourceServlet(128 * 1024 * 1024, written));
+
+        int idle = proxyThreadPool.getThreads() - proxyThreadPool.getIdleThreads();
+
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < clients; ++i)
+        {
+            Request request = client.newRequest("localhost", serverConnector.getLocalPort())
+                    .onResponseContentAsync(new StallingContentListener());
+            request.send(new Response.CompleteListener()
+            {
+                @Override
+                public void onComplete(Result result)
+                {
+                }
+            });
+            requests.add(request);
+        }
+        awaitStable(written);
+
+        int busy = proxyThreadPool.getThreads() - proxyThreadPool.getIdleThreads();
+
+        for (Request request : requests)
+            request.abort(new Exception("Slow client aborted"));
+        dispose();
+        client = null;
+        proxy = null;
+        server = null;
+
+        return busy - idle;
+    }
+
+    private long awaitStable(AtomicLong written) throws InterruptedException
+    {
+        long previous = -1;
+        long current = written.get();
+        while (current != previous)
+        {
+            TimeUnit.MILLISECONDS.sleep(500);
+            previous = current;
+            current = written.get();
+        }
+        return current;
+    }
+
+    /**
+     * Writes the given number of bytes with blocking writes, counting the bytes written.
+     */
+    private static class SourceServlet extends HttpServlet
+    {
+        private final long length;
+        private final AtomicLong written;
+
+        private SourceServlet(long length, AtomicLong written)
+        {
+            this.length = length;
+            this.written = written;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+        {
+            response.setHeader("Content-Length", String.valueOf(length));
+            ServletOutputStream output = response.getOutputStream();
+            byte[] chunk = new byte[64 * 1024];
+            long remaining = length;
+            while (remaining > 0)
+            {
+                int size = (int)Math.min(chunk.length, remaining);
+                output.write(chunk, 0, size);
+                written.addAndGet(size);
+                remaining -= size;
+            }
+        }
+    }
+
+    /**
+     * Holds the content callbacks, as a slow client would, until released.
+     */
+    private static class StallingContentListener implements Response.AsyncContentListener
+    {
+        private final List<Callback> callbacks = new ArrayList<>();
+        private long received;
+        private boolean released;
+
+        @Override
+        public void onContent(Response response, ByteBuffer content, Callback callback)
+        {
+            synchronized (this)
+            {
+                received += content.remaining();
+                if (!released)
+                {
+                    callbacks.add(callback);
+                    return;
+                }
+            }
+            callback.succeeded();
+        }
+
+        public void release()
+        {
+            List<Callback> pending;
+            synchronized (this)
+            {
+                released = true;
+                pending = new ArrayList<>(callbacks);
+                callbacks.clear();
+            }
+            for (Callback callback : pending)
+                callback.succeeded();
+        }
+
+        public synchronized long getReceived()
+        {
+            return received;
+        }
+    }
+}
@@ -22,6 +22,8 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -32,6 +34,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.session.AbstractSessionIdManager;
@@ -48,10 +51,12 @@ public class BalancerServletTest
     private static final String CONTEXT_PATH = "/context";
     private static final String SERVLET_PATH = "/mapping";
 
+    private final Map<String, String> initParams = new HashMap<>();
     private boolean stickySessions;
     private Server server1;
     private Server server2;
     private Server balancer;
+    private ServletContextHandler balancerContext;
     private HttpClient client;
 
     @Before
@@ -79,12 +84,16 @@ public class BalancerServletTest
         server2.start();
 
         ServletHolder balancerServletHolder = new ServletHolder(BalancerServlet.class);
+        balancerServletHolder.setName("balancer");
+        balancerServletHolder.setInitOrder(1);
+        balancerServletHolder.setInitParameters(initParams);
         balancerServletHolder.setInitParameter("stickySessions", String.valueOf(stickySessions));
         balancerServletHolder.setInitParameter("proxyPassReverse", "true");
         balancerServletHolder.setInitParameter("balancerMember." + "node1" + ".proxyTo", "http://localhost:" + getServerPort(server1));
         balancerServletHolder.setInitParameter("balancerMember." + "node2" + ".proxyTo", "http://localhost:" + getServerPort(server2));
 
         balancer = createServer(balancerServletHolder, null);
+        balancerContext = (ServletContextHandler)balancer.getHandler();
         balancer.start();
     }
 
@@ -114,11 +123,19 @@ public class BalancerServletTest
 
     protected byte[] sendRequestToBalancer(String path) throws Exception
     {
-        ContentResponse response = client.newRequest("localhost", getServerPort(balancer))
+        return newBalancerRequest(path).send().getContent();
+    }
+
+    private Request newBalancerRequest(String path)
+    {
+        return client.newRequest("localhost", getServerPort(balancer))
                 .path(CONTEXT_PATH + SERVLET_PATH + path)
-                .timeout(5, TimeUnit.SECONDS)
-                .send();
-        return response.getContent();
+                .timeout(5, TimeUnit.SECONDS);
+    }
+
+    private BalancerMember getBalancerMember(String name)
+    {
+        return (BalancerMember)balancerContext.getServletContext().getAttribute("balancer.balancerMember." + name);
     }
 
     @Test
@@ -161,6 +178,74 @@ public class BalancerServletTest
         Assert.assertEquals("success", msg);
     }
 
+    @Test
+    public void testWeightedRoundRobinBalancer() throws Exception
+    {
+        initParams.put("balancerStrategy", "weightedRoundRobin");
+        initParams.put("balancerMember.node1.weight", "3");
+        startBalancer(PortServlet.class);
+        String port1 = String.valueOf(getServerPort(server1));
+        int node1 = 0;
+        for (int i = 0; i < 20; i++)
+        {
+            if (port1.equals(readFirstLine(sendRequestToBalancer("/weighted"))))
+                ++node1;
+        }
+        Assert.assertEquals(15, node1);
+        Assert.assertEquals(15, getBalancerMember("node1").getRequests());
+        Assert.assertEquals(5, getBalancerMember("node2").getRequests());
+        // The last response is accounted after it has been sent to the client
+        BalancerMember member = getBalancerMember("node1");
+        long timeout = TimeUnit.SECONDS.toMillis(5);
+        long start = System.nanoTime();
+        while (member.getOutstandingRequests() > 0 && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < timeout)
+            TimeUnit.MILLISECONDS.sleep(10);
+        Assert.assertEquals(0, member.getOutstandingRequests());
+    }
+
+    @Test
+    public void testFailingMemberIsEjected() throws Exception
+    {
+        initParams.put("maxFailures", "2");
+        initParams.put("ejectionTime", "60000");
+        startBalancer(PortServlet.class);
+        server1.stop();
+
+        int failures = 0;
+        for (int i = 0; i < 10; i++)
+        {
+            if (newBalancerRequest("/ejected").send().getStatus() != 200)
+                ++failures;
+        }
+        Assert.assertEquals(2, failures);
+        BalancerMember member = getBalancerMember("node1");
+        Assert.assertTrue(member.isEjected());
+        Assert.assertEquals(1, member.getEjections());
+        Assert.assertEquals(2, member.getFailures());
+        Assert.assertFalse(getBalancerMember("node2").isEjected());
+    }
+
+    @Test
+    public void testUnhealthyMemberIsSkipped() throws Exception
+    {
+        initParams.put("maxFailures", "0");
+        initParams.put("healthCheckPath", CONTEXT_PATH + SERVLET_PATH + "/health");
+        initParams.put("healthCheckInterval", "100");
+        startBalancer(PortServlet.class);
+        server1.stop();
+
+        BalancerMember member = getBalancerMember("node1");
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (member.isHealthy() && System.nanoTime() < end)
+            TimeUnit.MILLISECONDS.sleep(50);
+        Assert.assertFalse(member.isHealthy());
+        Assert.assertTrue(getBalancerMember("node2").isHealthy());
+
+        String port2 = String.valueOf(getServerPort(server2));
+        for (int i = 0; i < 10; i++)
+            Assert.assertEquals(port2, readFirstLine(sendRequestToBalancer("/healthy")));
+    }
+
     private String readFirstLine(byte[] responseBytes) throws IOException
     {
         BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(responseBytes)));
@@ -181,6 +266,16 @@ public class BalancerServletTest
         }
     }
 
+    public static final class PortServlet extends HttpServlet
+    {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+        {
+            resp.setContentType("text/plain");
+            resp.getWriter().print(req.getLocalPort());
+        }
+    }
+
     public static final class RelocationServlet extends HttpServlet
     {
         @Override
@@ -0,0 +1,119 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BalancerStrategyTest
+{
+    @Test
+    public void testWeightedRoundRobinSpreadsPicks() throws Exception
+    {
+        BalancerMember a = new BalancerMember("a", "http://a", 5);
+        BalancerMember b = new BalancerMember("b", "http://b", 1);
+        BalancerMember c = new BalancerMember("c", "http://c", 1);
+        List<BalancerMember> members = Arrays.asList(a, b, c);
+
+        BalancerStrategy strategy = new BalancerStrategy.WeightedRoundRobin();
+        StringBuilder picks = new StringBuilder();
+        for (int i = 0; i < 14; ++i)
+            picks.append(strategy.select(members).getName());
+
+        // The picks of the heavier member are interleaved with the others
+        Assert.assertEquals("aabacaaaabacaa", picks.toString());
+    }
+
+    @Test
+    public void testLeastOutstandingPicksLeastBusyMember() throws Exception
+    {
+        BalancerMember a = new BalancerMember("a", "http://a");
+        BalancerMember b = new BalancerMember("b", "http://b");
+        BalancerMember c = new BalancerMember("c", "http://c");
+        List<BalancerMember> members = Arrays.asList(a, b, c);
+        a.onRequestBegin();
+        a.onRequestBegin();
+        c.onRequestBegin();
+
+        BalancerStrategy strategy = new BalancerStrategy.LeastOutstanding();
+        for (int i = 0; i < 5; ++i)
+            Assert.assertSame(b, strategy.select(members));
+
+        b.onRequestBegin();
+        b.onRequestBegin();
+        Assert.assertSame(c, strategy.select(members));
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesAvoidsSlowMember() throws Exception
+    {
+        BalancerMember fast = new BalancerMember("fast", "http://fast");
+        BalancerMember slow = new BalancerMember("slow", "http://slow");
+        List<BalancerMember> members = Arrays.asList(fast, slow);
+        fast.onRequestBegin();
+        fast.onRequestEnd(TimeUnit.MILLISECONDS.toNanos(1), false, 0, 0);
+        slow.onRequestBegin();
+        slow.onRequestEnd(TimeUnit.MILLISECONDS.toNanos(100), false, 0, 0);
+
+        BalancerStrategy strategy = new BalancerStrategy.PowerOfTwoChoices();
+        for (int i = 0; i < 10; ++i)
+            Assert.assertSame(fast, strategy.select(members));
+    }
+
+    @Test
+    public void testConsecutiveFailuresEjectMember() throws Exception
+    {
+        BalancerMember member = new BalancerMember("a", "http://a");
+        for (int i = 0; i < 2; ++i)
+        {
+            member.onRequestBegin();
+            member.onRequestEnd(0, true, 3, 60000);
+        }
+        member.onRequestBegin();
+        member.onRequestEnd(0, false, 3, 60000);
+        Assert.assertTrue(member.isAvailable());
+
+        for (int i = 0; i < 3; ++i)
+        {
+            member.onRequestBegin();
+            member.onRequestEnd(0, true, 3, 60000);
+        }
+        Assert.assertFalse(member.isAvailable());
+        Assert.assertEquals(1, member.getEjections());
+        Assert.assertEquals(5, member.getFailures());
+        Assert.assertEquals(6, member.getRequests());
+        Assert.assertEquals(0, member.getOutstandingRequests());
+    }
+
+    @Test
+    public void testFailuresDoNotUpdateLatency() throws Exception
+    {
+        BalancerMember member = new BalancerMember("a", "http://a");
+        member.onRequestBegin();
+        member.onRequestEnd(TimeUnit.MILLISECONDS.toNanos(100), false, 0, 0);
+        member.onRequestBegin();
+        member.onRequestEnd(TimeUnit.MILLISECONDS.toNanos(1), true, 0, 0);
+        Assert.assertEquals(100, member.getLatencyMillis());
+    }
+}
@@ -30,6 +30,7 @@ import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.util.Locale;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -613,6 +614,103 @@ public class ConnectHandlerTest extends AbstractConnectHandlerTest
         }
     }
 
+    @Test
+    public void testCONNECTAndPOSTWithBigBodyAndCoalescedWrites() throws Exception
+    {
+        connectHandler.setBufferSize(1024);
+        connectHandler.setMaxBufferSize(16 * 1024);
+        connectHandler.setCoalesceWrites(true);
+
+        String hostPort = "localhost:" + serverConnector.getLocalPort();
+
+        String request = "" +
+                "CONNECT " + hostPort + " HTTP/1.1\r\n" +
+                "Host: " + hostPort + "\r\n" +
+                "\r\n";
+        try (Socket socket = newSocket())
+        {
+            OutputStream output = socket.getOutputStream();
+            BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            output.write(request.getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            // Expect 200 OK from the CONNECT request
+            SimpleHttpResponse response = readResponse(input);
+            Assert.assertEquals("200", response.getCode());
+
+            StringBuilder body = new StringBuilder();
+            String chunk = "0123456789ABCDEF";
+            for (int i = 0; i < 64 * 1024; ++i)
+                body.append(chunk);
+
+            request = "" +
+                    "POST /echo HTTP/1.1\r\n" +
+                    "Host: " + hostPort + "\r\n" +
+                    "Content-Length: " + body.length() + "\r\n" +
+                    "\r\n" +
+                    body;
+            output.write(request.getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            response = readResponse(input);
+            Assert.assertEquals("200", response.getCode());
+            Assert.assertEquals("POST /echo\r\n" + body, response.getBody());
+        }
+    }
+
+    @Test
+    public void testCONNECTTunnelStatistics() throws Exception
+    {
+        String hostPort = "localhost:" + serverConnector.getLocalPort();
+
+        String request = "" +
+                "CONNECT " + hostPort + " HTTP/1.1\r\n" +
+                "Host: " + hostPort + "\r\n" +
+                "\r\n";
+        String body = "0123456789ABCDEF";
+        try (Socket socket = newSocket())
+        {
+            OutputStream output = socket.getOutputStream();
+            BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            output.write(request.getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            // Expect 200 OK from the CONNECT request
+            SimpleHttpResponse response = readResponse(input);
+            Assert.assertEquals("200", response.getCode());
+
+            request = "" +
+                    "POST /echo HTTP/1.1\r\n" +
+                    "Host: " + hostPort + "\r\n" +
+                    "Content-Length: " + body.length() + "\r\n" +
+                    "\r\n" +
+                    body;
+            output.write(request.getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            response = readResponse(input);
+            Assert.assertEquals("200", response.getCode());
+            Assert.assertEquals(1, connectHandler.getTunnelsOpen());
+        }
+
+        // Wait for the tunnel to be closed on the proxy
+        long timeout = TimeUnit.SECONDS.toMillis(5);
+        long start = System.nanoTime();
+        while (connectHandler.getTunnelsOpen() > 0 && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < timeout)
+            TimeUnit.MILLISECONDS.sleep(10);
+
+        Assert.assertEquals(0, connectHandler.getTunnelsOpen());
+        Assert.assertEquals(1, connectHandler.getTunnels());
+        Assert.assertTrue(connectHandler.getBytesUpstream() > body.length());
+        Assert.assertTrue(connectHandler.getBytesDownstream() > body.length());
+
+        connectHandler.statsReset();
+        Assert.assertEquals(0, connectHandler.getTunnels());
+        Assert.assertEquals(0, connectHandler.getBytesUpstream());
+    }
+
     @Test
     public void testCONNECTAndPOSTWithContext() throws Exception
     {
@@ -0,0 +1,436 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpProxy;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.FutureResponseListener;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.toolchain.test.AdvancedRunner;
+import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
+import org.eclipse.jetty.toolchain.test.TestTracker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AdvancedRunner.class)
+public class ProxyCacheTest
+{
+    @Rule
+    public final TestTracker tracker = new TestTracker();
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpClient client;
+    private Server proxy;
+    private ProxyServlet proxyServlet;
+    private Server server;
+    private ServerConnector serverConnector;
+
+    private void prepareProxy(String... initParams) throws Exception
+    {
+        prepareProxy(new ProxyServlet(), initParams);
+    }
+
+    private void prepareProxy(ProxyServlet servlet, String... initParams) throws Exception
+    {
+        proxy = new Server();
+        ServerConnector proxyConnector = new ServerConnector(proxy);
+        proxy.addConnector(proxyConnector);
+
+        ServletContextHandler proxyCtx = new ServletContextHandler(proxy, "/", true, false);
+        proxyServlet = servlet;
+        ServletHolder proxyServletHolder = new ServletHolder(proxyServlet);
+        proxyServletHolder.setInitParameter("cacheMaxMemorySize", String.valueOf(1024 * 1024));
+        for (int i = 0; i < initParams.length; i += 2)
+            proxyServletHolder.setInitParameter(initParams[i], initParams[i + 1]);
+        proxyCtx.addServlet(proxyServletHolder, "/*");
+
+        proxy.start();
+
+        client = new HttpClient();
+        client.getProxyConfiguration().getProxies().add(new HttpProxy("localhost", proxyConnector.getLocalPort()));
+        client.start();
+    }
+
+    private void prepareServer(final HttpServlet servlet) throws Exception
+    {
+        server = new Server();
+        serverConnector = new ServerConnector(server);
+        server.addConnector(serverConnector);
+
+        ServletContextHandler appCtx = new ServletContextHandler(server, "/", true, false);
+        ServletHolder appServletHolder = new ServletHolder(new HttpServlet()
+        {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                requests.incrementAndGet();
+                servlet.service(request, response);
+            }
+        });
+        appCtx.addServlet(appServletHolder, "/*");
+
+        server.start();
+    }
+
+    @After
+    public void dispose() throws Exception
+    {
+        if (client != null)
+            client.stop();
+        if (proxy != null)
+            proxy.stop();
+        if (server != null)
+            server.stop();
+    }
+
+    private Request newRequest(String path)
+    {
+        return client.newRequest("localhost", serverConnector.getLocalPort())
+                .path(path)
+                .timeout(5, TimeUnit.SECONDS);
+    }
+
+    private ProxyCache getProxyCache()
+    {
+        return proxyServlet.getProxyCache();
+    }
+
+    @Test
+    public void testFreshResponseIsServedFromCache() throws Exception
+    {
+        prepareProxy();
+        prepareServer(new ContentServlet("max-age=60", "hello"));
+
+        for (int i = 0; i < 3; ++i)
+        {
+            ContentResponse response = newRequest("/fresh").send();
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals("hello", response.getContentAsString());
+            if (i > 0)
+                Assert.assertNotNull(response.getHeaders().get(HttpHeader.AGE));
+        }
+
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(1, getProxyCache().getMisses());
+        Assert.assertEquals(2, getProxyCache().getHits());
+        Assert.assertEquals(1, getProxyCache().getStores());
+    }
+
+    @Test
+    public void testNoStoreResponseIsNotCached() throws Exception
+    {
+        prepareProxy();
+        prepareServer(new ContentServlet("no-store", "hello"));
+
+        for (int i = 0; i < 3; ++i)
+            Assert.assertEquals("hello", newRequest("/noStore").send().getContentAsString());
+
+        Assert.assertEquals(3, requests.get());
+        Assert.assertEquals(0, getProxyCache().getStores());
+    }
+
+    @Test
+    public void testRequestNoCacheBypassesFreshResponse() throws Exception
+    {
+        prepareProxy();
+        prepareServer(new ContentServlet("max-age=60", "hello"));
+
+        newRequest("/noCache").send();
+        ContentResponse response = newRequest("/noCache").header(HttpHeader.CACHE_CONTROL, "no-cache").send();
+
+        Assert.assertEquals("hello", response.getContentAsString());
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(1, getProxyCache().getStaleHits());
+        Assert.assertEquals(2, getProxyCache().getStores());
+    }
+
+    @Test
+    public void testStaleResponseIsRevalidated() throws Exception
+    {
+        prepareProxy();
+        final AtomicInteger notModified = new AtomicInteger();
+        prepareServer(new ContentServlet("max-age=0", "hello")
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                if ("\"v1\"".equals(request.getHeader("If-None-Match")))
+                {
+                    notModified.incrementAndGet();
+                    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    response.setHeader("ETag", "\"v1\"");
+                    return;
+                }
+                response.setHeader("ETag", "\"v1\"");
+                super.doGet(request, response);
+            }
+        });
+
+        for (int i = 0; i < 3; ++i)
+        {
+            ContentResponse response = newRequest("/stale").send();
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals("hello", response.getContentAsString());
+        }
+
+        Assert.assertEquals(3, requests.get());
+        Assert.assertEquals(2, notModified.get());
+        Assert.assertEquals(2, getProxyCache().getStaleHits());
+        Assert.assertEquals(2, getProxyCache().getRevalidations());
+        Assert.assertEquals(1, getProxyCache().getStores());
+    }
+
+    @Test
+    public void testRevalidatedResponseIsWrittenByDispatchedRequest() throws Exception
+    {
+        final List<DispatcherType> dispatches = new CopyOnWriteArrayList<>();
+        prepareProxy(new ProxyServlet()
+        {
+            @Override
+            protected void onCachedResponse(HttpServletRequest request, HttpServletResponse response, ProxyCache.Entry entry) throws IOException
+            {
+                dispatches.add(request.getDispatcherType());
+                super.onCachedResponse(request, response, entry);
+            }
+        });
+        prepareServer(new ContentServlet("max-age=0", "hello")
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                response.setHeader("ETag", "\"v1\"");
+                if ("\"v1\"".equals(request.getHeader("If-None-Match")))
+                {
+                    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+                super.doGet(request, response);
+            }
+        });
+
+        newRequest("/dispatched").send();
+        ContentResponse response = newRequest("/dispatched").send();
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("hello", response.getContentAsString());
+        Assert.assertEquals(1, getProxyCache().getRevalidations());
+        Assert.assertEquals(1, dispatches.size());
+        Assert.assertEquals(DispatcherType.ASYNC, dispatches.get(0));
+    }
+
+    @Test
+    public void testConditionalRequestIsAnsweredFromCache() throws Exception
+    {
+        prepareProxy();
+        prepareServer(new ContentServlet("max-age=60", "hello")
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                response.setHeader("ETag", "\"v1\"");
+                super.doGet(request, response);
+            }
+        });
+
+        newRequest("/conditional").send();
+        ContentResponse response = newRequest("/conditional").header(HttpHeader.IF_NONE_MATCH, "\"v1\"").send();
+
+        Assert.assertEquals(304, response.getStatus());
+        Assert.assertEquals(0, response.getContent().length);
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testVariantsAreCachedSeparately() throws Exception
+    {
+        prepareProxy();
+        prepareServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                response.setHeader("Cache-Control", "max-age=60");
+                response.setHeader("Vary", "Accept-Language");
+                response.getWriter().print(request.getHeader("Accept-Language"));
+            }
+        });
+
+        for (int i = 0; i < 2; ++i)
+        {
+            for (String language : new String[]{"en", "it"})
+            {
+                ContentResponse response = newRequest("/vary").header(HttpHeader.ACCEPT_LANGUAGE, language).send();
+                Assert.assertEquals(language, response.getContentAsString());
+            }
+        }
+
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(2, getProxyCache().getEntries());
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception
+    {
+        prepareProxy();
+        prepareServer(new ContentServlet("max-age=60", "hello")
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                try
+                {
+                    // Let the other requests arrive while this one is in progress
+                    Thread.sleep(1000);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new ServletException(x);
+                }
+                super.doGet(request, response);
+            }
+        });
+
+        int count = 10;
+        List<FutureResponseListener> listeners = new ArrayList<>();
+        for (int i = 0; i < count; ++i)
+        {
+            Request request = newRequest("/coalesced");
+            FutureResponseListener listener = new FutureResponseListener(request);
+            request.send(listener);
+            listeners.add(listener);
+        }
+        for (FutureResponseListener listener : listeners)
+        {
+            ContentResponse response = listener.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals("hello", response.getContentAsString());
+        }
+
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(count - 1, getProxyCache().getCoalesced());
+    }
+
+    @Test
+    public void testFailureBeforeSendReleasesStore() throws Exception
+    {
+        final AtomicBoolean fail = new AtomicBoolean(true);
+        prepareProxy(new ProxyServlet()
+        {
+            @Override
+            protected void customizeProxyRequest(Request proxyRequest, HttpServletRequest request)
+            {
+                if (fail.compareAndSet(true, false))
+                    throw new IllegalStateException("explicitly_thrown_by_test");
+            }
+        });
+        prepareServer(new ContentServlet("max-age=60", "hello"));
+
+        Assert.assertEquals(500, newRequest("/failed").send().getStatus());
+
+        // The request that failed does not keep the next ones waiting
+        ContentResponse response = newRequest("/failed").send();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("hello", response.getContentAsString());
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testEvictedResponsesAreServedFromDisk() throws Exception
+    {
+        File directory = MavenTestingUtils.getTargetTestingDir(getClass().getSimpleName() + "-disk");
+        prepareProxy("cacheMaxMemorySize", "3000",
+                "cacheMaxEntrySize", "2048",
+                "cacheDirectory", directory.getAbsolutePath());
+        final byte[] content = new byte[1024];
+        new Random().nextBytes(content);
+        prepareServer(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                response.setHeader("Cache-Control", "max-age=60");
+                response.getOutputStream().write(content);
+            }
+        });
+
+        String[] paths = new String[]{"/a", "/b", "/c", "/d"};
+        for (String path : paths)
+            Assert.assertArrayEquals(content, newRequest(path).send().getContent());
+        Assert.assertTrue(getProxyCache().getEvictions() > 0);
+        // The evicted entries are written to disk by the executor
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (getProxyCache().getEntries() < paths.length && System.nanoTime() < end)
+            TimeUnit.MILLISECONDS.sleep(10);
+        Assert.assertEquals(paths.length, getProxyCache().getEntries());
+        Assert.assertTrue(getProxyCache().getDiskSize() > 0);
+        Assert.assertTrue(directory.list().length > 0);
+
+        for (String path : paths)
+            Assert.assertArrayEquals(content, newRequest(path).send().getContent());
+        Assert.assertEquals(paths.length, requests.get());
+        Assert.assertEquals(paths.length, getProxyCache().getHits());
+
+        proxy.stop();
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+    private static class ContentServlet extends HttpServlet
+    {
+        private final String cacheControl;
+        private final String content;
+
+        private ContentServlet(String cacheControl, String content)
+        {
+            this.cacheControl = cacheControl;
+            this.content = content;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+        {
+            response.setHeader("Cache-Control", cacheControl);
+            response.getWriter().print(content);
+        }
+    }
+}
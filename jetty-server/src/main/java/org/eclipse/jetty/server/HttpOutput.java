@@ -63,13 +63,13 @@ public class HttpOutput extends ServletOutputStream implements Runnable
     private volatile Throwable _onError;
 
     /*
-    ACTION             OPEN       ASYNC      READY      PENDING       UNREADY
-    -------------------------------------------------------------------------------
-    setWriteListener() READY->owp ise        ise        ise           ise
-    write()            OPEN       ise        PENDING    wpe           wpe
-    flush()            OPEN       ise        PENDING    wpe           wpe
-    isReady()          OPEN:true  READY:true READY:true UNREADY:false UNREADY:false
-    write completed    -          -          -          ASYNC         READY->owp
+    ACTION             OPEN       ASYNC      READY      PENDING       UNREADY       CLOSED
+    ---------------------------------------------------------------------------------------------
+    setWriteListener() READY->owp ise        ise        ise           ise           ise
+    write()            OPEN       ise        PENDING    wpe           wpe           eof
+    flush()            OPEN       ise        PENDING    wpe           wpe           -
+    isReady()          OPEN:true  READY:true READY:true UNREADY:false UNREADY:false CLOSED:true
+    write completed    -          -          -          ASYNC         READY->owp    -
     */
     enum OutputState { OPEN, ASYNC, READY, PENDING, UNREADY, CLOSED }
     private final AtomicReference<OutputState> _state=new AtomicReference<>(OutputState.OPEN);
@@ -155,7 +155,16 @@ public class HttpOutput extends ServletOutputStream implements Runnable
     /* Called to indicated that the output is already closed and the state needs to be updated to match */
     void closed()
     {
-        OutputState state=_state.get();
+        close(_state.get());
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param state The expected current state
+     * @return The state the output was in when it was closed
+     */
+    private OutputState close(OutputState state)
+    {
         while(state!=OutputState.CLOSED)
         {
             if (_state.compareAndSet(state,OutputState.CLOSED))
@@ -170,10 +179,11 @@ public class HttpOutput extends ServletOutputStream implements Runnable
                     _channel.failed();
                 }
                 releaseBuffer();
-                return;
+                return state;
             }
             state=_state.get();
         }
+        return state;
     }
 
     private void releaseBuffer()
@@ -668,7 +678,9 @@ public class HttpOutput extends ServletOutputStream implements Runnable
                 case UNREADY:
                     return false;
                 case CLOSED:
-                    return false;
+                    // Writes fail rather than block, and a write listener notified of the
+                    // completion of the last write must be able to see that it completed
+                    return true;
             }
         }
     }
@@ -682,8 +694,12 @@ public class HttpOutput extends ServletOutputStream implements Runnable
             _onError=null;
             _writeListener.onError(th);
             close();
+            return;
         }
-        if (_state.get()==OutputState.READY)
+
+        // The output may have been closed by an asynchronous write of the last content
+        OutputState state=_state.get();
+        if (state==OutputState.READY || state==OutputState.CLOSED)
         {
             try
             {
@@ -856,11 +872,26 @@ public class HttpOutput extends ServletOutputStream implements Runnable
                     write(BufferUtil.EMPTY_BUFFER, _complete, this);
                     return Action.SCHEDULED;
                 }
-                closed();
             }
 
             return Action.SUCCEEDED;
         }
+
+        @Override
+        protected void completed()
+        {
+            if (_complete)
+            {
+                // All the content has been written, so close the output. If the write
+                // listener has already seen isReady() return false, notify it, since no
+                // other onWritePossible() call would tell it that this write completed,
+                // otherwise it will see isReady() return true for the closed output.
+                if (close(_state.get())==OutputState.UNREADY)
+                    _channel.getState().onWritePossible();
+            }
+            else
+                super.completed();
+        }
     }
 
 
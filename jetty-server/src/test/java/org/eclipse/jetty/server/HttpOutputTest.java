@@ -655,8 +655,9 @@ public class HttpOutputTest
                                 Assert.assertTrue(out.isReady());
                                 if(BufferUtil.isEmpty(_content))
                                 {
+                                    // The output is ready once the last write has completed, even if it closed the output
                                     async.complete();
-                                    break;
+                                    return;
                                 }
                                     
                                 BufferUtil.clearToFill(_byteBuffer);
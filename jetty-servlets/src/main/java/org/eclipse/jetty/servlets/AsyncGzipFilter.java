@@ -46,6 +46,7 @@ import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.server.HttpChannel;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.servlets.gzip.DeflaterPool;
 import org.eclipse.jetty.servlets.gzip.GzipFactory;
 import org.eclipse.jetty.servlets.gzip.GzipHttpOutput;
 import org.eclipse.jetty.util.URIUtil;
@@ -92,6 +93,16 @@ import org.eclipse.jetty.util.log.Logger;
  * <dt>deflateNoWrap</dt>       <dd>The noWrap setting for deflate compression. Defaults to true. (true/false)
  *                            See: {@link java.util.zip.Deflater#Deflater(int, boolean)}
  * </dd>
+ * <dt>deflateCompressionLevels</dt>       <dd>Comma separated list of <code>mimeType=level</code> to use a different
+ *                            compression level for some mime types.
+ * </dd>
+ * <dt>deflateStrategies</dt>       <dd>Comma separated list of <code>mimeType=strategy</code>, where strategy is one of
+ *                            <code>default</code>, <code>filtered</code> or <code>huffman</code>.
+ *                            See: {@link java.util.zip.Deflater#setStrategy(int)}
+ * </dd>
+ * <dt>deflaterPoolCapacity</dt>       <dd>The maximum number of idle {@link Deflater}s kept for reuse by
+ *                            this filter. Defaults to twice the number of processors.
+ * </dd>
  * <dt>methods</dt>       <dd>Comma separated list of HTTP methods to compress. If not set, only GET requests are compressed.
  *  </dd>
  * <dt>mimeTypes</dt>       <dd>Comma separated list of mime types to compress. If it is not set, then the excludedMimeTypes list is used.
@@ -141,8 +152,10 @@ public class AsyncGzipFilter extends UserAgentFilter implements GzipFactory
     protected boolean _deflateNoWrap = true;
     protected boolean _checkGzExists = true;
     
+    protected int _deflaterPoolCapacity = 2*Runtime.getRuntime().availableProcessors();
+    
     // non-static, as other GzipFilter instances may have different configurations
-    protected final ThreadLocal<Deflater> _deflater = new ThreadLocal<Deflater>();
+    protected DeflaterPool _deflaterPool;
 
     protected final static ThreadLocal<byte[]> _buffer= new ThreadLocal<byte[]>();
 
@@ -184,6 +197,19 @@ public class AsyncGzipFilter extends UserAgentFilter implements GzipFactory
             _deflateNoWrap=Boolean.parseBoolean(tmp);
         LOG.debug("{} deflateNoWrap={}",this,_deflateNoWrap);
 
+        tmp=filterConfig.getInitParameter("deflaterPoolCapacity");
+        if (tmp!=null)
+            _deflaterPoolCapacity=Integer.parseInt(tmp);
+        _deflaterPool=new DeflaterPool(_deflaterPoolCapacity,_deflateNoWrap);
+        _deflaterPool.setCompressionLevel(_deflateCompressionLevel);
+        tmp=filterConfig.getInitParameter("deflateCompressionLevels");
+        if (tmp!=null)
+            _deflaterPool.setCompressionLevels(tmp);
+        tmp=filterConfig.getInitParameter("deflateStrategies");
+        if (tmp!=null)
+            _deflaterPool.setStrategies(tmp);
+        LOG.debug("{} deflaterPool={}",this,_deflaterPool);
+
         tmp=filterConfig.getInitParameter("checkGzExists");
         if (tmp!=null)
             _checkGzExists=Boolean.parseBoolean(tmp);
@@ -286,6 +312,8 @@ public class AsyncGzipFilter extends UserAgentFilter implements GzipFactory
     @Override
     public void destroy()
     {
+        if (_deflaterPool!=null)
+            _deflaterPool.clear();
     }
 
     /* ------------------------------------------------------------ */
@@ -502,22 +530,16 @@ public class AsyncGzipFilter extends UserAgentFilter implements GzipFactory
             return null;
         }
         
-        Deflater df = _deflater.get();
-        if (df==null)
-            df=new Deflater(_deflateCompressionLevel,_deflateNoWrap);        
-        else
-            _deflater.set(null);
-        
-        return df;
+        String ct = request.getResponse().getContentType();
+        if (ct!=null)
+            ct=MimeTypes.getContentTypeWithoutCharset(ct);
+        return _deflaterPool.acquire(ct);
     }
 
     @Override
     public void recycle(Deflater deflater)
     {
-        deflater.reset();
-        if (_deflater.get()==null)
-            _deflater.set(deflater);
-        
+        _deflaterPool.release(deflater);
     }
     
     @Override
@@ -0,0 +1,237 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.servlets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+import org.eclipse.jetty.io.EofException;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.MultiPartParser;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * Reads a multipart request content with the Servlet 3.1 asynchronous IO API, notifying the parts
+ * to a {@link MultiPartParser.Handler} as they arrive.
+ * <p>
+ * Unlike {@link MultiPartFilter}, the parts are neither buffered in memory nor written to temporary
+ * files, and no thread is blocked waiting for the content: the handler receives the content of the
+ * parts in slices of a single read buffer that is reused for the whole request, so it must consume
+ * or copy the content before returning.
+ * <p>
+ * The handler may return true from its methods to pause the reading, for example while it writes
+ * the content of a part somewhere else asynchronously, and then call {@link #resume()} to continue.
+ * The given callback is succeeded when the whole multipart content has been parsed, or failed if
+ * the content is truncated or invalid, or if reading it fails.
+ * <pre>
+ * AsyncContext async = request.startAsync();
+ * new AsyncMultiPartReader(request, handler, new Callback.Adapter()
+ * {
+ *     public void succeeded()
+ *     {
+ *         async.complete();
+ *     }
+ * }).start();
+ * </pre>
+ */
+public class AsyncMultiPartReader implements ReadListener
+{
+    private static final Logger LOG = Log.getLogger(AsyncMultiPartReader.class);
+
+    private final AtomicBoolean complete = new AtomicBoolean();
+    private final HttpServletRequest request;
+    private final Callback callback;
+    private final MultiPartParser parser;
+    private final byte[] bytes;
+    private ByteBuffer buffer = BufferUtil.EMPTY_BUFFER;
+    private boolean eof;
+
+    public AsyncMultiPartReader(HttpServletRequest request, MultiPartParser.Handler handler, Callback callback)
+    {
+        this(request, handler, callback, 8192);
+    }
+
+    /**
+     * @param request the request whose multipart content is read
+     * @param handler the handler notified of the parts
+     * @param callback the callback notified when the content has been read
+     * @param bufferSize the size of the read buffer
+     * @throws IllegalArgumentException if the request content type has no multipart boundary
+     */
+    public AsyncMultiPartReader(HttpServletRequest request, MultiPartParser.Handler handler, Callback callback, int bufferSize)
+    {
+        String boundary = MultiPartParser.getBoundary(request.getContentType());
+        if (boundary == null)
+            throw new IllegalArgumentException("No multipart boundary in " + request.getContentType());
+        this.request = request;
+        this.callback = callback;
+        this.parser = new MultiPartParser(new CompletingHandler(handler), boundary);
+        this.bytes = new byte[bufferSize];
+    }
+
+    /**
+     * Starts reading the request content, which requires the request to be in asynchronous mode.
+     *
+     * @throws IOException if the read listener cannot be set
+     */
+    public void start() throws IOException
+    {
+        request.getInputStream().setReadListener(this);
+    }
+
+    /**
+     * Resumes the reading after the handler paused it by returning true.
+     */
+    public void resume()
+    {
+        try
+        {
+            process();
+        }
+        catch (Throwable x)
+        {
+            fail(x);
+        }
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException
+    {
+        process();
+    }
+
+    @Override
+    public void onAllDataRead() throws IOException
+    {
+        eof = true;
+        process();
+    }
+
+    @Override
+    public void onError(Throwable failure)
+    {
+        fail(failure);
+    }
+
+    private void process() throws IOException
+    {
+        ServletInputStream input = request.getInputStream();
+        while (!complete.get())
+        {
+            // Either paused by the handler, or done
+            if (parser.parse(buffer, eof))
+                return;
+
+            // The parser needs more content, and may only have consumed the buffer
+            if (eof || !input.isReady())
+                return;
+
+            int read = input.read(bytes);
+            if (read < 0)
+                eof = true;
+            else
+                buffer = ByteBuffer.wrap(bytes, 0, read);
+        }
+    }
+
+    private void fail(Throwable failure)
+    {
+        if (complete.compareAndSet(false, true))
+        {
+            LOG.debug("Multipart read failed", failure);
+            callback.failed(failure);
+        }
+    }
+
+    private void succeed()
+    {
+        if (complete.compareAndSet(false, true))
+            callback.succeeded();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,eof=%b}", getClass().getSimpleName(), hashCode(), parser, eof);
+    }
+
+    private class CompletingHandler implements MultiPartParser.Handler
+    {
+        private final MultiPartParser.Handler handler;
+
+        private CompletingHandler(MultiPartParser.Handler handler)
+        {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startPart()
+        {
+            handler.startPart();
+        }
+
+        @Override
+        public boolean parsedField(String name, String value)
+        {
+            return handler.parsedField(name, value);
+        }
+
+        @Override
+        public boolean headerComplete()
+        {
+            return handler.headerComplete();
+        }
+
+        @Override
+        public boolean content(ByteBuffer item, boolean last)
+        {
+            return handler.content(item, last);
+        }
+
+        @Override
+        public boolean messageComplete()
+        {
+            handler.messageComplete();
+            succeed();
+            return true;
+        }
+
+        @Override
+        public void earlyEOF()
+        {
+            handler.earlyEOF();
+            fail(new EofException("Early EOF in multipart content"));
+        }
+
+        @Override
+        public void badMessage(String reason)
+        {
+            handler.badMessage(reason);
+            fail(new IOException(reason));
+        }
+    }
+}
@@ -44,6 +44,7 @@ import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.servlets.gzip.AbstractCompressedStream;
 import org.eclipse.jetty.servlets.gzip.CompressedResponseWrapper;
 import org.eclipse.jetty.servlets.gzip.DeflatedOutputStream;
+import org.eclipse.jetty.servlets.gzip.DeflaterPool;
 import org.eclipse.jetty.servlets.gzip.GzipOutputStream;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.util.log.Log;
@@ -90,6 +91,16 @@ import org.eclipse.jetty.util.log.Logger;
  * <dt>deflateNoWrap</dt>       <dd>The noWrap setting for deflate compression. Defaults to true. (true/false)
  *                            See: {@link java.util.zip.Deflater#Deflater(int, boolean)}
  * </dd>
+ * <dt>deflateCompressionLevels</dt>       <dd>Comma separated list of <code>mimeType=level</code> to use a different
+ *                            compression level for some mime types.
+ * </dd>
+ * <dt>deflateStrategies</dt>       <dd>Comma separated list of <code>mimeType=strategy</code>, where strategy is one of
+ *                            <code>default</code>, <code>filtered</code> or <code>huffman</code>.
+ *                            See: {@link java.util.zip.Deflater#setStrategy(int)}
+ * </dd>
+ * <dt>deflaterPoolCapacity</dt>       <dd>The maximum number of idle {@link Deflater}s kept for reuse by
+ *                            this filter. Defaults to twice the number of processors.
+ * </dd>
  * <dt>methods</dt>       <dd>Comma separated list of HTTP methods to compress. If not set, only GET requests are compressed.
  *  </dd>
  * <dt>mimeTypes</dt>       <dd>Comma separated list of mime types to compress. If it is not set, then the excludedMimeTypes list is used.
@@ -140,8 +151,10 @@ public class GzipFilter extends UserAgentFilter
     protected boolean _deflateNoWrap = true;
     protected boolean _checkGzExists = true;
     
+    protected int _deflaterPoolCapacity = 2*Runtime.getRuntime().availableProcessors();
+    
     // non-static, as other GzipFilter instances may have different configurations
-    protected final ThreadLocal<Deflater> _deflater = new ThreadLocal<Deflater>();
+    protected DeflaterPool _deflaterPool;
 
     protected final static ThreadLocal<byte[]> _buffer= new ThreadLocal<byte[]>();
 
@@ -185,6 +198,18 @@ public class GzipFilter extends UserAgentFilter
         if (tmp!=null)
             _deflateNoWrap=Boolean.parseBoolean(tmp);
 
+        tmp=filterConfig.getInitParameter("deflaterPoolCapacity");
+        if (tmp!=null)
+            _deflaterPoolCapacity=Integer.parseInt(tmp);
+        _deflaterPool=new DeflaterPool(_deflaterPoolCapacity,_deflateNoWrap);
+        _deflaterPool.setCompressionLevel(_deflateCompressionLevel);
+        tmp=filterConfig.getInitParameter("deflateCompressionLevels");
+        if (tmp!=null)
+            _deflaterPool.setCompressionLevels(tmp);
+        tmp=filterConfig.getInitParameter("deflateStrategies");
+        if (tmp!=null)
+            _deflaterPool.setStrategies(tmp);
+
         tmp=filterConfig.getInitParameter("checkGzExists");
         if (tmp!=null)
             _checkGzExists=Boolean.parseBoolean(tmp);
@@ -278,6 +303,8 @@ public class GzipFilter extends UserAgentFilter
     @Override
     public void destroy()
     {
+        if (_deflaterPool!=null)
+            _deflaterPool.clear();
     }
 
     /* ------------------------------------------------------------ */
@@ -478,14 +505,10 @@ public class GzipFilter extends UserAgentFilter
                         }
                         
                         // acquire deflater instance
-                        _allocatedDeflater = _deflater.get();   
-                        if (_allocatedDeflater==null)
-                            _allocatedDeflater = new Deflater(_deflateCompressionLevel,_deflateNoWrap);
-                        else
-                        {
-                            _deflater.remove();
-                            _allocatedDeflater.reset();
-                        }
+                        String ct = _response.getContentType();
+                        if (ct!=null)
+                            ct=MimeTypes.getContentTypeWithoutCharset(ct);
+                        _allocatedDeflater = _deflaterPool.acquire(ct);
                         
                         // acquire buffer
                         _allocatedBuffer = _buffer.get();
@@ -510,9 +533,10 @@ public class GzipFilter extends UserAgentFilter
                     public void finish() throws IOException
                     {
                         super.finish();
-                        if (_allocatedDeflater != null && _deflater.get() == null)
+                        if (_allocatedDeflater != null)
                         {
-                            _deflater.set(_allocatedDeflater);
+                            _deflaterPool.release(_allocatedDeflater);
+                            _allocatedDeflater = null;
                         }
                         if (_allocatedBuffer != null && _buffer.get() == null)
                         {
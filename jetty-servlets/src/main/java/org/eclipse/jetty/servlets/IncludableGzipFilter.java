@@ -24,8 +24,6 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.DispatcherType;
 import javax.servlet.FilterConfig;
@@ -33,9 +31,12 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.io.UncheckedPrintWriter;
 import org.eclipse.jetty.servlets.gzip.AbstractCompressedStream;
 import org.eclipse.jetty.servlets.gzip.CompressedResponseWrapper;
+import org.eclipse.jetty.servlets.gzip.DeflatedOutputStream;
+import org.eclipse.jetty.servlets.gzip.GzipOutputStream;
 
 /* ------------------------------------------------------------ */
 /** Includable GZip Filter.
@@ -81,7 +82,7 @@ public class IncludableGzipFilter extends GzipFilter
                     return new AbstractCompressedStream(null,request,this,_vary)
                     {
                         @Override
-                        protected DeflaterOutputStream createStream() throws IOException
+                        protected OutputStream createStream() throws IOException
                         {
                             return null;
                         }
@@ -89,7 +90,7 @@ public class IncludableGzipFilter extends GzipFilter
                 }
             };
         }
-        else if (compressionType.equals(GZIP))
+        else if (compressionType.equals(GZIP) || compressionType.equals(DEFLATE))
         {
             wrappedResponse = new IncludableResponseWrapper(request,response)
             {
@@ -98,28 +99,29 @@ public class IncludableGzipFilter extends GzipFilter
                 {
                     return new AbstractCompressedStream(compressionType,request,this,_vary)
                     {
+                        private Deflater _allocatedDeflater;
+
                         @Override
-                        protected DeflaterOutputStream createStream() throws IOException
+                        protected OutputStream createStream() throws IOException
                         {
-                            return new GZIPOutputStream(_response.getOutputStream(),_bufferSize);
+                            String ct = _response.getContentType();
+                            if (ct!=null)
+                                ct=MimeTypes.getContentTypeWithoutCharset(ct);
+                            _allocatedDeflater = _deflaterPool.acquire(ct);
+                            if (compressionType.equals(GZIP))
+                                return new GzipOutputStream(_response.getOutputStream(),_allocatedDeflater,new byte[_bufferSize]);
+                            return new DeflatedOutputStream(_response.getOutputStream(),_allocatedDeflater,new byte[_bufferSize]);
                         }
-                    };
-                }
-            };
-        }
-        else if (compressionType.equals(DEFLATE))
-        {
-            wrappedResponse = new IncludableResponseWrapper(request,response)
-            {
-                @Override
-                protected AbstractCompressedStream newCompressedStream(HttpServletRequest request,HttpServletResponse response) throws IOException
-                {
-                    return new AbstractCompressedStream(compressionType,request,this,_vary)
-                    {
+
                         @Override
-                        protected DeflaterOutputStream createStream() throws IOException
+                        public void finish() throws IOException
                         {
-                            return new DeflaterOutputStream(_response.getOutputStream(),new Deflater(_deflateCompressionLevel, _deflateNoWrap));
+                            super.finish();
+                            if (_allocatedDeflater != null)
+                            {
+                                _deflaterPool.release(_allocatedDeflater);
+                                _allocatedDeflater = null;
+                            }
                         }
                     };
                 }
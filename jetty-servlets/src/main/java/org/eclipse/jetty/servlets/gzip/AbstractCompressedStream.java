@@ -82,9 +82,10 @@ public abstract class AbstractCompressedStream extends ServletOutputStream
     /* ------------------------------------------------------------ */
     public void setBufferSize(int bufferSize)
     {
-        if (_bOut!=null && _bOut.getBuf().length<bufferSize)
+        int size=getAggregateSize();
+        if (_bOut!=null && _bOut.getBuf().length<size)
         {
-            ByteArrayOutputStream2 b = new ByteArrayOutputStream2(bufferSize);
+            ByteArrayOutputStream2 b = new ByteArrayOutputStream2(size);
             b.write(_bOut.getBuf(),0,_bOut.size());
             _bOut=b;
         }
@@ -308,8 +309,8 @@ public abstract class AbstractCompressedStream extends ServletOutputStream
 
         if (_out == null)
         {            
-            // If this first write is larger than buffer size, then we are committing now
-            if (lengthToWrite>_wrapper.getBufferSize())
+            // If this first write is larger than the aggregate size, then we are committing now
+            if (lengthToWrite>getAggregateSize())
             {
                 // if we know this is all the content and it is less than minimum, then do not compress, otherwise do compress
                 long length=_wrapper.getContentLength();
@@ -321,7 +322,7 @@ public abstract class AbstractCompressedStream extends ServletOutputStream
             else
             {
                 // start aggregating writes into a buffered output stream
-                _out = _bOut = new ByteArrayOutputStream2(_wrapper.getBufferSize());
+                _out = _bOut = new ByteArrayOutputStream2(getAggregateSize());
             }
         }
         // else are we aggregating writes?
@@ -342,6 +343,20 @@ public abstract class AbstractCompressedStream extends ServletOutputStream
         }
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * The size of the buffer used to aggregate writes before deciding whether to compress.
+     * Content that reaches the minimum compress size is compressed whatever its final length,
+     * so there is no need to aggregate more than that before committing to compression.
+     * @return The smaller of the buffer size and the (non zero) minimum compress size
+     */
+    private int getAggregateSize()
+    {
+        int size=_wrapper.getBufferSize();
+        int min=_wrapper.getMinCompressSize();
+        return (min>0 && min<size)?min:size;
+    }
+
     public OutputStream getOutputStream()
     {
         return _out;
@@ -0,0 +1,346 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.servlets.gzip;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.util.StringUtil;
+
+/* ------------------------------------------------------------ */
+/**
+ * A bounded pool of {@link Deflater}s.
+ * <p>
+ * A {@link Deflater} holds native zlib state that is only freed by {@link Deflater#end()} or finalization, so
+ * allocating one per response is expensive.  This pool keeps up to <code>capacity</code> idle deflaters
+ * for reuse and ends any deflater released while the pool is full.
+ * <p>
+ * The compression level and strategy may be configured per mime type, and are applied to each deflater
+ * as it is acquired.
+ */
+public class DeflaterPool
+{
+    private final Queue<Deflater> _pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _size = new AtomicInteger();
+    private final AtomicLong _created = new AtomicLong();
+    private final AtomicLong _ended = new AtomicLong();
+    private final Map<String,int[]> _mimeTypes = new ConcurrentHashMap<>();
+    private final int _capacity;
+    private final boolean _nowrap;
+    private volatile int _compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private volatile int _strategy = Deflater.DEFAULT_STRATEGY;
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param capacity The maximum number of idle deflaters kept in the pool
+     * @param nowrap If true then the deflaters do not use the ZLIB header and checksum, as is needed for GZIP
+     */
+    public DeflaterPool(int capacity, boolean nowrap)
+    {
+        _capacity=capacity;
+        _nowrap=nowrap;
+    }
+
+    /* ------------------------------------------------------------ */
+    public int getCapacity()
+    {
+        return _capacity;
+    }
+
+    /* ------------------------------------------------------------ */
+    public boolean isNowrap()
+    {
+        return _nowrap;
+    }
+
+    /* ------------------------------------------------------------ */
+    public int getCompressionLevel()
+    {
+        return _compressionLevel;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param compressionLevel The default compression level (-1 or 0-9)
+     */
+    public void setCompressionLevel(int compressionLevel)
+    {
+        _compressionLevel=checkLevel(compressionLevel);
+    }
+
+    /* ------------------------------------------------------------ */
+    public int getStrategy()
+    {
+        return _strategy;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param strategy The default strategy, one of {@link Deflater#DEFAULT_STRATEGY}, {@link Deflater#FILTERED}
+     * or {@link Deflater#HUFFMAN_ONLY}
+     */
+    public void setStrategy(int strategy)
+    {
+        _strategy=checkStrategy(strategy);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Set the compression level used for a mime type.
+     * @param mimeType The mime type, without charset
+     * @param compressionLevel The compression level (-1 or 0-9)
+     */
+    public void setCompressionLevel(String mimeType, int compressionLevel)
+    {
+        String key=StringUtil.asciiToLowerCase(mimeType);
+        int[] params=_mimeTypes.get(key);
+        _mimeTypes.put(key,new int[]{checkLevel(compressionLevel),params==null?-1:params[1]});
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Set the strategy used for a mime type.
+     * @param mimeType The mime type, without charset
+     * @param strategy The strategy
+     */
+    public void setStrategy(String mimeType, int strategy)
+    {
+        String key=StringUtil.asciiToLowerCase(mimeType);
+        int[] params=_mimeTypes.get(key);
+        _mimeTypes.put(key,new int[]{params==null?Integer.MIN_VALUE:params[0],checkStrategy(strategy)});
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param mimeType The mime type or null
+     * @return The compression level used for the mime type
+     */
+    public int getCompressionLevel(String mimeType)
+    {
+        int[] params=mimeType==null?null:_mimeTypes.get(StringUtil.asciiToLowerCase(mimeType));
+        return (params==null || params[0]==Integer.MIN_VALUE)?_compressionLevel:params[0];
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param mimeType The mime type or null
+     * @return The strategy used for the mime type
+     */
+    public int getStrategy(String mimeType)
+    {
+        int[] params=mimeType==null?null:_mimeTypes.get(StringUtil.asciiToLowerCase(mimeType));
+        return (params==null || params[1]<0)?_strategy:params[1];
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Set the compression levels from a configuration string.
+     * @param levels Comma separated list of <code>mimeType=level</code>
+     */
+    public void setCompressionLevels(String levels)
+    {
+        StringTokenizer tok = new StringTokenizer(levels,",",false);
+        while (tok.hasMoreTokens())
+        {
+            String[] entry=split(tok.nextToken());
+            setCompressionLevel(entry[0],Integer.parseInt(entry[1]));
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Set the strategies from a configuration string.
+     * @param strategies Comma separated list of <code>mimeType=strategy</code>, where strategy is
+     * one of <code>default</code>, <code>filtered</code> or <code>huffman</code>
+     */
+    public void setStrategies(String strategies)
+    {
+        StringTokenizer tok = new StringTokenizer(strategies,",",false);
+        while (tok.hasMoreTokens())
+        {
+            String[] entry=split(tok.nextToken());
+            setStrategy(entry[0],toStrategy(entry[1]));
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param strategy A strategy name: <code>default</code>, <code>filtered</code> or <code>huffman</code>
+     * @return The {@link Deflater} strategy
+     */
+    public static int toStrategy(String strategy)
+    {
+        switch (StringUtil.asciiToLowerCase(strategy.trim()))
+        {
+            case "default":
+                return Deflater.DEFAULT_STRATEGY;
+            case "filtered":
+                return Deflater.FILTERED;
+            case "huffman":
+            case "huffman_only":
+                return Deflater.HUFFMAN_ONLY;
+            default:
+                throw new IllegalArgumentException("Unknown strategy: "+strategy);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Acquire a deflater using the default compression level and strategy.
+     * @return A reset deflater
+     */
+    public Deflater acquire()
+    {
+        return acquire(null);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Acquire a deflater for a mime type.
+     * @param mimeType The mime type of the content to compress or null if not known
+     * @return A reset deflater using the compression level and strategy of the mime type.
+     */
+    public Deflater acquire(String mimeType)
+    {
+        int level=getCompressionLevel(mimeType);
+        int strategy=getStrategy(mimeType);
+
+        Deflater deflater=_pool.poll();
+        if (deflater==null)
+        {
+            _created.incrementAndGet();
+            deflater=new Deflater(level,_nowrap);
+        }
+        else
+        {
+            _size.decrementAndGet();
+            deflater.setLevel(level);
+        }
+        deflater.setStrategy(strategy);
+        return deflater;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Release a deflater to the pool. The deflater is ended if the pool is full.
+     * @param deflater The deflater to release, which must not be used after being released.
+     */
+    public void release(Deflater deflater)
+    {
+        if (deflater==null)
+            return;
+
+        if (_size.incrementAndGet()>_capacity)
+        {
+            _size.decrementAndGet();
+            end(deflater);
+            return;
+        }
+
+        deflater.reset();
+        _pool.offer(deflater);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * End all the idle deflaters in the pool.
+     */
+    public void clear()
+    {
+        Deflater deflater=_pool.poll();
+        while (deflater!=null)
+        {
+            _size.decrementAndGet();
+            end(deflater);
+            deflater=_pool.poll();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return The number of idle deflaters in the pool
+     */
+    public int getIdle()
+    {
+        return _size.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return The number of deflaters created by the pool
+     */
+    public long getCreated()
+    {
+        return _created.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return The number of deflaters ended by the pool
+     */
+    public long getEnded()
+    {
+        return _ended.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    private void end(Deflater deflater)
+    {
+        _ended.incrementAndGet();
+        deflater.end();
+    }
+
+    /* ------------------------------------------------------------ */
+    private static String[] split(String entry)
+    {
+        int eq=entry.lastIndexOf('=');
+        if (eq<0)
+            throw new IllegalArgumentException("Expected mimeType=value: "+entry);
+        return new String[]{entry.substring(0,eq).trim(),entry.substring(eq+1).trim()};
+    }
+
+    /* ------------------------------------------------------------ */
+    private static int checkLevel(int level)
+    {
+        if (level<Deflater.DEFAULT_COMPRESSION || level>Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level: "+level);
+        return level;
+    }
+
+    /* ------------------------------------------------------------ */
+    private static int checkStrategy(int strategy)
+    {
+        if (strategy!=Deflater.DEFAULT_STRATEGY && strategy!=Deflater.FILTERED && strategy!=Deflater.HUFFMAN_ONLY)
+            throw new IllegalArgumentException("Invalid strategy: "+strategy);
+        return strategy;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{idle=%d/%d,created=%d,ended=%d}",getClass().getSimpleName(),hashCode(),getIdle(),_capacity,getCreated(),getEnded());
+    }
+}
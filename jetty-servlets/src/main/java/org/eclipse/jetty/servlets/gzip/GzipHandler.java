@@ -26,8 +26,7 @@ import java.io.UnsupportedEncodingException;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Deflater;
 
 import javax.servlet.AsyncEvent;
 import javax.servlet.AsyncListener;
@@ -36,6 +35,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.HandlerWrapper;
 import org.eclipse.jetty.util.log.Log;
@@ -68,6 +68,11 @@ public class GzipHandler extends HandlerWrapper
     protected int _bufferSize = 8192;
     protected int _minGzipSize = 256;
     protected String _vary = "Accept-Encoding, User-Agent";
+    protected int _compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    protected String _compressionLevels;
+    protected String _strategies;
+    protected int _deflaterPoolCapacity = 2*Runtime.getRuntime().availableProcessors();
+    protected DeflaterPool _deflaterPool;
 
     /* ------------------------------------------------------------ */
     /**
@@ -244,6 +249,113 @@ public class GzipHandler extends HandlerWrapper
         _minGzipSize = minGzipSize;
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * @return The default compression level
+     */
+    public int getCompressionLevel()
+    {
+        return _compressionLevel;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param compressionLevel The default compression level (-1 or 0-9)
+     * @see Deflater#setLevel(int)
+     */
+    public void setCompressionLevel(int compressionLevel)
+    {
+        _compressionLevel = compressionLevel;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return The compression levels by mime type
+     */
+    public String getCompressionLevels()
+    {
+        return _compressionLevels;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param compressionLevels Comma separated list of <code>mimeType=level</code> to use a different
+     * compression level for some mime types.
+     */
+    public void setCompressionLevels(String compressionLevels)
+    {
+        _compressionLevels = compressionLevels;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return The compression strategies by mime type
+     */
+    public String getStrategies()
+    {
+        return _strategies;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param strategies Comma separated list of <code>mimeType=strategy</code>, where strategy is one of
+     * <code>default</code>, <code>filtered</code> or <code>huffman</code>.
+     * @see Deflater#setStrategy(int)
+     */
+    public void setStrategies(String strategies)
+    {
+        _strategies = strategies;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return The maximum number of idle {@link Deflater}s kept for reuse
+     */
+    public int getDeflaterPoolCapacity()
+    {
+        return _deflaterPoolCapacity;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param capacity The maximum number of idle {@link Deflater}s kept for reuse
+     */
+    public void setDeflaterPoolCapacity(int capacity)
+    {
+        _deflaterPoolCapacity = capacity;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return The pool of deflaters used while started
+     */
+    public DeflaterPool getDeflaterPool()
+    {
+        return _deflaterPool;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    protected void doStart() throws Exception
+    {
+        DeflaterPool pool = new DeflaterPool(_deflaterPoolCapacity,true);
+        pool.setCompressionLevel(_compressionLevel);
+        if (_compressionLevels != null)
+            pool.setCompressionLevels(_compressionLevels);
+        if (_strategies != null)
+            pool.setStrategies(_strategies);
+        _deflaterPool = pool;
+        super.doStart();
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        _deflaterPool.clear();
+    }
+
     /* ------------------------------------------------------------ */
     /**
      * @see org.eclipse.jetty.server.handler.HandlerWrapper#handle(java.lang.String, org.eclipse.jetty.server.Request, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
@@ -347,12 +459,30 @@ public class GzipHandler extends HandlerWrapper
             @Override
             protected AbstractCompressedStream newCompressedStream(HttpServletRequest request,HttpServletResponse response) throws IOException
             {
+                final DeflaterPool pool = _deflaterPool;
                 return new AbstractCompressedStream("gzip",request,this,_vary)
                 {
+                    private Deflater _allocatedDeflater;
+
+                    @Override
+                    protected OutputStream createStream() throws IOException
+                    {
+                        String ct = _response.getContentType();
+                        if (ct != null)
+                            ct = MimeTypes.getContentTypeWithoutCharset(ct);
+                        _allocatedDeflater = pool.acquire(ct);
+                        return new GzipOutputStream(_response.getOutputStream(),_allocatedDeflater,new byte[_bufferSize]);
+                    }
+
                     @Override
-                    protected DeflaterOutputStream createStream() throws IOException
+                    public void finish() throws IOException
                     {
-                        return new GZIPOutputStream(_response.getOutputStream(),_bufferSize);
+                        super.finish();
+                        if (_allocatedDeflater != null)
+                        {
+                            pool.release(_allocatedDeflater);
+                            _allocatedDeflater = null;
+                        }
                     }
                 };
             }
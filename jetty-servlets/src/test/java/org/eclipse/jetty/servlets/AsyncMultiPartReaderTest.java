@@ -0,0 +1,294 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.servlets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.MultiPartParser;
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncMultiPartReaderTest
+{
+    private static final String BOUNDARY = "XyXyXy";
+    private static final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private Server server;
+    private ServerConnector connector;
+
+    @Before
+    public void init() throws Exception
+    {
+        failure.set(null);
+        server = new Server();
+        connector = new ServerConnector(server);
+        server.addConnector(connector);
+        ServletContextHandler context = new ServletContextHandler(server, "/");
+        context.addServlet(SummaryServlet.class, "/summary");
+        context.addServlet(PausingSummaryServlet.class, "/pausing");
+        server.start();
+    }
+
+    @After
+    public void destroy() throws Exception
+    {
+        server.stop();
+    }
+
+    @Test
+    public void testPartsReadInChunks() throws Exception
+    {
+        byte[] file = new byte[64 * 1024];
+        Arrays.fill(file, (byte)'x');
+        String response = post("/summary", content(file), 1000);
+
+        Assert.assertThat(response, Matchers.startsWith("HTTP/1.1 200 "));
+        Assert.assertThat(response, Matchers.containsString("field=5\n"));
+        Assert.assertThat(response, Matchers.containsString("file=" + file.length + "\n"));
+    }
+
+    @Test
+    public void testHandlerPausesReading() throws Exception
+    {
+        byte[] file = new byte[64 * 1024];
+        Arrays.fill(file, (byte)'x');
+        String response = post("/pausing", content(file), 16 * 1024);
+
+        Assert.assertThat(response, Matchers.startsWith("HTTP/1.1 200 "));
+        Assert.assertThat(response, Matchers.containsString("field=5\n"));
+        Assert.assertThat(response, Matchers.containsString("file=" + file.length + "\n"));
+    }
+
+    @Test
+    public void testInvalidContent() throws Exception
+    {
+        byte[] content = ("--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"field\"\r\n" +
+                "\r\n" +
+                "value\r\n" +
+                "--" + BOUNDARY + "-\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        String response = post("/summary", content, content.length);
+
+        Assert.assertThat(response, Matchers.startsWith("HTTP/1.1 400 "));
+    }
+
+    private byte[] content(byte[] file)
+    {
+        String head = "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"field\"\r\n" +
+                "\r\n" +
+                "value\r\n" +
+                "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"file\"; filename=\"file.bin\"\r\n" +
+                "Content-Type: application/octet-stream\r\n" +
+                "\r\n";
+        String tail = "\r\n--" + BOUNDARY + "--\r\n";
+        ByteBuffer content = ByteBuffer.allocate(head.length() + file.length + tail.length());
+        content.put(head.getBytes(StandardCharsets.ISO_8859_1)).put(file).put(tail.getBytes(StandardCharsets.ISO_8859_1));
+        return content.array();
+    }
+
+    private String post(String path, byte[] content, int chunkSize) throws Exception
+    {
+        try (Socket socket = new Socket("localhost", connector.getLocalPort()))
+        {
+            socket.setSoTimeout(5000);
+            OutputStream output = socket.getOutputStream();
+            String request = "POST " + path + " HTTP/1.1\r\n" +
+                    "Host: localhost\r\n" +
+                    "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n" +
+                    "Content-Length: " + content.length + "\r\n" +
+                    "Connection: close\r\n" +
+                    "\r\n";
+            output.write(request.getBytes(StandardCharsets.ISO_8859_1));
+            output.flush();
+
+            // Send the content in chunks, so that the reader must wait for it
+            for (int offset = 0; offset < content.length; offset += chunkSize)
+            {
+                output.write(content, offset, Math.min(chunkSize, content.length - offset));
+                output.flush();
+                TimeUnit.MILLISECONDS.sleep(1);
+            }
+
+            InputStream input = socket.getInputStream();
+            String response = IO.toString(input, "ISO-8859-1");
+            // The servlet must have written the response without errors
+            Assert.assertNull(failure.get());
+            return response;
+        }
+    }
+
+    public static class SummaryServlet extends HttpServlet
+    {
+        @Override
+        protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+        {
+            final AsyncContext async = request.startAsync();
+            final StringBuilder summary = new StringBuilder();
+            AsyncMultiPartReader reader = newReader(request, summary, new Callback()
+            {
+                @Override
+                public void succeeded()
+                {
+                    complete(async, 200, summary.toString());
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    complete(async, 400, x.toString());
+                }
+            });
+            reader.start();
+        }
+
+        protected AsyncMultiPartReader newReader(HttpServletRequest request, StringBuilder summary, Callback callback)
+        {
+            return new AsyncMultiPartReader(request, new SummaryHandler(summary), callback);
+        }
+
+        private void complete(AsyncContext async, int status, String content)
+        {
+            try
+            {
+                HttpServletResponse response = (HttpServletResponse)async.getResponse();
+                response.setStatus(status);
+                response.getOutputStream().write(content.getBytes(StandardCharsets.UTF_8));
+            }
+            catch (IOException x)
+            {
+                failure.compareAndSet(null, x);
+            }
+            finally
+            {
+                async.complete();
+            }
+        }
+    }
+
+    public static class PausingSummaryServlet extends SummaryServlet
+    {
+        @Override
+        protected AsyncMultiPartReader newReader(HttpServletRequest request, StringBuilder summary, Callback callback)
+        {
+            final AsyncMultiPartReader[] reader = new AsyncMultiPartReader[1];
+            reader[0] = new AsyncMultiPartReader(request, new SummaryHandler(summary)
+            {
+                @Override
+                public boolean content(ByteBuffer item, boolean last)
+                {
+                    super.content(item, last);
+                    // Resume from another thread, as if the content was written asynchronously
+                    new Thread()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            reader[0].resume();
+                        }
+                    }.start();
+                    return true;
+                }
+            }, callback, 1024);
+            return reader[0];
+        }
+    }
+
+    private static class SummaryHandler implements MultiPartParser.Handler
+    {
+        private final StringBuilder summary;
+        private String name;
+        private int size;
+
+        private SummaryHandler(StringBuilder summary)
+        {
+            this.summary = summary;
+        }
+
+        @Override
+        public void startPart()
+        {
+            name = null;
+            size = 0;
+        }
+
+        @Override
+        public boolean parsedField(String name, String value)
+        {
+            if ("Content-Disposition".equalsIgnoreCase(name))
+                this.name = MultiPartParser.getParameter(value, "name");
+            return false;
+        }
+
+        @Override
+        public boolean headerComplete()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean content(ByteBuffer item, boolean last)
+        {
+            size += item.remaining();
+            if (last)
+                summary.append(name).append('=').append(size).append('\n');
+            return false;
+        }
+
+        @Override
+        public boolean messageComplete()
+        {
+            return false;
+        }
+
+        @Override
+        public void earlyEOF()
+        {
+        }
+
+        @Override
+        public void badMessage(String reason)
+        {
+        }
+    }
+}
@@ -0,0 +1,127 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.servlets.gzip;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.eclipse.jetty.util.IO;
+import org.junit.Test;
+
+public class DeflaterPoolTest
+{
+    @Test
+    public void testReuse() throws Exception
+    {
+        DeflaterPool pool = new DeflaterPool(2,true);
+
+        Deflater deflater = pool.acquire();
+        assertEquals(0,pool.getIdle());
+        pool.release(deflater);
+        assertEquals(1,pool.getIdle());
+
+        assertSame(deflater,pool.acquire());
+        assertEquals(1,pool.getCreated());
+        pool.release(deflater);
+    }
+
+    @Test
+    public void testBounded() throws Exception
+    {
+        DeflaterPool pool = new DeflaterPool(2,true);
+
+        Deflater d1 = pool.acquire();
+        Deflater d2 = pool.acquire();
+        Deflater d3 = pool.acquire();
+        assertEquals(3,pool.getCreated());
+
+        pool.release(d1);
+        pool.release(d2);
+        pool.release(d3);
+        assertEquals(2,pool.getIdle());
+        assertEquals(1,pool.getEnded());
+
+        pool.clear();
+        assertEquals(0,pool.getIdle());
+        assertEquals(3,pool.getEnded());
+    }
+
+    @Test
+    public void testMimeTypeConfiguration() throws Exception
+    {
+        DeflaterPool pool = new DeflaterPool(2,true);
+        pool.setCompressionLevel(6);
+        pool.setCompressionLevels("text/html=9, application/json=1");
+        pool.setStrategies("application/octet-stream=filtered,application/json=huffman");
+
+        assertEquals(6,pool.getCompressionLevel(null));
+        assertEquals(6,pool.getCompressionLevel("text/plain"));
+        assertEquals(9,pool.getCompressionLevel("TEXT/HTML"));
+        assertEquals(1,pool.getCompressionLevel("application/json"));
+        assertEquals(6,pool.getCompressionLevel("application/octet-stream"));
+
+        assertEquals(Deflater.DEFAULT_STRATEGY,pool.getStrategy("text/html"));
+        assertEquals(Deflater.FILTERED,pool.getStrategy("application/octet-stream"));
+        assertEquals(Deflater.HUFFMAN_ONLY,pool.getStrategy("application/json"));
+    }
+
+    @Test
+    public void testReusedDeflaterOutput() throws Exception
+    {
+        DeflaterPool pool = new DeflaterPool(1,true);
+        pool.setCompressionLevels("text/plain=9");
+
+        byte[] content = "Hello Gzip! Hello Gzip! Hello Gzip! Hello Gzip!".getBytes(StandardCharsets.UTF_8);
+        Deflater first = null;
+        for (String mimeType : new String[] { "text/plain", "application/json", null })
+        {
+            Deflater deflater = pool.acquire(mimeType);
+            if (first == null)
+                first = deflater;
+            else
+                assertSame(first,deflater);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (GzipOutputStream gzip = new GzipOutputStream(out,deflater,new byte[512]))
+            {
+                gzip.write(content);
+            }
+            pool.release(deflater);
+
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())))
+            {
+                ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+                IO.copy(in,inflated);
+                assertArrayEquals(content,inflated.toByteArray());
+            }
+        }
+
+        Deflater other = pool.acquire();
+        assertSame(first,other);
+        assertNotSame(first,pool.acquire());
+    }
+}
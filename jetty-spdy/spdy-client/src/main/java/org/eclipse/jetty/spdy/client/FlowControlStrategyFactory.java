@@ -18,6 +18,7 @@
 
 package org.eclipse.jetty.spdy.client;
 
+import org.eclipse.jetty.spdy.AdaptiveFlowControlStrategy;
 import org.eclipse.jetty.spdy.FlowControlStrategy;
 import org.eclipse.jetty.spdy.SPDYv3FlowControlStrategy;
 import org.eclipse.jetty.spdy.api.SPDY;
@@ -29,13 +30,24 @@ public class FlowControlStrategyFactory
     }
 
     public static FlowControlStrategy newFlowControlStrategy(short version)
+    {
+        return newFlowControlStrategy(version, false);
+    }
+
+    /**
+     * @param version the SPDY version
+     * @param adaptive whether the receive windows of SPDY/3 streams should be grown to the bandwidth-delay
+     * product of the connection, see {@link AdaptiveFlowControlStrategy}
+     * @return a new flow control strategy for a session
+     */
+    public static FlowControlStrategy newFlowControlStrategy(short version, boolean adaptive)
     {
         switch (version)
         {
             case SPDY.V2:
                 return new FlowControlStrategy.None();
             case SPDY.V3:
-                return new SPDYv3FlowControlStrategy();
+                return adaptive ? new AdaptiveFlowControlStrategy() : new SPDYv3FlowControlStrategy();
             default:
                 throw new IllegalStateException();
         }
@@ -78,6 +78,7 @@ public class SPDYClient
     private volatile long idleTimeout = -1;
     private volatile int initialWindowSize;
     private volatile boolean dispatchIO;
+    private volatile boolean adaptiveFlowControl;
     private volatile ClientConnectionFactory connectionFactory;
 
     protected SPDYClient(short version, Factory factory)
@@ -229,6 +230,20 @@ public class SPDYClient
         this.dispatchIO = dispatchIO;
     }
 
+    public boolean isAdaptiveFlowControl()
+    {
+        return adaptiveFlowControl;
+    }
+
+    /**
+     * @param adaptiveFlowControl whether the receive windows of the streams are grown to the bandwidth-delay product of the connection
+     * @see FlowControlStrategyFactory#newFlowControlStrategy(short, boolean)
+     */
+    public void setAdaptiveFlowControl(boolean adaptiveFlowControl)
+    {
+        this.adaptiveFlowControl = adaptiveFlowControl;
+    }
+
     public ClientConnectionFactory getClientConnectionFactory()
     {
         return connectionFactory;
@@ -252,7 +267,7 @@ public class SPDYClient
 
     protected FlowControlStrategy newFlowControlStrategy()
     {
-        return FlowControlStrategyFactory.newFlowControlStrategy(version);
+        return FlowControlStrategyFactory.newFlowControlStrategy(version, isAdaptiveFlowControl());
     }
 
     public static class Factory extends ContainerLifeCycle
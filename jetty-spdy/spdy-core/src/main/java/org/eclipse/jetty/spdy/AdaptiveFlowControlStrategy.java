@@ -0,0 +1,317 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.spdy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.spdy.api.DataInfo;
+import org.eclipse.jetty.spdy.api.PingInfo;
+import org.eclipse.jetty.spdy.api.PingResultInfo;
+import org.eclipse.jetty.spdy.api.Session;
+import org.eclipse.jetty.spdy.api.Stream;
+import org.eclipse.jetty.spdy.frames.WindowUpdateFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * A SPDY/3 {@link FlowControlStrategy} that sizes the receive windows of the streams to the bandwidth-delay product
+ * of the connection.
+ * <p>
+ * Consumed data is returned to the sender in a single window update once half of the stream window has been consumed,
+ * rather than one update per data frame. The round trip time of the connection is measured with a PING, and when the
+ * data of a stream is consumed at more than half of the rate that its window allows over one round trip, the window
+ * is doubled by adding the growth to the next window update, up to {@link #getMaxStreamWindow()}.
+ * <p>
+ * SPDY/3 has no session window, so the memory that the peer may make this session buffer is bounded by the sum of
+ * the windows of its open streams, which windows are not grown beyond {@link #getMaxSessionWindow()}.
+ * <p>
+ * Sending data works as with {@link SPDYv3FlowControlStrategy}. An instance must be used for a single session.
+ */
+public class AdaptiveFlowControlStrategy extends SPDYv3FlowControlStrategy
+{
+    private static final Logger LOG = Log.getLogger(AdaptiveFlowControlStrategy.class);
+    private static final String WINDOW_ATTRIBUTE = AdaptiveFlowControlStrategy.class.getName() + ".window";
+
+    private final AtomicBoolean registered = new AtomicBoolean();
+    private final int initialWindow;
+    private final int maxStreamWindow;
+    private final long maxSessionWindow;
+    private volatile long pingInterval = TimeUnit.SECONDS.toNanos(10);
+    private final AtomicLong lastPing = new AtomicLong(System.nanoTime() - pingInterval);
+    private final AtomicReference<RoundTrip> roundTrip = new AtomicReference<>();
+    private volatile long roundTripTime;
+
+    public AdaptiveFlowControlStrategy()
+    {
+        this(65536, 8 * 1024 * 1024, 16 * 1024 * 1024);
+    }
+
+    /**
+     * @param initialWindow the receive window that the peer initially assumes for each stream
+     * @param maxStreamWindow the maximum receive window of a stream
+     * @param maxSessionWindow the maximum sum of the receive windows of the streams of the session
+     */
+    public AdaptiveFlowControlStrategy(int initialWindow, int maxStreamWindow, long maxSessionWindow)
+    {
+        if (initialWindow <= 0 || maxStreamWindow < initialWindow || maxSessionWindow < maxStreamWindow)
+            throw new IllegalArgumentException("Invalid windows " + initialWindow + "/" + maxStreamWindow + "/" + maxSessionWindow);
+        this.initialWindow = initialWindow;
+        this.maxStreamWindow = maxStreamWindow;
+        this.maxSessionWindow = maxSessionWindow;
+    }
+
+    public int getInitialWindow()
+    {
+        return initialWindow;
+    }
+
+    public int getMaxStreamWindow()
+    {
+        return maxStreamWindow;
+    }
+
+    public long getMaxSessionWindow()
+    {
+        return maxSessionWindow;
+    }
+
+    /**
+     * @return the last measured round trip time in milliseconds, or 0 if not measured yet
+     */
+    public long getRoundTripTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(roundTripTime);
+    }
+
+    /**
+     * @return the interval in milliseconds between the PINGs that measure the round trip time
+     */
+    public long getPingInterval()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(pingInterval);
+    }
+
+    public void setPingInterval(long pingInterval)
+    {
+        this.pingInterval = TimeUnit.MILLISECONDS.toNanos(pingInterval);
+    }
+
+    /**
+     * @param stream the stream
+     * @return the current receive window of the stream
+     */
+    public int getReceiveWindow(Stream stream)
+    {
+        Window window = (Window)stream.getAttribute(WINDOW_ATTRIBUTE);
+        return window == null ? initialWindow : window.size;
+    }
+
+    @Override
+    public void onDataReceived(ISession session, IStream stream, DataInfo dataInfo)
+    {
+        window(stream);
+    }
+
+    @Override
+    public void onDataConsumed(ISession session, IStream stream, DataInfo dataInfo, int delta)
+    {
+        if (delta <= 0 || stream.isClosed())
+            return;
+
+        Window window = window(stream);
+        int update;
+        synchronized (window)
+        {
+            window.unacknowledged += delta;
+            // Coalesce the window updates until half the window is consumed
+            if (window.unacknowledged < window.size / 2)
+                return;
+
+            long now = System.nanoTime();
+            long elapsed = now - window.lastUpdate;
+            window.lastUpdate = now;
+            update = window.unacknowledged;
+            window.unacknowledged = 0;
+
+            int growth = grow(session, window.size, update, elapsed);
+            window.size += growth;
+            update += growth;
+        }
+
+        LOG.debug("Window update of {} for {}, window {}", update, stream, window.size);
+        WindowUpdateFrame windowUpdateFrame = new WindowUpdateFrame(session.getVersion(), stream.getId(), update);
+        session.control(stream, windowUpdateFrame, 0, TimeUnit.MILLISECONDS, new Callback.Adapter());
+
+        if (window.size < maxStreamWindow)
+            ping(session);
+    }
+
+    private Window window(IStream stream)
+    {
+        Window window = (Window)stream.getAttribute(WINDOW_ATTRIBUTE);
+        if (window == null)
+        {
+            // Normally created when the first data is received, by the parser thread
+            window = new Window(initialWindow);
+            stream.setAttribute(WINDOW_ATTRIBUTE, window);
+        }
+        return window;
+    }
+
+    /**
+     * @return the number of bytes to grow the window by
+     */
+    private int grow(ISession session, int size, int consumed, long elapsed)
+    {
+        long roundTripTime = this.roundTripTime;
+        if (roundTripTime <= 0 || size >= maxStreamWindow)
+            return 0;
+
+        // The sender cannot send more than a window per round trip, so if the data was
+        // consumed at more than half that rate, the window is limiting the throughput.
+        if ((double)consumed * roundTripTime * 2 < (double)size * elapsed)
+            return 0;
+
+        synchronized (this)
+        {
+            long total = 0;
+            for (Stream stream : session.getStreams())
+                total += getReceiveWindow(stream);
+            long growth = Math.min(size, Math.min(maxStreamWindow - size, maxSessionWindow - total));
+            return growth > 0 ? (int)growth : 0;
+        }
+    }
+
+    private void ping(ISession session)
+    {
+        final long start = System.nanoTime();
+        // At most one PING per interval; a PING that is not replied is superseded by the next one
+        long last = lastPing.get();
+        if (start - last < pingInterval || !lastPing.compareAndSet(last, start))
+            return;
+        if (registered.compareAndSet(false, true))
+            session.addListener(new RoundTripListener());
+        // Recorded before sending, as the reply may be received before the write of the PING completes
+        final RoundTrip ping = new RoundTrip(start, -1, -1, 0);
+        roundTrip.set(ping);
+        session.ping(new PingInfo(), new Promise<PingResultInfo>()
+        {
+            @Override
+            public void succeeded(PingResultInfo result)
+            {
+                // The PING has been written, the reply is notified to the RoundTripListener
+                int pingId = result.getPingId();
+                while (true)
+                {
+                    RoundTrip current = roundTrip.get();
+                    if (current == null || current.start != ping.start)
+                        return;
+                    if (current.replyId == pingId)
+                    {
+                        if (roundTrip.compareAndSet(current, null))
+                            measured(current.replyTime - current.start);
+                        return;
+                    }
+                    if (roundTrip.compareAndSet(current, new RoundTrip(current.start, pingId, -1, 0)))
+                        return;
+                }
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                LOG.ignore(x);
+                RoundTrip current = roundTrip.get();
+                if (current != null && current.start == ping.start)
+                    roundTrip.compareAndSet(current, null);
+            }
+        });
+    }
+
+    private void measured(long roundTripTime)
+    {
+        this.roundTripTime = Math.max(1, roundTripTime);
+        LOG.debug("Round trip time {} ms", getRoundTripTime());
+    }
+
+    private class RoundTripListener implements Session.PingListener
+    {
+        @Override
+        public void onPing(Session session, PingResultInfo pingResultInfo)
+        {
+            long now = System.nanoTime();
+            int pingId = pingResultInfo.getPingId();
+            while (true)
+            {
+                RoundTrip current = roundTrip.get();
+                if (current == null)
+                    return;
+                if (current.pingId == pingId)
+                {
+                    if (roundTrip.compareAndSet(current, null))
+                        measured(now - current.start);
+                    return;
+                }
+                // The reply to another PING
+                if (current.pingId >= 0)
+                    return;
+                // Possibly the reply to our PING, whose write has not completed yet
+                if (roundTrip.compareAndSet(current, new RoundTrip(current.start, -1, pingId, now)))
+                    return;
+            }
+        }
+    }
+
+    /**
+     * The state of the PING measuring the round trip time, replaced as a whole so that the
+     * start time and the ping id of a reply are always those of the same PING.
+     */
+    private static class RoundTrip
+    {
+        private final long start;
+        private final int pingId;
+        private final int replyId;
+        private final long replyTime;
+
+        private RoundTrip(long start, int pingId, int replyId, long replyTime)
+        {
+            this.start = start;
+            this.pingId = pingId;
+            this.replyId = replyId;
+            this.replyTime = replyTime;
+        }
+    }
+
+    private static class Window
+    {
+        private volatile int size;
+        private int unacknowledged;
+        private long lastUpdate = System.nanoTime();
+
+        private Window(int size)
+        {
+            this.size = size;
+        }
+    }
+}
@@ -32,6 +32,19 @@ import org.eclipse.jetty.util.IteratingCallback;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
+/**
+ * Queues the frames of a session and writes them in batches.
+ * <p>
+ * Frames are queued by stream priority, and the frames of a stream are always written in the order they were queued.
+ * A data frame is written one chunk at a time, and after each chunk the rest of it is queued again behind the frames of
+ * the other streams of the same priority, so that streams with data take turns rather than a large transfer holding the
+ * connection until it completes.
+ * <p>
+ * When several streams have data in the same batch, the size of the chunk of each is the {@link #getDataQuantum() data quantum}
+ * weighted by the priority of its stream, from the whole quantum for priority 0 down to an eighth of it for priority 7,
+ * so that low priority streams keep progressing but yield most of the connection to higher priority ones.
+ * A stream that has consumed its flow control window is skipped without holding up the frames of other streams.
+ */
 public class Flusher
 {
     private static final Logger LOG = Log.getLogger(Flusher.class);
@@ -41,6 +54,7 @@ public class Flusher
     private final ArrayQueue<StandardSession.FrameBytes> queue = new ArrayQueue<>(ArrayQueue.DEFAULT_CAPACITY, ArrayQueue.DEFAULT_GROWTH, lock);
     private final Controller controller;
     private final int maxGather;
+    private volatile int dataQuantum = 64 * 1024;
     private Throwable failure;
 
     public Flusher(Controller controller)
@@ -123,6 +137,69 @@ public class Flusher
         }
     }
 
+    /**
+     * Queue again a data frame that has more data to write after one of its chunks has been written.
+     * <p>
+     * The frame is queued behind the frames of the other streams of higher or same priority, but ahead of any
+     * other frame of its own stream and of the frames of lower priority streams; frames not related to a stream
+     * are skipped, so that they do not push the frame ahead of higher priority streams.
+     *
+     * @param frameBytes the data frame
+     * @return the failure of the flusher, if any
+     */
+    public Throwable requeue(StandardSession.DataFrameBytes frameBytes)
+    {
+        synchronized (lock)
+        {
+            Throwable failure = this.failure;
+            if (failure == null)
+            {
+                IStream stream = frameBytes.getStream();
+                int index = 0;
+                int size = queue.size();
+                while (index < size)
+                {
+                    StandardSession.FrameBytes element = queue.getUnsafe(index);
+                    IStream elementStream = element.getStream();
+                    if (elementStream != null && (elementStream == stream || elementStream.getPriority() > stream.getPriority()))
+                        break;
+                    ++index;
+                }
+                queue.add(index, frameBytes);
+            }
+            return failure;
+        }
+    }
+
+    /**
+     * @return the maximum size of a data chunk written for a stream of priority 0 when other streams also have data to write
+     */
+    public int getDataQuantum()
+    {
+        return dataQuantum;
+    }
+
+    /**
+     * @param dataQuantum the maximum size of a data chunk written for a stream of priority 0 when other streams also have data to write
+     */
+    public void setDataQuantum(int dataQuantum)
+    {
+        if (dataQuantum < 8)
+            throw new IllegalArgumentException("Invalid data quantum " + dataQuantum);
+        this.dataQuantum = dataQuantum;
+    }
+
+    /**
+     * @param priority the stream priority, 0 being the highest
+     * @return the size of the data chunk written for a stream of that priority when other streams also have data to write
+     */
+    private int dataChunkSize(int priority)
+    {
+        // SPDY/3 priorities go from 0 to 7, SPDY/2 from 0 to 3
+        int weight = 8 - Math.min(7, Math.max(0, priority));
+        return dataQuantum / 8 * weight;
+    }
+
     public void flush()
     {
         callback.iterate();
@@ -150,6 +227,7 @@ public class Flusher
                 // Scan queue for data to write from first non stalled stream.
                 int index = 0; // The index of the first non-stalled frame.
                 int size = queue.size();
+                int dataStreams = 0;
                 while (index < size)
                 {
                     FrameBytes frameBytes = queue.getUnsafe(index);
@@ -157,7 +235,8 @@ public class Flusher
 
                     if (stream != null)
                     {
-                        // Is it a frame belonging to an already stalled stream ?
+                        // Is it a frame belonging to an already stalled stream, or
+                        // following a data frame of its stream already in this batch ?
                         if (stalled.size() > 0 && stalled.contains(stream))
                         {
                             ++index;
@@ -187,9 +266,30 @@ public class Flusher
                     }
 
                     active.add(frameBytes);
+
+                    // Only one chunk of data is written per stream per batch, as the
+                    // flow control window is only updated once the chunk is written
+                    if (stream != null && frameBytes instanceof StandardSession.DataFrameBytes)
+                    {
+                        stalled.add(stream);
+                        ++dataStreams;
+                    }
                 }
                 stalled.clear();
 
+                // When streams compete, weight the size of the data chunks by priority
+                if (dataStreams > 0)
+                {
+                    for (FrameBytes frameBytes : active)
+                    {
+                        if (frameBytes instanceof StandardSession.DataFrameBytes)
+                        {
+                            int chunkSize = dataStreams > 1 ? dataChunkSize(frameBytes.getStream().getPriority()) : dataQuantum;
+                            ((StandardSession.DataFrameBytes)frameBytes).setMaxChunkSize(chunkSize);
+                        }
+                    }
+                }
+
                 if (LOG.isDebugEnabled())
                     LOG.debug("Flushing {} of {} frame(s) in queue", active.size(), queue.size());
             }
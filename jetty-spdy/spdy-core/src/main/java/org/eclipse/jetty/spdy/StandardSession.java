@@ -708,6 +708,7 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
         if (pingId % 2 == pingIds.get() % 2)
         {
             PingResultInfo pingResultInfo = new PingResultInfo(frame.getPingId());
+            notifyPingListeners(pingResultInfo);
             notifyOnPing(listener, pingResultInfo);
         }
         else
@@ -716,6 +717,29 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
         }
     }
 
+    private void notifyPingListeners(PingResultInfo pingResultInfo)
+    {
+        for (Listener listener : listeners)
+        {
+            if (listener instanceof PingListener)
+            {
+                try
+                {
+                    ((PingListener)listener).onPing(this, pingResultInfo);
+                }
+                catch (Exception x)
+                {
+                    LOG.info("Exception while notifying listener " + listener, x);
+                }
+                catch (Error x)
+                {
+                    LOG.info("Exception while notifying listener " + listener, x);
+                    throw x;
+                }
+            }
+        }
+    }
+
     private void onGoAway(GoAwayFrame frame)
     {
         if (goAwayReceived.compareAndSet(false, true))
@@ -1014,6 +1038,20 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
         }
     }
 
+    /**
+     * @return the maximum size of a data chunk written for a stream of priority 0 when other streams also have data to write
+     * @see Flusher#getDataQuantum()
+     */
+    public int getDataQuantum()
+    {
+        return flusher.getDataQuantum();
+    }
+
+    public void setDataQuantum(int dataQuantum)
+    {
+        flusher.setDataQuantum(dataQuantum);
+    }
+
     public int getWindowSize()
     {
         return flowControlStrategy.getWindowSize(this);
@@ -1160,6 +1198,7 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
     {
         private final DataInfo dataInfo;
         private int size;
+        private int maxChunkSize = Integer.MAX_VALUE;
         private volatile ByteBuffer buffer;
 
         private DataFrameBytes(IStream stream, Callback handler, DataInfo dataInfo)
@@ -1176,23 +1215,16 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
                 IStream stream = getStream();
                 int windowSize = stream.getWindowSize();
 
-                // TODO: optimization
-                // Right now, we use the windowSize to chunk big buffers.
-                // However, if the window size is large, we may congest the
-                // connection, or favor one stream that does a big download,
-                // starving the other streams.
-                // Also, SPDY DATA frames have a maximum of 16 MiB size, which
-                // is not enforced here.
-                // We should have a configurable "preferredDataFrameSize"
-                // (or even better autotuning) that will allow to send chunks
-                // that will not starve other streams and small enough to
-                // not congest the connection, while avoiding to send too many
-                // TCP packets.
+                // Big buffers are chunked by the flow control window and
+                // by the chunk size given by the Flusher, so that a large
+                // transfer does not starve the other streams.
                 // See also comment in class Flusher.
 
                 size = dataInfo.available();
                 if (size > windowSize)
                     size = windowSize;
+                if (size > maxChunkSize)
+                    size = maxChunkSize;
 
                 buffer = generator.data(stream.getId(), size, dataInfo);
                 return buffer;
@@ -1204,6 +1236,14 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
             }
         }
 
+        /**
+         * @param maxChunkSize the maximum number of bytes of data to write in the next frame
+         */
+        void setMaxChunkSize(int maxChunkSize)
+        {
+            this.maxChunkSize = maxChunkSize;
+        }
+
         @Override
         public void succeeded()
         {
@@ -1215,8 +1255,9 @@ public class StandardSession implements ISession, Parser.Listener, Dumpable
             {
                 // We have written a frame out of this DataInfo, but there is more to write.
                 // We need to keep the correct ordering of frames, to avoid that another
-                // DataInfo for the same stream is written before this one is finished.
-                flush(this, flusher.prepend(this));
+                // DataInfo for the same stream is written before this one is finished,
+                // while letting the other streams write their frames first.
+                flush(this, flusher.requeue(this));
             }
             else
             {
@@ -258,4 +258,20 @@ public interface Session
             }
         }
     }
+
+    /**
+     * <p>Specialized listener that is invoked when the reply to a PING sent by this session is received.</p>
+     * <p>Unlike the {@link SessionFrameListener} of the session, any number of these listeners may be
+     * added, for example to measure the round trip time of the connection.</p>
+     */
+    public interface PingListener extends Listener
+    {
+        /**
+         * <p>Callback invoked when the reply to a PING is received.</p>
+         *
+         * @param session the session
+         * @param pingResultInfo the metadata of the PING reply
+         */
+        public void onPing(Session session, PingResultInfo pingResultInfo);
+    }
 }
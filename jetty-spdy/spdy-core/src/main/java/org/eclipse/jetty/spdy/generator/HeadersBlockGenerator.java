@@ -24,16 +24,31 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.jetty.spdy.CompressionDictionary;
 import org.eclipse.jetty.spdy.CompressionFactory;
 import org.eclipse.jetty.spdy.api.SPDY;
 import org.eclipse.jetty.util.Fields;
 
+/**
+ * <p>Generates the compressed headers block of SYN_STREAM, SYN_REPLY and HEADERS frames.</p>
+ * <p>The headers compression context is per-session, but the uncompressed headers block only depends on the
+ * headers, so the uncompressed blocks of recently generated header sets are kept in a cache shared by all the
+ * sessions, and identical header sets (for example the same response headers sent to many clients) are only
+ * encoded once. The cached block is then compressed by the session compressor as any other block, where the
+ * repeated content costs the compressor little more than back references.</p>
+ */
 public class HeadersBlockGenerator
 {
+    private static final int CACHE_CAPACITY = 512;
+    private static final int MAX_CACHED_BLOCK_LENGTH = 4096;
+    private static final ConcurrentMap<CacheKey, byte[]> cache = new ConcurrentHashMap<>();
+
     private final CompressionFactory.Compressor compressor;
     private boolean needsDictionary = true;
+    private byte[] output = new byte[256];
 
     public HeadersBlockGenerator(CompressionFactory.Compressor compressor)
     {
@@ -42,7 +57,25 @@ public class HeadersBlockGenerator
 
     public ByteBuffer generate(short version, Fields headers)
     {
-        // TODO: ByteArrayOutputStream is quite inefficient, but grows on demand; optimize using ByteBuffer ?
+        // The lookup uses the headers as they are, only the cached key is copied
+        byte[] block = cache.get(new CacheKey(version, headers));
+        if (block == null)
+        {
+            block = encode(version, headers);
+            if (block.length <= MAX_CACHED_BLOCK_LENGTH)
+            {
+                // Header sets that change often (for example because of the Date header)
+                // would fill the cache, so it is reset rather than evicting entry by entry
+                if (cache.size() >= CACHE_CAPACITY)
+                    cache.clear();
+                cache.put(new CacheKey(version, new Fields(headers, true)), block);
+            }
+        }
+        return compress(version, block);
+    }
+
+    private byte[] encode(short version, Fields headers)
+    {
         final Charset iso1 = StandardCharsets.ISO_8859_1;
         ByteArrayOutputStream buffer = new ByteArrayOutputStream(headers.getSize() * 64);
         writeCount(version, buffer, headers.getSize());
@@ -74,13 +107,11 @@ public class HeadersBlockGenerator
             buffer.write(valueBytes, 0, valueBytes.length);
         }
 
-        return compress(version, buffer.toByteArray());
+        return buffer.toByteArray();
     }
 
     private ByteBuffer compress(short version, byte[] bytes)
     {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length);
-
         // The headers compression context is per-session, so we need to synchronize
         synchronized (compressor)
         {
@@ -94,21 +125,35 @@ public class HeadersBlockGenerator
 
             // Compressed bytes may be bigger than input bytes, so we need to loop and accumulate them
             // Beware that the minimum amount of bytes generated by the compressor is few bytes, so we
-            // need to use an output buffer that is big enough to exit the compress loop
-            buffer.reset();
-            int compressed;
-            byte[] output = new byte[Math.max(256, bytes.length)];
+            // need to use an output buffer that is big enough to exit the compress loop.
+            // The output buffer is reused across calls, guarded by the compressor lock.
+            if (output.length < bytes.length)
+                output = new byte[bytes.length];
+            byte[] result = null;
+            int length = 0;
             while (true)
             {
                 // SPDY uses the SYNC_FLUSH mode
-                compressed = compressor.compress(output);
-                buffer.write(output, 0, compressed);
+                int compressed = compressor.compress(output);
+                if (result == null && compressed < output.length)
+                {
+                    // Common case: a single pass was needed
+                    result = new byte[compressed];
+                    System.arraycopy(output, 0, result, 0, compressed);
+                    length = compressed;
+                    break;
+                }
+                byte[] local = new byte[length + compressed];
+                if (result != null)
+                    System.arraycopy(result, 0, local, 0, length);
+                System.arraycopy(output, 0, local, length, compressed);
+                result = local;
+                length += compressed;
                 if (compressed < output.length)
                     break;
             }
+            return ByteBuffer.wrap(result, 0, length);
         }
-
-        return ByteBuffer.wrap(buffer.toByteArray());
     }
 
     private void writeCount(short version, ByteArrayOutputStream buffer, int value)
@@ -147,4 +192,33 @@ public class HeadersBlockGenerator
     {
         writeCount(version, buffer, length);
     }
+
+    private static class CacheKey
+    {
+        private final short version;
+        private final Fields headers;
+
+        private CacheKey(short version, Fields headers)
+        {
+            this.version = version;
+            this.headers = headers;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof CacheKey))
+                return false;
+            CacheKey that = (CacheKey)obj;
+            return version == that.version && headers.equals(that.headers);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * headers.hashCode() + version;
+        }
+    }
 }
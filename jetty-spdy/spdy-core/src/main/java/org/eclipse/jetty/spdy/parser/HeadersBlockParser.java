@@ -19,8 +19,9 @@
 package org.eclipse.jetty.spdy.parser;
 
 import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.zip.ZipException;
 
 import org.eclipse.jetty.spdy.CompressionDictionary;
@@ -31,10 +32,22 @@ import org.eclipse.jetty.spdy.api.SPDY;
 import org.eclipse.jetty.spdy.api.SessionStatus;
 import org.eclipse.jetty.spdy.api.StreamStatus;
 
+/**
+ * <p>Parses the compressed headers block of SYN_STREAM, SYN_REPLY and HEADERS frames.</p>
+ * <p>A parser is used by a single thread, so the buffers used to decompress the headers block are reused
+ * across frames, and the strings of the header names and of the short header values are looked up in a
+ * per-parser cache, rather than being allocated again for every frame.</p>
+ */
 public abstract class HeadersBlockParser
 {
+    private static final int STRING_CACHE_CAPACITY = 256;
+    private static final int MAX_CACHED_VALUE_LENGTH = 64;
+
     private final CompressionFactory.Decompressor decompressor;
+    private final Map<ByteBuffer, String> strings = new HashMap<>();
     private byte[] data;
+    private byte[] output = new byte[512];
+    private byte[] decompressed = new byte[512];
     private boolean needsDictionary = true;
 
     protected HeadersBlockParser(CompressionFactory.Decompressor decompressor)
@@ -58,7 +71,6 @@ public abstract class HeadersBlockParser
         data = null;
         ByteBuffer decompressedHeaders = decompress(version, compressedHeaders);
 
-        Charset iso1 = StandardCharsets.ISO_8859_1;
         // We know the decoded bytes contain the full headers,
         // so optimize instead of looping byte by byte
         int count = readCount(version, decompressedHeaders);
@@ -67,18 +79,14 @@ public abstract class HeadersBlockParser
             int nameLength = readNameLength(version, decompressedHeaders);
             if (nameLength == 0)
                 throw new StreamException(streamId, StreamStatus.PROTOCOL_ERROR, "Invalid header name length");
-            byte[] nameBytes = new byte[nameLength];
-            decompressedHeaders.get(nameBytes);
-            String name = new String(nameBytes, iso1);
+            String name = toString(decompressedHeaders, nameLength, true);
 
             int valueLength = readValueLength(version, decompressedHeaders);
             if (valueLength == 0)
                 throw new StreamException(streamId, StreamStatus.PROTOCOL_ERROR, "Invalid header value length");
-            byte[] valueBytes = new byte[valueLength];
-            decompressedHeaders.get(valueBytes);
-            String value = new String(valueBytes, iso1);
+            String value = toString(decompressedHeaders, valueLength, valueLength <= MAX_CACHED_VALUE_LENGTH);
             // Multi valued headers are separate by NUL
-            String[] values = value.split("\u0000");
+            String[] values = value.indexOf('\u0000') < 0 ? new String[]{value} : value.split("\u0000");
             // Check if there are multiple NULs (section 2.6.9)
             for (String v : values)
                 if (v.length() == 0)
@@ -90,6 +98,35 @@ public abstract class HeadersBlockParser
         return true;
     }
 
+    /**
+     * @return the string of the next {@code length} bytes of the buffer, possibly from the cache
+     */
+    private String toString(ByteBuffer buffer, int length, boolean cache)
+    {
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + length);
+        // ByteBuffer equality and hash code only depend on the remaining bytes
+        String result = strings.get(buffer);
+        if (result == null)
+        {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            result = new String(bytes, StandardCharsets.ISO_8859_1);
+            if (cache)
+            {
+                if (strings.size() >= STRING_CACHE_CAPACITY)
+                    strings.clear();
+                strings.put(ByteBuffer.wrap(bytes), result);
+            }
+        }
+        else
+        {
+            buffer.position(buffer.limit());
+        }
+        buffer.limit(limit);
+        return result;
+    }
+
     private boolean accumulate(int length, ByteBuffer buffer)
     {
         int remaining = buffer.remaining();
@@ -161,21 +198,24 @@ public abstract class HeadersBlockParser
         // Differently from compression, decompression always happens
         // non-concurrently because we read and parse with a single
         // thread, and therefore there is no need for synchronization.
+        // For the same reason the returned buffer may wrap one of the
+        // reused arrays, as it is consumed before the next frame is parsed.
 
         try
         {
-            byte[] decompressed = null;
-            byte[] buffer = new byte[compressed.length * 2];
+            if (output.length < compressed.length * 2)
+                output = new byte[compressed.length * 2];
             decompressor.setInput(compressed);
 
+            int length = 0;
             while (true)
             {
-                int count = decompressor.decompress(buffer);
+                int count = decompressor.decompress(output);
                 if (count == 0)
                 {
-                    if (decompressed != null)
+                    if (length > 0)
                     {
-                        return ByteBuffer.wrap(decompressed);
+                        return ByteBuffer.wrap(decompressed, 0, length);
                     }
                     else if (needsDictionary)
                     {
@@ -189,37 +229,21 @@ public abstract class HeadersBlockParser
                 }
                 else
                 {
-                    if (count < buffer.length)
-                    {
-                        if (decompressed == null)
-                        {
-                            // Only one pass was needed to decompress
-                            return ByteBuffer.wrap(buffer, 0, count);
-                        }
-                        else
-                        {
-                            // Last pass needed to decompress, merge decompressed bytes
-                            byte[] result = new byte[decompressed.length + count];
-                            System.arraycopy(decompressed, 0, result, 0, decompressed.length);
-                            System.arraycopy(buffer, 0, result, decompressed.length, count);
-                            return ByteBuffer.wrap(result);
-                        }
-                    }
-                    else
+                    // Only one pass was needed to decompress
+                    if (length == 0 && count < output.length)
+                        return ByteBuffer.wrap(output, 0, count);
+
+                    // Accumulate the decompressed bytes
+                    if (decompressed.length < length + count)
                     {
-                        if (decompressed == null)
-                        {
-                            decompressed = buffer;
-                            buffer = new byte[buffer.length];
-                        }
-                        else
-                        {
-                            byte[] result = new byte[decompressed.length + buffer.length];
-                            System.arraycopy(decompressed, 0, result, 0, decompressed.length);
-                            System.arraycopy(buffer, 0, result, decompressed.length, buffer.length);
-                            decompressed = result;
-                        }
+                        byte[] local = new byte[Math.max(decompressed.length * 2, length + count)];
+                        System.arraycopy(decompressed, 0, local, 0, length);
+                        decompressed = local;
                     }
+                    System.arraycopy(output, 0, decompressed, length, count);
+                    length += count;
+                    if (count < output.length)
+                        return ByteBuffer.wrap(decompressed, 0, length);
                 }
             }
         }
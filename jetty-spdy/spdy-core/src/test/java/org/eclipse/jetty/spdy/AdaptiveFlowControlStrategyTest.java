@@ -0,0 +1,177 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.spdy;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.io.ByteArrayEndPoint;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.spdy.api.DataInfo;
+import org.eclipse.jetty.spdy.api.SPDY;
+import org.eclipse.jetty.spdy.api.Stream;
+import org.eclipse.jetty.spdy.api.StreamFrameListener;
+import org.eclipse.jetty.spdy.api.SynInfo;
+import org.eclipse.jetty.spdy.frames.DataFrame;
+import org.eclipse.jetty.spdy.frames.PingFrame;
+import org.eclipse.jetty.spdy.frames.SynReplyFrame;
+import org.eclipse.jetty.spdy.generator.Generator;
+import org.eclipse.jetty.util.Fields;
+import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdaptiveFlowControlStrategyTest
+{
+    private final MappedByteBufferPool bufferPool = new MappedByteBufferPool();
+    private final RecordingController controller = new RecordingController();
+    private final AdaptiveFlowControlStrategy flowControl = new AdaptiveFlowControlStrategy(64 * 1024, 1024 * 1024, 1536 * 1024);
+    private ScheduledExecutorScheduler scheduler;
+    private StandardSession session;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        scheduler = new ScheduledExecutorScheduler();
+        scheduler.start();
+        session = new StandardSession(SPDY.V3, bufferPool, scheduler, controller, new ByteArrayEndPoint(), null, 1, null,
+                new Generator(bufferPool, new StandardCompressionFactory.StandardCompressor()), flowControl);
+        flowControl.setWindowSize(session, 64 * 1024);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        scheduler.stop();
+    }
+
+    private Stream open() throws Exception
+    {
+        FuturePromise<Stream> promise = new FuturePromise<>();
+        session.syn(new SynInfo(new Fields(), false), new StreamFrameListener.Adapter()
+        {
+            @Override
+            public void onData(Stream stream, DataInfo dataInfo)
+            {
+                dataInfo.consume(dataInfo.available());
+            }
+        }, promise);
+        controller.pump();
+        Stream stream = promise.get(5, TimeUnit.SECONDS);
+        session.onControlFrame(new SynReplyFrame(SPDY.V3, (byte)0, stream.getId(), new Fields()));
+        return stream;
+    }
+
+    private void data(Stream stream, int frames, int length)
+    {
+        for (int i = 0; i < frames; ++i)
+            session.onDataFrame(new DataFrame(stream.getId(), (byte)0, length), ByteBuffer.allocate(length));
+        controller.pump();
+    }
+
+    private void replyPing() throws Exception
+    {
+        Assert.assertThat(controller.getPings().size(), is(1));
+        // Let the PING travel
+        Thread.sleep(50);
+        session.onControlFrame(new PingFrame(SPDY.V3, controller.getPings().get(0)));
+        Assert.assertThat(flowControl.getRoundTripTime(), greaterThan(0L));
+    }
+
+    @Test
+    public void testWindowUpdatesCoalesced() throws Exception
+    {
+        Stream stream = open();
+
+        data(stream, 16, 4096);
+
+        Assert.assertEquals(Arrays.asList(32768, 32768), controller.getWindowUpdates(stream.getId()));
+        Assert.assertThat(flowControl.getReceiveWindow(stream), is(64 * 1024));
+    }
+
+    @Test
+    public void testWindowGrowsToMaxStreamWindow() throws Exception
+    {
+        Stream stream = open();
+
+        data(stream, 8, 4096);
+        replyPing();
+
+        data(stream, 512, 4096);
+
+        Assert.assertThat(flowControl.getReceiveWindow(stream), is(flowControl.getMaxStreamWindow()));
+        int sent = 8 * 4096 + 512 * 4096;
+        int granted = 0;
+        for (int update : controller.getWindowUpdates(stream.getId()))
+            granted += update;
+        // The updates returned the consumed data and grew the window
+        Assert.assertThat(granted, greaterThan(sent - flowControl.getReceiveWindow(stream) / 2));
+        Assert.assertThat(granted - sent, lessThanOrEqualTo(flowControl.getMaxStreamWindow() - flowControl.getInitialWindow()));
+    }
+
+    @Test
+    public void testPingReplyBeforePingWritten() throws Exception
+    {
+        Stream stream = open();
+
+        // Consume data without completing the writes, so that the PING is not written yet
+        for (int i = 0; i < 8; ++i)
+            session.onDataFrame(new DataFrame(stream.getId(), (byte)0, 4096), ByteBuffer.allocate(4096));
+        Assert.assertThat(controller.getPings().size(), is(0));
+
+        // The reply to the first PING of the session is received before its write completes
+        Thread.sleep(50);
+        session.onControlFrame(new PingFrame(SPDY.V3, 1));
+        Assert.assertThat(flowControl.getRoundTripTime(), is(0L));
+
+        controller.pump();
+        Assert.assertEquals(Arrays.asList(1), controller.getPings());
+        Assert.assertThat(flowControl.getRoundTripTime(), greaterThan(0L));
+    }
+
+    @Test
+    public void testSumOfWindowsBoundedByMaxSessionWindow() throws Exception
+    {
+        Stream stream1 = open();
+        Stream stream2 = open();
+
+        data(stream1, 8, 4096);
+        replyPing();
+
+        for (int i = 0; i < 64; ++i)
+        {
+            data(stream1, 8, 4096);
+            data(stream2, 8, 4096);
+        }
+
+        int window1 = flowControl.getReceiveWindow(stream1);
+        int window2 = flowControl.getReceiveWindow(stream2);
+        Assert.assertThat(window1, greaterThan(flowControl.getInitialWindow()));
+        Assert.assertThat(window2, greaterThan(flowControl.getInitialWindow()));
+        Assert.assertThat((long)window1 + window2, lessThanOrEqualTo(flowControl.getMaxSessionWindow()));
+    }
+}
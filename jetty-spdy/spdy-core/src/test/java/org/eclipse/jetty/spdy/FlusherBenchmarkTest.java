@@ -0,0 +1,127 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.spdy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.io.ByteArrayEndPoint;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.spdy.api.BytesDataInfo;
+import org.eclipse.jetty.spdy.api.SPDY;
+import org.eclipse.jetty.spdy.api.Stream;
+import org.eclipse.jetty.spdy.api.StreamFrameListener;
+import org.eclipse.jetty.spdy.api.SynInfo;
+import org.eclipse.jetty.spdy.generator.Generator;
+import org.eclipse.jetty.toolchain.test.AdvancedRunner;
+import org.eclipse.jetty.toolchain.test.annotation.Stress;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Fields;
+import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AdvancedRunner.class)
+public class FlusherBenchmarkTest
+{
+    private static final Logger LOG = Log.getLogger(FlusherBenchmarkTest.class);
+
+    /**
+     * Measures the time to first byte of small high priority streams started while a low priority
+     * bulk transfer is in progress on the same session, in bytes written to a simulated link.
+     */
+    @Stress("Large bulk transfer")
+    @Test
+    public void testTimeToFirstByte() throws Exception
+    {
+        int window = 1024 * 1024;
+        int bulkSize = 16 * 1024 * 1024;
+        int smallStreams = 64;
+        final int smallSize = 2 * 1024;
+
+        ScheduledExecutorScheduler scheduler = new ScheduledExecutorScheduler();
+        scheduler.start();
+        try
+        {
+            MappedByteBufferPool bufferPool = new MappedByteBufferPool();
+            RecordingController controller = new RecordingController();
+            StandardSession session = new StandardSession(SPDY.V3, bufferPool, scheduler, controller, new ByteArrayEndPoint(), null, 1, null,
+                    new Generator(bufferPool, new StandardCompressionFactory.StandardCompressor()), new FlowControlStrategy.None(window));
+
+            Stream bulk = syn(session, controller, (byte)7);
+            bulk.data(new BytesDataInfo(new byte[bulkSize], true), new Callback.Adapter());
+
+            final List<Stream> streams = new ArrayList<>();
+            List<Long> started = new ArrayList<>();
+            for (int i = 0; i < smallStreams; ++i)
+            {
+                // Let a write of the bulk transfer complete between each small stream
+                controller.step();
+                started.add(controller.getWritten());
+                session.syn(new SynInfo(new Fields(), false, (byte)0), new StreamFrameListener.Adapter(), new Promise.Adapter<Stream>()
+                {
+                    @Override
+                    public void succeeded(Stream stream)
+                    {
+                        streams.add(stream);
+                        stream.data(new BytesDataInfo(new byte[smallSize], true), new Callback.Adapter());
+                    }
+                });
+            }
+            controller.pump();
+
+            long total = 0;
+            long max = 0;
+            for (int i = 0; i < smallStreams; ++i)
+            {
+                long ttfb = controller.getFirstDataOffset(streams.get(i).getId()) - started.get(i);
+                total += ttfb;
+                max = Math.max(max, ttfb);
+            }
+
+            // Report in KiB written before the first byte, and in ms on a 100 Mbit/s link
+            long mean = total / smallStreams;
+            LOG.info("Time to first byte of {} small streams during a {} MiB bulk transfer: mean={} KiB ({} ms), max={} KiB ({} ms), frames={}",
+                    smallStreams, bulkSize / 1024 / 1024, mean / 1024, millis(mean), max / 1024, millis(max), controller.getFrames());
+        }
+        finally
+        {
+            scheduler.stop();
+        }
+    }
+
+    private static long millis(long bytes)
+    {
+        return bytes * 8 / (100 * 1000);
+    }
+
+    private static Stream syn(StandardSession session, RecordingController controller, byte priority) throws Exception
+    {
+        FuturePromise<Stream> promise = new FuturePromise<>();
+        session.syn(new SynInfo(new Fields(), false, priority), new StreamFrameListener.Adapter(), promise);
+        controller.pump();
+        return promise.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,172 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.spdy;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.io.ByteArrayEndPoint;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.spdy.api.BytesDataInfo;
+import org.eclipse.jetty.spdy.api.HeadersInfo;
+import org.eclipse.jetty.spdy.api.PingInfo;
+import org.eclipse.jetty.spdy.api.PingResultInfo;
+import org.eclipse.jetty.spdy.api.SPDY;
+import org.eclipse.jetty.spdy.api.Stream;
+import org.eclipse.jetty.spdy.api.StreamFrameListener;
+import org.eclipse.jetty.spdy.api.SynInfo;
+import org.eclipse.jetty.spdy.generator.Generator;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Fields;
+import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FlusherTest
+{
+    private final MappedByteBufferPool bufferPool = new MappedByteBufferPool();
+    private final RecordingController controller = new RecordingController();
+    private ScheduledExecutorScheduler scheduler;
+    private StandardSession session;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        scheduler = new ScheduledExecutorScheduler();
+        scheduler.start();
+        session = new StandardSession(SPDY.V3, bufferPool, scheduler, controller, new ByteArrayEndPoint(), null, 1, null,
+                new Generator(bufferPool, new StandardCompressionFactory.StandardCompressor()), new FlowControlStrategy.None(1024 * 1024));
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        scheduler.stop();
+    }
+
+    private Stream syn(byte priority) throws Exception
+    {
+        FuturePromise<Stream> promise = new FuturePromise<>();
+        session.syn(new SynInfo(new Fields(), false, priority), new StreamFrameListener.Adapter(), promise);
+        controller.pump();
+        return promise.get(5, TimeUnit.SECONDS);
+    }
+
+    private static byte[] fill(int length, char c)
+    {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte)c);
+        return bytes;
+    }
+
+    @Test
+    public void testDataOfStreamWrittenInOrder() throws Exception
+    {
+        Stream stream = syn((byte)0);
+        Stream other = syn((byte)0);
+        byte[] first = fill(300 * 1024, 'a');
+        byte[] second = fill(10 * 1024, 'b');
+        byte[] third = fill(200 * 1024, 'c');
+
+        stream.data(new BytesDataInfo(first, false), new Callback.Adapter());
+        stream.data(new BytesDataInfo(second, false), new Callback.Adapter());
+        other.data(new BytesDataInfo(third, true), new Callback.Adapter());
+        controller.pump();
+
+        byte[] expected = new byte[first.length + second.length];
+        System.arraycopy(first, 0, expected, 0, first.length);
+        System.arraycopy(second, 0, expected, first.length, second.length);
+        Assert.assertArrayEquals(expected, controller.getData(stream.getId()));
+        Assert.assertArrayEquals(third, controller.getData(other.getId()));
+    }
+
+    @Test
+    public void testSmallStreamNotStarvedByBulkTransfer() throws Exception
+    {
+        Stream bulk = syn((byte)7);
+        Stream small = syn((byte)0);
+
+        // The first chunk of the bulk transfer is being written when the small stream has data
+        bulk.data(new BytesDataInfo(new byte[4 * 1024 * 1024], true), new Callback.Adapter());
+        small.data(new BytesDataInfo(new byte[1024], true), new Callback.Adapter());
+        controller.pump();
+
+        Assert.assertThat(controller.getData(bulk.getId()).length, is(4 * 1024 * 1024));
+        Assert.assertThat(controller.getData(small.getId()).length, is(1024));
+
+        // The small stream is written after at most one chunk of the bulk transfer
+        long quantum = session.getDataQuantum();
+        long bulkStart = controller.getFirstDataOffset(bulk.getId());
+        Assert.assertThat(controller.getFirstDataOffset(small.getId()) - bulkStart, lessThan(quantum + 1024));
+    }
+
+    @Test
+    public void testRequeuedDataSkipsSessionFrames() throws Exception
+    {
+        Stream high = syn((byte)0);
+        Stream low = syn((byte)7);
+
+        // The first chunk of the low priority stream is being written when a ping, then
+        // the headers and data of a higher priority stream are queued, the ping at the head
+        low.data(new BytesDataInfo(new byte[1024 * 1024], true), new Callback.Adapter());
+        session.ping(new PingInfo(), new Promise.Adapter<PingResultInfo>());
+        high.headers(new HeadersInfo(new Fields(), false), new Callback.Adapter());
+        high.data(new BytesDataInfo(new byte[1024], true), new Callback.Adapter());
+        controller.pump();
+
+        Assert.assertThat(controller.getPings().size(), is(1));
+        Assert.assertThat(controller.getData(high.getId()).length, is(1024));
+
+        // The higher priority stream is written before the next chunk of the low priority stream
+        long quantum = session.getDataQuantum();
+        long lowStart = controller.getFirstDataOffset(low.getId());
+        Assert.assertThat(controller.getFirstDataOffset(high.getId()) - lowStart, lessThan(quantum + 1024));
+    }
+
+    @Test
+    public void testChunksWeightedByPriority() throws Exception
+    {
+        Stream high = syn((byte)0);
+        Stream low = syn((byte)7);
+        int length = 2 * 1024 * 1024;
+        high.data(new BytesDataInfo(new byte[length], true), new Callback.Adapter());
+        low.data(new BytesDataInfo(new byte[length], true), new Callback.Adapter());
+
+        // Write until the high priority stream has completed
+        while (controller.getData(high.getId()).length < length)
+            Assert.assertTrue(controller.step());
+
+        // The low priority stream progressed, but at an eighth of the rate
+        int lowWritten = controller.getData(low.getId()).length;
+        Assert.assertThat(lowWritten, greaterThan(0));
+        Assert.assertThat(lowWritten, lessThan(length / 4));
+
+        controller.pump();
+        Assert.assertThat(controller.getData(low.getId()).length, is(length));
+    }
+}
@@ -0,0 +1,176 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.spdy;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import org.eclipse.jetty.spdy.frames.ControlFrameType;
+
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * A {@link Controller} that holds each write until {@link #pump()} is called, recording the data written for each stream,
+ * the number of bytes that had been written before the first data frame of each stream, the window updates and the pings.
+ */
+public class RecordingController implements Controller
+{
+    private final Queue<Write> writes = new ArrayDeque<>();
+    private final Map<Integer, ByteArrayOutputStream> data = new HashMap<>();
+    private final Map<Integer, Long> firstData = new HashMap<>();
+    private final Map<Integer, List<Integer>> windowUpdates = new HashMap<>();
+    private final List<Integer> pings = new ArrayList<>();
+    private long written;
+    private int frames;
+
+    @Override
+    public void write(Callback callback, ByteBuffer... buffers)
+    {
+        writes.offer(new Write(callback,buffers));
+    }
+
+    @Override
+    public void close(boolean onlyOutput)
+    {
+    }
+
+    /**
+     * Complete the pending writes, and any writes they cause, until there are none left.
+     */
+    public void pump()
+    {
+        while (step())
+        {
+        }
+    }
+
+    /**
+     * Complete the oldest pending write.
+     *
+     * @return whether there was a pending write
+     */
+    public boolean step()
+    {
+        Write write = writes.poll();
+        if (write == null)
+            return false;
+        for (ByteBuffer buffer : write.buffers)
+            record(buffer.slice());
+        write.callback.succeeded();
+        return true;
+    }
+
+    private void record(ByteBuffer frame)
+    {
+        ++frames;
+        int length = frame.remaining();
+        // Control frames have the high bit set
+        if (length >= 8 && (frame.get(0) & 0x80) == 0)
+        {
+            int streamId = frame.getInt(0) & 0x7F_FF_FF_FF;
+            if (!firstData.containsKey(streamId))
+                firstData.put(streamId, written);
+            ByteArrayOutputStream bytes = data.get(streamId);
+            if (bytes == null)
+                data.put(streamId, bytes = new ByteArrayOutputStream());
+            byte[] payload = new byte[length - 8];
+            frame.position(8);
+            frame.get(payload);
+            bytes.write(payload, 0, payload.length);
+        }
+        else if (length >= 12)
+        {
+            short type = frame.getShort(2);
+            if (type == ControlFrameType.WINDOW_UPDATE.getCode())
+            {
+                int streamId = frame.getInt(8) & 0x7F_FF_FF_FF;
+                List<Integer> deltas = windowUpdates.get(streamId);
+                if (deltas == null)
+                    windowUpdates.put(streamId, deltas = new ArrayList<>());
+                deltas.add(frame.getInt(12) & 0x7F_FF_FF_FF);
+            }
+            else if (type == ControlFrameType.PING.getCode())
+            {
+                pings.add(frame.getInt(8));
+            }
+        }
+        written += length;
+    }
+
+    public byte[] getData(int streamId)
+    {
+        ByteArrayOutputStream bytes = data.get(streamId);
+        return bytes == null ? new byte[0] : bytes.toByteArray();
+    }
+
+    /**
+     * @return the number of bytes written before the first data frame of the stream, or -1 if none was written
+     */
+    public long getFirstDataOffset(int streamId)
+    {
+        Long offset = firstData.get(streamId);
+        return offset == null ? -1 : offset;
+    }
+
+    /**
+     * @return the deltas of the window updates written for the stream
+     */
+    public List<Integer> getWindowUpdates(int streamId)
+    {
+        List<Integer> deltas = windowUpdates.get(streamId);
+        return deltas == null ? new ArrayList<Integer>() : deltas;
+    }
+
+    /**
+     * @return the ids of the pings written
+     */
+    public List<Integer> getPings()
+    {
+        return pings;
+    }
+
+    public int getFrames()
+    {
+        return frames;
+    }
+
+    public long getWritten()
+    {
+        return written;
+    }
+
+    private static class Write
+    {
+        private final Callback callback;
+        private final ByteBuffer[] buffers;
+
+        private Write(Callback callback, ByteBuffer[] buffers)
+        {
+            this.callback = callback;
+            this.buffers = buffers;
+        }
+    }
+}
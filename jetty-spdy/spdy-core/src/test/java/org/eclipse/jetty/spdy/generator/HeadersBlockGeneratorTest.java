@@ -0,0 +1,101 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.spdy.generator;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.spdy.StandardCompressionFactory;
+import org.eclipse.jetty.spdy.api.SPDY;
+import org.eclipse.jetty.spdy.frames.SynReplyFrame;
+import org.eclipse.jetty.spdy.frames.TestSPDYParserListener;
+import org.eclipse.jetty.spdy.parser.Parser;
+import org.eclipse.jetty.util.Fields;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HeadersBlockGeneratorTest
+{
+    private Fields newResponseHeaders(short version)
+    {
+        Fields headers = new Fields();
+        headers.put(version == SPDY.V2 ? "status" : ":status", "200 OK");
+        headers.put(version == SPDY.V2 ? "version" : ":version", "HTTP/1.1");
+        headers.put("Content-Type", "text/html;charset=UTF-8");
+        headers.put("server", "Jetty(9.1.x)");
+        headers.add("set-cookie", "a=1");
+        headers.add("set-cookie", "b=2");
+        return headers;
+    }
+
+    private Fields roundTrip(Generator generator, Parser parser, TestSPDYParserListener listener, short version, Fields headers)
+    {
+        ByteBuffer buffer = generator.control(new SynReplyFrame(version, (byte)0, 1, headers));
+        parser.parse(buffer);
+        return ((SynReplyFrame)listener.getControlFrame()).getHeaders();
+    }
+
+    @Test
+    public void testSameHeadersGeneratedBySessions() throws Exception
+    {
+        for (short version : new short[]{SPDY.V2, SPDY.V3})
+        {
+            Fields headers = newResponseHeaders(version);
+            for (int session = 0; session < 3; ++session)
+            {
+                Generator generator = new Generator(new MappedByteBufferPool(), new StandardCompressionFactory().newCompressor());
+                TestSPDYParserListener listener = new TestSPDYParserListener();
+                Parser parser = new Parser(new StandardCompressionFactory().newDecompressor());
+                parser.addListener(listener);
+
+                for (int frame = 0; frame < 3; ++frame)
+                {
+                    Fields parsed = roundTrip(generator, parser, listener, version, headers);
+                    Assert.assertEquals(headers, parsed);
+                    Assert.assertEquals(Arrays.asList("a=1", "b=2"), parsed.get("set-cookie").getValues());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testModifiedHeadersGenerated() throws Exception
+    {
+        Generator generator = new Generator(new MappedByteBufferPool(), new StandardCompressionFactory().newCompressor());
+        TestSPDYParserListener listener = new TestSPDYParserListener();
+        Parser parser = new Parser(new StandardCompressionFactory().newDecompressor());
+        parser.addListener(listener);
+
+        Fields headers = newResponseHeaders(SPDY.V3);
+        Assert.assertEquals(headers, roundTrip(generator, parser, listener, SPDY.V3, headers));
+
+        // The cache must not hold on to the mutable headers
+        headers.put("server", "Jetty(9.2.x)");
+        Assert.assertEquals("Jetty(9.2.x)", roundTrip(generator, parser, listener, SPDY.V3, headers).get("server").getValue());
+
+        // Large headers blocks are not cached, and need more than one decompression pass
+        char[] chars = new char[16 * 1024];
+        Arrays.fill(chars, 'x');
+        headers.put("x-large", new String(chars));
+        Assert.assertEquals(headers, roundTrip(generator, parser, listener, SPDY.V3, headers));
+        headers.remove("x-large");
+        Assert.assertEquals(headers, roundTrip(generator, parser, listener, SPDY.V3, headers));
+    }
+}
@@ -0,0 +1,89 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.spdy.parser;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.spdy.StandardCompressionFactory;
+import org.eclipse.jetty.spdy.api.SPDY;
+import org.eclipse.jetty.spdy.frames.ControlFrame;
+import org.eclipse.jetty.spdy.frames.SynReplyFrame;
+import org.eclipse.jetty.spdy.generator.Generator;
+import org.eclipse.jetty.util.Fields;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class HeadersBlockBenchmarkTest
+{
+    @Ignore
+    @Test
+    public void testRepeatedVersusDistinctHeaders() throws Exception
+    {
+        // Identical header sets, as the same response sent to many clients,
+        // are encoded once and then found in the headers block cache, while
+        // distinct header sets are encoded for every frame.
+        // Both are parsed using the per-parser string cache.
+
+        int iterations = 1_000_000;
+        for (int run = 0; run < 3; ++run)
+        {
+            System.err.printf("repeated headers: %d ms%n", benchmark(iterations, false));
+            System.err.printf("distinct headers: %d ms%n", benchmark(iterations, true));
+        }
+    }
+
+    private long benchmark(int iterations, boolean distinct)
+    {
+        MappedByteBufferPool bufferPool = new MappedByteBufferPool();
+        Generator generator = new Generator(bufferPool, new StandardCompressionFactory().newCompressor());
+        Parser parser = new Parser(new StandardCompressionFactory().newDecompressor());
+        final Fields[] parsed = new Fields[1];
+        parser.addListener(new Parser.Listener.Adapter()
+        {
+            @Override
+            public void onControlFrame(ControlFrame frame)
+            {
+                parsed[0] = ((SynReplyFrame)frame).getHeaders();
+            }
+        });
+
+        Fields headers = new Fields();
+        headers.put(":status", "200 OK");
+        headers.put(":version", "HTTP/1.1");
+        headers.put("content-type", "text/html;charset=UTF-8");
+        headers.put("cache-control", "private, max-age=0");
+        headers.put("server", "Jetty(9.1.x)");
+        headers.put("x-powered-by", "Jetty(9.1.x)");
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < iterations; ++i)
+        {
+            if (distinct)
+                headers.put("x-request-id", String.valueOf(i));
+            ByteBuffer buffer = generator.control(new SynReplyFrame(SPDY.V3, (byte)0, 2 * i + 1, headers));
+            parser.parse(buffer);
+            bufferPool.release(buffer);
+            Assert.assertEquals(headers.getSize(), parsed[0].getSize());
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+    }
+}
@@ -18,6 +18,10 @@
 
 package org.eclipse.jetty.spdy.client.http;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
 import org.eclipse.jetty.client.HttpExchange;
 import org.eclipse.jetty.client.HttpReceiver;
 import org.eclipse.jetty.client.HttpResponse;
@@ -35,9 +39,12 @@ import org.eclipse.jetty.spdy.api.StreamStatus;
 import org.eclipse.jetty.spdy.http.HTTPSPDYHeader;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.Fields;
+import org.eclipse.jetty.util.IteratingCallback;
 
 public class HttpReceiverOverSPDY extends HttpReceiver implements StreamFrameListener
 {
+    private final ContentNotifier contentNotifier = new ContentNotifier();
+
     public HttpReceiverOverSPDY(HttpChannelOverSPDY channel)
     {
         super(channel);
@@ -121,18 +128,11 @@ public class HttpReceiverOverSPDY extends HttpReceiver implements StreamFrameLis
 
         try
         {
-            int length = dataInfo.length();
             // TODO: avoid data copy here
-            boolean process = responseContent(exchange, dataInfo.asByteBuffer(false));
-            dataInfo.consume(length);
-
-            if (process)
-            {
-                if (dataInfo.isClose())
-                {
-                    responseSuccess(exchange);
-                }
-            }
+            // The data buffer is reused once this method returns, so it is copied, but
+            // it is consumed, enlarging the flow control window, only once the content
+            // has been consumed by the response listeners.
+            contentNotifier.offer(new Content(exchange, dataInfo, dataInfo.asByteBuffer(false)));
         }
         catch (Exception x)
         {
@@ -148,4 +148,88 @@ public class HttpReceiverOverSPDY extends HttpReceiver implements StreamFrameLis
             return;
         exchange.getRequest().abort(x);
     }
+
+    private static class Content
+    {
+        private final HttpExchange exchange;
+        private final DataInfo dataInfo;
+        private final ByteBuffer buffer;
+
+        private Content(HttpExchange exchange, DataInfo dataInfo, ByteBuffer buffer)
+        {
+            this.exchange = exchange;
+            this.dataInfo = dataInfo;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Notifies the response content one {@link DataInfo} at a time: the next one is notified only
+     * when the response listeners have completed the callback of the previous one, as they do for
+     * the other transports, so that the listeners can apply back pressure to the server.
+     */
+    private class ContentNotifier extends IteratingCallback
+    {
+        private final Queue<Content> queue = new ArrayDeque<>();
+        private Content content;
+
+        private void offer(Content content)
+        {
+            synchronized (this)
+            {
+                queue.offer(content);
+            }
+            iterate();
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            Content content;
+            synchronized (this)
+            {
+                content = this.content = queue.poll();
+            }
+            if (content == null)
+                return Action.IDLE;
+
+            if (responseContent(content.exchange, content.buffer, this))
+                return Action.SCHEDULED;
+
+            // The content has not been notified, so the callback will not be completed
+            content.dataInfo.consume(content.dataInfo.length());
+            return Action.IDLE;
+        }
+
+        @Override
+        public void succeeded()
+        {
+            Content content;
+            synchronized (this)
+            {
+                content = this.content;
+                this.content = null;
+            }
+            if (content != null)
+            {
+                content.dataInfo.consume(content.dataInfo.length());
+                if (content.dataInfo.isClose())
+                    responseSuccess(content.exchange);
+            }
+            super.succeeded();
+        }
+
+        @Override
+        protected void completed()
+        {
+            // Never completed, the response ends with the last DataInfo
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            super.failed(x);
+            responseFailure(x);
+        }
+    }
 }
@@ -22,8 +22,11 @@ package org.eclipse.jetty.spdy.server.http;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -32,6 +35,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
+import org.eclipse.jetty.spdy.api.Session;
 import org.eclipse.jetty.spdy.api.Stream;
 import org.eclipse.jetty.spdy.http.HTTPSPDYHeader;
 import org.eclipse.jetty.util.Fields;
@@ -53,18 +57,40 @@ import org.eclipse.jetty.util.log.Logger;
  * number of pages of the application itself, and by the {@link #setMaxAssociatedResources(int)} max associated
  * resources} parameter. This parameter limits the number of associated resources per each main resource, so that if a
  * main resource has hundreds of associated resources, only up to the number specified by this parameter will be
- * pushed.
+ * pushed.<p>The number of main resources is limited by {@link #setMaxMainResources(int)}; when the limit is reached
+ * the least recently used main resource and its associated resources are forgotten.<p>Resources that the client has
+ * received on the same session, either as responses or as pushes, within the {@link #setPushSuppressionPeriod(int)
+ * push suppression period} are assumed to be in the client cache and are not pushed again. The number of times each
+ * associated resource has been pushed and suppressed is available from {@link #getPushCount(String, String)} and
+ * {@link #getSuppressedPushCount(String, String)}.
  */
 public class ReferrerPushStrategy implements PushStrategy
 {
     private static final Logger LOG = Log.getLogger(ReferrerPushStrategy.class);
-    private final ConcurrentMap<String, MainResource> mainResources = new ConcurrentHashMap<>();
+    private static final String RECEIVED_ATTRIBUTE = ReferrerPushStrategy.class.getName() + ".received";
+    private final Map<String, MainResource> mainResources = new LinkedHashMap<String, MainResource>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MainResource> eldest)
+        {
+            if (size() <= maxMainResources)
+                return false;
+            LOG.debug("Evicting {}", eldest.getValue());
+            evictedMainResources.incrementAndGet();
+            return true;
+        }
+    };
+    private final AtomicLong evictedMainResources = new AtomicLong();
+    private final AtomicLong pushes = new AtomicLong();
+    private final AtomicLong suppressedPushes = new AtomicLong();
     private final Set<Pattern> pushRegexps = new HashSet<>();
     private final Set<String> pushContentTypes = new HashSet<>();
     private final Set<Pattern> allowedPushOrigins = new HashSet<>();
     private final Set<Pattern> userAgentBlacklist = new HashSet<>();
     private volatile int maxAssociatedResources = 32;
     private volatile int referrerPushPeriod = 5000;
+    private volatile int maxMainResources = 1024;
+    private volatile int pushSuppressionPeriod = 30000;
 
     public ReferrerPushStrategy()
     {
@@ -124,6 +150,23 @@ public class ReferrerPushStrategy implements PushStrategy
         this.referrerPushPeriod = referrerPushPeriod;
     }
 
+    /**
+     * @param maxMainResources the max number of main resources whose associated resources are remembered
+     */
+    public void setMaxMainResources(int maxMainResources)
+    {
+        this.maxMainResources = maxMainResources;
+    }
+
+    /**
+     * @param pushSuppressionPeriod the period in milliseconds during which a resource received by a client on a
+     * session is not pushed again on that session, or 0 to always push
+     */
+    public void setPushSuppressionPeriod(int pushSuppressionPeriod)
+    {
+        this.pushSuppressionPeriod = pushSuppressionPeriod;
+    }
+
     public Set<Pattern> getPushRegexps()
     {
         return pushRegexps;
@@ -154,6 +197,73 @@ public class ReferrerPushStrategy implements PushStrategy
         return referrerPushPeriod;
     }
 
+    public int getMaxMainResources()
+    {
+        return maxMainResources;
+    }
+
+    public int getPushSuppressionPeriod()
+    {
+        return pushSuppressionPeriod;
+    }
+
+    /**
+     * @return the number of main resources currently remembered
+     */
+    public int getMainResourceCount()
+    {
+        synchronized (mainResources)
+        {
+            return mainResources.size();
+        }
+    }
+
+    /**
+     * @return the number of main resources forgotten because {@link #getMaxMainResources()} was reached
+     */
+    public long getEvictedMainResources()
+    {
+        return evictedMainResources.get();
+    }
+
+    /**
+     * @return the total number of resources pushed
+     */
+    public long getPushCount()
+    {
+        return pushes.get();
+    }
+
+    /**
+     * @return the total number of pushes suppressed because the client had recently received the resource
+     */
+    public long getSuppressedPushCount()
+    {
+        return suppressedPushes.get();
+    }
+
+    /**
+     * @param mainResource the absolute URL of the main resource
+     * @param resource the associated resource
+     * @return the number of times the associated resource has been pushed for the main resource
+     */
+    public long getPushCount(String mainResource, String resource)
+    {
+        MainResource main = getMainResource(mainResource);
+        return main == null ? 0 : main.getCount(main.pushes, resource);
+    }
+
+    /**
+     * @param mainResource the absolute URL of the main resource
+     * @param resource the associated resource
+     * @return the number of times the push of the associated resource for the main resource has been suppressed
+     */
+    public long getSuppressedPushCount(String mainResource, String resource)
+    {
+        MainResource main = getMainResource(mainResource);
+        return main == null ? 0 : main.getCount(main.suppressions, resource);
+    }
+
     @Override
     public Set<String> apply(Stream stream, Fields requestHeaders, Fields responseHeaders)
     {
@@ -171,7 +281,7 @@ public class ReferrerPushStrategy implements PushStrategy
             if (isMainResource(url, responseHeaders))
             {
                 MainResource mainResource = getOrCreateMainResource(absoluteURL);
-                result = mainResource.getResources();
+                result = filterReceived(stream.getSession(), mainResource, mainResource.getResources());
             }
             else if (isPushResource(url, responseHeaders))
             {
@@ -179,42 +289,103 @@ public class ReferrerPushStrategy implements PushStrategy
                 if (referrerHeader != null)
                 {
                     String referrer = referrerHeader.getValue();
-                    MainResource mainResource = mainResources.get(referrer);
-                    if (mainResource == null)
-                        mainResource = getOrCreateMainResource(referrer);
+                    MainResource mainResource = getOrCreateMainResource(referrer);
 
                     Set<String> pushResources = mainResource.getResources();
                     if (!pushResources.contains(url))
                         mainResource.addResource(url, origin, referrer);
                     else
-                        result = getPushResources(absoluteURL);
+                        result = getPushResources(stream.getSession(), absoluteURL);
                 }
             }
+            received(stream.getSession(), url);
             LOG.debug("Pushing {} resources for {}: {}", result.size(), absoluteURL, result);
         }
         return result;
     }
 
-    private Set<String> getPushResources(String absoluteURL)
+    private Set<String> getPushResources(Session session, String absoluteURL)
     {
         Set<String> result = Collections.emptySet();
-        if (mainResources.get(absoluteURL) != null)
-            result = mainResources.get(absoluteURL).getResources();
+        MainResource mainResource = getMainResource(absoluteURL);
+        if (mainResource != null)
+            result = filterReceived(session, mainResource, mainResource.getResources());
         return result;
     }
 
+    private MainResource getMainResource(String absoluteURL)
+    {
+        synchronized (mainResources)
+        {
+            return mainResources.get(absoluteURL);
+        }
+    }
+
     private MainResource getOrCreateMainResource(String absoluteURL)
     {
-        MainResource mainResource = mainResources.get(absoluteURL);
-        if (mainResource == null)
+        synchronized (mainResources)
         {
-            LOG.debug("Creating new main resource for {}", absoluteURL);
-            MainResource value = new MainResource(absoluteURL);
-            mainResource = mainResources.putIfAbsent(absoluteURL, value);
+            MainResource mainResource = mainResources.get(absoluteURL);
             if (mainResource == null)
-                mainResource = value;
+            {
+                LOG.debug("Creating new main resource for {}", absoluteURL);
+                mainResource = new MainResource(absoluteURL);
+                mainResources.put(absoluteURL, mainResource);
+            }
+            return mainResource;
         }
-        return mainResource;
+    }
+
+    /**
+     * @return the resources that the client has not received recently on the session, which are recorded as received
+     */
+    private Set<String> filterReceived(Session session, MainResource mainResource, Set<String> resources)
+    {
+        if (resources.isEmpty())
+            return resources;
+
+        ReceivedResources received = getReceivedResources(session);
+        Set<String> result = new HashSet<>(resources.size());
+        for (String resource : resources)
+        {
+            if (received != null && !received.push(resource))
+            {
+                LOG.debug("Suppressed push of {} for {}: recently received", resource, mainResource.name);
+                suppressedPushes.incrementAndGet();
+                mainResource.increment(mainResource.suppressions, resource);
+            }
+            else
+            {
+                pushes.incrementAndGet();
+                mainResource.increment(mainResource.pushes, resource);
+                result.add(resource);
+            }
+        }
+        return result;
+    }
+
+    private void received(Session session, String url)
+    {
+        ReceivedResources received = getReceivedResources(session);
+        if (received != null)
+            received.received(url);
+    }
+
+    private ReceivedResources getReceivedResources(Session session)
+    {
+        int period = pushSuppressionPeriod;
+        if (period <= 0 || session == null)
+            return null;
+        ReceivedResources received = (ReceivedResources)session.getAttribute(RECEIVED_ATTRIBUTE);
+        if (received == null)
+        {
+            // Concurrent requests may both create the attribute, in which case
+            // few resources are forgotten and possibly pushed again
+            received = new ReceivedResources(maxAssociatedResources * 4);
+            session.setAttribute(RECEIVED_ATTRIBUTE, received);
+        }
+        received.period = TimeUnit.MILLISECONDS.toNanos(period);
+        return received;
     }
 
     private boolean isIfModifiedSinceHeaderPresent(Fields headers)
@@ -266,6 +437,8 @@ public class ReferrerPushStrategy implements PushStrategy
         private final String name;
         private final CopyOnWriteArraySet<String> resources = new CopyOnWriteArraySet<>();
         private final AtomicLong firstResourceAdded = new AtomicLong(-1);
+        private final ConcurrentMap<String, AtomicLong> pushes = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, AtomicLong> suppressions = new ConcurrentHashMap<>();
 
         private MainResource(String name)
         {
@@ -314,6 +487,25 @@ public class ReferrerPushStrategy implements PushStrategy
             return Collections.unmodifiableSet(resources);
         }
 
+        private void increment(ConcurrentMap<String, AtomicLong> counts, String resource)
+        {
+            AtomicLong count = counts.get(resource);
+            if (count == null)
+            {
+                AtomicLong value = new AtomicLong();
+                count = counts.putIfAbsent(resource, value);
+                if (count == null)
+                    count = value;
+            }
+            count.incrementAndGet();
+        }
+
+        private long getCount(ConcurrentMap<String, AtomicLong> counts, String resource)
+        {
+            AtomicLong count = counts.get(resource);
+            return count == null ? 0 : count.get();
+        }
+
         public String toString()
         {
             return String.format("%s@%x{name=%s,resources=%s}",
@@ -332,4 +524,43 @@ public class ReferrerPushStrategy implements PushStrategy
             return false;
         }
     }
+
+    /**
+     * <p>The resources recently received by the client on a session, bounded in number.</p>
+     */
+    private static class ReceivedResources
+    {
+        private final Map<String, Long> resources = new LinkedHashMap<>();
+        private final int capacity;
+        private volatile long period;
+
+        private ReceivedResources(int capacity)
+        {
+            this.capacity = capacity;
+        }
+
+        private synchronized void received(String resource)
+        {
+            resources.remove(resource);
+            resources.put(resource, System.nanoTime());
+            if (resources.size() > capacity)
+            {
+                Iterator<String> iterator = resources.keySet().iterator();
+                iterator.next();
+                iterator.remove();
+            }
+        }
+
+        /**
+         * @return true if the resource has not been received within the period, in which case it is now received
+         */
+        private synchronized boolean push(String resource)
+        {
+            Long previous = resources.get(resource);
+            if (previous != null && System.nanoTime() - previous <= period)
+                return false;
+            received(resource);
+            return true;
+        }
+    }
 }
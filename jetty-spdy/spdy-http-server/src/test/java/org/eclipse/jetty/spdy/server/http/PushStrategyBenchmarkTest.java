@@ -26,6 +26,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -46,6 +47,7 @@ import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.eclipse.jetty.spdy.api.DataInfo;
 import org.eclipse.jetty.spdy.api.GoAwayInfo;
+import org.eclipse.jetty.spdy.api.PushInfo;
 import org.eclipse.jetty.spdy.api.SPDY;
 import org.eclipse.jetty.spdy.api.Session;
 import org.eclipse.jetty.spdy.api.SessionFrameListener;
@@ -71,6 +73,9 @@ public class PushStrategyBenchmarkTest extends AbstractHTTPSPDYTest
     private final int[] pngResources = new int[]
             {1024, 45 * 1024, 6 * 1024, 2 * 1024, 2 * 1024, 2 * 1024, 3 * 1024, 512, 512, 19 * 1024, 512, 128, 32};
     private final Set<String> pushedResources = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> cachedResources = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLong savedBytes = new AtomicLong();
+    private final AtomicLong wastedBytes = new AtomicLong();
     private final AtomicReference<CountDownLatch> latch = new AtomicReference<>();
     private final long roundtrip = 100;
     private final int runs = 10;
@@ -112,6 +117,103 @@ public class PushStrategyBenchmarkTest extends AbstractHTTPSPDYTest
         session.goAway(new GoAwayInfo(5, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void benchmarkPushedBytes() throws Exception
+    {
+        InetSocketAddress address = startHTTPServer(version, new PushStrategyBenchmarkHandler(), 30000);
+
+        // Push all the associated resources, even those already received
+        ReferrerPushStrategy pushStrategy = new ReferrerPushStrategy();
+        pushStrategy.setPushSuppressionPeriod(0);
+        benchmarkPushedBytes(pushStrategy, address, "always");
+
+        // Do not push the resources recently received on the session
+        pushStrategy = new ReferrerPushStrategy();
+        benchmarkPushedBytes(pushStrategy, address, "suppressed");
+    }
+
+    private void benchmarkPushedBytes(ReferrerPushStrategy pushStrategy, InetSocketAddress address, String name) throws Exception
+    {
+        connector.addConnectionFactory(new HTTPSPDYServerConnectionFactory(version, new HttpConfiguration(), pushStrategy));
+
+        // Learn the associated resources
+        Session session = startClient(version, address, null);
+        performRequests(session);
+        session.goAway(new GoAwayInfo(5, TimeUnit.SECONDS));
+
+        // A browser that caches the resources it receives: the bytes pushed for a resource
+        // not yet cached save a request, those pushed for a cached resource are wasted
+        cachedResources.clear();
+        savedBytes.set(0);
+        wastedBytes.set(0);
+        session = startClient(version, address, null);
+        for (int i = 0; i < runs; ++i)
+            performCachedRequests(session);
+        session.goAway(new GoAwayInfo(5, TimeUnit.SECONDS));
+
+        System.err.printf("SPDY(%s): %d page load(s), pushes=%d, suppressed=%d, saved bytes=%d, wasted bytes=%d%n%n",
+                name, runs, pushStrategy.getPushCount(), pushStrategy.getSuppressedPushCount(), savedBytes.get(), wastedBytes.get());
+    }
+
+    private void performCachedRequests(Session session) throws Exception
+    {
+        for (int j = 0; j < htmlResources.length; ++j)
+        {
+            latch.set(new CountDownLatch(cssResources.length + jsResources.length + pngResources.length));
+            pushedResources.clear();
+
+            String primaryPath = "/" + j + ".html";
+            String referrer = "http://localhost:" + connector.getLocalPort() + primaryPath;
+            Fields headers = new Fields();
+            headers.put(HTTPSPDYHeader.METHOD.name(version), "GET");
+            headers.put(HTTPSPDYHeader.URI.name(version), primaryPath);
+            headers.put(HTTPSPDYHeader.VERSION.name(version), "HTTP/1.1");
+            headers.put(HTTPSPDYHeader.SCHEME.name(version), "http");
+            headers.put(HTTPSPDYHeader.HOST.name(version), "localhost:" + connector.getLocalPort());
+            final CountDownLatch htmlLatch = new CountDownLatch(1);
+            session.syn(new SynInfo(headers, true), new StreamFrameListener.Adapter()
+            {
+                @Override
+                public StreamFrameListener onPush(Stream stream, PushInfo pushInfo)
+                {
+                    String path = addPushedResource(pushInfo.getHeaders().get(HTTPSPDYHeader.URI.name(version)).getValue());
+                    return new PushedBytesListener(!cachedResources.add(path));
+                }
+
+                @Override
+                public void onData(Stream stream, DataInfo dataInfo)
+                {
+                    dataInfo.consume(dataInfo.length());
+                    if (dataInfo.isClose())
+                        htmlLatch.countDown();
+                }
+            });
+            Assert.assertTrue(htmlLatch.await(5, TimeUnit.SECONDS));
+
+            for (int i = 0; i < cssResources.length; ++i)
+                requestIfNotCached(session, referrer, "/" + i + ".css");
+            for (int i = 0; i < jsResources.length; ++i)
+                requestIfNotCached(session, referrer, "/" + i + ".js");
+            for (int i = 0; i < pngResources.length; ++i)
+                requestIfNotCached(session, referrer, "/" + i + ".png");
+
+            Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private void requestIfNotCached(Session session, String referrer, String path)
+    {
+        // Pushed resources count down the latch when their data is received
+        if (pushedResources.contains(path))
+            return;
+        if (!cachedResources.add(path))
+        {
+            latch.get().countDown();
+            return;
+        }
+        session.syn(new SynInfo(createRequestHeaders(referrer, path), true), new DataListener());
+    }
+
     private void benchmarkHTTP(HttpClient httpClient) throws Exception
     {
         // Warm up
@@ -340,20 +442,21 @@ public class PushStrategyBenchmarkTest extends AbstractHTTPSPDYTest
         }
     }
 
-    private void addPushedResource(String pushedURI)
+    private String addPushedResource(String pushedURI)
     {
+        String path;
         switch (version)
         {
             case SPDY.V2:
             {
                 Matcher matcher = Pattern.compile("https?://[^:]+:\\d+(/.*)").matcher(pushedURI);
                 Assert.assertTrue(matcher.matches());
-                pushedResources.add(matcher.group(1));
+                path = matcher.group(1);
                 break;
             }
             case SPDY.V3:
             {
-                pushedResources.add(pushedURI);
+                path = pushedURI;
                 break;
             }
             default:
@@ -361,6 +464,8 @@ public class PushStrategyBenchmarkTest extends AbstractHTTPSPDYTest
                 throw new IllegalStateException();
             }
         }
+        pushedResources.add(path);
+        return path;
     }
 
     private class ClientSessionFrameListener extends SessionFrameListener.Adapter
@@ -385,6 +490,23 @@ public class PushStrategyBenchmarkTest extends AbstractHTTPSPDYTest
         }
     }
 
+    private class PushedBytesListener extends DataListener
+    {
+        private final boolean cached;
+
+        private PushedBytesListener(boolean cached)
+        {
+            this.cached = cached;
+        }
+
+        @Override
+        public void onData(Stream stream, DataInfo dataInfo)
+        {
+            (cached ? wastedBytes : savedBytes).addAndGet(dataInfo.length());
+            super.onData(stream, dataInfo);
+        }
+    }
+
     private class TestListener extends Response.Listener.Adapter
     {
         @Override
@@ -20,9 +20,14 @@ package org.eclipse.jetty.spdy.server.http;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.jetty.spdy.api.SPDY;
@@ -34,7 +39,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ReferrerPushStrategyUnitTest
@@ -108,6 +115,57 @@ public class ReferrerPushStrategyUnitTest
         assertThat("no resources are returned as we want to filter firefox", pushResources.size(), is(0));
     }
 
+    @Test
+    public void testLeastRecentlyUsedMainResourceEvicted() throws Exception
+    {
+        referrerPushStrategy.setMaxMainResources(2);
+        Fields requestHeaders = getBaseHeaders(VERSION);
+        setMockExpectations();
+
+        fillPushStrategyCache(requestHeaders);
+
+        requestHeaders.put(HTTPSPDYHeader.URI.name(VERSION), "/other.html");
+        referrerPushStrategy.apply(stream, requestHeaders, new Fields());
+        assertThat(referrerPushStrategy.getEvictedMainResources(), is(0L));
+
+        requestHeaders.put(HTTPSPDYHeader.URI.name(VERSION), "/another.html");
+        referrerPushStrategy.apply(stream, requestHeaders, new Fields());
+        assertThat(referrerPushStrategy.getEvictedMainResources(), is(1L));
+        assertThat(referrerPushStrategy.getMainResourceCount(), is(2));
+
+        requestHeaders.put(HTTPSPDYHeader.URI.name(VERSION), MAIN_URI);
+        Set<String> pushResources = referrerPushStrategy.apply(stream, requestHeaders, new Fields());
+        assertThat("the associated resources of the evicted main resource are forgotten", pushResources.size(), is(0));
+    }
+
+    @Test
+    public void testRecentlyReceivedResourcesNotPushedAgain() throws Exception
+    {
+        Fields requestHeaders = getBaseHeaders(VERSION);
+        setMockExpectations();
+        setMockAttributes();
+
+        // Do not remember the resources received while learning
+        referrerPushStrategy.setPushSuppressionPeriod(0);
+        String referrerUrl = fillPushStrategyCache(requestHeaders);
+        referrerPushStrategy.setPushSuppressionPeriod(1000);
+
+        requestHeaders.put(HTTPSPDYHeader.URI.name(VERSION), MAIN_URI);
+        Set<String> pushResources = referrerPushStrategy.apply(stream, requestHeaders, new Fields());
+        assertThat("image.jpg and style.css are pushed", pushResources.size(), is(2));
+
+        pushResources = referrerPushStrategy.apply(stream, requestHeaders, new Fields());
+        assertThat("image.jpg and style.css have just been pushed on this session", pushResources.size(), is(0));
+        assertThat(referrerPushStrategy.getPushCount(referrerUrl, "image.jpg"), is(2L));
+        assertThat(referrerPushStrategy.getSuppressedPushCount(referrerUrl, "image.jpg"), is(1L));
+        assertThat(referrerPushStrategy.getSuppressedPushCount(), is(2L));
+
+        referrerPushStrategy.setPushSuppressionPeriod(1);
+        Thread.sleep(2);
+        pushResources = referrerPushStrategy.apply(stream, requestHeaders, new Fields());
+        assertThat("image.jpg and style.css are pushed after the suppression period", pushResources.size(), is(2));
+    }
+
     private Fields getBaseHeaders(short version)
     {
         Fields requestHeaders = new Fields();
@@ -124,6 +182,28 @@ public class ReferrerPushStrategyUnitTest
         when(session.getVersion()).thenReturn(VERSION);
     }
 
+    private void setMockAttributes()
+    {
+        final Map<String, Object> attributes = new HashMap<>();
+        when(session.getAttribute(anyString())).thenAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation)
+            {
+                return attributes.get(invocation.getArguments()[0]);
+            }
+        });
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation)
+            {
+                Object[] arguments = invocation.getArguments();
+                return attributes.put((String)arguments[0], arguments[1]);
+            }
+        }).when(session).setAttribute(anyString(), any());
+    }
+
     private String fillPushStrategyCache(Fields requestHeaders)
     {
         Set<String> pushResources = referrerPushStrategy.apply(stream, requestHeaders, new Fields());
@@ -68,6 +68,7 @@ public class SPDYServerConnectionFactory extends AbstractConnectionFactory
     private final ServerSessionFrameListener listener;
     private int initialWindowSize;
     private boolean dispatchIO;
+    private boolean adaptiveFlowControl;
 
     public SPDYServerConnectionFactory(int version)
     {
@@ -121,7 +122,7 @@ public class SPDYServerConnectionFactory extends AbstractConnectionFactory
 
     protected FlowControlStrategy newFlowControlStrategy(short version)
     {
-        return FlowControlStrategyFactory.newFlowControlStrategy(version);
+        return FlowControlStrategyFactory.newFlowControlStrategy(version, isAdaptiveFlowControl());
     }
 
     protected ServerSessionFrameListener provideServerSessionFrameListener(Connector connector, EndPoint endPoint)
@@ -151,6 +152,17 @@ public class SPDYServerConnectionFactory extends AbstractConnectionFactory
         this.dispatchIO = dispatchIO;
     }
 
+    @ManagedAttribute("Grow the stream windows to the bandwidth-delay product")
+    public boolean isAdaptiveFlowControl()
+    {
+        return adaptiveFlowControl;
+    }
+
+    public void setAdaptiveFlowControl(boolean adaptiveFlowControl)
+    {
+        this.adaptiveFlowControl = adaptiveFlowControl;
+    }
+
     protected boolean sessionOpened(Session session)
     {
         // Add sessions only if the connector is not stopping
@@ -0,0 +1,429 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.start;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jetty.start.Props.Prop;
+
+/**
+ * A cached, resolved launch plan.
+ * <p>
+ * Resolving the modules, libraries and XMLs to launch requires every <code>*.mod</code> file to be parsed and the lib
+ * directories to be scanned. When enabled with <code>--launch-cache</code>, the result of that resolution (the active
+ * modules, the classpath, the XML files and the required files) is saved along with the last modified time and length of
+ * every input that was used to produce it, keyed by a hash of the command line and the properties collected from the
+ * start inis.
+ * <p>
+ * On the next launch, if the key matches and none of the inputs have changed, the plan is applied to the {@link StartArgs}
+ * and module resolution is skipped entirely.
+ */
+public class LaunchPlan
+{
+    private static final String HEADER = "# Jetty Start Launch Plan - generated, do not edit";
+
+    private String key;
+    private final Map<File, String> inputs = new LinkedHashMap<>();
+    private final List<String> modules = new ArrayList<>();
+    private final List<File> classpath = new ArrayList<>();
+    private final List<File> xmls = new ArrayList<>();
+    private final List<String> files = new ArrayList<>();
+
+    /**
+     * Calculate the key of a launch plan from the parsed (but not yet resolved) arguments.
+     *
+     * @param baseHome
+     *            the base home
+     * @param args
+     *            the parsed arguments
+     * @return the hex encoded SHA-1 of the command line and properties
+     */
+    public static String key(BaseHome baseHome, StartArgs args)
+    {
+        List<String> props = new ArrayList<>();
+        for (Prop prop : args.getProperties())
+        {
+            props.add(prop.key + "=" + prop.value);
+        }
+        Collections.sort(props);
+
+        List<String> enabled = new ArrayList<>(args.getEnabledModules());
+        Collections.sort(enabled);
+
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            update(digest,StartArgs.VERSION);
+            update(digest,baseHome.getHome());
+            update(digest,baseHome.getBase());
+            for (String line : args.getCommandLine())
+            {
+                update(digest,line);
+            }
+            for (String prop : props)
+            {
+                update(digest,prop);
+            }
+            for (String module : enabled)
+            {
+                update(digest,module);
+            }
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest())
+            {
+                hex.append(String.format("%02x",b & 0xFF));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value)
+    {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)'\n');
+    }
+
+    private static String stamp(File file)
+    {
+        return file.lastModified() + "," + file.length();
+    }
+
+    /**
+     * Capture the launch plan of fully resolved arguments.
+     *
+     * @param baseHome
+     *            the base home
+     * @param args
+     *            the resolved arguments
+     * @param key
+     *            the key calculated before resolution
+     * @return the launch plan
+     */
+    public static LaunchPlan capture(BaseHome baseHome, StartArgs args, String key)
+    {
+        LaunchPlan plan = new LaunchPlan();
+        plan.key = key;
+
+        // The start inis
+        plan.addInput(baseHome.getBaseFile("start.ini"));
+        File start_d = baseHome.getBaseFile("start.d");
+        plan.addInput(start_d);
+        if (FS.canReadDirectory(start_d))
+        {
+            for (File ini : start_d.listFiles(new FS.IniFilter()))
+            {
+                plan.addInput(ini);
+            }
+        }
+
+        // The module definitions
+        plan.addInput(new File(baseHome.getHomeDir(),"modules"));
+        plan.addInput(baseHome.getBaseFile("modules"));
+        Modules allModules = args.getAllModules();
+        if (allModules != null)
+        {
+            for (Module module : allModules)
+            {
+                plan.addInput(module.getFile());
+                if (module.isEnabled())
+                {
+                    plan.modules.add(module.getName());
+                }
+            }
+        }
+
+        // The directories scanned for libraries
+        for (File dir : args.getLibDirectories())
+        {
+            plan.addInput(dir);
+        }
+
+        // The resolution results
+        for (File element : args.getClasspath())
+        {
+            plan.classpath.add(element);
+            plan.addInput(element);
+            plan.addInput(element.getParentFile());
+        }
+        for (File xml : args.getXmlFiles())
+        {
+            plan.xmls.add(xml);
+            plan.addInput(xml);
+        }
+        for (FileArg file : args.getFiles())
+        {
+            plan.files.add(file.uri == null?file.location:(file.uri + ":" + file.location));
+        }
+
+        return plan;
+    }
+
+    /**
+     * Load a launch plan.
+     *
+     * @param file
+     *            the launch plan file
+     * @return the launch plan, or null if it does not exist or cannot be read
+     */
+    public static LaunchPlan load(File file)
+    {
+        if (!FS.canReadFile(file))
+        {
+            return null;
+        }
+
+        LaunchPlan plan = new LaunchPlan();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.length() == 0 || line.charAt(0) == '#')
+                {
+                    continue;
+                }
+
+                int idx = line.indexOf('=');
+                if (idx < 0)
+                {
+                    StartLog.debug("Bad launch plan line: %s",line);
+                    return null;
+                }
+                String type = line.substring(0,idx);
+                String value = line.substring(idx + 1);
+
+                switch (type)
+                {
+                    case "key":
+                        plan.key = value;
+                        break;
+                    case "input":
+                    {
+                        // <lastModified>,<length>,<path>
+                        int comma = value.indexOf(',',value.indexOf(',') + 1);
+                        plan.inputs.put(new File(value.substring(comma + 1)),value.substring(0,comma));
+                        break;
+                    }
+                    case "module":
+                        plan.modules.add(value);
+                        break;
+                    case "lib":
+                        plan.classpath.add(new File(value));
+                        break;
+                    case "xml":
+                        plan.xmls.add(new File(value));
+                        break;
+                    case "file":
+                        plan.files.add(value);
+                        break;
+                    default:
+                        StartLog.debug("Unknown launch plan entry: %s",line);
+                        return null;
+                }
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            StartLog.debug(e);
+            return null;
+        }
+
+        return plan.key == null?null:plan;
+    }
+
+    private void addInput(File file)
+    {
+        if (file != null && !inputs.containsKey(file))
+        {
+            inputs.put(file,stamp(file));
+        }
+    }
+
+    /**
+     * Apply this plan to the parsed arguments, in place of module resolution.
+     *
+     * @param args
+     *            the parsed arguments
+     */
+    public void apply(StartArgs args)
+    {
+        for (File element : classpath)
+        {
+            args.getClasspath().addComponent(element);
+        }
+        for (File xml : xmls)
+        {
+            if (!args.getXmlFiles().contains(xml))
+            {
+                args.getXmlFiles().add(xml);
+            }
+        }
+        for (String file : files)
+        {
+            FileArg arg = new FileArg(file);
+            if (!args.getFiles().contains(arg))
+            {
+                args.getFiles().add(arg);
+            }
+        }
+    }
+
+    public List<File> getClasspath()
+    {
+        return classpath;
+    }
+
+    public Map<File, String> getInputs()
+    {
+        return inputs;
+    }
+
+    public String getKey()
+    {
+        return key;
+    }
+
+    public List<String> getModules()
+    {
+        return modules;
+    }
+
+    public List<File> getXmls()
+    {
+        return xmls;
+    }
+
+    /**
+     * @param key
+     *            the key calculated from the current arguments
+     * @return true if the key matches and no input has been modified since the plan was captured
+     */
+    public boolean isValid(String key)
+    {
+        if (!this.key.equals(key))
+        {
+            StartLog.debug("Launch plan key changed");
+            return false;
+        }
+
+        for (Map.Entry<File, String> input : inputs.entrySet())
+        {
+            if (!stamp(input.getKey()).equals(input.getValue()))
+            {
+                StartLog.debug("Launch plan input changed: %s",input.getKey());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Save this plan, replacing any existing plan file once completely written.
+     *
+     * @param file
+     *            the launch plan file
+     * @throws IOException
+     *             if the plan cannot be written
+     */
+    public void store(File file) throws IOException
+    {
+        File dir = file.getAbsoluteFile().getParentFile();
+        FS.ensureDirectoryExists(dir);
+        File tmp = File.createTempFile(file.getName(),".tmp",dir);
+        try
+        {
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp),StandardCharsets.UTF_8)))
+            {
+                writer.write(HEADER);
+                writer.newLine();
+                writeLine(writer,"key",key);
+                for (Map.Entry<File, String> input : inputs.entrySet())
+                {
+                    writeLine(writer,"input",input.getValue() + "," + input.getKey().getPath());
+                }
+                for (String module : modules)
+                {
+                    writeLine(writer,"module",module);
+                }
+                for (File element : classpath)
+                {
+                    writeLine(writer,"lib",element.getPath());
+                }
+                for (File xml : xmls)
+                {
+                    writeLine(writer,"xml",xml.getPath());
+                }
+                for (String f : files)
+                {
+                    writeLine(writer,"file",f);
+                }
+            }
+
+            if (file.exists() && !file.delete())
+            {
+                throw new IOException("Unable to replace " + file);
+            }
+            if (!tmp.renameTo(file))
+            {
+                throw new IOException("Unable to rename " + tmp + " to " + file);
+            }
+        }
+        finally
+        {
+            if (tmp.exists())
+            {
+                tmp.delete();
+            }
+        }
+    }
+
+    private void writeLine(BufferedWriter writer, String type, String value) throws IOException
+    {
+        writer.write(type);
+        writer.write('=');
+        writer.write(value);
+        writer.newLine();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("LaunchPlan[key=%s,inputs=%d,modules=%s,classpath=%d,xmls=%d]",key,inputs.size(),modules,classpath.size(),xmls.size());
+    }
+}
@@ -555,6 +555,27 @@ public class Main
         StartLog.debug("Parsing collected arguments");
         args.parseCommandLine();
 
+        // 4.1) Cached Launch Plan
+        // Only used to run the server, as informational commands need the full module graph
+        File planFile = null;
+        String planKey = null;
+        if (args.getLaunchCacheFilename() != null && args.isRun())
+        {
+            planFile = new File(args.getLaunchCacheFilename());
+            if (!planFile.isAbsolute())
+            {
+                planFile = baseHome.getBaseFile(args.getLaunchCacheFilename());
+            }
+            planKey = LaunchPlan.key(baseHome,args);
+            LaunchPlan plan = LaunchPlan.load(planFile);
+            if (plan != null && plan.isValid(planKey))
+            {
+                StartLog.debug("Using launch plan %s - %s",planFile,plan);
+                plan.apply(args);
+                return args;
+            }
+        }
+
         // 5) Module Registration
         Modules modules = new Modules();
         StartLog.debug("Registering all modules");
@@ -579,6 +600,20 @@ public class Main
         // 8) Resolve Extra XMLs
         args.resolveExtraXmls(baseHome);
 
+        // 9) Save the Launch Plan for the next start
+        if (planFile != null)
+        {
+            try
+            {
+                LaunchPlan.capture(baseHome,args,planKey).store(planFile);
+                StartLog.debug("Saved launch plan %s",planFile);
+            }
+            catch (IOException e)
+            {
+                StartLog.warn("Unable to save launch plan %s: %s",planFile,e);
+            }
+        }
+
         return args;
     }
 
@@ -205,6 +205,11 @@ public class Module
         return files;
     }
 
+    public File getFile()
+    {
+        return file;
+    }
+
     public String getFilesystemRef()
     {
         return fileRef;
@@ -81,6 +81,8 @@ public class StartArgs
     private List<String> moduleStartIni = new ArrayList<>();
     private Map<String, String> propertySource = new HashMap<>();
     private String moduleGraphFilename;
+    private String launchCacheFilename;
+    private List<File> libDirs = new ArrayList<>();
 
     private Modules allModules;
     // Should the server be run?
@@ -370,6 +372,10 @@ public class StartArgs
 
                     FileFilter filter = new FS.FilenameRegexFilter(regex.toString());
 
+                    // Remember the scanned directories, so a cached launch plan can tell when libraries are added
+                    addLibDirectory(new File(baseHome.getHomeDir(),relativePath));
+                    addLibDirectory(baseHome.getBaseFile(relativePath));
+
                     for (File libfile : baseHome.listFiles(relativePath,filter))
                     {
                         classpath.addComponent(libfile);
@@ -400,6 +406,14 @@ public class StartArgs
         }
     }
 
+    private void addLibDirectory(File dir)
+    {
+        if (!libDirs.contains(dir))
+        {
+            libDirs.add(dir);
+        }
+    }
+
     public Modules getAllModules()
     {
         return allModules;
@@ -486,6 +500,19 @@ public class StartArgs
         return cmd;
     }
 
+    public String getLaunchCacheFilename()
+    {
+        return launchCacheFilename;
+    }
+
+    /**
+     * @return the directories scanned for glob library references by {@link #expandModules(BaseHome, List)}
+     */
+    public List<File> getLibDirectories()
+    {
+        return libDirs;
+    }
+
     public String getMainClassname()
     {
         String mainclass = System.getProperty("jetty.server",SERVER_MAIN);
@@ -816,6 +843,18 @@ public class StartArgs
             return;
         }
 
+        if ("--launch-cache".equals(arg))
+        {
+            launchCacheFilename = "start.cache";
+            return;
+        }
+
+        if (arg.startsWith("--launch-cache="))
+        {
+            launchCacheFilename = getValue(arg);
+            return;
+        }
+
         if (arg.startsWith("--write-module-graph="))
         {
             this.moduleGraphFilename = getValue(arg);
@@ -0,0 +1,118 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.start;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
+import org.eclipse.jetty.toolchain.test.TestingDir;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class LaunchPlanTest
+{
+    @Rule
+    public TestingDir testdir = new TestingDir();
+
+    private File base;
+    private File cache;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        testdir.ensureEmpty();
+        base = testdir.getFile("base");
+        FS.ensureDirectoryExists(base);
+        try (FileWriter writer = new FileWriter(new File(base,"start.ini")))
+        {
+            writer.write("--module=server,http,jmx\n");
+        }
+        cache = testdir.getFile("start.cache");
+    }
+
+    private StartArgs process(String... extra) throws Exception
+    {
+        List<String> cmdLineArgs = new ArrayList<>();
+        cmdLineArgs.add("jetty.home=" + MavenTestingUtils.getTestResourceDir("usecases/home"));
+        cmdLineArgs.add("jetty.base=" + base);
+        cmdLineArgs.add("--launch-cache=" + cache.getAbsolutePath());
+        for (String arg : extra)
+        {
+            cmdLineArgs.add(arg);
+        }
+        return new Main().processCommandLine(cmdLineArgs);
+    }
+
+    @Test
+    public void testPlanReused() throws Exception
+    {
+        StartArgs resolved = process("jetty.port=9090");
+        Assert.assertNotNull("Resolved modules",resolved.getAllModules());
+        Assert.assertTrue("Launch plan saved",cache.exists());
+
+        LaunchPlan plan = LaunchPlan.load(cache);
+        Assert.assertNotNull("Launch plan loaded",plan);
+        Assert.assertTrue("Launch plan modules",plan.getModules().contains("server"));
+
+        StartArgs cached = process("jetty.port=9090");
+        Assert.assertNull("Module resolution skipped",cached.getAllModules());
+        Assert.assertEquals("Classpath",resolved.getClasspath().getElements(),cached.getClasspath().getElements());
+        Assert.assertEquals("XMLs",resolved.getXmlFiles(),cached.getXmlFiles());
+        Assert.assertEquals("Property",resolved.getProperties().getString("jetty.port"),cached.getProperties().getString("jetty.port"));
+    }
+
+    @Test
+    public void testChangedPropertiesResolved() throws Exception
+    {
+        process("jetty.port=9090");
+        StartArgs args = process("jetty.port=9191");
+        Assert.assertNotNull("Resolved modules",args.getAllModules());
+        Assert.assertEquals("9191",args.getProperties().getString("jetty.port"));
+    }
+
+    @Test
+    public void testChangedInputResolved() throws Exception
+    {
+        process("jetty.port=9090");
+
+        // a module directory appearing in ${jetty.base} invalidates the plan
+        FS.ensureDirectoryExists(new File(base,"modules"));
+
+        StartArgs args = process("jetty.port=9090");
+        Assert.assertNotNull("Resolved modules",args.getAllModules());
+
+        // and the replacement plan is used next time
+        args = process("jetty.port=9090");
+        Assert.assertNull("Module resolution skipped",args.getAllModules());
+    }
+
+    @Test
+    public void testInformationalCommandResolved() throws Exception
+    {
+        process("jetty.port=9090");
+        StartArgs args = process("jetty.port=9090","--list-modules");
+        Assert.assertNotNull("Resolved modules",args.getAllModules());
+    }
+}
@@ -0,0 +1,392 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * A {@link SocketAddressResolver} that caches the addresses of the hosts it resolves.
+ * <p />
+ * Resolved addresses are cached for {@link #getTimeToLive() a time to live}; after it expires,
+ * the cached addresses are still returned for {@link #getStaleTime() a stale time} while
+ * the host is resolved again asynchronously, so that callers never wait for the DNS lookup
+ * of hosts they have recently used.
+ * If the DNS lookup of a host fails, the stale addresses are returned until the stale time expires.
+ * <p />
+ * Concurrent resolutions of the same host that miss the cache wait for a single DNS lookup.
+ * <p />
+ * The cache holds at most {@link #getMaxEntries() a max number of hosts}; when it is full, hosts whose
+ * addresses have expired are evicted first, then the least recently resolved ones.
+ * <p />
+ * The {@link java.net.InetAddress} APIs do not expose the TTL of DNS records, so the time to live
+ * is configured here; it should not be shorter than the JVM address cache TTL
+ * (the {@code networkaddress.cache.ttl} security property), or DNS lookups will hit the JVM cache.
+ * <p />
+ * Unlike the default {@link SocketAddressResolver}, {@link #resolveAll(String, int, Promise)} returns
+ * all the addresses of the host, so that {@code HttpClient} races connections to them.
+ */
+@ManagedObject("Caching socket address resolver")
+public class CachingSocketAddressResolver extends SocketAddressResolver
+{
+    private static final Logger LOG = Log.getLogger(CachingSocketAddressResolver.class);
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile int maxEntries = 1024;
+    private volatile long timeToLive = 60000;
+    private volatile long staleTime = 30000;
+
+    /**
+     * @param executor the thread pool to use to perform DNS resolution in pooled threads
+     * @param scheduler the scheduler to schedule tasks to cancel DNS resolution if it takes too long
+     * @param timeout the timeout, in milliseconds, for the DNS resolution to complete
+     */
+    public CachingSocketAddressResolver(Executor executor, Scheduler scheduler, long timeout)
+    {
+        super(executor, scheduler, timeout);
+    }
+
+    @ManagedAttribute("The max number of hosts in the cache")
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries)
+    {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the time, in milliseconds, resolved addresses are cached for
+     */
+    @ManagedAttribute("The time, in milliseconds, resolved addresses are cached for")
+    public long getTimeToLive()
+    {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(long timeToLive)
+    {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * @return the time, in milliseconds, expired addresses are returned for while the host is resolved again
+     */
+    @ManagedAttribute("The time, in milliseconds, expired addresses are returned for while the host is resolved again")
+    public long getStaleTime()
+    {
+        return staleTime;
+    }
+
+    public void setStaleTime(long staleTime)
+    {
+        this.staleTime = staleTime;
+    }
+
+    @ManagedAttribute("The number of hosts in the cache")
+    public int getSize()
+    {
+        return entries.size();
+    }
+
+    @ManagedAttribute("The number of resolutions that returned cached addresses")
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    @ManagedAttribute("The number of resolutions that returned expired addresses")
+    public long getStaleHits()
+    {
+        return staleHits.get();
+    }
+
+    @ManagedAttribute("The number of resolutions that waited for a DNS lookup")
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    @ManagedAttribute("The number of DNS lookups")
+    public long getLookups()
+    {
+        return lookups.get();
+    }
+
+    @ManagedAttribute("The number of failed DNS lookups")
+    public long getFailures()
+    {
+        return failures.get();
+    }
+
+    /**
+     * @return the hosts in the cache
+     */
+    public Set<String> getHosts()
+    {
+        return new HashSet<>(entries.keySet());
+    }
+
+    /**
+     * @param host the host
+     * @return the statistics, in milliseconds, of the DNS lookups of the given host,
+     * or null if the host is not in the cache
+     */
+    public SampleStatistic getLatencyStatistic(String host)
+    {
+        Entry entry = entries.get(host);
+        return entry == null ? null : entry.latency;
+    }
+
+    @ManagedOperation("Clears the cache")
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    @Override
+    protected void resolve(String host, int port, long timeout, final Promise<SocketAddress> promise)
+    {
+        resolveAll(host, port, timeout, new Promise<List<SocketAddress>>()
+        {
+            @Override
+            public void succeeded(List<SocketAddress> result)
+            {
+                promise.succeeded(result.get(0));
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                promise.failed(x);
+            }
+        });
+    }
+
+    /**
+     * Resolves the given host and port, returning all the {@link SocketAddress}es of the host
+     * through the given {@link Promise} with the default timeout.
+     *
+     * @param host the host to resolve
+     * @param port the port of the resulting socket addresses
+     * @param promise the callback invoked when the resolution succeeds or fails
+     */
+    @Override
+    public void resolveAll(String host, int port, Promise<List<SocketAddress>> promise)
+    {
+        resolveAll(host, port, getTimeout(), promise);
+    }
+
+    @Override
+    protected void resolveAll(String host, int port, long timeout, Promise<List<SocketAddress>> promise)
+    {
+        Entry entry = entries.get(host);
+        if (entry == null)
+        {
+            Entry newEntry = new Entry(host);
+            entry = entries.putIfAbsent(host, newEntry);
+            if (entry == null)
+            {
+                entry = newEntry;
+                evict(newEntry);
+            }
+        }
+        entry.resolve(port, timeout, promise);
+    }
+
+    private void evict(Entry newEntry)
+    {
+        int excess = entries.size() - getMaxEntries();
+        if (excess <= 0)
+            return;
+
+        long now = System.nanoTime();
+        Entry oldest = null;
+        for (Entry entry : entries.values())
+        {
+            if (entry == newEntry)
+                continue;
+            if (entry.isExpired(now))
+            {
+                if (entries.remove(entry.host, entry) && --excess == 0)
+                    return;
+            }
+            else if (oldest == null || entry.accessed - oldest.accessed < 0)
+            {
+                oldest = entry;
+            }
+        }
+        if (oldest != null)
+            entries.remove(oldest.host, oldest);
+    }
+
+    private static List<SocketAddress> toSocketAddresses(List<InetAddress> addresses, int port)
+    {
+        List<SocketAddress> result = new ArrayList<>(addresses.size());
+        for (InetAddress address : addresses)
+            result.add(new InetSocketAddress(address, port));
+        return result;
+    }
+
+    private class Entry implements Promise<List<SocketAddress>>
+    {
+        private final List<Waiter> waiters = new ArrayList<>();
+        private final SampleStatistic latency = new SampleStatistic();
+        private final String host;
+        private List<InetAddress> addresses;
+        private long resolved;
+        private boolean resolving;
+        private long lookupStart;
+        private volatile long accessed;
+
+        private Entry(String host)
+        {
+            this.host = host;
+        }
+
+        private synchronized boolean isExpired(long now)
+        {
+            return !resolving && (addresses == null || now - resolved >= TimeUnit.MILLISECONDS.toNanos(getTimeToLive() + getStaleTime()));
+        }
+
+        private void resolve(int port, long timeout, Promise<List<SocketAddress>> promise)
+        {
+            List<InetAddress> cached;
+            boolean lookup = false;
+            long now = System.nanoTime();
+            accessed = now;
+            synchronized (this)
+            {
+                cached = addresses;
+                long age = now - resolved;
+                if (cached != null && age < TimeUnit.MILLISECONDS.toNanos(getTimeToLive()))
+                {
+                    hits.incrementAndGet();
+                }
+                else if (cached != null && age < TimeUnit.MILLISECONDS.toNanos(getTimeToLive() + getStaleTime()))
+                {
+                    staleHits.incrementAndGet();
+                    lookup = !resolving;
+                }
+                else
+                {
+                    misses.incrementAndGet();
+                    cached = null;
+                    waiters.add(new Waiter(port, promise));
+                    lookup = !resolving;
+                }
+                if (lookup)
+                {
+                    resolving = true;
+                    lookupStart = now;
+                }
+            }
+
+            if (lookup)
+            {
+                lookups.incrementAndGet();
+                LOG.debug("Looking up {}", host);
+                CachingSocketAddressResolver.super.resolveAll(host, 0, timeout, this);
+            }
+
+            if (cached != null)
+                promise.succeeded(toSocketAddresses(cached, port));
+        }
+
+        @Override
+        public void succeeded(List<SocketAddress> result)
+        {
+            List<InetAddress> resolvedAddresses = new ArrayList<>(result.size());
+            for (SocketAddress address : result)
+                resolvedAddresses.add(((InetSocketAddress)address).getAddress());
+
+            List<Waiter> ready;
+            synchronized (this)
+            {
+                long now = System.nanoTime();
+                latency.set(TimeUnit.NANOSECONDS.toMillis(now - lookupStart));
+                resolving = false;
+                addresses = resolvedAddresses;
+                resolved = now;
+                ready = new ArrayList<>(waiters);
+                waiters.clear();
+            }
+            LOG.debug("Resolved {} to {}", host, resolvedAddresses);
+
+            for (Waiter waiter : ready)
+                waiter.promise.succeeded(toSocketAddresses(resolvedAddresses, waiter.port));
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            failures.incrementAndGet();
+            List<Waiter> ready;
+            synchronized (this)
+            {
+                latency.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lookupStart));
+                resolving = false;
+                ready = new ArrayList<>(waiters);
+                waiters.clear();
+            }
+            LOG.debug("Could not resolve " + host, x);
+
+            for (Waiter waiter : ready)
+                waiter.promise.failed(x);
+        }
+    }
+
+    private static class Waiter
+    {
+        private final int port;
+        private final Promise<List<SocketAddress>> promise;
+
+        private Waiter(int port, Promise<List<SocketAddress>> promise)
+        {
+            this.port = port;
+            this.promise = promise;
+        }
+    }
+}
@@ -185,10 +185,11 @@ public class MultiMap<V> extends HashMap<String,List<V>>
     {
         List<V> lo = get(name);
         if(lo == null) {
-            lo = new ArrayList<>();
+            // Most names have a single value
+            lo = new ArrayList<>(1);
+            super.put(name,lo);
         }
         lo.add(value);
-        super.put(name,lo);
     }
 
     /* ------------------------------------------------------------ */
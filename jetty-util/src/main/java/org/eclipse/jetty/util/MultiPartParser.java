@@ -0,0 +1,415 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * A non-blocking parser of multipart MIME content (RFC 2046), such as multipart/form-data request bodies.
+ * <p />
+ * The content is passed to {@link #parse(ByteBuffer, boolean)} in chunks of any size, and the parts are
+ * notified to a {@link Handler} as they are parsed: the part headers, then the part content in slices
+ * of the parsed buffers, so that parts of any size can be streamed without being buffered.
+ * As with {@link org.eclipse.jetty.http.HttpParser}, the handler may return true to stop the parsing,
+ * which can be resumed by calling {@link #parse(ByteBuffer, boolean)} again with the remaining content.
+ * <p />
+ * The delimiters are searched with the Boyer-Moore-Horspool algorithm, so that the content of a part
+ * is skipped by up to the length of the delimiter at a time. A delimiter may be split across chunks:
+ * the bytes at the end of a chunk that may start a delimiter are held back until the next chunk
+ * confirms whether they are content. Since boundaries cannot contain CR, such bytes are always a prefix
+ * of the delimiter, and are never copied.
+ */
+public class MultiPartParser
+{
+    private static final Logger LOG = Log.getLogger(MultiPartParser.class);
+
+    public enum State
+    {
+        PREAMBLE, DELIMITER, HEADERS, BODY, EPILOGUE
+    }
+
+    private final Handler handler;
+    private final byte[] delimiter;
+    private final int[] skip = new int[256];
+    private final int maxHeaderSize;
+    private State state;
+    private int partial;
+    private boolean dash;
+    private byte[] line = new byte[128];
+    private int lineLength;
+    private int headerSize;
+
+    public MultiPartParser(Handler handler, String boundary)
+    {
+        this(handler, boundary, 8192);
+    }
+
+    /**
+     * @param handler the handler notified of the parsed parts
+     * @param boundary the boundary, as found in the {@code boundary} parameter of the content type
+     * @param maxHeaderSize the max size in bytes of the headers of each part
+     */
+    public MultiPartParser(Handler handler, String boundary, int maxHeaderSize)
+    {
+        this.handler = handler;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.maxHeaderSize = maxHeaderSize;
+        Arrays.fill(skip, delimiter.length);
+        for (int i = 0; i < delimiter.length - 1; ++i)
+            skip[delimiter[i] & 0xFF] = delimiter.length - 1 - i;
+        reset();
+    }
+
+    /**
+     * @param contentType the content type of a multipart content
+     * @return the boundary of the given content type, or null if it has none
+     */
+    public static String getBoundary(String contentType)
+    {
+        return getParameter(contentType, "boundary");
+    }
+
+    /**
+     * <p>Returns the value of a parameter of a header value, for example the {@code name}
+     * and {@code filename} parameters of the Content-Disposition header of a part.</p>
+     *
+     * @param headerValue the header value, for example {@code form-data; name="file"; filename="a.txt"}
+     * @param name the parameter name
+     * @return the unquoted parameter value, or null if the parameter is not present
+     */
+    public static String getParameter(String headerValue, String name)
+    {
+        if (headerValue == null)
+            return null;
+        QuotedStringTokenizer tokenizer = new QuotedStringTokenizer(headerValue, ";", false, true);
+        while (tokenizer.hasMoreTokens())
+        {
+            String token = tokenizer.nextToken().trim();
+            int equals = token.indexOf('=');
+            if (equals > 0 && token.substring(0, equals).trim().toLowerCase(Locale.ENGLISH).equals(name))
+                return QuotedStringTokenizer.unquoteOnly(token.substring(equals + 1).trim(), true);
+        }
+        return null;
+    }
+
+    public State getState()
+    {
+        return state;
+    }
+
+    public boolean isState(State state)
+    {
+        return this.state == state;
+    }
+
+    /**
+     * Resets this parser to parse a new multipart content with the same boundary.
+     */
+    public void reset()
+    {
+        state = State.PREAMBLE;
+        // The first delimiter may not be preceded by CRLF
+        partial = 2;
+        dash = false;
+        lineLength = 0;
+        headerSize = 0;
+    }
+
+    /**
+     * Parses the given content.
+     *
+     * @param buffer the content to parse, whose position is moved past the parsed bytes
+     * @param last whether the given content is the last
+     * @return true if the handler asked to stop the parsing, or the end of the multipart content
+     * has been reached, or the content is invalid; false if more content is needed
+     */
+    public boolean parse(ByteBuffer buffer, boolean last)
+    {
+        boolean handle = false;
+        while (!handle && buffer.hasRemaining())
+        {
+            switch (state)
+            {
+                case PREAMBLE:
+                case BODY:
+                    handle = parseBody(buffer);
+                    break;
+                case DELIMITER:
+                    handle = parseDelimiter(buffer);
+                    break;
+                case HEADERS:
+                    handle = parseHeaders(buffer);
+                    break;
+                case EPILOGUE:
+                    buffer.position(buffer.limit());
+                    break;
+                default:
+                    throw new IllegalStateException(state.toString());
+            }
+        }
+
+        if (!handle && last && !buffer.hasRemaining() && state != State.EPILOGUE)
+        {
+            LOG.debug("Early EOF in {}", state);
+            state = State.EPILOGUE;
+            handler.earlyEOF();
+            return true;
+        }
+        return handle || state == State.EPILOGUE;
+    }
+
+    private boolean parseBody(ByteBuffer buffer)
+    {
+        int start = buffer.position();
+        int limit = buffer.limit();
+
+        if (partial > 0)
+        {
+            // Continue matching the delimiter whose start was held back
+            int length = Math.min(limit - start, delimiter.length - partial);
+            int matched = 0;
+            while (matched < length && buffer.get(start + matched) == delimiter[partial + matched])
+                ++matched;
+            if (matched == length)
+            {
+                buffer.position(start + length);
+                partial += length;
+                if (partial < delimiter.length)
+                    return false;
+                partial = 0;
+                return delimited(BufferUtil.EMPTY_BUFFER);
+            }
+
+            // The bytes held back were content, and are the prefix of the delimiter
+            int held = partial;
+            partial = 0;
+            if (state == State.BODY && handler.content(ByteBuffer.wrap(delimiter, 0, held).asReadOnlyBuffer(), false))
+                return true;
+        }
+
+        int index = search(buffer, start, limit);
+        if (index >= 0)
+        {
+            ByteBuffer content = slice(buffer, start, index);
+            buffer.position(index + delimiter.length);
+            return delimited(content);
+        }
+
+        // Hold back the bytes that may start a delimiter
+        int tail = tail(buffer, start, limit);
+        partial = limit - tail;
+        buffer.position(limit);
+        return state == State.BODY && tail > start && handler.content(slice(buffer, start, tail), false);
+    }
+
+    private boolean delimited(ByteBuffer content)
+    {
+        boolean handle = state == State.BODY && handler.content(content, true);
+        state = State.DELIMITER;
+        dash = false;
+        return handle;
+    }
+
+    /**
+     * @return the index of the first delimiter between start and limit, or -1
+     */
+    private int search(ByteBuffer buffer, int start, int limit)
+    {
+        int last = delimiter.length - 1;
+        int index = start;
+        while (index + last < limit)
+        {
+            int i = last;
+            while (buffer.get(index + i) == delimiter[i])
+            {
+                if (i == 0)
+                    return index;
+                --i;
+            }
+            index += skip[buffer.get(index + last) & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the bytes at the end of the buffer that are a prefix of the delimiter, or limit
+     */
+    private int tail(ByteBuffer buffer, int start, int limit)
+    {
+        for (int index = Math.max(start, limit - delimiter.length + 1); index < limit; ++index)
+        {
+            if (buffer.get(index) != delimiter[0])
+                continue;
+            int i = 1;
+            while (index + i < limit && buffer.get(index + i) == delimiter[i])
+                ++i;
+            if (index + i == limit)
+                return index;
+        }
+        return limit;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int start, int end)
+    {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(end);
+        slice.position(start);
+        return slice.slice();
+    }
+
+    private boolean parseDelimiter(ByteBuffer buffer)
+    {
+        while (buffer.hasRemaining())
+        {
+            byte b = buffer.get();
+            if (dash)
+            {
+                if (b != '-')
+                    return badMessage("Invalid multipart delimiter");
+                state = State.EPILOGUE;
+                return handler.messageComplete();
+            }
+            switch (b)
+            {
+                case '-':
+                    dash = true;
+                    break;
+                case ' ':
+                case '\t':
+                case '\r':
+                    // Transport padding
+                    break;
+                case '\n':
+                    state = State.HEADERS;
+                    lineLength = 0;
+                    headerSize = 0;
+                    handler.startPart();
+                    return false;
+                default:
+                    return badMessage("Invalid multipart delimiter");
+            }
+        }
+        return false;
+    }
+
+    private boolean parseHeaders(ByteBuffer buffer)
+    {
+        while (buffer.hasRemaining())
+        {
+            byte b = buffer.get();
+            if (++headerSize > maxHeaderSize)
+                return badMessage("Multipart headers too large");
+            if (b != '\n')
+            {
+                if (lineLength == line.length)
+                    line = Arrays.copyOf(line, 2 * line.length);
+                line[lineLength++] = b;
+                continue;
+            }
+
+            int length = lineLength;
+            if (length > 0 && line[length - 1] == '\r')
+                --length;
+            lineLength = 0;
+            if (length == 0)
+            {
+                state = State.BODY;
+                return handler.headerComplete();
+            }
+
+            // Browsers send non ASCII file names in UTF-8
+            String header = new String(line, 0, length, StandardCharsets.UTF_8);
+            int colon = header.indexOf(':');
+            if (colon > 0 && handler.parsedField(header.substring(0, colon).trim(), header.substring(colon + 1).trim()))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean badMessage(String reason)
+    {
+        LOG.debug("Bad multipart content: {}", reason);
+        state = State.EPILOGUE;
+        handler.badMessage(reason);
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{s=%s}", getClass().getSimpleName(), hashCode(), state);
+    }
+
+    /**
+     * The handler of the events of a {@link MultiPartParser}.
+     */
+    public interface Handler
+    {
+        /**
+         * Called when a new part begins, before its headers are parsed.
+         */
+        public void startPart();
+
+        /**
+         * @param name the name of a header of the current part
+         * @param value the value of the header
+         * @return true if the parser should return to its caller
+         */
+        public boolean parsedField(String name, String value);
+
+        /**
+         * @return true if the parser should return to its caller
+         */
+        public boolean headerComplete();
+
+        /**
+         * Called with the content of the current part.
+         * The buffer is only valid during the call, and must be consumed or copied before returning.
+         *
+         * @param item the content of the current part, possibly empty
+         * @param last whether this is the last content of the current part
+         * @return true if the parser should return to its caller
+         */
+        public boolean content(ByteBuffer item, boolean last);
+
+        /**
+         * Called when the closing delimiter of the multipart content has been parsed.
+         *
+         * @return true if the parser should return to its caller
+         */
+        public boolean messageComplete();
+
+        /**
+         * Called when the content ended before the closing delimiter.
+         */
+        public void earlyEOF();
+
+        /**
+         * @param reason the reason why the content is invalid
+         */
+        public void badMessage(String reason);
+    }
+}
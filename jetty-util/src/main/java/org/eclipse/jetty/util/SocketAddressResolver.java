@@ -18,9 +18,14 @@
 
 package org.eclipse.jetty.util;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.UnknownHostException;
 import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -119,57 +124,147 @@ public class SocketAddressResolver
      */
     protected void resolve(final String host, final int port, final long timeout, final Promise<SocketAddress> promise)
     {
-        executor.execute(new Runnable()
+        executor.execute(new Resolution<SocketAddress>(host, timeout, promise)
         {
             @Override
-            public void run()
+            protected SocketAddress lookup()
             {
-                Scheduler.Task task = null;
-                final AtomicBoolean complete = new AtomicBoolean();
-                if (timeout > 0)
-                {
-                    final Thread thread = Thread.currentThread();
-                    task = scheduler.schedule(new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            if (complete.compareAndSet(false, true))
-                            {
-                                promise.failed(new TimeoutException());
-                                thread.interrupt();
-                            }
-                        }
-                    }, timeout, TimeUnit.MILLISECONDS);
-                }
+                InetSocketAddress result = new InetSocketAddress(host, port);
+                if (result.isUnresolved())
+                    throw new UnresolvedAddressException();
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Resolves the given host and port, returning the {@link SocketAddress}es of the host
+     * through the given {@link Promise} with the default timeout.
+     * <p />
+     * This implementation returns the single address resolved by {@link #resolve(String, int, Promise)};
+     * subclasses that return all the addresses of the host, such as {@link CachingSocketAddressResolver},
+     * override this method to call {@link #resolveAll(String, int, long, Promise)}.
+     *
+     * @param host the host to resolve
+     * @param port the port of the resulting socket addresses
+     * @param promise the callback invoked when the resolution succeeds or fails
+     */
+    public void resolveAll(String host, int port, final Promise<List<SocketAddress>> promise)
+    {
+        resolve(host, port, new Promise<SocketAddress>()
+        {
+            @Override
+            public void succeeded(SocketAddress result)
+            {
+                promise.succeeded(Collections.singletonList(result));
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                promise.failed(x);
+            }
+        });
+    }
 
+    /**
+     * Resolves the given host and port, returning all the {@link SocketAddress}es of the host,
+     * in the order returned by {@link InetAddress#getAllByName(String)}, through the given
+     * {@link Promise} with the given timeout.
+     *
+     * @param host the host to resolve
+     * @param port the port of the resulting socket addresses
+     * @param timeout the timeout, in milliseconds, for the DNS resolution to complete
+     * @param promise the callback invoked when the resolution succeeds or fails
+     */
+    protected void resolveAll(final String host, final int port, final long timeout, final Promise<List<SocketAddress>> promise)
+    {
+        executor.execute(new Resolution<List<SocketAddress>>(host, timeout, promise)
+        {
+            @Override
+            protected List<SocketAddress> lookup()
+            {
+                InetAddress[] addresses;
                 try
                 {
-                    long start = System.nanoTime();
-                    InetSocketAddress result = new InetSocketAddress(host, port);
-                    long elapsed = System.nanoTime() - start;
-                    LOG.debug("Resolved {} in {} ms", host, TimeUnit.NANOSECONDS.toMillis(elapsed));
-                    if (complete.compareAndSet(false, true))
-                    {
-                        if (result.isUnresolved())
-                            promise.failed(new UnresolvedAddressException());
-                        else
-                            promise.succeeded(result);
-                    }
-                }
-                catch (Throwable x)
-                {
-                    if (complete.compareAndSet(false, true))
-                        promise.failed(x);
+                    addresses = InetAddress.getAllByName(host);
                 }
-                finally
+                catch (UnknownHostException x)
                 {
-                    if (task != null)
-                        task.cancel();
-                    // Reset the interrupted status before releasing the thread to the pool
-                    Thread.interrupted();
+                    UnresolvedAddressException failure = new UnresolvedAddressException();
+                    failure.initCause(x);
+                    throw failure;
                 }
+                List<SocketAddress> result = new ArrayList<>(addresses.length);
+                for (InetAddress address : addresses)
+                    result.add(new InetSocketAddress(address, port));
+                return result;
             }
         });
     }
+
+    /**
+     * Performs a DNS lookup in the calling thread, failing the promise and interrupting
+     * the lookup if it does not complete within the timeout.
+     */
+    private abstract class Resolution<T> implements Runnable
+    {
+        private final AtomicBoolean complete = new AtomicBoolean();
+        private final String host;
+        private final long timeout;
+        private final Promise<T> promise;
+
+        private Resolution(String host, long timeout, Promise<T> promise)
+        {
+            this.host = host;
+            this.timeout = timeout;
+            this.promise = promise;
+        }
+
+        @Override
+        public void run()
+        {
+            Scheduler.Task task = null;
+            if (timeout > 0)
+            {
+                final Thread thread = Thread.currentThread();
+                task = scheduler.schedule(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (complete.compareAndSet(false, true))
+                        {
+                            promise.failed(new TimeoutException());
+                            thread.interrupt();
+                        }
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+            }
+
+            try
+            {
+                long start = System.nanoTime();
+                T result = lookup();
+                long elapsed = System.nanoTime() - start;
+                LOG.debug("Resolved {} in {} ms", host, TimeUnit.NANOSECONDS.toMillis(elapsed));
+                if (complete.compareAndSet(false, true))
+                    promise.succeeded(result);
+            }
+            catch (Throwable x)
+            {
+                if (complete.compareAndSet(false, true))
+                    promise.failed(x);
+            }
+            finally
+            {
+                if (task != null)
+                    task.cancel();
+                // Reset the interrupted status before releasing the thread to the pool
+                Thread.interrupted();
+            }
+        }
+
+        protected abstract T lookup() throws Exception;
+    }
 }
@@ -29,6 +29,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.jetty.util.annotation.Name;
 import org.eclipse.jetty.util.log.Log;
@@ -46,6 +48,20 @@ import org.eclipse.jetty.util.log.Logger;
 public class TypeUtil
 {
     private static final Logger LOG = Log.getLogger(TypeUtil.class);
+
+    /**
+     * Methods and constructors resolved by {@link #call(Class, String, Object, Object[])} and
+     * {@link #construct(Class, Object[])}, keyed by a signature of the name and argument types.
+     * A ClassValue is used so that the cache does not prevent the class (or its loader) being collected.
+     */
+    private static final ClassValue<ConcurrentMap<String, Object>> __resolved = new ClassValue<ConcurrentMap<String, Object>>()
+    {
+        @Override
+        protected ConcurrentMap<String, Object> computeValue(Class<?> type)
+        {
+            return new ConcurrentHashMap<>();
+        }
+    };
     public static final Class<?>[] NO_ARGS = new Class[]{};
     public static final int CR = '\015';
     public static final int LF = '\012';
@@ -480,13 +496,43 @@ public class TypeUtil
     }
 
 
+    /* ------------------------------------------------------------ */
+    /**
+     * @return a signature of a method or constructor to key the resolved cache
+     */
+    private static String signature(String kind, String name, Object[] args)
+    {
+        StringBuilder signature = new StringBuilder(kind).append(':').append(name).append('(');
+        for (Object arg : args)
+            signature.append(arg == null?"null":arg.getClass().getName()).append(',');
+        return signature.append(')').toString();
+    }
+
     public static Object call(Class<?> oClass, String methodName, Object obj, Object[] arg)
        throws InvocationTargetException, NoSuchMethodException
     {
+        // Try a method previously resolved for the same name and argument types
+        ConcurrentMap<String, Object> resolved = __resolved.get(oClass);
+        String signature = signature(obj == null?"static":"call",methodName,arg);
+        Method cached = (Method)resolved.get(signature);
+        if (cached != null)
+        {
+            try
+            {
+                if (cached.getParameterTypes().length == arg.length)
+                    return cached.invoke(obj, arg);
+                return cached.invoke(obj, ArrayUtil.addToArray(arg,new Object[]{},Object.class));
+            }
+            catch (IllegalAccessException | IllegalArgumentException e)
+            {
+                LOG.ignore(e);
+            }
+        }
+
         // Lets just try all methods for now
         for (Method method : oClass.getMethods())
         {
-            if (!method.getName().equals(methodName))
+            if (method == cached || !method.getName().equals(methodName))
                 continue;            
             if (method.getParameterTypes().length != arg.length)
                 continue;
@@ -497,7 +543,9 @@ public class TypeUtil
 
             try
             {
-                return method.invoke(obj, arg);
+                Object result = method.invoke(obj, arg);
+                resolved.put(signature,method);
+                return result;
             }
             catch (IllegalAccessException | IllegalArgumentException e)
             {
@@ -510,7 +558,7 @@ public class TypeUtil
         
         for (Method method : oClass.getMethods())
         {
-            if (!method.getName().equals(methodName))
+            if (method == cached || !method.getName().equals(methodName))
                 continue;            
             if (method.getParameterTypes().length != arg.length+1)
                 continue;
@@ -525,7 +573,9 @@ public class TypeUtil
                 args_with_opts=ArrayUtil.addToArray(arg,new Object[]{},Object.class);
             try
             {
-                return method.invoke(obj, args_with_opts);
+                Object result = method.invoke(obj, args_with_opts);
+                resolved.put(signature,method);
+                return result;
             }
             catch (IllegalAccessException | IllegalArgumentException e)
             {
@@ -539,14 +589,32 @@ public class TypeUtil
 
     public static Object construct(Class<?> klass, Object[] arguments) throws InvocationTargetException, NoSuchMethodException
     {
+        // Try a constructor previously resolved for the same argument types
+        ConcurrentMap<String, Object> resolved = __resolved.get(klass);
+        String signature = signature("new","<init>",arguments);
+        Constructor<?> cached = (Constructor<?>)resolved.get(signature);
+        if (cached != null)
+        {
+            try
+            {
+                return cached.newInstance(arguments);
+            }
+            catch (InstantiationException | IllegalAccessException | IllegalArgumentException e)
+            {
+                LOG.ignore(e);
+            }
+        }
+
         for (Constructor<?> constructor : klass.getConstructors())
         {
-            if (constructor.getParameterTypes().length != arguments.length)
+            if (constructor == cached || constructor.getParameterTypes().length != arguments.length)
                 continue;
 
             try
             {
-                return constructor.newInstance(arguments);
+                Object result = constructor.newInstance(arguments);
+                resolved.put(signature,constructor);
+                return result;
             }
             catch (InstantiationException | IllegalAccessException | IllegalArgumentException e)
             {
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
@@ -279,111 +280,11 @@ public class UrlEncoded extends MultiMap<String> implements Cloneable
      */
     public static void decodeUtf8To(byte[] raw,int offset, int length, MultiMap<String> map)
     {
-        Utf8StringBuilder buffer = new Utf8StringBuilder();
         synchronized(map)
         {
-            String key = null;
-            String value = null;
-
-            int end=offset+length;
-            for (int i=offset;i<end;i++)
-            {
-                byte b=raw[i];
-                try
-                {
-                    switch ((char)(0xff&b))
-                    {
-                        case '&':
-                            value = buffer.length()==0?"":buffer.toString();
-                            buffer.reset();
-                            if (key != null)
-                            {
-                                map.add(key,value);
-                            }
-                            else if (value!=null&&value.length()>0)
-                            {
-                                map.add(value,"");
-                            }
-                            key = null;
-                            value=null;
-                            break;
-
-                        case '=':
-                            if (key!=null)
-                            {
-                                buffer.append(b);
-                                break;
-                            }
-                            key = buffer.toString();
-                            buffer.reset();
-                            break;
-
-                        case '+':
-                            buffer.append((byte)' ');
-                            break;
-
-                        case '%':
-                            if (i+2<end)
-                            {
-                                if ('u'==raw[i+1])
-                                {
-                                    i++;
-                                    if (i+4<end)
-                                    {
-                                        byte top=raw[++i];
-                                        byte hi=raw[++i];
-                                        byte lo=raw[++i];
-                                        byte bot=raw[++i];
-                                        buffer.getStringBuilder().append(Character.toChars((convertHexDigit(top)<<12) +(convertHexDigit(hi)<<8) + (convertHexDigit(lo)<<4) +convertHexDigit(bot)));
-                                    }
-                                    else
-                                    {
-                                        buffer.getStringBuilder().append(Utf8Appendable.REPLACEMENT);
-                                        i=end;
-                                    }
-                                }
-                                else
-                                {
-                                    byte hi=raw[++i];
-                                    byte lo=raw[++i];
-                                    buffer.append((byte)((convertHexDigit(hi)<<4) + convertHexDigit(lo)));
-                                }
-                            }
-                            else
-                            {
-                                buffer.getStringBuilder().append(Utf8Appendable.REPLACEMENT);
-                                i=end;
-                            }
-                            break;
-                            
-                        default:
-                            buffer.append(b);
-                            break;
-                    }
-                }
-                catch(NotUtf8Exception e)
-                {
-                    LOG.warn(e.toString());
-                    LOG.debug(e);
-                }
-                catch(NumberFormatException e)
-                {
-                    buffer.append(Utf8Appendable.REPLACEMENT_UTF8,0,3);
-                    LOG.warn(e.toString());
-                    LOG.debug(e);
-                }
-            }
-            
-            if (key != null)
-            {
-                value = buffer.length()==0?"":buffer.toReplacedString();
-                buffer.reset();
-                map.add(key,value);
-            }
-            else if (buffer.length()>0)
-            {
-                map.add(buffer.toReplacedString(),"");
-            }
+            UrlEncodedDecoder decoder = new UrlEncodedDecoder(map,StandardCharsets.UTF_8);
+            decoder.decode(ByteBuffer.wrap(raw,offset,length));
+            decoder.complete();
         }
     }
 
@@ -396,93 +297,7 @@ public class UrlEncoded extends MultiMap<String> implements Cloneable
     public static void decode88591To(InputStream in, MultiMap<String> map, int maxLength, int maxKeys)
     throws IOException
     {
-        synchronized(map)
-        {
-            StringBuffer buffer = new StringBuffer();
-            String key = null;
-            String value = null;
-            
-            int b;
-
-            int totalLength=0;
-            while ((b=in.read())>=0)
-            {
-                switch ((char) b)
-                {
-                    case '&':
-                        value = buffer.length()==0?"":buffer.toString();
-                        buffer.setLength(0);
-                        if (key != null)
-                        {
-                            map.add(key,value);
-                        }
-                        else if (value!=null&&value.length()>0)
-                        {
-                            map.add(value,"");
-                        }
-                        key = null;
-                        value=null;
-                        if (maxKeys>0 && map.size()>maxKeys)
-                            throw new IllegalStateException("Form too many keys");
-                        break;
-                        
-                    case '=':
-                        if (key!=null)
-                        {
-                            buffer.append((char)b);
-                            break;
-                        }
-                        key = buffer.toString();
-                        buffer.setLength(0);
-                        break;
-                        
-                    case '+':
-                        buffer.append(' ');
-                        break;
-                        
-                    case '%':
-                        int code0=in.read();
-                        if ('u'==code0)
-                        {
-                            int code1=in.read();
-                            if (code1>=0)
-                            {
-                                int code2=in.read();
-                                if (code2>=0)
-                                {
-                                    int code3=in.read();
-                                    if (code3>=0)
-                                        buffer.append(Character.toChars((convertHexDigit(code0)<<12)+(convertHexDigit(code1)<<8)+(convertHexDigit(code2)<<4)+convertHexDigit(code3)));
-                                }
-                            }
-                        }
-                        else if (code0>=0)
-                        {
-                            int code1=in.read();
-                            if (code1>=0)
-                                buffer.append((char)((convertHexDigit(code0)<<4)+convertHexDigit(code1)));
-                        }
-                        break;
-                     
-                    default:
-                        buffer.append((char)b);
-                    break;
-                }
-                if (maxLength>=0 && (++totalLength > maxLength))
-                    throw new IllegalStateException("Form too large");
-            }
-            
-            if (key != null)
-            {
-                value = buffer.length()==0?"":buffer.toString();
-                buffer.setLength(0);
-                map.add(key,value);
-            }
-            else if (buffer.length()>0)
-            {
-                map.add(buffer.toString(), "");
-            }
-        }
+        decodeTo(in,map,new UrlEncodedDecoder(map,StandardCharsets.ISO_8859_1,maxLength,maxKeys));
     }
     
     /* -------------------------------------------------------------- */
@@ -493,107 +308,23 @@ public class UrlEncoded extends MultiMap<String> implements Cloneable
      */
     public static void decodeUtf8To(InputStream in, MultiMap<String> map, int maxLength, int maxKeys)
     throws IOException
+    {
+        decodeTo(in,map,new UrlEncodedDecoder(map,StandardCharsets.UTF_8,maxLength,maxKeys));
+    }
+
+    /* -------------------------------------------------------------- */
+    /** Decode the stream in chunks with the given decoder, rather than byte by byte.
+     */
+    private static void decodeTo(InputStream in, MultiMap<String> map, UrlEncodedDecoder decoder)
+    throws IOException
     {
         synchronized(map)
         {
-            Utf8StringBuilder buffer = new Utf8StringBuilder();
-            String key = null;
-            String value = null;
-            
-            int b;
-            
-            int totalLength=0;
-            while ((b=in.read())>=0)
-            {
-                try
-                {
-                    switch ((char) b)
-                    {
-                        case '&':
-                            value = buffer.length()==0?"":buffer.toString();
-                            buffer.reset();
-                            if (key != null)
-                            {
-                                map.add(key,value);
-                            }
-                            else if (value!=null&&value.length()>0)
-                            {
-                                map.add(value,"");
-                            }
-                            key = null;
-                            value=null;
-                            if (maxKeys>0 && map.size()>maxKeys)
-                                throw new IllegalStateException("Form too many keys");
-                            break;
-
-                        case '=':
-                            if (key!=null)
-                            {
-                                buffer.append((byte)b);
-                                break;
-                            }
-                            key = buffer.toString();
-                            buffer.reset();
-                            break;
-
-                        case '+':
-                            buffer.append((byte)' ');
-                            break;
-
-                        case '%':
-                            int code0=in.read();
-                            if ('u'==code0)
-                            {
-                                int code1=in.read();
-                                if (code1>=0)
-                                {
-                                    int code2=in.read();
-                                    if (code2>=0)
-                                    {
-                                        int code3=in.read();
-                                        if (code3>=0)
-                                            buffer.getStringBuilder().append(Character.toChars((convertHexDigit(code0)<<12)+(convertHexDigit(code1)<<8)+(convertHexDigit(code2)<<4)+convertHexDigit(code3)));
-                                    }
-                                }
-                            }
-                            else if (code0>=0)
-                            {
-                                int code1=in.read();
-                                if (code1>=0)
-                                    buffer.append((byte)((convertHexDigit(code0)<<4)+convertHexDigit(code1)));
-                            }
-                            break;
-                          
-                        default:
-                            buffer.append((byte)b);
-                            break;
-                    }
-                }
-                catch(NotUtf8Exception e)
-                {
-                    LOG.warn(e.toString());
-                    LOG.debug(e);
-                }
-                catch(NumberFormatException e)
-                {
-                    buffer.append(Utf8Appendable.REPLACEMENT_UTF8,0,3);
-                    LOG.warn(e.toString());
-                    LOG.debug(e);
-                }
-                if (maxLength>=0 && (++totalLength > maxLength))
-                    throw new IllegalStateException("Form too large");
-            }
-            
-            if (key != null)
-            {
-                value = buffer.length()==0?"":buffer.toString();
-                buffer.reset();
-                map.add(key,value);
-            }
-            else if (buffer.length()>0)
-            {
-                map.add(buffer.toString(), "");
-            }
+            byte[] chunk = new byte[4096];
+            int read;
+            while ((read=in.read(chunk))>=0)
+                decoder.decode(ByteBuffer.wrap(chunk,0,read));
+            decoder.complete();
         }
     }
     
@@ -0,0 +1,326 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A single pass decoder of {@code application/x-www-form-urlencoded} content.
+ * <p />
+ * The content is passed to {@link #decode(ByteBuffer)} in chunks of any size, for example as
+ * it is read from a request, and {@link #complete()} must be called after the last chunk.
+ * The decoded parameters are added to a {@link MultiMap} as soon as they are complete.
+ * <p />
+ * Keys and values that need no decoding and lie within a single chunk are converted to strings
+ * directly from the chunk, with a fast path for ASCII; only escaped keys and values, or those split
+ * across chunks, are copied to an intermediate buffer before being converted with the charset.
+ * The charset must be a superset of ASCII, such as UTF-8 or ISO-8859-1.
+ * Invalid escapes and invalid byte sequences are replaced by {@link Utf8Appendable#REPLACEMENT}.
+ */
+public class UrlEncodedDecoder
+{
+    private static final boolean[] PLAIN = new boolean[256];
+    static
+    {
+        for (int b = 0; b < 0x80; ++b)
+            PLAIN[b] = b != '&' && b != '=' && b != '+' && b != '%';
+    }
+
+    private final MultiMap<String> map;
+    private final Charset charset;
+    private final int maxLength;
+    private final int maxKeys;
+    private byte[] bytes = new byte[64];
+    private int count;
+    private boolean ascii = true;
+    private StringBuilder text;
+    private String key;
+    private int length;
+    private int escape;
+    private int digits;
+    private int code;
+    private boolean unicode;
+    private boolean valid;
+
+    public UrlEncodedDecoder(MultiMap<String> map, Charset charset)
+    {
+        this(map, charset, -1, -1);
+    }
+
+    /**
+     * @param map the map to add the decoded parameters to
+     * @param charset the charset of the content, or null for {@link UrlEncoded#ENCODING}
+     * @param maxLength the max length of the content, or -1 for no limit
+     * @param maxKeys the max number of keys in the map, or -1 for no limit
+     */
+    public UrlEncodedDecoder(MultiMap<String> map, Charset charset, int maxLength, int maxKeys)
+    {
+        this.map = map;
+        this.charset = charset == null ? UrlEncoded.ENCODING : charset;
+        this.maxLength = maxLength;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Decodes the given content, whose position is moved to its limit.
+     *
+     * @param buffer the content to decode
+     * @throws IllegalStateException if the content is too large or has too many keys
+     */
+    public void decode(ByteBuffer buffer)
+    {
+        int remaining = buffer.remaining();
+        length += remaining;
+        if (maxLength >= 0 && length > maxLength)
+            throw new IllegalStateException("Form too large");
+
+        if (buffer.hasArray())
+        {
+            int offset = buffer.arrayOffset() + buffer.position();
+            decode(buffer.array(), offset, offset + remaining);
+            buffer.position(buffer.limit());
+        }
+        else
+        {
+            byte[] chunk = new byte[remaining];
+            buffer.get(chunk);
+            decode(chunk, 0, remaining);
+        }
+    }
+
+    private void decode(byte[] array, int offset, int end)
+    {
+        // The start of the bytes that need no decoding
+        int start = offset;
+        for (int i = offset; i < end; ++i)
+        {
+            if (escape == 0)
+            {
+                // Skip the plain ASCII bytes
+                while (PLAIN[array[i] & 0xFF])
+                {
+                    if (++i == end)
+                    {
+                        append(array, start, end);
+                        return;
+                    }
+                }
+            }
+
+            byte b = array[i];
+            if (escape > 0)
+            {
+                if (b != '&')
+                {
+                    escape(b);
+                    start = i + 1;
+                    continue;
+                }
+                // An incomplete escape does not hide the next parameter
+                escape = 0;
+                append(Utf8Appendable.REPLACEMENT);
+                start = i;
+            }
+
+            switch (b)
+            {
+                case '&':
+                {
+                    String value = field(array, start, i);
+                    if (key != null)
+                        add(key, value);
+                    else if (value.length() > 0)
+                        add(value, "");
+                    key = null;
+                    start = i + 1;
+                    break;
+                }
+                case '=':
+                {
+                    if (key == null)
+                    {
+                        key = field(array, start, i);
+                        start = i + 1;
+                    }
+                    break;
+                }
+                case '+':
+                {
+                    append(array, start, i);
+                    append((byte)' ');
+                    start = i + 1;
+                    break;
+                }
+                case '%':
+                {
+                    append(array, start, i);
+                    escape = 2;
+                    digits = 0;
+                    code = 0;
+                    unicode = false;
+                    valid = true;
+                    start = i + 1;
+                    break;
+                }
+                default:
+                {
+                    if (b < 0)
+                        ascii = false;
+                    break;
+                }
+            }
+        }
+        append(array, start, end);
+    }
+
+    /**
+     * Adds the last parameter to the map; must be called after the last content has been decoded.
+     *
+     * @throws IllegalStateException if the content has too many keys
+     */
+    public void complete()
+    {
+        if (escape > 0)
+        {
+            escape = 0;
+            append(Utf8Appendable.REPLACEMENT);
+        }
+        String value = field(bytes, 0, 0);
+        if (key != null)
+            add(key, value);
+        else if (value.length() > 0)
+            add(value, "");
+        key = null;
+    }
+
+    private void escape(byte b)
+    {
+        // The 'u' of a %uXXXX escape extends the escape to 4 hex digits
+        if (b == 'u' && digits == 0 && !unicode)
+        {
+            unicode = true;
+            escape = 4;
+            return;
+        }
+
+        int digit = hexValue(b);
+        if (digit < 0)
+            valid = false;
+        else
+            code = (code << 4) + digit;
+        ++digits;
+
+        if (--escape > 0)
+            return;
+
+        if (!valid)
+            append(Utf8Appendable.REPLACEMENT);
+        else if (unicode)
+            append((char)code);
+        else
+            append((byte)code);
+    }
+
+    private String field(byte[] array, int start, int end)
+    {
+        String field;
+        if (count == 0 && text == null)
+        {
+            // Nothing was decoded, convert directly from the content
+            field = newString(array, start, end - start);
+        }
+        else
+        {
+            append(array, start, end);
+            field = newString(bytes, 0, count);
+            if (text != null)
+            {
+                field = text.append(field).toString();
+                text = null;
+            }
+            count = 0;
+        }
+        ascii = true;
+        return field;
+    }
+
+    private String newString(byte[] array, int offset, int length)
+    {
+        if (length == 0)
+            return "";
+        // ASCII is the same in all the supported charsets, and ISO-8859-1 is the cheapest to convert
+        return new String(array, offset, length, ascii ? StandardCharsets.ISO_8859_1 : charset);
+    }
+
+    private void append(byte[] array, int start, int end)
+    {
+        int length = end - start;
+        if (length <= 0)
+            return;
+        ensureCapacity(length);
+        System.arraycopy(array, start, bytes, count, length);
+        count += length;
+    }
+
+    private void append(byte b)
+    {
+        ensureCapacity(1);
+        bytes[count++] = b;
+        if (b < 0)
+            ascii = false;
+    }
+
+    private void append(char c)
+    {
+        // Characters are not encoded back with the charset, which may not support them
+        if (text == null)
+            text = new StringBuilder();
+        text.append(newString(bytes, 0, count)).append(c);
+        count = 0;
+        ascii = true;
+    }
+
+    private void ensureCapacity(int length)
+    {
+        if (count + length > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, count + length));
+    }
+
+    private void add(String name, String value)
+    {
+        map.add(name, value);
+        if (maxKeys > 0 && map.size() > maxKeys)
+            throw new IllegalStateException("Form too many keys");
+    }
+
+    private static int hexValue(byte b)
+    {
+        if (b >= '0' && b <= '9')
+            return b - '0';
+        if (b >= 'a' && b <= 'f')
+            return b - 'a' + 10;
+        if (b >= 'A' && b <= 'F')
+            return b - 'A' + 10;
+        return -1;
+    }
+}
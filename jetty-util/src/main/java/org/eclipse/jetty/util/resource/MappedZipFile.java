@@ -0,0 +1,541 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/* ------------------------------------------------------------ */
+/**
+ * A read only, memory mapped zip (jar/war) file.
+ * <p>
+ * The whole archive is mapped once and the central directory is parsed once into an
+ * index of entries and directories, so that lookups, listings and content access do not
+ * need to open a {@link java.util.jar.JarFile} or a {@link java.net.JarURLConnection}.
+ * Instances are shared between all users of the same file by {@link #open(File)}, which
+ * must be paired with a {@link #release()}, and are replaced if the file is modified.
+ * The file is unmapped when its last user releases it, after which the buffers and streams
+ * obtained from it must not be used.
+ * <p>
+ * Only single volume, non ZIP64 archives of less than 2GB are supported. Entries must
+ * be either STORED or DEFLATED.
+ */
+public class MappedZipFile
+{
+    private static final Logger LOG = Log.getLogger(MappedZipFile.class);
+    private static final Map<String,MappedZipFile> __shared = new HashMap<>();
+
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_HEADER_SIG = 0x06054b50;
+    private static final int END_HEADER_LEN = 22;
+    private static final int LOCAL_HEADER_LEN = 30;
+    private static final int CENTRAL_HEADER_LEN = 46;
+
+    private final File _file;
+    private final long _lastModified;
+    private final long _length;
+    private final MappedByteBuffer _mapped;
+    private final ByteBuffer _buffer;
+    private final Map<String,Entry> _entries = new HashMap<>();
+    private final Map<String,List<String>> _directories = new HashMap<>();
+    private int _references;
+    private volatile boolean _released;
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Obtain the shared mapped index for a zip file.
+     * @param file The zip file
+     * @return The shared index, which is created if the file has not been opened before or has been modified since.
+     * @throws IOException if the file cannot be mapped or is not a supported zip file
+     */
+    public static MappedZipFile open(File file) throws IOException
+    {
+        File canonical = file.getCanonicalFile();
+        String key = canonical.getPath();
+        synchronized (__shared)
+        {
+            MappedZipFile zip = __shared.get(key);
+            if (zip != null && !zip.isValid())
+            {
+                // The stale mapping is no longer shared, and is collected once its current users release it
+                __shared.remove(key);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Dropped stale mapping of {}",canonical);
+                zip = null;
+            }
+            if (zip == null)
+            {
+                zip = new MappedZipFile(canonical);
+                __shared.put(key,zip);
+            }
+            zip._references++;
+            return zip;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Release a reference obtained from {@link #open(File)}.
+     * When its last user releases it, the index is removed from the shared cache and the file is unmapped.
+     * @throws IllegalStateException if all the references have already been released
+     */
+    public void release()
+    {
+        synchronized (__shared)
+        {
+            if (_references <= 0)
+                throw new IllegalStateException("Already released " + this);
+            if (--_references > 0)
+                return;
+            String key = _file.getPath();
+            if (__shared.get(key) == this)
+                __shared.remove(key);
+            _released = true;
+        }
+        unmap(_mapped);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Unmapped {}",_file);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Unmap a buffer now rather than when it is garbage collected, so that the file
+     * can be deleted or replaced. If the JVM does not allow it, the buffer is unmapped
+     * by the garbage collector.
+     */
+    private static void unmap(MappedByteBuffer buffer)
+    {
+        try
+        {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null)
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }
+        catch (Throwable x)
+        {
+            LOG.ignore(x);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    MappedZipFile(File file) throws IOException
+    {
+        _file = file;
+        _lastModified = file.lastModified();
+        _length = file.length();
+        if (_length > Integer.MAX_VALUE)
+            throw new ZipException("Too large to map: " + file);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file,"r");
+             FileChannel channel = raf.getChannel())
+        {
+            _mapped = channel.map(FileChannel.MapMode.READ_ONLY,0,_length);
+            _buffer = _mapped.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        try
+        {
+            index();
+        }
+        catch (IOException | RuntimeException x)
+        {
+            unmap(_mapped);
+            throw x;
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Mapped {} with {} entries",file,_entries.size());
+    }
+
+    /* ------------------------------------------------------------ */
+    private void index() throws IOException
+    {
+        // Find the end of central directory record, which may be followed by a comment
+        int end = -1;
+        int min = Math.max(0,(int)_length - END_HEADER_LEN - 0xFFFF);
+        for (int p = (int)_length - END_HEADER_LEN; p >= min; p--)
+        {
+            if (_buffer.getInt(p) == END_HEADER_SIG)
+            {
+                end = p;
+                break;
+            }
+        }
+        if (end < 0)
+            throw new ZipException("No central directory: " + _file);
+
+        int count = _buffer.getShort(end + 10) & 0xFFFF;
+        long offset = _buffer.getInt(end + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || offset == 0xFFFFFFFFL)
+            throw new ZipException("ZIP64 not supported: " + _file);
+
+        Map<String,TreeSet<String>> children = new HashMap<>();
+        children.put("",new TreeSet<String>());
+
+        int p = (int)offset;
+        for (int i = 0; i < count; i++)
+        {
+            if (_buffer.getInt(p) != CENTRAL_HEADER_SIG)
+                throw new ZipException("Bad central directory entry " + i + " in " + _file);
+
+            int flags = _buffer.getShort(p + 8) & 0xFFFF;
+            int method = _buffer.getShort(p + 10) & 0xFFFF;
+            int dosTime = _buffer.getInt(p + 12);
+            long compressed = _buffer.getInt(p + 20) & 0xFFFFFFFFL;
+            long size = _buffer.getInt(p + 24) & 0xFFFFFFFFL;
+            int nameLength = _buffer.getShort(p + 28) & 0xFFFF;
+            int extraLength = _buffer.getShort(p + 30) & 0xFFFF;
+            int commentLength = _buffer.getShort(p + 32) & 0xFFFF;
+            long local = _buffer.getInt(p + 42) & 0xFFFFFFFFL;
+
+            if (compressed == 0xFFFFFFFFL || size == 0xFFFFFFFFL || local == 0xFFFFFFFFL)
+                throw new ZipException("ZIP64 not supported: " + _file);
+            if ((flags & 1) != 0)
+                throw new ZipException("Encrypted entries not supported: " + _file);
+
+            byte[] raw = new byte[nameLength];
+            ByteBuffer name = _buffer.duplicate();
+            name.position(p + CENTRAL_HEADER_LEN);
+            name.get(raw);
+            String path = new String(raw,StandardCharsets.UTF_8).replace('\\','/');
+
+            if (path.endsWith("/"))
+            {
+                path = path.substring(0,path.length() - 1);
+                addDirectory(path,children);
+            }
+            else if (path.length() > 0)
+            {
+                if (method != 0 && method != 8)
+                    throw new ZipException("Unsupported compression method " + method + " for " + path + " in " + _file);
+                _entries.put(path,new Entry(path,method,dosToJavaTime(dosTime),compressed,size,(int)local));
+                int slash = path.lastIndexOf('/');
+                String parent = slash < 0?"":path.substring(0,slash);
+                addDirectory(parent,children);
+                children.get(parent).add(path.substring(slash + 1));
+            }
+
+            p += CENTRAL_HEADER_LEN + nameLength + extraLength + commentLength;
+        }
+
+        for (Map.Entry<String,TreeSet<String>> directory : children.entrySet())
+            _directories.put(directory.getKey(),Collections.unmodifiableList(new ArrayList<>(directory.getValue())));
+    }
+
+    /* ------------------------------------------------------------ */
+    private static void addDirectory(String path, Map<String,TreeSet<String>> children)
+    {
+        if (children.containsKey(path))
+            return;
+        children.put(path,new TreeSet<String>());
+
+        int slash = path.lastIndexOf('/');
+        String parent = slash < 0?"":path.substring(0,slash);
+        addDirectory(parent,children);
+        children.get(parent).add(path.substring(slash + 1) + "/");
+    }
+
+    /* ------------------------------------------------------------ */
+    private static long dosToJavaTime(int dosTime)
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(((dosTime >> 25) & 0x7f) + 1980,
+                ((dosTime >> 21) & 0x0f) - 1,
+                (dosTime >> 16) & 0x1f,
+                (dosTime >> 11) & 0x1f,
+                (dosTime >> 5) & 0x3f,
+                (dosTime << 1) & 0x3e);
+        return calendar.getTimeInMillis();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return true if the underlying file has not been modified since it was mapped
+     */
+    public boolean isValid()
+    {
+        return _file.lastModified() == _lastModified && _file.length() == _length;
+    }
+
+    /* ------------------------------------------------------------ */
+    public File getFile()
+    {
+        return _file;
+    }
+
+    /* ------------------------------------------------------------ */
+    public long lastModified()
+    {
+        return _lastModified;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the number of file entries in the index
+     */
+    public int size()
+    {
+        return _entries.size();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param path The entry path, without leading or trailing '/'
+     * @return The file entry or null if there is no such file entry
+     */
+    public Entry getEntry(String path)
+    {
+        return _entries.get(path);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param path The directory path, without leading or trailing '/', "" for the root
+     * @return true if the path is a directory, either explicitly listed or implied by the entries within it
+     */
+    public boolean isDirectory(String path)
+    {
+        return _directories.containsKey(path);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param path The directory path, without leading or trailing '/', "" for the root
+     * @return The sorted names of the directory children, with directory names ending in '/', or null if not a directory
+     */
+    public List<String> list(String path)
+    {
+        return _directories.get(path);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param entry An entry of this zip file
+     * @return A read only buffer of the raw (possibly compressed) entry data, sharing the mapped content
+     * @throws IOException if the local header of the entry is invalid
+     */
+    ByteBuffer getRawBuffer(Entry entry) throws IOException
+    {
+        if (_released)
+            throw new IllegalStateException("Released " + this);
+        int offset = entry._dataOffset;
+        if (offset < 0)
+        {
+            int local = entry._localOffset;
+            if (_buffer.getInt(local) != LOCAL_HEADER_SIG)
+                throw new ZipException("Bad local header for " + entry.getName() + " in " + _file);
+            int nameLength = _buffer.getShort(local + 26) & 0xFFFF;
+            int extraLength = _buffer.getShort(local + 28) & 0xFFFF;
+            offset = local + LOCAL_HEADER_LEN + nameLength + extraLength;
+            entry._dataOffset = offset;
+        }
+        ByteBuffer raw = _buffer.duplicate();
+        raw.limit(offset + (int)entry.getCompressedSize());
+        raw.position(offset);
+        return raw.slice();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param entry An entry of this zip file
+     * @return A read only buffer of the uncompressed entry content if the entry is STORED, otherwise null
+     * @throws IOException if the local header of the entry is invalid
+     * @throws IllegalStateException if this zip file has been released by all its users
+     */
+    public ByteBuffer getBuffer(Entry entry) throws IOException
+    {
+        if (entry.isCompressed())
+            return null;
+        return getRawBuffer(entry);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param entry An entry of this zip file
+     * @return A stream of the uncompressed entry content read from the mapped file
+     * @throws IOException if the local header of the entry is invalid
+     * @throws IllegalStateException if this zip file has been released by all its users
+     */
+    public InputStream getInputStream(Entry entry) throws IOException
+    {
+        InputStream in = new BufferInputStream(getRawBuffer(entry));
+        if (!entry.isCompressed())
+            return in;
+
+        final Inflater inflater = new Inflater(true);
+        int size = (int)Math.min(Math.max(entry.getSize(),512),8192);
+        return new InflaterInputStream(in,inflater,size)
+        {
+            private boolean _closed;
+
+            @Override
+            public void close() throws IOException
+            {
+                if (!_closed)
+                {
+                    _closed = true;
+                    inflater.end();
+                    super.close();
+                }
+            }
+        };
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,entries=%d}",getClass().getSimpleName(),hashCode(),_file,_entries.size());
+    }
+
+    /* ------------------------------------------------------------ */
+    /* ------------------------------------------------------------ */
+    /**
+     * A file entry within the central directory.
+     */
+    public static class Entry
+    {
+        private final String _name;
+        private final int _method;
+        private final long _lastModified;
+        private final long _compressedSize;
+        private final long _size;
+        private final int _localOffset;
+        private volatile int _dataOffset = -1;
+
+        private Entry(String name, int method, long lastModified, long compressedSize, long size, int localOffset)
+        {
+            _name = name;
+            _method = method;
+            _lastModified = lastModified;
+            _compressedSize = compressedSize;
+            _size = size;
+            _localOffset = localOffset;
+        }
+
+        public String getName()
+        {
+            return _name;
+        }
+
+        public boolean isCompressed()
+        {
+            return _method != 0;
+        }
+
+        public long lastModified()
+        {
+            return _lastModified;
+        }
+
+        public long getCompressedSize()
+        {
+            return _compressedSize;
+        }
+
+        public long getSize()
+        {
+            return _size;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s{%s,%s,%d/%d}",getClass().getSimpleName(),_name,isCompressed()?"DEFLATED":"STORED",_compressedSize,_size);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /* ------------------------------------------------------------ */
+    private static class BufferInputStream extends InputStream
+    {
+        private final ByteBuffer _buffer;
+
+        private BufferInputStream(ByteBuffer buffer)
+        {
+            _buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if (!_buffer.hasRemaining())
+                return -1;
+            return _buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0)
+                return 0;
+            if (!_buffer.hasRemaining())
+                return -1;
+            len = Math.min(len,_buffer.remaining());
+            _buffer.get(b,off,len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            int skip = (int)Math.min(Math.max(n,0),_buffer.remaining());
+            _buffer.position(_buffer.position() + skip);
+            return skip;
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            return _buffer.remaining();
+        }
+
+        @Override
+        public String toString()
+        {
+            return BufferUtil.toDetailString(_buffer);
+        }
+    }
+}
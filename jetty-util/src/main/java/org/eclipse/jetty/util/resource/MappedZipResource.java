@@ -0,0 +1,327 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.resource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.URIUtil;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+
+/* ------------------------------------------------------------ */
+/**
+ * A Resource within a {@link MappedZipFile}.
+ * <p>
+ * This resource serves the content of a jar or war file directly from a shared memory mapping
+ * of the archive, using the index of the central directory for {@link #exists()},
+ * {@link #isDirectory()} and {@link #list()}, so that no {@link java.util.jar.JarFile} is
+ * opened and nothing is extracted.  The URL of the resource is the equivalent <code>jar:</code> URL.
+ */
+public class MappedZipResource extends Resource
+{
+    private static final Logger LOG = Log.getLogger(MappedZipResource.class);
+
+    private final MappedZipFile _zip;
+    private final String _path;
+    private final String _jarUrl;
+    private final MappedZipFile.Entry _entry;
+    private final boolean _directory;
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Create a resource for the root of a zip file.
+     * @param file The zip file
+     * @return The root directory resource of the zip file
+     * @throws IOException if the file cannot be mapped or is not a supported zip file
+     */
+    public static MappedZipResource newMappedZipResource(File file) throws IOException
+    {
+        MappedZipFile zip = MappedZipFile.open(file);
+        return new MappedZipResource(zip,"jar:" + zip.getFile().toURI().toURL().toExternalForm() + "!/","");
+    }
+
+    /* ------------------------------------------------------------ */
+    private MappedZipResource(MappedZipFile zip, String jarUrl, String path)
+    {
+        _zip = zip;
+        _jarUrl = jarUrl;
+        _path = path;
+        _entry = zip.getEntry(path);
+        _directory = _entry == null && zip.isDirectory(path);
+    }
+
+    /* ------------------------------------------------------------ */
+    public MappedZipFile getMappedZipFile()
+    {
+        return _zip;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return The path of this resource within the zip file, without leading or trailing '/'
+     */
+    public String getPathInZip()
+    {
+        return _path;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public boolean isContainedIn(Resource r) throws MalformedURLException
+    {
+        return false;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * The mapping is shared by all the resources of the zip file and is not released by
+     * closing one of them, but by a {@link MappedZipFile#release()} of the user that created
+     * the root resource with {@link #newMappedZipResource(File)}.
+     * @see #getMappedZipFile()
+     */
+    @Override
+    public void close()
+    {
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public boolean exists()
+    {
+        return _entry != null || _directory;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public boolean isDirectory()
+    {
+        return _directory;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public long lastModified()
+    {
+        if (_entry != null)
+            return _entry.lastModified();
+        return _directory?_zip.lastModified():-1;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public long length()
+    {
+        if (_entry != null)
+            return _entry.getSize();
+        return _directory?0:-1;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public URL getURL()
+    {
+        try
+        {
+            return new URL(getName());
+        }
+        catch (MalformedURLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return null, as entries within a zip file are not files
+     */
+    @Override
+    public File getFile() throws IOException
+    {
+        return null;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String getName()
+    {
+        if (_path.length() == 0)
+            return _jarUrl;
+        return _jarUrl + URIUtil.encodePath(_path) + (_directory?"/":"");
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public InputStream getInputStream() throws IOException
+    {
+        if (_entry == null)
+            throw new IOException((_directory?"Is a directory: ":"Not found: ") + this);
+        return _zip.getInputStream(_entry);
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public ReadableByteChannel getReadableByteChannel() throws IOException
+    {
+        if (_entry == null)
+            return null;
+        return Channels.newChannel(getInputStream());
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return A read only buffer sharing the mapped content if the entry is stored uncompressed, otherwise null
+     * @throws IOException if the entry cannot be read
+     */
+    public ByteBuffer getMappedBuffer() throws IOException
+    {
+        if (_entry == null)
+            return null;
+        return _zip.getBuffer(_entry);
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public boolean delete() throws SecurityException
+    {
+        return false;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public boolean renameTo(Resource dest) throws SecurityException
+    {
+        return false;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String[] list()
+    {
+        List<String> list = _zip.list(_path);
+        if (list == null)
+            return null;
+        return list.toArray(new String[list.size()]);
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public Resource addPath(String path) throws IOException, MalformedURLException
+    {
+        if (path == null)
+            throw new MalformedURLException();
+
+        path = URIUtil.canonicalPath(path);
+        if (path == null)
+            throw new MalformedURLException();
+
+        String child = URIUtil.addPaths(_path,path);
+        while (child.startsWith("/"))
+            child = child.substring(1);
+        while (child.endsWith("/"))
+            child = child.substring(0,child.length() - 1);
+
+        if (child.equals(_path))
+            return this;
+        return new MappedZipResource(_zip,_jarUrl,child);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Copy this resource to a file or, if it is a directory, its content into a directory,
+     * reading directly from the mapped zip file.
+     */
+    @Override
+    public void copyTo(File destination) throws IOException
+    {
+        if (_entry != null)
+        {
+            if (destination.exists())
+                throw new IllegalArgumentException(destination + " exists");
+            File parent = destination.getParentFile();
+            if (parent != null && !parent.exists())
+                parent.mkdirs();
+            try (InputStream in = getInputStream();
+                 OutputStream out = new FileOutputStream(destination))
+            {
+                IO.copy(in,out);
+            }
+            destination.setLastModified(_entry.lastModified());
+            return;
+        }
+
+        if (!_directory)
+            return;
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Copy {} to {}",this,destination);
+
+        if (!destination.exists())
+            destination.mkdirs();
+
+        for (String name : _zip.list(_path))
+        {
+            File file = new File(destination,name);
+            Resource child = addPath(name);
+            if (child.isDirectory())
+                child.copyTo(file);
+            else if (!file.exists() || file.lastModified() < child.lastModified())
+            {
+                if (file.exists())
+                    file.delete();
+                child.copyTo(file);
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return getName();
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public int hashCode()
+    {
+        return _zip.hashCode() ^ _path.hashCode();
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof MappedZipResource))
+            return false;
+        MappedZipResource r = (MappedZipResource)o;
+        return _zip == r._zip && _path.equals(r._path);
+    }
+}
@@ -0,0 +1,202 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingSocketAddressResolverTest
+{
+    private Scheduler scheduler;
+    private QueuingExecutor executor;
+    private CachingSocketAddressResolver resolver;
+
+    @Before
+    public void prepare() throws Exception
+    {
+        scheduler = new ScheduledExecutorScheduler();
+        scheduler.start();
+        executor = new QueuingExecutor();
+        resolver = new CachingSocketAddressResolver(executor, scheduler, 5000);
+    }
+
+    @After
+    public void dispose() throws Exception
+    {
+        scheduler.stop();
+    }
+
+    @Test
+    public void testResolutionIsCached() throws Exception
+    {
+        FuturePromise<SocketAddress> promise = new FuturePromise<>();
+        resolver.resolve("localhost", 8080, promise);
+        Assert.assertFalse(promise.isDone());
+        executor.runAll();
+        InetSocketAddress address = (InetSocketAddress)promise.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(8080, address.getPort());
+        Assert.assertTrue(address.getAddress().isLoopbackAddress());
+
+        // Cached, with a different port
+        promise = new FuturePromise<>();
+        resolver.resolve("localhost", 9090, promise);
+        Assert.assertTrue(promise.isDone());
+        address = (InetSocketAddress)promise.get();
+        Assert.assertEquals(9090, address.getPort());
+
+        Assert.assertEquals(1, resolver.getMisses());
+        Assert.assertEquals(1, resolver.getHits());
+        Assert.assertEquals(1, resolver.getLookups());
+        Assert.assertEquals(1, resolver.getLatencyStatistic("localhost").getCount());
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception
+    {
+        List<FuturePromise<List<SocketAddress>>> promises = new ArrayList<>();
+        for (int i = 0; i < 10; ++i)
+        {
+            FuturePromise<List<SocketAddress>> promise = new FuturePromise<>();
+            resolver.resolveAll("localhost", 8080, promise);
+            promises.add(promise);
+        }
+        Assert.assertEquals(1, executor.size());
+        executor.runAll();
+
+        for (FuturePromise<List<SocketAddress>> promise : promises)
+            Assert.assertFalse(promise.get(5, TimeUnit.SECONDS).isEmpty());
+        Assert.assertEquals(10, resolver.getMisses());
+        Assert.assertEquals(1, resolver.getLookups());
+    }
+
+    @Test
+    public void testStaleAddressesAreReturnedWhileRevalidating() throws Exception
+    {
+        resolver.setTimeToLive(100);
+        resolver.setStaleTime(60000);
+
+        FuturePromise<SocketAddress> promise = new FuturePromise<>();
+        resolver.resolve("localhost", 8080, promise);
+        executor.runAll();
+        promise.get(5, TimeUnit.SECONDS);
+
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        // Expired: the stale address is returned, and the host is resolved again
+        promise = new FuturePromise<>();
+        resolver.resolve("localhost", 8080, promise);
+        Assert.assertTrue(promise.isDone());
+        Assert.assertEquals(1, resolver.getStaleHits());
+        Assert.assertEquals(1, executor.size());
+
+        // Only one revalidation at a time
+        resolver.resolve("localhost", 8080, new FuturePromise<SocketAddress>());
+        Assert.assertEquals(2, resolver.getStaleHits());
+        Assert.assertEquals(1, executor.size());
+
+        executor.runAll();
+        resolver.resolve("localhost", 8080, new FuturePromise<SocketAddress>());
+        Assert.assertEquals(1, resolver.getHits());
+        Assert.assertEquals(2, resolver.getLookups());
+    }
+
+    @Test
+    public void testExpiredAddressesAreResolvedAgain() throws Exception
+    {
+        resolver.setTimeToLive(100);
+        resolver.setStaleTime(0);
+
+        FuturePromise<SocketAddress> promise = new FuturePromise<>();
+        resolver.resolve("localhost", 8080, promise);
+        executor.runAll();
+        promise.get(5, TimeUnit.SECONDS);
+
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        promise = new FuturePromise<>();
+        resolver.resolve("localhost", 8080, promise);
+        Assert.assertFalse(promise.isDone());
+        executor.runAll();
+        promise.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(2, resolver.getMisses());
+        Assert.assertEquals(2, resolver.getLookups());
+    }
+
+    @Test
+    public void testCacheIsBounded() throws Exception
+    {
+        resolver.setMaxEntries(2);
+
+        for (String host : new String[]{"127.0.0.1", "127.0.0.2", "127.0.0.3"})
+        {
+            FuturePromise<SocketAddress> promise = new FuturePromise<>();
+            resolver.resolve(host, 8080, promise);
+            executor.runAll();
+            promise.get(5, TimeUnit.SECONDS);
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+
+        Assert.assertEquals(2, resolver.getSize());
+        Assert.assertFalse(resolver.getHosts().contains("127.0.0.1"));
+        Assert.assertNull(resolver.getLatencyStatistic("127.0.0.1"));
+    }
+
+    /**
+     * Queues the tasks until they are explicitly run, so that tests control when DNS lookups happen.
+     */
+    private static class QueuingExecutor implements Executor
+    {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public synchronized void execute(Runnable task)
+        {
+            tasks.add(task);
+        }
+
+        public synchronized int size()
+        {
+            return tasks.size();
+        }
+
+        public void runAll()
+        {
+            List<Runnable> pending;
+            synchronized (this)
+            {
+                pending = new ArrayList<>(tasks);
+                tasks.clear();
+            }
+            for (Runnable task : pending)
+                task.run();
+        }
+    }
+}
@@ -0,0 +1,292 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MultiPartParserTest
+{
+    private static final String BOUNDARY = "AaB03x";
+    private static final String CONTENT =
+            "preamble\r\n" +
+            "--AaB03x\r\n" +
+            "Content-Disposition: form-data; name=\"field\"\r\n" +
+            "\r\n" +
+            "value\r\n" +
+            "--AaB03x  \r\n" +
+            "Content-Disposition: form-data; name=\"file\"; filename=\"a\u00e9.txt\"\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "\r\n" +
+            "line1\r\n\r\n--AaB03\r\n-\r\n--AaB03y\r\r\n\r\n" +
+            "--AaB03x--\r\n" +
+            "epilogue";
+
+    @Test
+    public void testGetBoundary() throws Exception
+    {
+        Assert.assertEquals("AaB03x", MultiPartParser.getBoundary("multipart/form-data; boundary=AaB03x"));
+        Assert.assertEquals("a b", MultiPartParser.getBoundary("multipart/form-data; charset=utf-8; BOUNDARY=\"a b\""));
+        Assert.assertNull(MultiPartParser.getBoundary("multipart/form-data"));
+        Assert.assertEquals("a.txt", MultiPartParser.getParameter("form-data; name=\"file\"; filename=\"a.txt\"", "filename"));
+    }
+
+    @Test
+    public void testParse() throws Exception
+    {
+        Recorder recorder = new Recorder();
+        MultiPartParser parser = new MultiPartParser(recorder, BOUNDARY);
+        ByteBuffer buffer = BufferUtil.toBuffer(CONTENT, StandardCharsets.UTF_8);
+
+        Assert.assertTrue(parser.parse(buffer, true));
+
+        Assert.assertEquals(MultiPartParser.State.EPILOGUE, parser.getState());
+        assertParts(recorder);
+    }
+
+    @Test
+    public void testParseSplit() throws Exception
+    {
+        byte[] bytes = CONTENT.getBytes(StandardCharsets.UTF_8);
+        for (int split = 0; split <= bytes.length; ++split)
+        {
+            Recorder recorder = new Recorder();
+            MultiPartParser parser = new MultiPartParser(recorder, BOUNDARY);
+
+            parser.parse(ByteBuffer.wrap(bytes, 0, split), false);
+            Assert.assertTrue(parser.parse(ByteBuffer.wrap(bytes, split, bytes.length - split), true));
+
+            assertParts(recorder);
+        }
+    }
+
+    @Test
+    public void testParseByteByByte() throws Exception
+    {
+        byte[] bytes = CONTENT.getBytes(StandardCharsets.UTF_8);
+        Recorder recorder = new Recorder();
+        MultiPartParser parser = new MultiPartParser(recorder, BOUNDARY);
+
+        for (int i = 0; i < bytes.length; ++i)
+            parser.parse(ByteBuffer.wrap(bytes, i, 1), i == bytes.length - 1);
+
+        assertParts(recorder);
+    }
+
+    @Test
+    public void testFirstDelimiterWithoutPreamble() throws Exception
+    {
+        Recorder recorder = new Recorder();
+        MultiPartParser parser = new MultiPartParser(recorder, BOUNDARY);
+        String content = "--AaB03x\r\n" +
+                "Content-Disposition: form-data; name=\"empty\"\r\n" +
+                "\r\n" +
+                "\r\n" +
+                "--AaB03x--";
+
+        Assert.assertTrue(parser.parse(BufferUtil.toBuffer(content), false));
+
+        Assert.assertEquals(1, recorder.parts.size());
+        Assert.assertEquals("", recorder.parts.get(0).content.toString("UTF-8"));
+        Assert.assertTrue(recorder.complete);
+    }
+
+    @Test
+    public void testHandlerPausesParsing() throws Exception
+    {
+        Recorder recorder = new Recorder()
+        {
+            @Override
+            public boolean headerComplete()
+            {
+                super.headerComplete();
+                return true;
+            }
+        };
+        MultiPartParser parser = new MultiPartParser(recorder, BOUNDARY);
+        ByteBuffer buffer = BufferUtil.toBuffer(CONTENT, StandardCharsets.UTF_8);
+
+        Assert.assertTrue(parser.parse(buffer, false));
+        Assert.assertEquals(MultiPartParser.State.BODY, parser.getState());
+        Assert.assertEquals(1, recorder.parts.size());
+        Assert.assertEquals(0, recorder.parts.get(0).content.size());
+
+        Assert.assertTrue(parser.parse(buffer, false));
+        Assert.assertEquals(2, recorder.parts.size());
+
+        Assert.assertTrue(parser.parse(buffer, true));
+        assertParts(recorder);
+    }
+
+    @Test
+    public void testEarlyEOF() throws Exception
+    {
+        Recorder recorder = new Recorder();
+        MultiPartParser parser = new MultiPartParser(recorder, BOUNDARY);
+        String content = "--AaB03x\r\n" +
+                "Content-Disposition: form-data; name=\"field\"\r\n" +
+                "\r\n" +
+                "val";
+
+        Assert.assertFalse(parser.parse(BufferUtil.toBuffer(content), false));
+        Assert.assertTrue(parser.parse(BufferUtil.EMPTY_BUFFER, true));
+
+        Assert.assertTrue(recorder.earlyEOF);
+        Assert.assertFalse(recorder.complete);
+        Assert.assertEquals("val", recorder.parts.get(0).content.toString("UTF-8"));
+    }
+
+    @Test
+    public void testBadDelimiter() throws Exception
+    {
+        Recorder recorder = new Recorder();
+        MultiPartParser parser = new MultiPartParser(recorder, BOUNDARY);
+
+        Assert.assertTrue(parser.parse(BufferUtil.toBuffer("--AaB03x-x\r\n"), false));
+
+        Assert.assertNotNull(recorder.failure);
+        Assert.assertEquals(MultiPartParser.State.EPILOGUE, parser.getState());
+    }
+
+    @Test
+    public void testHeadersTooLarge() throws Exception
+    {
+        Recorder recorder = new Recorder();
+        MultiPartParser parser = new MultiPartParser(recorder, BOUNDARY, 64);
+        StringBuilder content = new StringBuilder("--AaB03x\r\nX-Large: ");
+        for (int i = 0; i < 64; ++i)
+            content.append('x');
+
+        Assert.assertTrue(parser.parse(BufferUtil.toBuffer(content.toString()), false));
+
+        Assert.assertNotNull(recorder.failure);
+        Assert.assertTrue(recorder.parts.get(0).headers.isEmpty());
+    }
+
+    @Test
+    public void testReset() throws Exception
+    {
+        Recorder recorder = new Recorder();
+        MultiPartParser parser = new MultiPartParser(recorder, BOUNDARY);
+        Assert.assertTrue(parser.parse(BufferUtil.toBuffer(CONTENT, StandardCharsets.UTF_8), true));
+
+        parser.reset();
+        recorder = new Recorder();
+        parser = new MultiPartParser(recorder, BOUNDARY);
+        Assert.assertTrue(parser.parse(BufferUtil.toBuffer(CONTENT, StandardCharsets.UTF_8), true));
+        assertParts(recorder);
+    }
+
+    private void assertParts(Recorder recorder) throws Exception
+    {
+        Assert.assertNull(recorder.failure);
+        Assert.assertFalse(recorder.earlyEOF);
+        Assert.assertTrue(recorder.complete);
+        Assert.assertEquals(2, recorder.parts.size());
+
+        Part field = recorder.parts.get(0);
+        Assert.assertEquals("form-data; name=\"field\"", field.headers.get(0));
+        Assert.assertEquals("value", field.content.toString("UTF-8"));
+        Assert.assertTrue(field.last);
+
+        Part file = recorder.parts.get(1);
+        Assert.assertEquals(2, file.headers.size());
+        Assert.assertEquals("a\u00e9.txt", MultiPartParser.getParameter(file.headers.get(0), "filename"));
+        Assert.assertEquals("text/plain", file.headers.get(1));
+        Assert.assertEquals("line1\r\n\r\n--AaB03\r\n-\r\n--AaB03y\r\r\n", file.content.toString("UTF-8"));
+        Assert.assertTrue(file.last);
+    }
+
+    private static class Part
+    {
+        private final List<String> headers = new ArrayList<>();
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        private boolean last;
+    }
+
+    private static class Recorder implements MultiPartParser.Handler
+    {
+        private final List<Part> parts = new ArrayList<>();
+        private boolean complete;
+        private boolean earlyEOF;
+        private String failure;
+
+        @Override
+        public void startPart()
+        {
+            parts.add(new Part());
+        }
+
+        @Override
+        public boolean parsedField(String name, String value)
+        {
+            current().headers.add(value);
+            return false;
+        }
+
+        @Override
+        public boolean headerComplete()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean content(ByteBuffer item, boolean last)
+        {
+            Part part = current();
+            Assert.assertFalse(part.last);
+            byte[] bytes = new byte[item.remaining()];
+            item.get(bytes);
+            part.content.write(bytes, 0, bytes.length);
+            part.last = last;
+            return false;
+        }
+
+        @Override
+        public boolean messageComplete()
+        {
+            complete = true;
+            return false;
+        }
+
+        @Override
+        public void earlyEOF()
+        {
+            earlyEOF = true;
+        }
+
+        @Override
+        public void badMessage(String reason)
+        {
+            failure = reason;
+        }
+
+        private Part current()
+        {
+            return parts.get(parts.size() - 1);
+        }
+    }
+}
@@ -90,4 +90,17 @@ public class TypeUtilTest
         Assert.assertEquals("123456789ABCDEF0",b.toString());
     }
 
+    @Test
+    public void testCallAndConstructResolvedTwice() throws Exception
+    {
+        // The second invocation of each uses the previously resolved method or constructor
+        for (int i=0;i<2;i++)
+        {
+            Assert.assertEquals("abc",TypeUtil.call(String.class,"valueOf",null,new Object[]{"abc"}));
+            Assert.assertEquals("ABC",TypeUtil.call(String.class,"toUpperCase","abc",new Object[]{}));
+            Assert.assertEquals("value",TypeUtil.call(String.class,"format",null,new Object[]{"value"}));
+            Assert.assertEquals("abc",TypeUtil.construct(StringBuilder.class,new Object[]{"abc"}).toString());
+            Assert.assertEquals(16,((StringBuilder)TypeUtil.construct(StringBuilder.class,new Object[]{16})).capacity());
+        }
+    }
 }
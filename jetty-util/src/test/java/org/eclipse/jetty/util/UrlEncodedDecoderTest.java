@@ -0,0 +1,186 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.toolchain.test.AdvancedRunner;
+import org.eclipse.jetty.toolchain.test.annotation.Stress;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AdvancedRunner.class)
+public class UrlEncodedDecoderTest
+{
+    private static final Logger LOG = Log.getLogger(UrlEncodedDecoderTest.class);
+    private static final String CONTENT = "name=value&empty=&flag&a+b=c%20d&eq=x=y&euro=%E2%82%AC&n\u00e3me=v\u00e3lue&uni=%u20AC&name=again";
+
+    @Test
+    public void testDecode() throws Exception
+    {
+        MultiMap<String> map = decode(CONTENT.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, Integer.MAX_VALUE);
+        assertParameters(map);
+    }
+
+    @Test
+    public void testDecodeSplit() throws Exception
+    {
+        byte[] content = CONTENT.getBytes(StandardCharsets.UTF_8);
+        for (int chunk = 1; chunk <= content.length; ++chunk)
+            assertParameters(decode(content, StandardCharsets.UTF_8, chunk));
+    }
+
+    @Test
+    public void testDecodeDirectBuffer() throws Exception
+    {
+        byte[] content = CONTENT.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+        buffer.put(content).flip();
+        MultiMap<String> map = new MultiMap<>();
+        UrlEncodedDecoder decoder = new UrlEncodedDecoder(map, StandardCharsets.UTF_8);
+        decoder.decode(buffer);
+        decoder.complete();
+
+        Assert.assertFalse(buffer.hasRemaining());
+        assertParameters(map);
+    }
+
+    @Test
+    public void testDecodeISO88591() throws Exception
+    {
+        byte[] content = "name=v%E3lue&n\u00e3me=%u20AC".getBytes(StandardCharsets.ISO_8859_1);
+        MultiMap<String> map = decode(content, StandardCharsets.ISO_8859_1, 3);
+
+        Assert.assertEquals("v\u00e3lue", map.getString("name"));
+        Assert.assertEquals("\u20ac", map.getString("n\u00e3me"));
+    }
+
+    @Test
+    public void testInvalidEscapes() throws Exception
+    {
+        byte[] content = "a=x%zzy&b=%u12&c=%FF&d=%".getBytes(StandardCharsets.ISO_8859_1);
+        for (int chunk = 1; chunk <= content.length; ++chunk)
+        {
+            MultiMap<String> map = decode(content, StandardCharsets.UTF_8, chunk);
+            Assert.assertEquals("x\ufffdy", map.getString("a"));
+            Assert.assertEquals("\ufffd", map.getString("b"));
+            Assert.assertEquals("\ufffd", map.getString("c"));
+            Assert.assertEquals("\ufffd", map.getString("d"));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMaxLength() throws Exception
+    {
+        UrlEncodedDecoder decoder = new UrlEncodedDecoder(new MultiMap<String>(), StandardCharsets.UTF_8, 8, -1);
+        decoder.decode(BufferUtil.toBuffer("a=b&"));
+        decoder.decode(BufferUtil.toBuffer("c=d&e"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMaxKeys() throws Exception
+    {
+        UrlEncodedDecoder decoder = new UrlEncodedDecoder(new MultiMap<String>(), StandardCharsets.UTF_8, -1, 2);
+        decoder.decode(BufferUtil.toBuffer("a=1&b=2&c=3"));
+        decoder.complete();
+    }
+
+    @Stress("High CPU")
+    @Test
+    public void testLargeFormBenchmark() throws Exception
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; ++i)
+        {
+            if (i > 0)
+                builder.append('&');
+            builder.append("field").append(i).append('=');
+            if (i % 10 == 0)
+                builder.append("caf%C3%A9+au+lait%21");
+            else
+                builder.append("plain_value_").append(i);
+        }
+        byte[] content = builder.toString().getBytes(StandardCharsets.ISO_8859_1);
+        int iterations = 500;
+
+        for (int i = 0; i < 2; ++i)
+        {
+            long strings = 0;
+            long chunks = 0;
+            long whole = 0;
+            for (int j = 0; j < iterations; ++j)
+            {
+                MultiMap<String> map = new MultiMap<>();
+                long start = System.nanoTime();
+                UrlEncoded.decodeTo(new String(content, StandardCharsets.ISO_8859_1), map, StandardCharsets.UTF_8, -1);
+                strings += System.nanoTime() - start;
+                Assert.assertEquals(10000, map.size());
+
+                start = System.nanoTime();
+                map = decode(content, StandardCharsets.UTF_8, 4096);
+                chunks += System.nanoTime() - start;
+                Assert.assertEquals(10000, map.size());
+
+                start = System.nanoTime();
+                map = decode(content, StandardCharsets.UTF_8, content.length);
+                whole += System.nanoTime() - start;
+                Assert.assertEquals(10000, map.size());
+            }
+            LOG.info("Decoded {} bytes forms: from string {} ms, decoder in 4 KiB chunks {} ms, decoder in one buffer {} ms",
+                    content.length, TimeUnit.NANOSECONDS.toMillis(strings), TimeUnit.NANOSECONDS.toMillis(chunks), TimeUnit.NANOSECONDS.toMillis(whole));
+        }
+    }
+
+    private MultiMap<String> decode(byte[] content, Charset charset, int chunk)
+    {
+        MultiMap<String> map = new MultiMap<>();
+        UrlEncodedDecoder decoder = new UrlEncodedDecoder(map, charset);
+        for (int offset = 0; offset < content.length; offset += chunk)
+        {
+            // Copy each chunk, so that the decoder cannot rely on the previous ones
+            byte[] bytes = new byte[Math.min(chunk, content.length - offset)];
+            System.arraycopy(content, offset, bytes, 0, bytes.length);
+            decoder.decode(ByteBuffer.wrap(bytes));
+        }
+        decoder.complete();
+        return map;
+    }
+
+    private void assertParameters(MultiMap<String> map)
+    {
+        Assert.assertEquals(8, map.size());
+        Assert.assertEquals(2, map.getValues("name").size());
+        Assert.assertEquals("value", map.getValue("name", 0));
+        Assert.assertEquals("again", map.getValue("name", 1));
+        Assert.assertEquals("", map.getString("empty"));
+        Assert.assertEquals("", map.getString("flag"));
+        Assert.assertEquals("c d", map.getString("a b"));
+        Assert.assertEquals("x=y", map.getString("eq"));
+        Assert.assertEquals("\u20ac", map.getString("euro"));
+        Assert.assertEquals("v\u00e3lue", map.getString("n\u00e3me"));
+        Assert.assertEquals("\u20ac", map.getString("uni"));
+    }
+}
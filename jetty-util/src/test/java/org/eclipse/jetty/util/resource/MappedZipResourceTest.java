@@ -0,0 +1,224 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.jetty.toolchain.test.TestingDir;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.IO;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class MappedZipResourceTest
+{
+    @Rule
+    public TestingDir testdir = new TestingDir();
+
+    private File war;
+
+    @Before
+    public void before() throws Exception
+    {
+        war = testdir.getFile("test.war");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war)))
+        {
+            out.putNextEntry(new ZipEntry("index.html"));
+            out.write("<h1>Hello</h1>".getBytes(StandardCharsets.UTF_8));
+            out.putNextEntry(new ZipEntry("WEB-INF/"));
+            out.putNextEntry(new ZipEntry("WEB-INF/web.xml"));
+            out.write("<web-app/>".getBytes(StandardCharsets.UTF_8));
+
+            // stored entry in a directory with no explicit directory entry
+            byte[] stored = "stored content".getBytes(StandardCharsets.UTF_8);
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            ZipEntry entry = new ZipEntry("css/site/main.css");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(stored.length);
+            entry.setCompressedSize(stored.length);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(stored);
+        }
+    }
+
+    @Test
+    public void testIndex() throws Exception
+    {
+        MappedZipFile zip = MappedZipFile.open(war);
+        assertSame(zip,MappedZipFile.open(war));
+        assertEquals(3,zip.size());
+        assertTrue(zip.isDirectory(""));
+        assertTrue(zip.isDirectory("WEB-INF"));
+        assertTrue(zip.isDirectory("css"));
+        assertTrue(zip.isDirectory("css/site"));
+        assertFalse(zip.isDirectory("index.html"));
+        assertNotNull(zip.getEntry("index.html"));
+        assertNull(zip.getEntry("missing.html"));
+        zip.release();
+        zip.release();
+    }
+
+    @Test
+    public void testReleaseAndReplace() throws Exception
+    {
+        MappedZipFile zip = MappedZipFile.open(war);
+        assertSame(zip,MappedZipFile.open(war));
+
+        // Still shared while one user has not released it
+        zip.release();
+        assertSame(zip,MappedZipFile.open(war));
+        zip.release();
+        zip.release();
+
+        // Released by all its users
+        MappedZipFile reopened = MappedZipFile.open(war);
+        assertNotSame(zip,reopened);
+
+        // A modified war replaces the shared mapping
+        assertTrue(war.setLastModified(reopened.lastModified() - 60000));
+        MappedZipFile replaced = MappedZipFile.open(war);
+        assertNotSame(reopened,replaced);
+        reopened.release();
+        assertSame(replaced,MappedZipFile.open(war));
+        replaced.release();
+        replaced.release();
+    }
+
+    @Test
+    public void testLastReleaseUnmaps() throws Exception
+    {
+        MappedZipResource root = MappedZipResource.newMappedZipResource(war);
+        Resource index = root.addPath("index.html");
+        root.getMappedZipFile().release();
+
+        try
+        {
+            index.getInputStream();
+            fail();
+        }
+        catch (IllegalStateException x)
+        {
+            // Expected, the file has been unmapped
+        }
+
+        try
+        {
+            root.getMappedZipFile().release();
+            fail();
+        }
+        catch (IllegalStateException x)
+        {
+            // Expected, already released
+        }
+    }
+
+    @Test
+    public void testRoot() throws Exception
+    {
+        Resource root = MappedZipResource.newMappedZipResource(war);
+        assertTrue(root.exists());
+        assertTrue(root.isDirectory());
+        assertNull(root.getFile());
+        assertEquals("jar:" + war.toURI().toURL() + "!/",root.getURL().toExternalForm());
+        assertArrayEquals(new String[]{"WEB-INF/","css/","index.html"},root.list());
+        ((MappedZipResource)root).getMappedZipFile().release();
+    }
+
+    @Test
+    public void testAddPath() throws Exception
+    {
+        Resource root = MappedZipResource.newMappedZipResource(war);
+
+        Resource index = root.addPath("/index.html");
+        assertTrue(index.exists());
+        assertFalse(index.isDirectory());
+        assertEquals(14,index.length());
+        assertTrue(index.lastModified() > 0);
+        try (InputStream in = index.getInputStream())
+        {
+            assertEquals("<h1>Hello</h1>",IO.toString(in));
+        }
+
+        Resource webInf = root.addPath("WEB-INF/");
+        assertTrue(webInf.exists());
+        assertTrue(webInf.isDirectory());
+        assertArrayEquals(new String[]{"web.xml"},webInf.list());
+        assertTrue(webInf.addPath("web.xml").exists());
+
+        Resource css = root.addPath("css");
+        assertTrue(css.isDirectory());
+        assertArrayEquals(new String[]{"site/"},css.list());
+
+        assertFalse(root.addPath("missing.html").exists());
+        assertFalse(root.addPath("WEB-INF/missing/").exists());
+        ((MappedZipResource)root).getMappedZipFile().release();
+    }
+
+    @Test
+    public void testStoredBuffer() throws Exception
+    {
+        MappedZipResource root = MappedZipResource.newMappedZipResource(war);
+
+        MappedZipResource main = (MappedZipResource)root.addPath("css/site/main.css");
+        ByteBuffer buffer = main.getMappedBuffer();
+        assertNotNull(buffer);
+        assertEquals("stored content",BufferUtil.toString(buffer,StandardCharsets.UTF_8));
+        try (InputStream in = main.getInputStream())
+        {
+            assertEquals("stored content",IO.toString(in));
+        }
+
+        MappedZipResource index = (MappedZipResource)root.addPath("index.html");
+        assertNull(index.getMappedBuffer());
+        root.getMappedZipFile().release();
+    }
+
+    @Test
+    public void testCopyTo() throws Exception
+    {
+        Resource root = MappedZipResource.newMappedZipResource(war);
+        File dest = testdir.getFile("dest");
+        root.addPath("css/").copyTo(dest);
+        File main = new File(dest,"site/main.css");
+        assertTrue(main.exists());
+        assertEquals("stored content",IO.toString(new FileReader(main)));
+        ((MappedZipResource)root).getMappedZipFile().release();
+    }
+}
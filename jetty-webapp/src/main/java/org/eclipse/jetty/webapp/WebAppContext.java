@@ -145,6 +145,7 @@ public class WebAppContext extends ServletContextHandler implements WebAppClassL
     private final List<String> _overrideDescriptors = new ArrayList<>();
     private boolean _distributable=false;
     private boolean _extractWAR=true;
+    private boolean _mapWAR=false;
     private boolean _copyDir=false;
     private boolean _copyWebInf=false;
     private boolean _logUrlOnStart =false;
@@ -854,6 +855,16 @@ public class WebAppContext extends ServletContextHandler implements WebAppClassL
         return _extractWAR;
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * @return True if war files are served directly from a memory mapped index of the war rather than extracted.
+     */
+    @ManagedAttribute(value="map war", readonly=true)
+    public boolean isMapWAR()
+    {
+        return _mapWAR;
+    }
+
     /* ------------------------------------------------------------ */
     /**
      * @return True if the webdir is copied (to allow hot replacement of jars on windows)
@@ -1094,6 +1105,21 @@ public class WebAppContext extends ServletContextHandler implements WebAppClassL
         _extractWAR = extractWAR;
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * Serve war files directly from a shared memory mapped index of the war.
+     * <p>
+     * The static content of the war is not extracted and the war is not opened as a
+     * {@link java.util.jar.JarFile}.  Only WEB-INF/lib and WEB-INF/classes are copied
+     * to the temporary directory so that they can be used by the classloader.
+     * If the war cannot be mapped, then the {@link #isExtractWAR()} setting applies.
+     * @param mapWAR True if war files are served from a memory mapped index
+     */
+    public void setMapWAR(boolean mapWAR)
+    {
+        _mapWAR = mapWAR;
+    }
+
     /* ------------------------------------------------------------ */
     /**
      * @param copy True if the webdir is copied (to allow hot replacement of jars)
@@ -40,6 +40,8 @@ import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.resource.JarResource;
+import org.eclipse.jetty.util.resource.MappedZipFile;
+import org.eclipse.jetty.util.resource.MappedZipResource;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceCollection;
 
@@ -59,6 +61,7 @@ public class WebInfConfiguration extends AbstractConfiguration
     
 
     protected Resource _preUnpackBaseResource;
+    private MappedZipFile _mappedWar;
     
 
 
@@ -202,6 +205,13 @@ public class WebInfConfiguration extends AbstractConfiguration
 
         //reset the base resource back to what it was before we did any unpacking of resources
         context.setBaseResource(_preUnpackBaseResource);
+
+        //release the mapped war, so that a redeploy of a changed war does not keep the old mapping
+        if (_mappedWar != null)
+        {
+            _mappedWar.release();
+            _mappedWar=null;
+        }
     }
 
     /* ------------------------------------------------------------ */
@@ -407,8 +417,26 @@ public class WebInfConfiguration extends AbstractConfiguration
 
             if (LOG.isDebugEnabled())
                 LOG.debug("Try webapp=" + web_app + ", exists=" + web_app.exists() + ", directory=" + web_app.isDirectory()+" file="+(web_app.getFile()));
+            // Can the WAR be served from a memory mapped index?
+            boolean mapped=false;
+            if (context.isMapWAR() && web_app.exists() && !web_app.isDirectory() && web_app.getFile()!=null)
+            {
+                try
+                {
+                    MappedZipResource mapped_war=MappedZipResource.newMappedZipResource(web_app.getFile());
+                    _mappedWar=mapped_war.getMappedZipFile();
+                    web_app=mapped_war;
+                    mapped=true;
+                }
+                catch (IOException e)
+                {
+                    LOG.warn("Cannot map "+web_app+": "+e);
+                    LOG.debug(e);
+                }
+            }
+
             // Is the WAR usable directly?
-            if (web_app.exists() && !web_app.isDirectory() && !web_app.toString().startsWith("jar:"))
+            if (!mapped && web_app.exists() && !web_app.isDirectory() && !web_app.toString().startsWith("jar:"))
             {
                 // No - then lets see if it can be turned into a jar URL.
                 Resource jarWebApp = JarResource.newJarResource(web_app);
@@ -417,7 +445,7 @@ public class WebInfConfiguration extends AbstractConfiguration
             }
 
             // If we should extract or the URL is still not usable
-            if (web_app.exists()  && (
+            if (!mapped && web_app.exists()  && (
                     (context.isCopyWebDir() && web_app.getFile() != null && web_app.getFile().isDirectory()) ||
                     (context.isExtractWAR() && web_app.getFile() != null && !web_app.getFile().isDirectory()) ||
                     (context.isExtractWAR() && web_app.getFile() == null) ||
@@ -497,8 +525,8 @@ public class WebInfConfiguration extends AbstractConfiguration
         }
 
 
-        // Do we need to extract WEB-INF/lib?
-        if (context.isCopyWebInf() && !context.isCopyWebDir())
+        // Do we need to extract WEB-INF/lib? A mapped war cannot be used by the classloader directly
+        if ((context.isCopyWebInf() || web_app instanceof MappedZipResource) && !context.isCopyWebDir())
         {
             Resource web_inf= web_app.addPath("WEB-INF/");
 
@@ -25,6 +25,8 @@ import java.nio.ByteBuffer;
 import java.util.Map;
 
 import javax.websocket.CloseReason;
+import javax.websocket.DecodeException;
+import javax.websocket.Decoder;
 import javax.websocket.Endpoint;
 import javax.websocket.MessageHandler;
 import javax.websocket.MessageHandler.Whole;
@@ -94,8 +96,17 @@ public class JsrEndpointEventDriver extends AbstractJsrEventDriver implements Ev
                     @Override
                     public void run()
                     {
-                        MessageHandler.Whole<InputStream> handler = (Whole<InputStream>)wrapper.getHandler();
-                        handler.onMessage(stream);
+                        // decode while the frames arrive, rather than from the whole message
+                        MessageHandler.Whole<Object> handler = (Whole<Object>)wrapper.getHandler();
+                        Decoder.BinaryStream<?> decoder = (Decoder.BinaryStream<?>)wrapper.getDecoder().getDecoder();
+                        try
+                        {
+                            handler.onMessage(decoder.decode(stream));
+                        }
+                        catch (DecodeException | IOException e)
+                        {
+                            onError(e);
+                        }
                     }
                 });
             }
@@ -190,8 +201,17 @@ public class JsrEndpointEventDriver extends AbstractJsrEventDriver implements Ev
                     @Override
                     public void run()
                     {
-                        MessageHandler.Whole<Reader> handler = (Whole<Reader>)wrapper.getHandler();
-                        handler.onMessage(stream);
+                        // decode while the frames arrive, rather than from the whole message
+                        MessageHandler.Whole<Object> handler = (Whole<Object>)wrapper.getHandler();
+                        Decoder.TextStream<?> decoder = (Decoder.TextStream<?>)wrapper.getDecoder().getDecoder();
+                        try
+                        {
+                            handler.onMessage(decoder.decode(stream));
+                        }
+                        catch (DecodeException | IOException e)
+                        {
+                            onError(e);
+                        }
                     }
                 });
             }
@@ -20,6 +20,10 @@ package org.eclipse.jetty.websocket.api.extensions;
 
 /**
  * Interface for dealing with Incoming Frames.
+ * <p>
+ * The payload of a frame passed to {@link #incomingFrame(Frame)} may be a slice of the buffer the frame was read into, which
+ * is reused once the call returns. An implementation that needs the payload after returning (for example to queue it for
+ * another thread) must retain it by copying it.
  */
 public interface IncomingFrames
 {
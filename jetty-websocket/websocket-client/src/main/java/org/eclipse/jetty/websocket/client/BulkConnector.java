@@ -0,0 +1,198 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.websocket.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.websocket.api.Session;
+
+/**
+ * Opens many connections from a {@link WebSocketClient}, such as when generating load against a server.
+ * <p>
+ * At most {@link #getMaxConcurrentConnects()} connects are in progress at any time, and if a {@link #getConnectRate()} is set
+ * the connects are started at that rate. The handshake latencies and frame counts of the connections are accumulated in the
+ * {@link ClientStatistics} of the client.
+ * <p>
+ * Each connection to the same server address uses a local ephemeral port, so more than about 60,000 connections to a single
+ * server address need either several server addresses or several clients bound to different local addresses with
+ * {@link WebSocketClient#setBindAdddress(java.net.SocketAddress)}.
+ */
+public class BulkConnector
+{
+    /**
+     * Creates the websocket object for each connection.
+     */
+    public interface WebSocketFactory
+    {
+        /**
+         * @param index
+         *            the index of the connection, from 0
+         * @return the websocket object to connect
+         */
+        public Object newWebSocket(int index);
+    }
+
+    private static final Logger LOG = Log.getLogger(BulkConnector.class);
+    private final WebSocketClient client;
+    private int maxConcurrentConnects = 256;
+    private int connectRate;
+
+    public BulkConnector(WebSocketClient client)
+    {
+        this.client = client;
+    }
+
+    /**
+     * Connect websockets, waiting until every connect has either succeeded or failed.
+     * <p>
+     * The wait is bounded by the {@link WebSocketClient#getConnectTimeout()}: a connect that has not completed within that time of
+     * acquiring a slot for it, or of the last connect being started once paced by the {@link #getConnectRate()}, is counted as not
+     * finished and logged, and no further connects are started.
+     * 
+     * @param toUri
+     *            the websocket uri to connect to
+     * @param count
+     *            the number of connections to open
+     * @param factory
+     *            the factory of the websocket objects
+     * @return the number of sessions opened
+     * @throws IOException
+     *             if a connect could not be started
+     * @throws InterruptedException
+     *             if interrupted while waiting for the connects
+     */
+    public int connect(URI toUri, int count, WebSocketFactory factory) throws IOException, InterruptedException
+    {
+        final Semaphore permits = new Semaphore(maxConcurrentConnects);
+        final CountDownLatch completed = new CountDownLatch(count);
+        final AtomicInteger opened = new AtomicInteger();
+        Promise<Session> listener = new Promise<Session>()
+        {
+            @Override
+            public void succeeded(Session session)
+            {
+                opened.incrementAndGet();
+                permits.release();
+                completed.countDown();
+            }
+
+            @Override
+            public void failed(Throwable cause)
+            {
+                LOG.debug("Connect failed",cause);
+                permits.release();
+                completed.countDown();
+            }
+        };
+
+        long timeout = client.getConnectTimeout();
+        long interval = connectRate > 0?TimeUnit.SECONDS.toNanos(1) / connectRate:0;
+        long next = System.nanoTime();
+        int started = 0;
+        for (; started < count; started++)
+        {
+            if (interval > 0)
+            {
+                long delay = next - System.nanoTime();
+                if (delay > 0)
+                {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                }
+                next += interval;
+            }
+
+            if (!permits.tryAcquire(timeout,TimeUnit.MILLISECONDS))
+            {
+                LOG.warn("No connect to {} completed within {} ms, not starting {}/{} connects",toUri,timeout,count - started,count);
+                break;
+            }
+            try
+            {
+                client.connect(factory.newWebSocket(started),toUri,new ClientUpgradeRequest(toUri),null,listener);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                permits.release();
+                throw e;
+            }
+        }
+
+        for (int i = started; i < count; i++)
+        {
+            completed.countDown();
+        }
+        if (!completed.await(timeout,TimeUnit.MILLISECONDS))
+        {
+            LOG.warn("{}/{} connects to {} did not complete within {} ms",completed.getCount(),started,toUri,timeout);
+        }
+        LOG.debug("Opened {}/{} connections to {}: {}",opened,count,toUri,client.getStatistics());
+        return opened.get();
+    }
+
+    /**
+     * @return the number of connects per second, or 0 if not limited
+     */
+    public int getConnectRate()
+    {
+        return connectRate;
+    }
+
+    /**
+     * @return the maximum number of connects in progress at once
+     */
+    public int getMaxConcurrentConnects()
+    {
+        return maxConcurrentConnects;
+    }
+
+    /**
+     * @param connectRate
+     *            the number of connects started per second, or 0 to not limit the rate
+     */
+    public void setConnectRate(int connectRate)
+    {
+        if (connectRate < 0)
+        {
+            throw new IllegalArgumentException("Connect rate cannot be negative");
+        }
+        this.connectRate = connectRate;
+    }
+
+    /**
+     * @param maxConcurrentConnects
+     *            the maximum number of connects in progress at once
+     */
+    public void setMaxConcurrentConnects(int maxConcurrentConnects)
+    {
+        if (maxConcurrentConnects < 1)
+        {
+            throw new IllegalArgumentException("Max concurrent connects must be positive");
+        }
+        this.maxConcurrentConnects = maxConcurrentConnects;
+    }
+}
@@ -0,0 +1,232 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.websocket.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.eclipse.jetty.util.Atomics;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+/**
+ * Aggregate statistics of the connections made by a {@link WebSocketClient}.
+ * <p>
+ * The opening handshake latency, measured from the start of the connect to the session being opened, is recorded in a
+ * histogram of power of two microsecond buckets, so that percentiles can be reported for any number of connections in
+ * constant memory. The frames sent and received by all the connections are counted, and their rate is calculated since the
+ * last {@link #reset()}.
+ */
+@ManagedObject("WebSocket Client Statistics")
+public class ClientStatistics
+{
+    /** Bucket <code>i</code> counts the latencies from <code>2^i</code> (inclusive) to <code>2^(i+1)</code> (exclusive) microseconds */
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private final AtomicLong connectsStarted = new AtomicLong();
+    private final AtomicLong connectsSucceeded = new AtomicLong();
+    private final AtomicLong connectsFailed = new AtomicLong();
+    private final AtomicLong latencyTotal = new AtomicLong();
+    private final AtomicLong latencyMax = new AtomicLong();
+    private final AtomicLong framesIncoming = new AtomicLong();
+    private final AtomicLong framesOutgoing = new AtomicLong();
+    private volatile long resetTime = System.nanoTime();
+
+    public void onConnectStarted()
+    {
+        connectsStarted.incrementAndGet();
+    }
+
+    /**
+     * @param latency
+     *            the time in nanoseconds from the start of the connect until the session was opened
+     */
+    public void onConnectSucceeded(long latency)
+    {
+        connectsSucceeded.incrementAndGet();
+        latencyTotal.addAndGet(latency);
+        Atomics.updateMax(latencyMax,latency);
+        histogram.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(latency)));
+    }
+
+    public void onConnectFailed()
+    {
+        connectsFailed.incrementAndGet();
+    }
+
+    public void onFrameIncoming()
+    {
+        framesIncoming.incrementAndGet();
+    }
+
+    public void onFrameOutgoing()
+    {
+        framesOutgoing.incrementAndGet();
+    }
+
+    private static int bucket(long micros)
+    {
+        if (micros <= 0)
+        {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1,63 - Long.numberOfLeadingZeros(micros));
+    }
+
+    @ManagedAttribute("The number of connects started")
+    public long getConnectsStarted()
+    {
+        return connectsStarted.get();
+    }
+
+    @ManagedAttribute("The number of connects that opened a session")
+    public long getConnectsSucceeded()
+    {
+        return connectsSucceeded.get();
+    }
+
+    @ManagedAttribute("The number of connects that failed")
+    public long getConnectsFailed()
+    {
+        return connectsFailed.get();
+    }
+
+    @ManagedAttribute("The number of connects neither succeeded nor failed")
+    public long getConnectsPending()
+    {
+        return Math.max(0,connectsStarted.get() - connectsSucceeded.get() - connectsFailed.get());
+    }
+
+    /**
+     * @return a copy of the handshake latency histogram, where element <code>i</code> is the number of handshakes that took from
+     *         <code>2^i</code> up to <code>2^(i+1)</code> microseconds
+     */
+    public long[] getHandshakeLatencyHistogram()
+    {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    @ManagedAttribute("The maximum handshake latency in microseconds")
+    public long getHandshakeLatencyMax()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(latencyMax.get());
+    }
+
+    @ManagedAttribute("The mean handshake latency in microseconds")
+    public long getHandshakeLatencyMean()
+    {
+        long count = connectsSucceeded.get();
+        return count == 0?0:TimeUnit.NANOSECONDS.toMicros(latencyTotal.get() / count);
+    }
+
+    /**
+     * @param percentile
+     *            the percentile, from 0 to 100
+     * @return the upper bound in microseconds of the histogram bucket holding the percentile, or 0 if no handshakes completed
+     */
+    public long getHandshakeLatencyPercentile(double percentile)
+    {
+        long[] counts = getHandshakeLatencyHistogram();
+        long total = 0;
+        for (long count : counts)
+        {
+            total += count;
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+
+        long rank = (long)Math.ceil(total * Math.min(100,Math.max(0,percentile)) / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0)
+            {
+                return 1L << (i + 1);
+            }
+        }
+        return 1L << BUCKETS;
+    }
+
+    @ManagedAttribute("The number of frames received")
+    public long getFramesIncoming()
+    {
+        return framesIncoming.get();
+    }
+
+    @ManagedAttribute("The number of frames sent")
+    public long getFramesOutgoing()
+    {
+        return framesOutgoing.get();
+    }
+
+    @ManagedAttribute("The frames received per second since reset")
+    public double getFramesIncomingRate()
+    {
+        return rate(framesIncoming.get());
+    }
+
+    @ManagedAttribute("The frames sent per second since reset")
+    public double getFramesOutgoingRate()
+    {
+        return rate(framesOutgoing.get());
+    }
+
+    private double rate(long count)
+    {
+        long elapsed = System.nanoTime() - resetTime;
+        return elapsed <= 0?0:(count * (double)TimeUnit.SECONDS.toNanos(1)) / elapsed;
+    }
+
+    @ManagedOperation("Reset the statistics")
+    public void reset()
+    {
+        connectsStarted.set(0);
+        connectsSucceeded.set(0);
+        connectsFailed.set(0);
+        latencyTotal.set(0);
+        latencyMax.set(0);
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            histogram.set(i,0);
+        }
+        framesIncoming.set(0);
+        framesOutgoing.set(0);
+        resetTime = System.nanoTime();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{connects=%d/%d/%d,latency[mean=%dus,p99=%dus,max=%dus],frames[in=%d,out=%d]}",getClass().getSimpleName(),hashCode(),
+                getConnectsSucceeded(),getConnectsFailed(),getConnectsStarted(),getHandshakeLatencyMean(),getHandshakeLatencyPercentile(99),
+                getHandshakeLatencyMax(),getFramesIncoming(),getFramesOutgoing());
+    }
+}
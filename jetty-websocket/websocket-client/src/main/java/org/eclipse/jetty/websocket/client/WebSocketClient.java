@@ -27,7 +27,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 
@@ -35,6 +35,7 @@ import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.io.SelectorManager;
 import org.eclipse.jetty.util.HttpCookieStore;
+import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.log.Log;
@@ -64,6 +65,12 @@ import org.eclipse.jetty.websocket.common.extensions.WebSocketExtensionFactory;
 
 /**
  * WebSocketClient provides a means of establishing connections to remote websocket endpoints.
+ * <p>
+ * A single client can hold a large number of connections, for example when used with a {@link BulkConnector} as a load
+ * generator. The number of selectors may be configured with {@link #setSelectors(int)}, and the memory held by each
+ * connection reduced with {@link #setInputBufferSize(int)}, {@link #setMaxTextMessageBufferSize(int)} and
+ * {@link #setMaxBinaryMessageBufferSize(int)}. The aggregate statistics of the connections are available from
+ * {@link #getStatistics()}.
  */
 public class WebSocketClient extends ContainerLifeCycle implements SessionListener
 {
@@ -75,7 +82,8 @@ public class WebSocketClient extends ContainerLifeCycle implements SessionListen
     private boolean daemon = false;
     private EventDriverFactory eventDriverFactory;
     private SessionFactory sessionFactory;
-    private Set<WebSocketSession> openSessions = new CopyOnWriteArraySet<>();
+    private final ClientStatistics statistics = new ClientStatistics();
+    private final Set<WebSocketSession> openSessions = Collections.newSetFromMap(new ConcurrentHashMap<WebSocketSession, Boolean>());
     private ByteBufferPool bufferPool;
     private Executor executor;
     private Scheduler scheduler;
@@ -84,6 +92,7 @@ public class WebSocketClient extends ContainerLifeCycle implements SessionListen
     private Masker masker;
     private SocketAddress bindAddress;
     private long connectTimeout = SelectorManager.DEFAULT_CONNECT_TIMEOUT;
+    private int selectors = (Runtime.getRuntime().availableProcessors() + 1) / 2;
 
     public WebSocketClient()
     {
@@ -124,6 +133,8 @@ public class WebSocketClient extends ContainerLifeCycle implements SessionListen
         addBean(this.executor);
         addBean(this.sslContextFactory);
         addBean(this.bufferPool);
+        addBean(this.extensionRegistry.getCompressionPool());
+        addBean(this.statistics);
     }
 
     public Future<Session> connect(Object websocket, URI toUri) throws IOException
@@ -141,6 +152,28 @@ public class WebSocketClient extends ContainerLifeCycle implements SessionListen
     }
 
     public Future<Session> connect(Object websocket, URI toUri, ClientUpgradeRequest request, UpgradeListener upgradeListener) throws IOException
+    {
+        return connect(websocket,toUri,request,upgradeListener,null);
+    }
+
+    /**
+     * Connect a websocket, notifying a listener once the connect completes.
+     * 
+     * @param websocket
+     *            the websocket object
+     * @param toUri
+     *            the websocket uri to connect to
+     * @param request
+     *            the upgrade request
+     * @param upgradeListener
+     *            the upgrade listener, or null
+     * @param listener
+     *            the listener notified when the session is opened or the connect fails, or null
+     * @return the future for the session
+     * @throws IOException
+     *             if unable to start the connect
+     */
+    public Future<Session> connect(Object websocket, URI toUri, ClientUpgradeRequest request, UpgradeListener upgradeListener, Promise<Session> listener) throws IOException
     {
         if (!isStarted())
         {
@@ -208,6 +241,7 @@ public class WebSocketClient extends ContainerLifeCycle implements SessionListen
         {
             promise.setUpgradeListener(upgradeListener);
         }
+        promise.setListener(listener);
 
         LOG.debug("Connect Promise: {}",promise);
 
@@ -372,6 +406,11 @@ public class WebSocketClient extends ContainerLifeCycle implements SessionListen
         return this.policy.getMaxTextMessageSize();
     }
 
+    public int getInputBufferSize()
+    {
+        return this.policy.getInputBufferSize();
+    }
+
     public Set<WebSocketSession> getOpenSessions()
     {
         return Collections.unmodifiableSet(this.openSessions);
@@ -387,11 +426,27 @@ public class WebSocketClient extends ContainerLifeCycle implements SessionListen
         return scheduler;
     }
 
+    /**
+     * @return the number of selectors used by the {@link ConnectionManager}
+     */
+    public int getSelectors()
+    {
+        return selectors;
+    }
+
     public SessionFactory getSessionFactory()
     {
         return sessionFactory;
     }
 
+    /**
+     * @return the aggregate {@link ClientStatistics} of the connections made by this client
+     */
+    public ClientStatistics getStatistics()
+    {
+        return statistics;
+    }
+
     /**
      * @return the {@link SslContextFactory} that manages TLS encryption
      * @see #WebSocketClient(SslContextFactory)
@@ -472,14 +527,14 @@ public class WebSocketClient extends ContainerLifeCycle implements SessionListen
     @Override
     public void onSessionClosed(WebSocketSession session)
     {
-        LOG.info("Session Closed: {}",session);
+        LOG.debug("Session Closed: {}",session);
         this.openSessions.remove(session);
     }
 
     @Override
     public void onSessionOpened(WebSocketSession session)
     {
-        LOG.info("Session Opened: {}",session);
+        LOG.debug("Session Opened: {}",session);
         this.openSessions.add(session);
     }
 
@@ -534,6 +589,20 @@ public class WebSocketClient extends ContainerLifeCycle implements SessionListen
         this.executor = executor;
     }
 
+    /**
+     * Set the size of the buffer each connection reads into.
+     * <p>
+     * The buffer is only held while a frame is partially read, so a smaller size mostly benefits connections that receive
+     * large frames slowly.
+     * 
+     * @param size
+     *            the input buffer size in bytes
+     */
+    public void setInputBufferSize(int size)
+    {
+        this.policy.setInputBufferSize(size);
+    }
+
     public void setMasker(Masker masker)
     {
         this.masker = masker;
@@ -562,6 +631,23 @@ public class WebSocketClient extends ContainerLifeCycle implements SessionListen
         this.policy.setMaxTextMessageBufferSize(max);
     }
 
+    /**
+     * Set the number of selectors used to connect, read and write.
+     * <p>
+     * Must be set before the first connect.
+     * 
+     * @param selectors
+     *            the number of selectors
+     */
+    public void setSelectors(int selectors)
+    {
+        if (selectors < 1)
+        {
+            throw new IllegalArgumentException("Selectors must be positive");
+        }
+        this.selectors = selectors;
+    }
+
     public void setSessionFactory(SessionFactory sessionFactory)
     {
         this.sessionFactory = sessionFactory;
@@ -18,7 +18,10 @@
 
 package org.eclipse.jetty.websocket.client.io;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.ClientUpgradeResponse;
@@ -36,8 +39,11 @@ public abstract class ConnectPromise extends FuturePromise<Session> implements R
     private final EventDriver driver;
     private final ClientUpgradeRequest request;
     private final Masker masker;
+    private final long started = System.nanoTime();
+    private final AtomicBoolean completed = new AtomicBoolean();
     private UpgradeListener upgradeListener;
     private ClientUpgradeResponse response;
+    private Promise<Session> listener;
 
     public ConnectPromise(WebSocketClient client, EventDriver driver, ClientUpgradeRequest request)
     {
@@ -45,6 +51,7 @@ public abstract class ConnectPromise extends FuturePromise<Session> implements R
         this.driver = driver;
         this.request = request;
         this.masker = client.getMasker();
+        client.getStatistics().onConnectStarted();
     }
 
     @Override
@@ -55,6 +62,15 @@ public abstract class ConnectPromise extends FuturePromise<Session> implements R
 
         // Notify promise/future of failure to connect
         super.failed(cause);
+
+        if (completed.compareAndSet(false,true))
+        {
+            client.getStatistics().onConnectFailed();
+            if (listener != null)
+            {
+                listener.failed(cause);
+            }
+        }
     }
 
     public WebSocketClient getClient()
@@ -87,6 +103,15 @@ public abstract class ConnectPromise extends FuturePromise<Session> implements R
         return upgradeListener;
     }
 
+    /**
+     * @param listener
+     *            notified once when the connect succeeds or fails, after the future has completed
+     */
+    public void setListener(Promise<Session> listener)
+    {
+        this.listener = listener;
+    }
+
     public void setResponse(ClientUpgradeResponse response)
     {
         this.response = response;
@@ -103,5 +128,14 @@ public abstract class ConnectPromise extends FuturePromise<Session> implements R
         session.setUpgradeResponse(response);
         session.open();
         super.succeeded(session);
+
+        if (completed.compareAndSet(false,true))
+        {
+            client.getStatistics().onConnectSucceeded(System.nanoTime() - started);
+            if (listener != null)
+            {
+                listener.succeeded(session);
+            }
+        }
     }
 }
@@ -31,6 +31,7 @@ import org.eclipse.jetty.websocket.api.WebSocketPolicy;
 import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.extensions.Frame;
 import org.eclipse.jetty.websocket.api.extensions.IncomingFrames;
+import org.eclipse.jetty.websocket.client.ClientStatistics;
 import org.eclipse.jetty.websocket.client.masks.Masker;
 import org.eclipse.jetty.websocket.common.WebSocketFrame;
 import org.eclipse.jetty.websocket.common.WebSocketSession;
@@ -38,13 +39,18 @@ import org.eclipse.jetty.websocket.common.io.AbstractWebSocketConnection;
 
 /**
  * Client side WebSocket physical connection.
+ * <p>
+ * The frames parsed are counted in the {@link ClientStatistics} of the client before being passed on to the next
+ * {@link IncomingFrames}.
  */
-public class WebSocketClientConnection extends AbstractWebSocketConnection
+public class WebSocketClientConnection extends AbstractWebSocketConnection implements IncomingFrames
 {
     private static final Logger LOG = Log.getLogger(WebSocketClientConnection.class);
     private final ConnectPromise connectPromise;
     private final Masker masker;
     private final AtomicBoolean opened = new AtomicBoolean(false);
+    private final ClientStatistics statistics;
+    private IncomingFrames incoming;
 
     public WebSocketClientConnection(EndPoint endp, Executor executor, ConnectPromise connectPromise, WebSocketPolicy policy)
     {
@@ -52,6 +58,7 @@ public class WebSocketClientConnection extends AbstractWebSocketConnection
         this.connectPromise = connectPromise;
         this.masker = connectPromise.getMasker();
         assert (this.masker != null);
+        this.statistics = connectPromise.getClient().getStatistics();
     }
 
     @Override
@@ -66,6 +73,25 @@ public class WebSocketClientConnection extends AbstractWebSocketConnection
         return getEndPoint().getRemoteAddress();
     }
 
+    @Override
+    protected IncomingFrames getNextIncomingFrames()
+    {
+        return incoming;
+    }
+
+    @Override
+    public void incomingError(Throwable t)
+    {
+        incoming.incomingError(t);
+    }
+
+    @Override
+    public void incomingFrame(Frame frame)
+    {
+        statistics.onFrameIncoming();
+        incoming.incomingFrame(frame);
+    }
+
     @Override
     public void onClose()
     {
@@ -115,12 +141,14 @@ public class WebSocketClientConnection extends AbstractWebSocketConnection
             }
             masker.setMask((WebSocketFrame)frame);
         }
+        statistics.onFrameOutgoing();
         super.outgoingFrame(frame,callback);
     }
 
     @Override
     public void setNextIncomingFrames(IncomingFrames incoming)
     {
-        getParser().setIncomingFramesHandler(incoming);
+        this.incoming = incoming;
+        getParser().setIncomingFramesHandler(this);
     }
 }
@@ -46,7 +46,7 @@ public class WebSocketClientSelectorManager extends SelectorManager
 
     public WebSocketClientSelectorManager(WebSocketClient client)
     {
-        super(client.getExecutor(),client.getScheduler());
+        super(client.getExecutor(),client.getScheduler(),client.getSelectors());
         this.bufferPool = client.getBufferPool();
         this.policy = client.getPolicy();
     }
@@ -0,0 +1,182 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.websocket.client;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+import org.eclipse.jetty.websocket.common.test.BlockheadServer;
+import org.eclipse.jetty.websocket.common.test.BlockheadServer.ServerConnection;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkConnectorTest
+{
+    private BlockheadServer server;
+    private WebSocketClient client;
+
+    @Before
+    public void startServer() throws Exception
+    {
+        server = new BlockheadServer();
+        server.start();
+    }
+
+    @Before
+    public void startClient() throws Exception
+    {
+        client = new WebSocketClient();
+        client.setSelectors(2);
+        client.start();
+    }
+
+    @After
+    public void stopClient() throws Exception
+    {
+        client.stop();
+    }
+
+    @After
+    public void stopServer() throws Exception
+    {
+        server.stop();
+    }
+
+    @Test
+    public void testBulkConnect() throws Exception
+    {
+        final int count = 5;
+        final List<JettyTrackingSocket> sockets = new ArrayList<>();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            // accept, upgrade and greet each connection as it arrives
+            Future<Void> accepting = executor.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    for (int i = 0; i < count; i++)
+                    {
+                        ServerConnection srvSock = server.accept();
+                        srvSock.upgrade();
+                        srvSock.write(new TextFrame().setPayload("Hello " + i));
+                    }
+                    return null;
+                }
+            });
+
+            BulkConnector connector = new BulkConnector(client);
+            connector.setMaxConcurrentConnects(2);
+            connector.setConnectRate(1000);
+            int opened = connector.connect(server.getWsUri(),count,new BulkConnector.WebSocketFactory()
+            {
+                @Override
+                public Object newWebSocket(int index)
+                {
+                    JettyTrackingSocket socket = new JettyTrackingSocket();
+                    sockets.add(socket);
+                    return socket;
+                }
+            });
+            accepting.get(5,TimeUnit.SECONDS);
+
+            Assert.assertThat("Opened",opened,is(count));
+            Assert.assertThat("Open sessions",client.getOpenSessions().size(),is(count));
+            for (JettyTrackingSocket socket : sockets)
+            {
+                Assert.assertTrue("Message received",socket.dataLatch.await(1,TimeUnit.SECONDS));
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        ClientStatistics statistics = client.getStatistics();
+        Assert.assertThat("Connects started",statistics.getConnectsStarted(),is((long)count));
+        Assert.assertThat("Connects succeeded",statistics.getConnectsSucceeded(),is((long)count));
+        Assert.assertThat("Connects failed",statistics.getConnectsFailed(),is(0L));
+        Assert.assertThat("Frames incoming",statistics.getFramesIncoming(),is((long)count));
+
+        long handshakes = 0;
+        for (long bucket : statistics.getHandshakeLatencyHistogram())
+        {
+            handshakes += bucket;
+        }
+        Assert.assertThat("Handshake latencies",handshakes,is((long)count));
+    }
+
+    @Test
+    public void testBulkConnectRefused() throws Exception
+    {
+        server.stop();
+
+        BulkConnector connector = new BulkConnector(client);
+        int opened = connector.connect(server.getWsUri(),3,new BulkConnector.WebSocketFactory()
+        {
+            @Override
+            public Object newWebSocket(int index)
+            {
+                return new JettyTrackingSocket();
+            }
+        });
+
+        Assert.assertThat("Opened",opened,is(0));
+        Assert.assertThat("Connects failed",client.getStatistics().getConnectsFailed(),is(3L));
+        Assert.assertThat("Connects pending",client.getStatistics().getConnectsPending(),is(0L));
+    }
+
+    @Test
+    public void testBulkConnectNotCompleted() throws Exception
+    {
+        // The server never accepts, so the upgrades do not complete
+        client.setConnectTimeout(500);
+
+        BulkConnector connector = new BulkConnector(client);
+        connector.setMaxConcurrentConnects(2);
+        long start = System.nanoTime();
+        int opened = connector.connect(server.getWsUri(),3,new BulkConnector.WebSocketFactory()
+        {
+            @Override
+            public Object newWebSocket(int index)
+            {
+                return new JettyTrackingSocket();
+            }
+        });
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Assert.assertThat("Opened",opened,is(0));
+        Assert.assertThat("Connects started",client.getStatistics().getConnectsStarted(),is(2L));
+        Assert.assertThat("Elapsed",elapsed,lessThan(5000L));
+    }
+}
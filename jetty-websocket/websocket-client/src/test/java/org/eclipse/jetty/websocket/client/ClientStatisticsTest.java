@@ -0,0 +1,56 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.websocket.client;
+
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClientStatisticsTest
+{
+    @Test
+    public void testHandshakeLatencyPercentiles()
+    {
+        ClientStatistics statistics = new ClientStatistics();
+        Assert.assertThat("No handshakes",statistics.getHandshakeLatencyPercentile(50),is(0L));
+
+        // 90 fast handshakes of 100us and 10 slow handshakes of 10ms
+        for (int i = 0; i < 100; i++)
+        {
+            statistics.onConnectStarted();
+            statistics.onConnectSucceeded(TimeUnit.MICROSECONDS.toNanos(i < 90?100:10000));
+        }
+
+        // 100us is in the [64,128) bucket, 10000us in the [8192,16384) bucket
+        Assert.assertThat("p50",statistics.getHandshakeLatencyPercentile(50),is(128L));
+        Assert.assertThat("p90",statistics.getHandshakeLatencyPercentile(90),is(128L));
+        Assert.assertThat("p99",statistics.getHandshakeLatencyPercentile(99),is(16384L));
+        Assert.assertThat("max",statistics.getHandshakeLatencyMax(),is(10000L));
+        Assert.assertThat("mean",statistics.getHandshakeLatencyMean(),is(1090L));
+        Assert.assertThat("pending",statistics.getConnectsPending(),is(0L));
+
+        statistics.reset();
+        Assert.assertThat("Reset",statistics.getConnectsSucceeded(),is(0L));
+        Assert.assertThat("Reset percentile",statistics.getHandshakeLatencyPercentile(99),is(0L));
+    }
+}
@@ -45,6 +45,14 @@ import org.eclipse.jetty.websocket.common.io.payload.PayloadProcessor;
 
 /**
  * Parsing of a frames in WebSocket land.
+ * <p>
+ * A parser is not thread safe: {@link #parse(ByteBuffer)} must be called by a single thread at a time, which is the case
+ * for the read loop of a connection.
+ * <p>
+ * When a frame payload is entirely contained in the buffer being parsed, it is unmasked in place and the frame is given a
+ * slice of that buffer, without copying. Only payloads that span several buffers are aggregated into a buffer acquired
+ * from the {@link ByteBufferPool}, which is released once the frame has been notified. In both cases the payload is only
+ * valid for the duration of the {@link IncomingFrames#incomingFrame(Frame)} call, see {@link IncomingFrames}.
  */
 public class Parser
 {
@@ -71,6 +79,7 @@ public class Parser
     private byte lastDataOpcode;
     // payload specific
     private ByteBuffer payload;
+    private ByteBuffer aggregate;
     private int payloadLength;
     private PayloadProcessor maskProcessor = new DeMaskProcessor();
     // private PayloadProcessor strictnessProcessor;
@@ -243,7 +252,7 @@ public class Parser
         incomingFramesHandler.incomingError(e);
     }
 
-    public synchronized void parse(ByteBuffer buffer)
+    public void parse(ByteBuffer buffer)
     {
         if (buffer.remaining() <= 0)
         {
@@ -257,7 +266,14 @@ public class Parser
             while (parseFrame(buffer))
             {
                 LOG.debug("{} Parsed Frame: {}",policy.getBehavior(),frame);
-                notifyFrame(frame);
+                try
+                {
+                    notifyFrame(frame);
+                }
+                finally
+                {
+                    releaseAggregate();
+                }
                 if (frame.isDataFrame() && frame.isFin())
                 {
                     priorDataFrame = null;
@@ -271,17 +287,36 @@ public class Parser
         catch (WebSocketException e)
         {
             buffer.position(buffer.limit()); // consume remaining
-            this.payload = null; // reset
+            reset();
             notifyWebSocketException(e);
         }
         catch (Throwable t)
         {
             buffer.position(buffer.limit()); // consume remaining
-            this.payload = null; // reset
+            reset();
             notifyWebSocketException(new WebSocketException(t));
         }
     }
 
+    private void reset()
+    {
+        if (payload != null)
+        {
+            bufferPool.release(payload);
+            payload = null;
+        }
+        releaseAggregate();
+    }
+
+    private void releaseAggregate()
+    {
+        if (aggregate != null)
+        {
+            bufferPool.release(aggregate);
+            aggregate = null;
+        }
+    }
+
     /**
      * Parse the base framing protocol buffer.
      * <p>
@@ -594,6 +629,19 @@ public class Parser
             if (payload == null)
             {
                 frame.assertValid();
+
+                if (buffer.remaining() >= payloadLength)
+                {
+                    // Fast path: the whole payload is in this buffer, so
+                    // unmask it in place and hand out a slice of it.
+                    ByteBuffer window = buffer.slice();
+                    window.limit(payloadLength);
+                    maskProcessor.process(window);
+                    frame.setPayload(window);
+                    buffer.position(buffer.position() + payloadLength);
+                    return true;
+                }
+
                 payload = bufferPool.acquire(payloadLength,false);
                 BufferUtil.clearToFill(payload);
             }
@@ -621,6 +669,8 @@ public class Parser
             {
                 BufferUtil.flipToFlush(payload,0);
                 frame.setPayload(payload);
+                // released once the frame has been notified
+                this.aggregate = payload;
                 this.payload = null;
                 return true;
             }
@@ -0,0 +1,189 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.websocket.common;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.StringUtil;
+import org.eclipse.jetty.websocket.api.WebSocketBehavior;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.extensions.Extension;
+import org.eclipse.jetty.websocket.api.extensions.OutgoingFrames;
+import org.eclipse.jetty.websocket.common.extensions.ExtensionStack;
+import org.eclipse.jetty.websocket.common.extensions.compress.PerMessageDeflateExtension;
+import org.eclipse.jetty.websocket.common.frames.BinaryFrame;
+import org.eclipse.jetty.websocket.common.frames.DataFrame;
+import org.eclipse.jetty.websocket.common.frames.PreparedFrame;
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+
+/**
+ * A whole TEXT or BINARY message encoded once, to be sent to many connections.
+ * <p>
+ * The payload and the network header are generated once into read-only buffers that are shared by every connection the message is
+ * sent to. For connections that negotiated <code>permessage-deflate</code> without outgoing context takeover, the compressed payload
+ * is also computed once (on first use) and shared, as the compressed form does not depend on the connection.
+ * <p>
+ * Connections with any other extension stack are sent a frame over a view of the shared payload through their extensions, as usual.
+ */
+public class PreparedMessage
+{
+    private final byte opcode;
+    private final ByteBuffer payload;
+    private final ByteBuffer header;
+    private volatile ByteBuffer compressedPayload;
+    private volatile ByteBuffer compressedHeader;
+
+    public PreparedMessage(String text)
+    {
+        this(OpCode.TEXT,ByteBuffer.wrap(StringUtil.getUtf8Bytes(text)));
+    }
+
+    public PreparedMessage(ByteBuffer data)
+    {
+        this(OpCode.BINARY,data);
+    }
+
+    private PreparedMessage(byte opcode, ByteBuffer data)
+    {
+        this.opcode = opcode;
+        this.payload = toReadOnly(data);
+        this.header = generateHeader(opcode,false,payload);
+    }
+
+    private static ByteBuffer toReadOnly(ByteBuffer data)
+    {
+        ByteBuffer copy = BufferUtil.allocateDirect(data == null?0:data.remaining());
+        if (data != null)
+        {
+            BufferUtil.clearToFill(copy);
+            copy.put(data.slice());
+            BufferUtil.flipToFlush(copy,0);
+        }
+        return copy.asReadOnlyBuffer();
+    }
+
+    private static ByteBuffer generateHeader(byte opcode, boolean rsv1, ByteBuffer payload)
+    {
+        Generator generator = new Generator(WebSocketPolicy.newServerPolicy(),new MappedByteBufferPool(),false);
+        ByteBuffer pooled = generator.generateHeaderBytes(new PreparedFrame(opcode,rsv1,BufferUtil.EMPTY_BUFFER,payload));
+        ByteBuffer header = ByteBuffer.allocate(pooled.remaining());
+        header.put(pooled).flip();
+        return header.asReadOnlyBuffer();
+    }
+
+    public byte getOpCode()
+    {
+        return opcode;
+    }
+
+    /**
+     * @return a read-only view of the uncompressed payload
+     */
+    public ByteBuffer getPayload()
+    {
+        return payload.slice();
+    }
+
+    /**
+     * @return true if the compressed form of the message has been computed
+     */
+    public boolean isCompressed()
+    {
+        return compressedPayload != null;
+    }
+
+    /**
+     * Get a pre-generated frame of this message for a connection.
+     * 
+     * @param behavior
+     *            the behavior of the connection
+     * @param outgoing
+     *            the outgoing frames handler of the session, normally its {@link ExtensionStack}
+     * @return a frame to be queued directly to the connection, bypassing the extensions, or null if the extensions in use
+     *         (or the need to mask the payload) prevent the shared encoding from being sent.
+     */
+    public PreparedFrame getPreparedFrame(WebSocketBehavior behavior, OutgoingFrames outgoing)
+    {
+        if (behavior != WebSocketBehavior.SERVER)
+        {
+            // clients mask the payload in place
+            return null;
+        }
+
+        if (outgoing instanceof ExtensionStack)
+        {
+            List<Extension> extensions = ((ExtensionStack)outgoing).getExtensions();
+            if ((extensions != null) && !extensions.isEmpty())
+            {
+                if ((extensions.size() == 1) && (extensions.get(0) instanceof PerMessageDeflateExtension))
+                {
+                    PerMessageDeflateExtension deflate = (PerMessageDeflateExtension)extensions.get(0);
+                    if (deflate.isOutgoingContextTakeover() || deflate.isOutgoingWindowLimited())
+                    {
+                        return null;
+                    }
+                    compress(deflate);
+                    return new PreparedFrame(opcode,true,compressedHeader,compressedPayload);
+                }
+                return null;
+            }
+        }
+
+        return new PreparedFrame(opcode,false,header,payload);
+    }
+
+    /**
+     * @param copy
+     *            true if the payload must be copied, as it will be modified (eg masked)
+     * @return a new frame for the message, to be sent through the extensions of a session
+     */
+    public DataFrame newFrame(boolean copy)
+    {
+        DataFrame frame = (opcode == OpCode.TEXT)?new TextFrame():new BinaryFrame();
+        frame.setPayload(copy?BufferUtil.toBuffer(BufferUtil.toArray(payload)):payload);
+        return frame;
+    }
+
+    private void compress(PerMessageDeflateExtension deflate)
+    {
+        if (compressedPayload == null)
+        {
+            synchronized (this)
+            {
+                if (compressedPayload == null)
+                {
+                    ByteBuffer compressed = toReadOnly(deflate.compress(payload.slice()));
+                    compressedHeader = generateHeader(opcode,true,compressed);
+                    compressedPayload = compressed;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,len=%d,compressed=%s]",getClass().getSimpleName(),hashCode(),OpCode.name(opcode),payload.remaining(),
+                isCompressed()?compressedPayload.remaining():"-");
+    }
+}
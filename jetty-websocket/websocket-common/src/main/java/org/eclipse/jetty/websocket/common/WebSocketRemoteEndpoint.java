@@ -29,6 +29,7 @@ import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.WebSocketBehavior;
 import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.extensions.OutgoingFrames;
 import org.eclipse.jetty.websocket.common.frames.BinaryFrame;
@@ -36,6 +37,7 @@ import org.eclipse.jetty.websocket.common.frames.ContinuationFrame;
 import org.eclipse.jetty.websocket.common.frames.DataFrame;
 import org.eclipse.jetty.websocket.common.frames.PingFrame;
 import org.eclipse.jetty.websocket.common.frames.PongFrame;
+import org.eclipse.jetty.websocket.common.frames.PreparedFrame;
 import org.eclipse.jetty.websocket.common.frames.TextFrame;
 import org.eclipse.jetty.websocket.common.io.FutureWriteCallback;
 
@@ -284,6 +286,51 @@ public class WebSocketRemoteEndpoint implements RemoteEndpoint
         }
     }
 
+    /**
+     * Asynchronous send of a message that has been encoded once for many endpoints.
+     * <p>
+     * If the extensions in use allow, the shared pre-generated frame is queued directly to the connection, otherwise the message is
+     * sent through the extensions like any other.
+     * 
+     * @param message
+     *            the prepared message
+     * @param callback
+     *            callback to notify of success or failure of the write operation
+     */
+    public void sendPreparedMessage(PreparedMessage message, WriteCallback callback)
+    {
+        lockMsg(MsgType.ASYNC);
+        try
+        {
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("sendPreparedMessage({}, {})",message,callback);
+            }
+            WriteCallback cb = callback == null?NOOP_CALLBACK:callback;
+            WebSocketBehavior behavior = connection.getPolicy().getBehavior();
+            PreparedFrame frame = message.getPreparedFrame(behavior,outgoing);
+            if (frame == null)
+            {
+                uncheckedSendFrame(message.newFrame(behavior == WebSocketBehavior.CLIENT),cb);
+                return;
+            }
+
+            try
+            {
+                connection.getIOState().assertOutputOpen();
+                connection.outgoingFrame(frame,cb);
+            }
+            catch (IOException e)
+            {
+                cb.writeFailed(e);
+            }
+        }
+        finally
+        {
+            unlockMsg(MsgType.ASYNC);
+        }
+    }
+
     /* ------------------------------------------------------------ */
     /** unchecked send
      * @param frame
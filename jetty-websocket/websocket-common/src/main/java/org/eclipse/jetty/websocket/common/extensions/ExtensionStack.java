@@ -26,6 +26,7 @@ import java.util.ListIterator;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.websocket.api.WebSocketPolicy;
@@ -84,6 +85,10 @@ public class ExtensionStack extends ContainerLifeCycle implements IncomingFrames
                 Extension ext = eiter.next();
                 ext.setNextOutgoingFrames(nextOutgoing);
                 nextOutgoing = ext;
+                if (ext instanceof LifeCycle)
+                {
+                    ((LifeCycle)ext).start();
+                }
             }
 
             // Connect incomings
@@ -96,6 +101,23 @@ public class ExtensionStack extends ContainerLifeCycle implements IncomingFrames
         }
     }
 
+    @Override
+    protected void doStop() throws Exception
+    {
+        // Release the resources held by the extensions, such as compressors
+        if (extensions != null)
+        {
+            for (Extension ext : extensions)
+            {
+                if (ext instanceof LifeCycle)
+                {
+                    ((LifeCycle)ext).stop();
+                }
+            }
+        }
+        super.doStop();
+    }
+
     @Override
     public void dump(Appendable out, String indent) throws IOException
     {
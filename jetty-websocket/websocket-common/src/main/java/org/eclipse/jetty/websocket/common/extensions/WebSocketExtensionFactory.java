@@ -25,11 +25,14 @@ import org.eclipse.jetty.websocket.api.WebSocketPolicy;
 import org.eclipse.jetty.websocket.api.extensions.Extension;
 import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
 import org.eclipse.jetty.websocket.api.extensions.ExtensionFactory;
+import org.eclipse.jetty.websocket.common.extensions.compress.CompressExtension;
+import org.eclipse.jetty.websocket.common.extensions.compress.CompressionPool;
 
 public class WebSocketExtensionFactory extends ExtensionFactory
 {
     private WebSocketPolicy policy;
     private ByteBufferPool bufferPool;
+    private final CompressionPool compressionPool = new CompressionPool();
 
     public WebSocketExtensionFactory(WebSocketPolicy policy, ByteBufferPool bufferPool)
     {
@@ -38,6 +41,14 @@ public class WebSocketExtensionFactory extends ExtensionFactory
         this.bufferPool = bufferPool;
     }
 
+    /**
+     * @return the pool of (de)compressors shared by the compression extensions created by this factory
+     */
+    public CompressionPool getCompressionPool()
+    {
+        return compressionPool;
+    }
+
     @Override
     public Extension newInstance(ExtensionConfig config)
     {
@@ -66,6 +77,10 @@ public class WebSocketExtensionFactory extends ExtensionFactory
                 AbstractExtension aext = (AbstractExtension)ext;
                 aext.setPolicy(policy);
                 aext.setBufferPool(bufferPool);
+                if (ext instanceof CompressExtension)
+                {
+                    ((CompressExtension)ext).setCompressionPool(compressionPool);
+                }
                 aext.setConfig(config);
             }
             return ext;
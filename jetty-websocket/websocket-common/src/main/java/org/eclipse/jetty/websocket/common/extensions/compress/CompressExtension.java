@@ -0,0 +1,164 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.websocket.common.extensions.compress;
+
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.eclipse.jetty.websocket.common.extensions.AbstractExtension;
+
+/**
+ * Base of the deflate based compression extensions.
+ * <p>
+ * The {@link Deflater} and {@link Inflater} of a connection are acquired from a shared {@link CompressionPool} when first needed,
+ * and returned to it either once a message has been (de)compressed, when no context is kept between messages, or when the
+ * extension is stopped.
+ * <p>
+ * Outgoing frames may be sent from many threads, so the deflater is only used while holding the lock of the extension. Incoming
+ * frames are delivered by the single thread parsing the connection, but the extension may be stopped by the close of the connection
+ * from another thread, so the inflater is also only used while holding the lock, and is not acquired again once stopped.
+ */
+public abstract class CompressExtension extends AbstractExtension
+{
+    /** The largest window, as used by java's zlib */
+    protected static final int MAX_WINDOW_BITS = 15;
+
+    private CompressionPool compressionPool;
+    private Deflater deflater;
+    private Inflater inflater;
+    private boolean stopped;
+    /** The strategy of the deflater, HUFFMAN_ONLY when the window size has been limited below what zlib uses */
+    private int strategy = Deflater.DEFAULT_STRATEGY;
+
+    public CompressionPool getCompressionPool()
+    {
+        if (compressionPool == null)
+        {
+            // Not created by a WebSocketExtensionFactory, so nothing to share with
+            compressionPool = new CompressionPool(0);
+        }
+        return compressionPool;
+    }
+
+    public void setCompressionPool(CompressionPool compressionPool)
+    {
+        this.compressionPool = compressionPool;
+    }
+
+    /**
+     * Limit the window used for outgoing compression.
+     * <p>
+     * Java's {@link Deflater} always uses a 32KB window, so when a smaller window is negotiated the deflater is restricted to
+     * Huffman coding only, which never refers back to previous data and so is valid for any window size.
+     * 
+     * @param windowBits
+     *            the negotiated maximum window bits
+     */
+    protected void setOutgoingWindowBits(int windowBits)
+    {
+        strategy = (windowBits < MAX_WINDOW_BITS)?Deflater.HUFFMAN_ONLY:Deflater.DEFAULT_STRATEGY;
+    }
+
+    /**
+     * @return true if the window of outgoing compression has been limited below the window used by zlib
+     */
+    public boolean isOutgoingWindowLimited()
+    {
+        return strategy == Deflater.HUFFMAN_ONLY;
+    }
+
+    protected static boolean isValidWindowBits(int windowBits)
+    {
+        return (windowBits >= 8) && (windowBits <= MAX_WINDOW_BITS);
+    }
+
+    /**
+     * @return the deflater of this connection, acquired from the pool if not already held
+     */
+    protected Deflater getDeflater()
+    {
+        if (deflater == null)
+        {
+            deflater = getCompressionPool().acquireDeflater(strategy);
+        }
+        return deflater;
+    }
+
+    /**
+     * Return the deflater of this connection, if any, to the pool.
+     */
+    protected void releaseDeflater()
+    {
+        if (deflater != null)
+        {
+            getCompressionPool().releaseDeflater(deflater);
+            deflater = null;
+        }
+    }
+
+    /**
+     * Must be called, and the inflater used, while holding the lock of the extension.
+     * 
+     * @return the inflater of this connection, acquired from the pool if not already held, or null if the extension has been stopped
+     */
+    protected Inflater getInflater()
+    {
+        if (inflater == null && !stopped)
+        {
+            inflater = getCompressionPool().acquireInflater();
+        }
+        return inflater;
+    }
+
+    /**
+     * Return the inflater of this connection, if any, to the pool. Must be called while holding the lock of the extension.
+     */
+    protected void releaseInflater()
+    {
+        if (inflater != null)
+        {
+            getCompressionPool().releaseInflater(inflater);
+            inflater = null;
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        synchronized (this)
+        {
+            stopped = false;
+        }
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        // Wait for an inflation in progress, the inflater cannot be returned to the pool while in use
+        synchronized (this)
+        {
+            stopped = true;
+            releaseDeflater();
+            releaseInflater();
+        }
+        super.doStop();
+    }
+}
@@ -0,0 +1,266 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.websocket.common.extensions.compress;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+/**
+ * A pool of the {@link Deflater}s and {@link Inflater}s used by the compression extensions.
+ * <p>
+ * Each deflater holds roughly 256KB of native zlib state and each inflater roughly 40KB, which is only freed by <code>end()</code>
+ * or finalization. Rather than holding one of each for the life of every connection, the compression extensions borrow them from
+ * this pool while a message is being (de)compressed, whenever the negotiated parameters mean that no context is kept between
+ * messages. A (de)compressor that must keep its context is held by the connection until it is closed.
+ * <p>
+ * Up to <code>capacity</code> idle deflaters and inflaters are kept for reuse, any further released are ended.
+ */
+@ManagedObject("WebSocket Compression Pool")
+public class CompressionPool
+{
+    /** Approximate native memory of a deflater: (1 &lt;&lt; (windowBits+2)) + (1 &lt;&lt; (memLevel+9)) with the java defaults */
+    public static final long DEFLATER_MEMORY = (1L << 17) + (1L << 17);
+    /** Approximate native memory of an inflater: (1 &lt;&lt; windowBits) plus the inflate state */
+    public static final long INFLATER_MEMORY = (1L << 15) + 7 * 1024;
+
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleDeflaters = new AtomicInteger();
+    private final AtomicInteger idleInflaters = new AtomicInteger();
+    private final AtomicInteger activeDeflaters = new AtomicInteger();
+    private final AtomicInteger activeInflaters = new AtomicInteger();
+    private final AtomicLong createdDeflaters = new AtomicLong();
+    private final AtomicLong createdInflaters = new AtomicLong();
+    private final int capacity;
+    private volatile int compressionLevel = Deflater.BEST_COMPRESSION;
+    private volatile boolean contextTakeover = true;
+
+    public CompressionPool()
+    {
+        this(64);
+    }
+
+    /**
+     * @param capacity
+     *            the maximum number of idle deflaters, and of idle inflaters, kept in the pool
+     */
+    public CompressionPool(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Acquire a deflater, without the ZLIB header and checksum.
+     * 
+     * @param strategy
+     *            the deflater strategy to use
+     * @return a reset deflater using the configured compression level
+     */
+    public Deflater acquireDeflater(int strategy)
+    {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null)
+        {
+            createdDeflaters.incrementAndGet();
+            deflater = new Deflater(compressionLevel,true);
+        }
+        else
+        {
+            idleDeflaters.decrementAndGet();
+            deflater.setLevel(compressionLevel);
+        }
+        deflater.setStrategy(strategy);
+        activeDeflaters.incrementAndGet();
+        return deflater;
+    }
+
+    /**
+     * @param deflater
+     *            the deflater to return to the pool, which must not be used afterwards
+     */
+    public void releaseDeflater(Deflater deflater)
+    {
+        activeDeflaters.decrementAndGet();
+        if (idleDeflaters.incrementAndGet() > capacity)
+        {
+            idleDeflaters.decrementAndGet();
+            deflater.end();
+            return;
+        }
+        deflater.reset();
+        deflaters.offer(deflater);
+    }
+
+    /**
+     * Acquire an inflater, without the ZLIB header and checksum.
+     * 
+     * @return a reset inflater
+     */
+    public Inflater acquireInflater()
+    {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null)
+        {
+            createdInflaters.incrementAndGet();
+            inflater = new Inflater(true);
+        }
+        else
+        {
+            idleInflaters.decrementAndGet();
+        }
+        activeInflaters.incrementAndGet();
+        return inflater;
+    }
+
+    /**
+     * @param inflater
+     *            the inflater to return to the pool, which must not be used afterwards
+     */
+    public void releaseInflater(Inflater inflater)
+    {
+        activeInflaters.decrementAndGet();
+        if (idleInflaters.incrementAndGet() > capacity)
+        {
+            idleInflaters.decrementAndGet();
+            inflater.end();
+            return;
+        }
+        inflater.reset();
+        inflaters.offer(inflater);
+    }
+
+    /**
+     * End all the idle deflaters and inflaters.
+     */
+    @ManagedOperation("End all the idle deflaters and inflaters")
+    public void clear()
+    {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null)
+        {
+            idleDeflaters.decrementAndGet();
+            deflater.end();
+        }
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null)
+        {
+            idleInflaters.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    @ManagedAttribute("The maximum number of idle deflaters and of idle inflaters")
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    @ManagedAttribute("The compression level of the deflaters")
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+    /**
+     * @param compressionLevel
+     *            the compression level of the deflaters, -1 or 0-9, applied as they are acquired
+     */
+    public void setCompressionLevel(int compressionLevel)
+    {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)
+        {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    @ManagedAttribute("Whether servers allow the LZ77 window to be kept between messages")
+    public boolean isContextTakeover()
+    {
+        return contextTakeover;
+    }
+
+    /**
+     * @param contextTakeover
+     *            if false, servers always negotiate <code>server_no_context_takeover</code> and <code>client_no_context_takeover</code>,
+     *            so that no connection holds a (de)compressor between messages.
+     */
+    public void setContextTakeover(boolean contextTakeover)
+    {
+        this.contextTakeover = contextTakeover;
+    }
+
+    @ManagedAttribute("The number of deflaters in use")
+    public int getActiveDeflaters()
+    {
+        return activeDeflaters.get();
+    }
+
+    @ManagedAttribute("The number of inflaters in use")
+    public int getActiveInflaters()
+    {
+        return activeInflaters.get();
+    }
+
+    @ManagedAttribute("The number of idle deflaters")
+    public int getIdleDeflaters()
+    {
+        return idleDeflaters.get();
+    }
+
+    @ManagedAttribute("The number of idle inflaters")
+    public int getIdleInflaters()
+    {
+        return idleInflaters.get();
+    }
+
+    @ManagedAttribute("The number of deflaters created")
+    public long getCreatedDeflaters()
+    {
+        return createdDeflaters.get();
+    }
+
+    @ManagedAttribute("The number of inflaters created")
+    public long getCreatedInflaters()
+    {
+        return createdInflaters.get();
+    }
+
+    @ManagedAttribute("The approximate native memory held by the active and idle deflaters and inflaters")
+    public long getNativeMemory()
+    {
+        return (activeDeflaters.get() + idleDeflaters.get()) * DEFLATER_MEMORY + (activeInflaters.get() + idleInflaters.get()) * INFLATER_MEMORY;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{deflaters=%d/%d,inflaters=%d/%d,memory=%d}",getClass().getSimpleName(),hashCode(),getActiveDeflaters(),
+                getIdleDeflaters(),getActiveInflaters(),getIdleInflaters(),getNativeMemory());
+    }
+}
@@ -33,14 +33,16 @@ import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
 import org.eclipse.jetty.websocket.api.extensions.Frame;
 import org.eclipse.jetty.websocket.common.OpCode;
-import org.eclipse.jetty.websocket.common.extensions.AbstractExtension;
 import org.eclipse.jetty.websocket.common.frames.DataFrame;
 
 /**
  * Implementation of the <a href="https://tools.ietf.org/id/draft-tyoshino-hybi-websocket-perframe-deflate-05.txt">deflate-frame</a> extension seen out in the
  * wild.
+ * <p>
+ * If the remote endpoint asks for <code>no_context_takeover</code>, the compressor is only borrowed from the {@link CompressionPool}
+ * while a frame is compressed. A <code>max_window_bits</code> below the zlib window is honoured by using Huffman only compression.
  */
-public class DeflateFrameExtension extends AbstractExtension
+public class DeflateFrameExtension extends CompressExtension
 {
     private static final boolean BFINAL_HACK = Boolean.parseBoolean(System.getProperty("jetty.websocket.bfinal.hack","true"));
     private static final Logger LOG = Log.getLogger(DeflateFrameExtension.class);
@@ -49,8 +51,8 @@ public class DeflateFrameExtension extends AbstractExtension
     /** Tail Bytes per Spec */
     private static final byte[] TAIL = new byte[] { 0x00, 0x00, (byte)0xFF, (byte)0xFF };
     private int bufferSize = 64 * 1024;
-    private Deflater compressor;
-    private Inflater decompressor;
+    /** If true, the same LZ77 window is used between outgoing frames. */
+    private boolean outgoingContextTakeover = true;
 
     @Override
     public String getName()
@@ -89,8 +91,16 @@ public class DeflateFrameExtension extends AbstractExtension
         DataFrame out = new DataFrame(frame);
         out.setRsv1(false); // Unset RSV1
 
-        synchronized (decompressor)
+        synchronized (this)
         {
+            // The remote endpoint may refer back to previous frames, so the decompressor is held until stopped
+            Inflater decompressor = getInflater();
+            if (decompressor == null)
+            {
+                // Stopped by the close of the connection
+                LOG.debug("Dropping frame after stop: {}",frame);
+                return;
+            }
             decompressor.setInput(compressed,0,compressed.length);
 
             // Perform decompression
@@ -167,9 +177,10 @@ public class DeflateFrameExtension extends AbstractExtension
         byte uncompressed[] = BufferUtil.toArray(frame.getPayload());
         List<DataFrame> dframes = new ArrayList<>();
 
-        synchronized (compressor)
+        synchronized (this)
         {
             // Perform the compression
+            Deflater compressor = getDeflater();
             if (!compressor.finished())
             {
                 compressor.setInput(uncompressed,0,uncompressed.length);
@@ -217,6 +228,11 @@ public class DeflateFrameExtension extends AbstractExtension
                     dframes.add(out);
                 }
             }
+
+            if (!outgoingContextTakeover)
+            {
+                releaseDeflater();
+            }
         }
         
         // notify outside of synchronize
@@ -239,11 +255,24 @@ public class DeflateFrameExtension extends AbstractExtension
     {
         super.setConfig(config);
 
-        boolean nowrap = true;
-        compressor = new Deflater(Deflater.BEST_COMPRESSION,nowrap);
-        compressor.setStrategy(Deflater.DEFAULT_STRATEGY);
-
-        decompressor = new Inflater(nowrap);
+        for (String key : config.getParameterKeys())
+        {
+            switch (key.trim())
+            {
+                case "no_context_takeover":
+                    outgoingContextTakeover = false;
+                    break;
+                case "max_window_bits":
+                {
+                    int bits = config.getParameter(key,-1);
+                    if (isValidWindowBits(bits))
+                    {
+                        setOutgoingWindowBits(bits);
+                    }
+                    break;
+                }
+            }
+        }
     }
 
     @Override
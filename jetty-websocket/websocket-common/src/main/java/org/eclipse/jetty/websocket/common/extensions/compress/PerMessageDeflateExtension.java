@@ -19,6 +19,7 @@
 package org.eclipse.jetty.websocket.common.extensions.compress;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -27,19 +28,22 @@ import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.websocket.api.BadPayloadException;
+import org.eclipse.jetty.websocket.api.WebSocketBehavior;
 import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
 import org.eclipse.jetty.websocket.api.extensions.Frame;
 import org.eclipse.jetty.websocket.common.OpCode;
-import org.eclipse.jetty.websocket.common.extensions.AbstractExtension;
 import org.eclipse.jetty.websocket.common.frames.DataFrame;
 
 /**
  * Per Message Deflate Compression extension for WebSocket.
  * <p>
  * Attempts to follow <a href="https://tools.ietf.org/html/draft-ietf-hybi-permessage-compression-12">draft-ietf-hybi-permessage-compression-12</a>
+ * <p>
+ * When no context takeover is negotiated for a direction, its (de)compressor is only borrowed from the {@link CompressionPool} while a
+ * message is processed. A limit on the window bits of the outgoing direction is honoured by using Huffman only compression.
  */
-public class PerMessageDeflateExtension extends AbstractExtension
+public class PerMessageDeflateExtension extends CompressExtension
 {
     private static final boolean BFINAL_HACK = Boolean.parseBoolean(System.getProperty("jetty.websocket.bfinal.hack","true"));
     private static final Logger LOG = Log.getLogger(PerMessageDeflateExtension.class);
@@ -50,8 +54,6 @@ public class PerMessageDeflateExtension extends AbstractExtension
     { 0x00, 0x00, (byte)0xFF, (byte)0xFF };
     private ExtensionConfig configRequested;
     private ExtensionConfig configNegotiated;
-    private Deflater compressor;
-    private Inflater decompressor;
 
     private boolean incomingCompressed = false;
     private boolean outgoingCompressed = false;
@@ -63,14 +65,84 @@ public class PerMessageDeflateExtension extends AbstractExtension
     private boolean incomingContextTakeover = true;
     private boolean outgoingContextTakeover = true;
 
+    /**
+     * Compress a whole message the way this extension does when the outgoing context is not taken over between messages.
+     * <p>
+     * As no LZ77 window is carried from a previous message, the result is the same for every connection that negotiated
+     * <code>no_context_takeover</code> for its outgoing direction, and so can be computed once and shared. The deflater is borrowed
+     * from the {@link CompressionPool} of this extension, so uses its configured compression level.
+     * 
+     * @param payload
+     *            the uncompressed message payload, which is not consumed
+     * @return the compressed payload, to be sent in a single frame with RSV1 set
+     */
+    public ByteBuffer compress(ByteBuffer payload)
+    {
+        byte uncompressed[] = BufferUtil.toArray(payload);
+        Deflater deflater = getCompressionPool().acquireDeflater(Deflater.DEFAULT_STRATEGY);
+        try
+        {
+            deflater.setInput(uncompressed,0,uncompressed.length);
+            byte compressed[] = new byte[uncompressed.length + OVERHEAD];
+            int len = 0;
+            while (true)
+            {
+                len += deflater.deflate(compressed,len,compressed.length - len,Deflater.SYNC_FLUSH);
+                if (len < compressed.length && deflater.needsInput())
+                {
+                    break;
+                }
+                compressed = Arrays.copyOf(compressed,compressed.length * 2);
+            }
+
+            if (len > 4)
+            {
+                // Strip the 4 tail octets (0x00 0x00 0xff 0xff)
+                boolean found = true;
+                for (int n = 0; n < TAIL.length; n++)
+                {
+                    if (compressed[len - 4 + n] != TAIL[n])
+                    {
+                        found = false;
+                        break;
+                    }
+                }
+                if (found)
+                {
+                    len = len - 4;
+                }
+            }
+
+            if (len > 0 && BFINAL_HACK)
+            {
+                // See outgoingFrame(), always use BFINAL 0
+                compressed[0] &= ~1;
+            }
+
+            return ByteBuffer.wrap(compressed,0,len);
+        }
+        finally
+        {
+            getCompressionPool().releaseDeflater(deflater);
+        }
+    }
+
     @Override
     public String getName()
     {
         return "permessage-deflate";
     }
 
+    /**
+     * @return true if the same LZ77 window is used for consecutive outgoing messages
+     */
+    public boolean isOutgoingContextTakeover()
+    {
+        return outgoingContextTakeover;
+    }
+
     @Override
-    public synchronized void incomingFrame(Frame frame)
+    public void incomingFrame(Frame frame)
     {
         switch (frame.getOpCode())
         {
@@ -115,8 +187,6 @@ public class PerMessageDeflateExtension extends AbstractExtension
             payload.get(compressed,0,inlen);
         }
 
-        decompressor.setInput(compressed,0,compressed.length);
-
         // Since we don't track text vs binary vs continuation state, just grab whatever is the greater value.
         int maxSize = Math.max(getPolicy().getMaxTextMessageSize(),getPolicy().getMaxBinaryMessageBufferSize());
         ByteAccumulator accumulator = new ByteAccumulator(maxSize);
@@ -124,34 +194,46 @@ public class PerMessageDeflateExtension extends AbstractExtension
         DataFrame out = new DataFrame(frame);
         out.setRsv1(false); // Unset RSV1
 
-        // Perform decompression
-        while (decompressor.getRemaining() > 0 && !decompressor.finished())
+        synchronized (this)
         {
-            byte outbuf[] = new byte[inlen];
-            try
+            Inflater decompressor = getInflater();
+            if (decompressor == null)
+            {
+                // Stopped by the close of the connection
+                LOG.debug("Dropping frame after stop: {}",frame);
+                return;
+            }
+            decompressor.setInput(compressed,0,compressed.length);
+
+            // Perform decompression
+            while (decompressor.getRemaining() > 0 && !decompressor.finished())
             {
-                int len = decompressor.inflate(outbuf);
-                if (len == 0)
+                byte outbuf[] = new byte[inlen];
+                try
                 {
-                    if (decompressor.needsInput())
+                    int len = decompressor.inflate(outbuf);
+                    if (len == 0)
                     {
-                        throw new BadPayloadException("Unable to inflate frame, not enough input on frame");
+                        if (decompressor.needsInput())
+                        {
+                            throw new BadPayloadException("Unable to inflate frame, not enough input on frame");
+                        }
+                        if (decompressor.needsDictionary())
+                        {
+                            throw new BadPayloadException("Unable to inflate frame, frame erroneously says it needs a dictionary");
+                        }
                     }
-                    if (decompressor.needsDictionary())
+                    if (len > 0)
                     {
-                        throw new BadPayloadException("Unable to inflate frame, frame erroneously says it needs a dictionary");
+                        accumulator.addBuffer(outbuf,0,len);
                     }
                 }
-                if (len > 0)
+                catch (DataFormatException e)
                 {
-                    accumulator.addBuffer(outbuf,0,len);
+                    LOG.warn(e);
+                    throw new BadPayloadException(e);
                 }
             }
-            catch (DataFormatException e)
-            {
-                LOG.warn(e);
-                throw new BadPayloadException(e);
-            }
         }
 
         // Forward on the frame
@@ -195,12 +277,14 @@ public class PerMessageDeflateExtension extends AbstractExtension
         byte uncompressed[] = BufferUtil.toArray(frame.getPayload());
 
         // Perform the compression
+        Deflater compressor = getDeflater();
         if (!compressor.finished())
         {
             compressor.setInput(uncompressed,0,uncompressed.length);
             byte compressed[] = new byte[uncompressed.length + OVERHEAD];
 
-            while (!compressor.needsInput())
+            boolean more = true;
+            while (more)
             {
                 int len = compressor.deflate(compressed,0,compressed.length,Deflater.SYNC_FLUSH);
                 ByteBuffer outbuf = getBufferPool().acquire(len,true);
@@ -252,7 +336,9 @@ public class PerMessageDeflateExtension extends AbstractExtension
                 out.setBufferPool(getBufferPool());
                 out.setPayload(outbuf);
 
-                if (!compressor.needsInput())
+                // the compressor may be released by the final frame, so test before passing it on
+                more = !compressor.needsInput();
+                if (more)
                 {
                     // this is fragmented
                     out.setFin(false);
@@ -272,10 +358,13 @@ public class PerMessageDeflateExtension extends AbstractExtension
     @Override
     protected void nextIncomingFrame(Frame frame)
     {
-        if (frame.isFin() && !incomingContextTakeover)
+        if (frame.isFin() && !incomingContextTakeover && !OpCode.isControlFrame(frame.getOpCode()))
         {
             LOG.debug("Incoming Context Reset");
-            decompressor.reset();
+            synchronized (this)
+            {
+                releaseInflater();
+            }
         }
 
         super.nextIncomingFrame(frame);
@@ -284,10 +373,10 @@ public class PerMessageDeflateExtension extends AbstractExtension
     @Override
     protected void nextOutgoingFrame(Frame frame, WriteCallback callback)
     {
-        if (frame.isFin() && !outgoingContextTakeover)
+        if (frame.isFin() && !outgoingContextTakeover && !OpCode.isControlFrame(frame.getOpCode()))
         {
             LOG.debug("Outgoing Context Reset");
-            compressor.reset();
+            releaseDeflater();
         }
 
         super.nextOutgoingFrame(frame,callback);
@@ -299,49 +388,74 @@ public class PerMessageDeflateExtension extends AbstractExtension
         configRequested = new ExtensionConfig(config);
         configNegotiated = new ExtensionConfig(config.getName());
 
-        boolean nowrap = true;
-        compressor = new Deflater(Deflater.BEST_COMPRESSION,nowrap);
-        compressor.setStrategy(Deflater.DEFAULT_STRATEGY);
-
-        decompressor = new Inflater(nowrap);
+        boolean server = (getPolicy().getBehavior() == WebSocketBehavior.SERVER);
 
         for (String key : config.getParameterKeys())
         {
             key = key.trim();
             switch (key)
             {
-                case "client_max_window_bits": // fallthru
+                case "client_max_window_bits":
+                {
+                    // An offer may have no value, meaning the client supports the parameter
+                    int bits = config.getParameter(key,-1);
+                    if (isValidWindowBits(bits))
+                    {
+                        configNegotiated.setParameter(key,bits);
+                        if (!server)
+                        {
+                            setOutgoingWindowBits(bits);
+                        }
+                    }
+                    break;
+                }
                 case "server_max_window_bits":
-                    // Not supported by Jetty
-                    // Don't negotiate these parameters
+                {
+                    int bits = config.getParameter(key,-1);
+                    if (isValidWindowBits(bits))
+                    {
+                        configNegotiated.setParameter(key,bits);
+                        if (server)
+                        {
+                            setOutgoingWindowBits(bits);
+                        }
+                    }
                     break;
+                }
                 case "client_no_context_takeover":
                     configNegotiated.setParameter("client_no_context_takeover");
-                    switch (getPolicy().getBehavior())
+                    if (server)
+                    {
+                        incomingContextTakeover = false;
+                    }
+                    else
                     {
-                        case CLIENT:
-                            incomingContextTakeover = false;
-                            break;
-                        case SERVER:
-                            outgoingContextTakeover = false;
-                            break;
+                        outgoingContextTakeover = false;
                     }
                     break;
                 case "server_no_context_takeover":
                     configNegotiated.setParameter("server_no_context_takeover");
-                    switch (getPolicy().getBehavior())
+                    if (server)
+                    {
+                        outgoingContextTakeover = false;
+                    }
+                    else
                     {
-                        case CLIENT:
-                            outgoingContextTakeover = false;
-                            break;
-                        case SERVER:
-                            incomingContextTakeover = false;
-                            break;
+                        incomingContextTakeover = false;
                     }
                     break;
             }
         }
 
+        if (server && !getCompressionPool().isContextTakeover())
+        {
+            // Don't keep a (de)compressor per connection between messages
+            configNegotiated.setParameter("client_no_context_takeover");
+            configNegotiated.setParameter("server_no_context_takeover");
+            incomingContextTakeover = false;
+            outgoingContextTakeover = false;
+        }
+
         super.setConfig(configNegotiated);
     }
 
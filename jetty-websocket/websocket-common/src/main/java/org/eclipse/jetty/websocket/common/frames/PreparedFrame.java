@@ -0,0 +1,49 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.websocket.common.frames;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A Data Frame whose network header has already been generated.
+ * <p>
+ * Used to send a {@link org.eclipse.jetty.websocket.common.PreparedMessage} to many connections: the header and payload are views of the
+ * read-only buffers held by the message, so the same bytes are queued to every connection without being copied or regenerated.
+ */
+public class PreparedFrame extends DataFrame
+{
+    private final ByteBuffer header;
+
+    public PreparedFrame(byte opcode, boolean rsv1, ByteBuffer header, ByteBuffer payload)
+    {
+        super(opcode);
+        setRsv1(rsv1);
+        setPayload(payload);
+        this.header = header.slice();
+    }
+
+    /**
+     * @return the pre-generated network header for this frame, not to be released to a buffer pool.
+     */
+    public ByteBuffer getHeader()
+    {
+        return header;
+    }
+}
@@ -46,12 +46,14 @@ import org.eclipse.jetty.websocket.api.WebSocketPolicy;
 import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
 import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.api.extensions.IncomingFrames;
 import org.eclipse.jetty.websocket.common.CloseInfo;
 import org.eclipse.jetty.websocket.common.ConnectionState;
 import org.eclipse.jetty.websocket.common.Generator;
 import org.eclipse.jetty.websocket.common.LogicalConnection;
 import org.eclipse.jetty.websocket.common.Parser;
 import org.eclipse.jetty.websocket.common.WebSocketSession;
+import org.eclipse.jetty.websocket.common.extensions.ExtensionStack;
 import org.eclipse.jetty.websocket.common.io.IOState.ConnectionStateListener;
 
 /**
@@ -307,6 +309,14 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
         return getEndPoint().getIdleTimeout();
     }
 
+    /**
+     * @return the handler the parsed frames are passed on to, as set by {@link #setNextIncomingFrames(IncomingFrames)}
+     */
+    protected IncomingFrames getNextIncomingFrames()
+    {
+        return parser.getIncomingFramesHandler();
+    }
+
     public Parser getParser()
     {
         return parser;
@@ -362,6 +372,20 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
     {
         super.onClose();
         flusher.close();
+
+        // Release the resources held by the extensions, such as compressors
+        IncomingFrames incoming = getNextIncomingFrames();
+        if (incoming instanceof ExtensionStack)
+        {
+            try
+            {
+                ((ExtensionStack)incoming).stop();
+            }
+            catch (Exception e)
+            {
+                LOG.ignore(e);
+            }
+        }
     }
 
     @Override
@@ -401,6 +425,9 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
     {
         LOG.debug("{} onFillable()",policy.getBehavior());
         stats.countOnFillableEvents.incrementAndGet();
+        // The read buffer is only held while filling: it goes back to the pool as soon as
+        // a read returns no data, and the Parser only holds a pooled buffer of its own
+        // while a frame payload is spread over several reads.
         ByteBuffer buffer = bufferPool.acquire(getInputBufferSize(),true);
         boolean readMore = false;
         try
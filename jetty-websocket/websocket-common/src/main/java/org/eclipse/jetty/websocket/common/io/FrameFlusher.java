@@ -36,6 +36,7 @@ import org.eclipse.jetty.websocket.api.extensions.Frame;
 import org.eclipse.jetty.websocket.common.Generator;
 import org.eclipse.jetty.websocket.common.OpCode;
 import org.eclipse.jetty.websocket.common.frames.DataFrame;
+import org.eclipse.jetty.websocket.common.frames.PreparedFrame;
 
 /**
  * Interface for working with bytes destined for {@link EndPoint#write(Callback, ByteBuffer...)}
@@ -53,8 +54,8 @@ public class FrameFlusher
 
     private final Object lock = new Object();
     
-    /** Backlog of frames */
-    private final ArrayQueue<FrameEntry> queue = new ArrayQueue<>(16,16,lock);
+    /** Backlog of frames, replaced by a small queue when idle after a burst has grown it */
+    private ArrayQueue<FrameEntry> queue = new ArrayQueue<>(MAX_GATHER,MAX_GATHER,lock);
     
     private final FlusherCB flusherCB = new FlusherCB();
     
@@ -206,7 +207,7 @@ public class FrameFlusher
 
     private class FlusherCB extends IteratingCallback
     {
-        private final ArrayQueue<FrameEntry> active = new ArrayQueue<>(lock);
+        private final List<FrameEntry> active = new ArrayList<>(MAX_GATHER);
         private final List<ByteBuffer> buffers = new ArrayList<>(MAX_GATHER*2);
         private final List<FrameEntry> succeeded = new ArrayList<>(MAX_GATHER+1);
         
@@ -239,6 +240,10 @@ public class FrameFlusher
                 
                 if (LOG.isDebugEnabled())
                     LOG.debug("process {} active={} buffers={}",FrameFlusher.this,active,buffers);
+
+                // Don't keep a queue grown by a burst of frames while idle
+                if (queue.isEmpty() && queue.getCapacity()>MAX_GATHER*4)
+                    queue=new ArrayQueue<>(MAX_GATHER,MAX_GATHER,lock);
             }
             
             if (buffers.size()==0)
@@ -263,6 +268,7 @@ public class FrameFlusher
                 frame.notifySucceeded();
                 frame.freeBuffers();
             }
+            succeeded.clear();
             
             super.succeeded();
         }
@@ -305,6 +311,12 @@ public class FrameFlusher
 
         public ByteBuffer getHeaderBytes()
         {
+            if (frame instanceof PreparedFrame)
+            {
+                // Shared pre-generated header, never released
+                return ((PreparedFrame)frame).getHeader();
+            }
+
             ByteBuffer buf = generator.generateHeaderBytes(frame);
             headerBuffer = buf;
             return buf;
@@ -77,10 +77,13 @@ public class MessageInputStream extends InputStream implements MessageAppender
             return;
         }
 
-        // Put the payload into the queue
+        // Put a copy of the payload into the queue, as the frame payload
+        // is only valid until this method returns.
         try
         {
-            buffers.put(framePayload);
+            ByteBuffer copy = ByteBuffer.allocate(framePayload.remaining());
+            copy.put(framePayload.slice()).flip();
+            buffers.put(copy);
         }
         catch (InterruptedException e)
         {
@@ -140,7 +140,8 @@ public class MessageOutputStream extends OutputStream
             outgoing.outgoingFrame(frame,blocker);
             // block on write
             blocker.block();
-            // block success
+            // block success, reuse the buffer for the next frame
+            BufferUtil.clearToFill(buffer);
             frameCount++;
             frame.setIsContinuation();
         }
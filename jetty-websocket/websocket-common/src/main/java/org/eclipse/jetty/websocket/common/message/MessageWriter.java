@@ -21,6 +21,11 @@ package org.eclipse.jetty.websocket.common.message;
 import java.io.IOException;
 import java.io.Writer;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.util.BufferUtil;
@@ -36,6 +41,9 @@ import org.eclipse.jetty.websocket.common.frames.TextFrame;
  * Support for writing a single WebSocket TEXT message via a {@link Writer}
  * <p>
  * Note: Per WebSocket spec, all WebSocket TEXT messages must be encoded in UTF-8
+ * <p>
+ * Characters are encoded directly into a buffer acquired from the {@link ByteBufferPool}, which is sent as a frame each time
+ * it fills up, so a message of any size is written without being held in memory as a whole.
  */
 public class MessageWriter extends Writer
 {
@@ -46,7 +54,8 @@ public class MessageWriter extends Writer
     private long frameCount = 0;
     private TextFrame frame;
     private ByteBuffer buffer;
-    private Utf8CharBuffer utf;
+    private final CharsetEncoder encoder;
+    private char surrogate;
     private WriteCallback callback;
     private boolean closed = false;
 
@@ -57,7 +66,9 @@ public class MessageWriter extends Writer
         this.blocker = new BlockingWriteCallback();
         this.buffer = bufferPool.acquire(bufferSize,true);
         BufferUtil.flipToFill(buffer);
-        this.utf = Utf8CharBuffer.wrap(buffer);
+        this.encoder = StandardCharsets.UTF_8.newEncoder();
+        this.encoder.onMalformedInput(CodingErrorAction.REPLACE);
+        this.encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
         this.frame = new TextFrame();
     }
 
@@ -81,7 +92,12 @@ public class MessageWriter extends Writer
     {
         assertNotClosed();
 
-        // finish sending whatever in the buffer with FIN=true
+        // encode any dangling surrogate, then finish sending whatever in the buffer with FIN=true
+        encode(CharBuffer.allocate(0),true);
+        while (encoder.flush(buffer).isOverflow())
+        {
+            flush(false);
+        }
         flush(true);
 
         // close stream
@@ -112,8 +128,8 @@ public class MessageWriter extends Writer
      */
     private synchronized void flush(boolean fin) throws IOException
     {
-        ByteBuffer data = utf.getByteBuffer();
-        frame.setPayload(data);
+        BufferUtil.flipToFlush(buffer,0);
+        frame.setPayload(buffer);
         frame.setFin(fin);
 
         try
@@ -122,8 +138,8 @@ public class MessageWriter extends Writer
             // block on write
             blocker.block();
             // write success
-            // clear utf buffer
-            utf.clear();
+            // clear buffer
+            BufferUtil.clearToFill(buffer);
             frameCount++;
             frame.setIsContinuation();
         }
@@ -134,6 +150,49 @@ public class MessageWriter extends Writer
         }
     }
 
+    /**
+     * Encode characters into the buffer, flushing it as a frame each time it is full.
+     * 
+     * @param chars
+     *            the characters to encode
+     * @param endOfInput
+     *            true if there are no more characters in the message
+     * @throws IOException
+     */
+    private synchronized void encode(CharBuffer chars, boolean endOfInput) throws IOException
+    {
+        if (surrogate != 0)
+        {
+            // complete the surrogate pair left over from the previous write
+            CharBuffer pair = CharBuffer.allocate(2);
+            pair.put(surrogate);
+            surrogate = 0;
+            if (chars.hasRemaining())
+            {
+                pair.put(chars.get());
+            }
+            pair.flip();
+            encode(pair,endOfInput && !chars.hasRemaining());
+        }
+
+        while (true)
+        {
+            CoderResult result = encoder.encode(chars,buffer,endOfInput);
+            if (result.isOverflow())
+            {
+                flush(false);
+                continue;
+            }
+            break;
+        }
+
+        if (chars.hasRemaining())
+        {
+            // a high surrogate, waiting for the low surrogate of the next write
+            surrogate = chars.get();
+        }
+    }
+
     private void notifyFailure(IOException e)
     {
         if (callback != null)
@@ -165,34 +224,20 @@ public class MessageWriter extends Writer
     public void write(char[] cbuf, int off, int len) throws IOException
     {
         assertNotClosed();
-        int left = len; // bytes left to write
-        int offset = off; // offset within provided array
-        while (left > 0)
-        {
-            int space = utf.remaining();
-            int size = Math.min(space,left);
-            assert (space > 0);
-            assert (size > 0);
-            utf.append(cbuf,offset,size); // append with utf logic
-            left -= size; // decrement char left
-            if (left > 0)
-            {
-                flush(false);
-            }
-            offset += size; // increment offset
-        }
+        encode(CharBuffer.wrap(cbuf,off,len),false);
     }
 
     @Override
-    public void write(int c) throws IOException
+    public void write(String str, int off, int len) throws IOException
     {
         assertNotClosed();
+        encode(CharBuffer.wrap(str,off,off + len),false);
+    }
 
-        // buffer up to limit, flush once buffer reached.
-        utf.append(c); // append with utf logic
-        if (utf.remaining() <= 0)
-        {
-            flush(false);
-        }
+    @Override
+    public void write(int c) throws IOException
+    {
+        assertNotClosed();
+        encode(CharBuffer.wrap(new char[] { (char)c }),false);
     }
 }
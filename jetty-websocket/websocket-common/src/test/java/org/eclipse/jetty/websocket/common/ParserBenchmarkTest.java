@@ -0,0 +1,130 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.toolchain.test.AdvancedRunner;
+import org.eclipse.jetty.toolchain.test.annotation.Stress;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.api.extensions.IncomingFrames;
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+import org.eclipse.jetty.websocket.common.test.UnitGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Throughput of the {@link Parser} for small messages, either entirely contained in each read (parsed without copying)
+ * or split across reads (aggregated into a pooled buffer).
+ */
+@RunWith(AdvancedRunner.class)
+public class ParserBenchmarkTest
+{
+    private static final Logger LOG = Log.getLogger(ParserBenchmarkTest.class);
+    private int runs = 10;
+    private int iters = 20000;
+    private int framesPerRead = 64;
+
+    private static class CountingFrames implements IncomingFrames
+    {
+        private long frames;
+        private long bytes;
+
+        @Override
+        public void incomingError(Throwable t)
+        {
+            throw new AssertionError(t);
+        }
+
+        @Override
+        public void incomingFrame(Frame frame)
+        {
+            frames++;
+            bytes += frame.getPayloadLength();
+        }
+    }
+
+    private ByteBuffer generateReads()
+    {
+        List<WebSocketFrame> send = new ArrayList<>();
+        for (int i = 0; i < framesPerRead; i++)
+        {
+            send.add(new TextFrame().setPayload("Small message #" + i));
+        }
+        return UnitGenerator.generate(send);
+    }
+
+    private void benchmark(String name, int readSize)
+    {
+        ByteBuffer template = generateReads();
+        ByteBuffer read = ByteBuffer.allocateDirect(template.remaining());
+
+        Parser parser = new Parser(WebSocketPolicy.newServerPolicy(),new MappedByteBufferPool());
+        CountingFrames counter = new CountingFrames();
+        parser.setIncomingFramesHandler(counter);
+
+        for (int r = 0; r < runs; r++)
+        {
+            long begin = System.nanoTime();
+            for (int iter = 0; iter < iters; iter++)
+            {
+                // simulate filling the read buffer
+                read.clear();
+                read.put(template.slice());
+                read.flip();
+                while (read.hasRemaining())
+                {
+                    ByteBuffer chunk = read.slice();
+                    chunk.limit(Math.min(readSize,chunk.remaining()));
+                    read.position(read.position() + chunk.remaining());
+                    parser.parse(chunk);
+                }
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+            long total = (long)iters * framesPerRead;
+            LOG.info("{} frames:{}/bytes:{} => {} ms ({} frames/ms)",name,total,counter.bytes,elapsed,total / Math.max(1,elapsed));
+            counter.bytes = 0;
+        }
+
+        Assert.assertEquals(runs * iters * framesPerRead,counter.frames);
+    }
+
+    @Stress("High CPU")
+    @Test
+    public void testSmallMessagesWholeReads()
+    {
+        benchmark("Parser (whole reads)",Integer.MAX_VALUE);
+    }
+
+    @Stress("High CPU")
+    @Test
+    public void testSmallMessagesSplitReads()
+    {
+        // with 7 byte reads most of the small payloads span reads
+        benchmark("Parser (split reads)",7);
+    }
+}
@@ -18,17 +18,23 @@
 
 package org.eclipse.jetty.websocket.common;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.websocket.api.StatusCode;
 import org.eclipse.jetty.websocket.api.WebSocketBehavior;
 import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.api.extensions.IncomingFrames;
 import org.eclipse.jetty.websocket.common.frames.ContinuationFrame;
 import org.eclipse.jetty.websocket.common.frames.DataFrame;
 import org.eclipse.jetty.websocket.common.frames.PingFrame;
@@ -252,4 +258,94 @@ public class ParserTest
             Assert.assertThat("Frame[0].payload[i]",actualPayload.get(i),is((byte)'*'));
         }
     }
+
+    /**
+     * A payload entirely within the parsed buffer is unmasked in place and not copied.
+     */
+    @Test
+    public void testParsePayloadWithoutCopy()
+    {
+        List<WebSocketFrame> send = new ArrayList<>();
+        send.add(new TextFrame().setPayload("Hello World"));
+        ByteBuffer completeBuf = UnitGenerator.generate(send);
+        final byte[] array = completeBuf.array();
+
+        CountingBufferPool bufferPool = new CountingBufferPool();
+        Parser parser = new Parser(WebSocketPolicy.newServerPolicy(),bufferPool);
+        final List<Boolean> shared = new ArrayList<>();
+        final List<String> payloads = new ArrayList<>();
+        parser.setIncomingFramesHandler(new IncomingFrames()
+        {
+            @Override
+            public void incomingError(Throwable t)
+            {
+                Assert.fail(t.toString());
+            }
+
+            @Override
+            public void incomingFrame(Frame frame)
+            {
+                shared.add(frame.getPayload().array() == array);
+                payloads.add(BufferUtil.toUTF8String(frame.getPayload()));
+            }
+        });
+
+        parser.parse(completeBuf);
+
+        Assert.assertThat("Payloads",payloads,contains("Hello World"));
+        Assert.assertThat("Payload is a slice of the buffer",shared.get(0),is(true));
+        Assert.assertThat("Acquired buffers",bufferPool.acquired.get(),is(0));
+        Assert.assertThat("Buffer consumed",completeBuf.remaining(),is(0));
+    }
+
+    /**
+     * A payload spanning several buffers is aggregated into a pooled buffer, released once the frame is notified.
+     */
+    @Test
+    public void testParsePayloadSpanningBuffers()
+    {
+        List<WebSocketFrame> send = new ArrayList<>();
+        send.add(new TextFrame().setPayload("Hello World"));
+        send.add(new TextFrame().setPayload("Hello Again"));
+        ByteBuffer completeBuf = UnitGenerator.generate(send);
+
+        CountingBufferPool bufferPool = new CountingBufferPool();
+        Parser parser = new Parser(WebSocketPolicy.newServerPolicy(),bufferPool);
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        parser.setIncomingFramesHandler(capture);
+
+        // split in the middle of the first payload
+        ByteBuffer first = completeBuf.slice();
+        first.limit(10);
+        completeBuf.position(10);
+        parser.parse(first);
+        parser.parse(completeBuf);
+
+        capture.assertNoErrors();
+        capture.assertHasFrame(OpCode.TEXT,2);
+        Assert.assertThat("Frame[0]",capture.getFrames().poll().getPayloadAsUTF8(),is("Hello World"));
+        Assert.assertThat("Frame[1]",capture.getFrames().poll().getPayloadAsUTF8(),is("Hello Again"));
+        Assert.assertThat("Acquired buffers",bufferPool.acquired.get(),is(1));
+        Assert.assertThat("Released buffers",bufferPool.released.get(),is(1));
+    }
+
+    private static class CountingBufferPool extends MappedByteBufferPool
+    {
+        private final AtomicInteger acquired = new AtomicInteger();
+        private final AtomicInteger released = new AtomicInteger();
+
+        @Override
+        public ByteBuffer acquire(int size, boolean direct)
+        {
+            acquired.incrementAndGet();
+            return super.acquire(size,direct);
+        }
+
+        @Override
+        public void release(ByteBuffer buffer)
+        {
+            released.incrementAndGet();
+            super.release(buffer);
+        }
+    }
 }
@@ -0,0 +1,149 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.websocket.common;
+
+import static org.hamcrest.Matchers.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.websocket.api.WebSocketBehavior;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+import org.eclipse.jetty.websocket.common.extensions.ExtensionStack;
+import org.eclipse.jetty.websocket.common.extensions.WebSocketExtensionFactory;
+import org.eclipse.jetty.websocket.common.extensions.compress.CompressionPool;
+import org.eclipse.jetty.websocket.common.extensions.compress.PerMessageDeflateExtension;
+import org.eclipse.jetty.websocket.common.frames.DataFrame;
+import org.eclipse.jetty.websocket.common.frames.PreparedFrame;
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+import org.eclipse.jetty.websocket.common.test.IncomingFramesCapture;
+import org.eclipse.jetty.websocket.common.test.LeakTrackingBufferPool;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class PreparedMessageTest
+{
+    private static final String MESSAGE = "Hello World, Hello World, Hello World, Hello World";
+
+    @Rule
+    public LeakTrackingBufferPool bufferPool = new LeakTrackingBufferPool("Test",new MappedByteBufferPool());
+
+    private ExtensionStack newExtensionStack(String... extensions)
+    {
+        WebSocketPolicy policy = WebSocketPolicy.newServerPolicy();
+        ExtensionStack stack = new ExtensionStack(new WebSocketExtensionFactory(policy,bufferPool));
+        List<ExtensionConfig> configs = new ArrayList<>();
+        for (String extension : extensions)
+        {
+            configs.add(ExtensionConfig.parse(extension));
+        }
+        stack.negotiate(configs);
+        return stack;
+    }
+
+    @Test
+    public void testSharedFrame()
+    {
+        PreparedMessage message = new PreparedMessage(MESSAGE);
+        ExtensionStack stack = newExtensionStack();
+
+        PreparedFrame frame1 = message.getPreparedFrame(WebSocketBehavior.SERVER,stack);
+        PreparedFrame frame2 = message.getPreparedFrame(WebSocketBehavior.SERVER,stack);
+        Assert.assertThat("Prepared frame",frame1,notNullValue());
+        Assert.assertThat("Frame.rsv1",frame1.isRsv1(),is(false));
+
+        Generator generator = new Generator(WebSocketPolicy.newServerPolicy(),bufferPool);
+        ByteBuffer expected = generator.generateHeaderBytes(new TextFrame().setPayload(MESSAGE));
+        Assert.assertEquals("Header",expected,frame1.getHeader());
+        bufferPool.release(expected);
+
+        // Consuming the buffers of one frame does not affect the other
+        frame1.getHeader().position(frame1.getHeader().limit());
+        frame1.getPayload().position(frame1.getPayload().limit());
+        Assert.assertThat("Header",frame2.getHeader().remaining(),greaterThan(0));
+        Assert.assertThat("Payload",BufferUtil.toUTF8String(frame2.getPayload()),is(MESSAGE));
+        Assert.assertThat("Read only",frame2.getPayload().isReadOnly(),is(true));
+    }
+
+    @Test
+    public void testClientNotPrepared()
+    {
+        PreparedMessage message = new PreparedMessage(MESSAGE);
+        Assert.assertThat("Prepared frame",message.getPreparedFrame(WebSocketBehavior.CLIENT,newExtensionStack()),nullValue());
+
+        // clients mask the payload in place, so need a copy
+        DataFrame frame = message.newFrame(true);
+        Assert.assertThat("Frame.opcode",frame.getOpCode(),is(OpCode.TEXT));
+        Assert.assertThat("Read only",frame.getPayload().isReadOnly(),is(false));
+        Assert.assertThat("Payload",frame.getPayloadAsUTF8(),is(MESSAGE));
+    }
+
+    @Test
+    public void testContextTakeoverNotPrepared()
+    {
+        PreparedMessage message = new PreparedMessage(MESSAGE);
+        Assert.assertThat("Prepared frame",message.getPreparedFrame(WebSocketBehavior.SERVER,newExtensionStack("permessage-deflate")),nullValue());
+        Assert.assertThat("Compressed",message.isCompressed(),is(false));
+    }
+
+    @Test
+    public void testCompressedNoContextTakeover()
+    {
+        PreparedMessage message = new PreparedMessage(MESSAGE);
+        ExtensionStack stack = newExtensionStack("permessage-deflate; server_no_context_takeover");
+
+        PreparedFrame frame = message.getPreparedFrame(WebSocketBehavior.SERVER,stack);
+        Assert.assertThat("Prepared frame",frame,notNullValue());
+        Assert.assertThat("Frame.rsv1",frame.isRsv1(),is(true));
+        Assert.assertThat("Compressed",message.isCompressed(),is(true));
+        Assert.assertThat("Compressed length",frame.getPayloadLength(),lessThan(MESSAGE.length()));
+
+        // The deflater is borrowed from the pool of the extension and returned
+        CompressionPool pool = ((PerMessageDeflateExtension)stack.getExtensions().get(0)).getCompressionPool();
+        Assert.assertThat("Active deflaters",pool.getActiveDeflaters(),is(0));
+        Assert.assertThat("Idle deflaters",pool.getIdleDeflaters(),is(1));
+
+        // The compressed payload is shared
+        PreparedFrame other = message.getPreparedFrame(WebSocketBehavior.SERVER,newExtensionStack("permessage-deflate; server_no_context_takeover"));
+        Assert.assertEquals("Payload",frame.getPayload(),other.getPayload());
+
+        // and may be decompressed by the remote endpoint, for every message
+        PerMessageDeflateExtension client = new PerMessageDeflateExtension();
+        client.setBufferPool(bufferPool);
+        client.setPolicy(WebSocketPolicy.newClientPolicy());
+        client.setConfig(ExtensionConfig.parse("permessage-deflate; server_no_context_takeover"));
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        client.setNextIncomingFrames(capture);
+        client.incomingFrame(frame);
+        client.incomingFrame(other);
+
+        capture.assertFrameCount(2);
+        for (WebSocketFrame actual : capture.getFrames())
+        {
+            Assert.assertThat("Frame.rsv1",actual.isRsv1(),is(false));
+            Assert.assertThat("Payload",actual.getPayloadAsUTF8(),is(MESSAGE));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.websocket.common.extensions.compress;
+
+import static org.hamcrest.Matchers.*;
+
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+import org.eclipse.jetty.websocket.common.WebSocketFrame;
+import org.eclipse.jetty.websocket.common.extensions.WebSocketExtensionFactory;
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+import org.eclipse.jetty.websocket.common.test.IncomingFramesCapture;
+import org.eclipse.jetty.websocket.common.test.LeakTrackingBufferPool;
+import org.eclipse.jetty.websocket.common.test.OutgoingFramesCapture;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class CompressionPoolTest
+{
+    private static final String MESSAGE = "Hello Compression, Hello Compression, Hello Compression";
+
+    @Rule
+    public LeakTrackingBufferPool bufferPool = new LeakTrackingBufferPool("Test",new MappedByteBufferPool());
+
+    private PerMessageDeflateExtension newExtension(WebSocketExtensionFactory factory, String config)
+    {
+        return (PerMessageDeflateExtension)factory.newInstance(ExtensionConfig.parse(config));
+    }
+
+    @Test
+    public void testNegotiateWindowBits()
+    {
+        WebSocketExtensionFactory factory = new WebSocketExtensionFactory(WebSocketPolicy.newServerPolicy(),bufferPool);
+        PerMessageDeflateExtension ext = newExtension(factory,"permessage-deflate; client_max_window_bits; server_max_window_bits=10");
+
+        ExtensionConfig negotiated = ext.getConfig();
+        Assert.assertThat("server_max_window_bits",negotiated.getParameter("server_max_window_bits",-1),is(10));
+        Assert.assertThat("client_max_window_bits",negotiated.getParameterKeys(),not(hasItem("client_max_window_bits")));
+        Assert.assertThat("Outgoing window limited",ext.isOutgoingWindowLimited(),is(true));
+        Assert.assertThat("Outgoing context takeover",ext.isOutgoingContextTakeover(),is(true));
+
+        ext = newExtension(factory,"permessage-deflate; server_max_window_bits=15; client_no_context_takeover");
+        Assert.assertThat("Outgoing window limited",ext.isOutgoingWindowLimited(),is(false));
+        Assert.assertThat("Outgoing context takeover",ext.isOutgoingContextTakeover(),is(true));
+        Assert.assertThat("client_no_context_takeover",ext.getConfig().getParameterKeys(),hasItem("client_no_context_takeover"));
+    }
+
+    @Test
+    public void testForcedNoContextTakeover()
+    {
+        WebSocketExtensionFactory factory = new WebSocketExtensionFactory(WebSocketPolicy.newServerPolicy(),bufferPool);
+        factory.getCompressionPool().setContextTakeover(false);
+        PerMessageDeflateExtension ext = newExtension(factory,"permessage-deflate");
+
+        Assert.assertThat("Negotiated",ext.getConfig().getParameterKeys(),hasItems("client_no_context_takeover","server_no_context_takeover"));
+        Assert.assertThat("Outgoing context takeover",ext.isOutgoingContextTakeover(),is(false));
+    }
+
+    @Test
+    public void testBorrowedPerMessage() throws Exception
+    {
+        WebSocketExtensionFactory serverFactory = new WebSocketExtensionFactory(WebSocketPolicy.newServerPolicy(),bufferPool);
+        CompressionPool pool = serverFactory.getCompressionPool();
+        PerMessageDeflateExtension server = newExtension(serverFactory,"permessage-deflate; client_no_context_takeover; server_no_context_takeover");
+        OutgoingFramesCapture toClient = new OutgoingFramesCapture();
+        server.setNextOutgoingFrames(toClient);
+        IncomingFramesCapture fromClient = new IncomingFramesCapture();
+        server.setNextIncomingFrames(fromClient);
+
+        WebSocketExtensionFactory clientFactory = new WebSocketExtensionFactory(WebSocketPolicy.newClientPolicy(),bufferPool);
+        PerMessageDeflateExtension client = newExtension(clientFactory,"permessage-deflate; client_no_context_takeover; server_no_context_takeover");
+        OutgoingFramesCapture toServer = new OutgoingFramesCapture();
+        client.setNextOutgoingFrames(toServer);
+        IncomingFramesCapture fromServer = new IncomingFramesCapture();
+        client.setNextIncomingFrames(fromServer);
+
+        for (int i = 0; i < 3; i++)
+        {
+            server.outgoingFrame(new TextFrame().setPayload(MESSAGE),null);
+            client.outgoingFrame(new TextFrame().setPayload(MESSAGE),null);
+
+            // nothing is held between messages
+            Assert.assertThat("Active deflaters",pool.getActiveDeflaters(),is(0));
+            Assert.assertThat("Idle deflaters",pool.getIdleDeflaters(),is(1));
+        }
+        Assert.assertThat("Created deflaters",pool.getCreatedDeflaters(),is(1L));
+
+        for (WebSocketFrame frame : toServer.getFrames())
+        {
+            Assert.assertThat("Frame.rsv1",frame.isRsv1(),is(true));
+            server.incomingFrame(frame);
+            Assert.assertThat("Active inflaters",pool.getActiveInflaters(),is(0));
+        }
+        Assert.assertThat("Created inflaters",pool.getCreatedInflaters(),is(1L));
+        for (WebSocketFrame frame : fromClient.getFrames())
+        {
+            Assert.assertThat("Payload",frame.getPayloadAsUTF8(),is(MESSAGE));
+        }
+
+        // the client keeps no context either, so can decode every message
+        for (WebSocketFrame frame : toClient.getFrames())
+        {
+            client.incomingFrame(frame);
+        }
+        fromServer.assertFrameCount(3);
+        for (WebSocketFrame frame : fromServer.getFrames())
+        {
+            Assert.assertThat("Payload",frame.getPayloadAsUTF8(),is(MESSAGE));
+        }
+
+        Assert.assertThat("Native memory",pool.getNativeMemory(),is(CompressionPool.DEFLATER_MEMORY + CompressionPool.INFLATER_MEMORY));
+        pool.clear();
+        Assert.assertThat("Native memory",pool.getNativeMemory(),is(0L));
+    }
+
+    @Test
+    public void testContextTakeoverHeldUntilStopped() throws Exception
+    {
+        WebSocketExtensionFactory factory = new WebSocketExtensionFactory(WebSocketPolicy.newServerPolicy(),bufferPool);
+        CompressionPool pool = factory.getCompressionPool();
+        PerMessageDeflateExtension ext = newExtension(factory,"permessage-deflate");
+        ext.setNextOutgoingFrames(new OutgoingFramesCapture());
+        ext.start();
+
+        Assert.assertThat("Active deflaters",pool.getActiveDeflaters(),is(0));
+        ext.outgoingFrame(new TextFrame().setPayload(MESSAGE),null);
+        ext.outgoingFrame(new TextFrame().setPayload(MESSAGE),null);
+        Assert.assertThat("Active deflaters",pool.getActiveDeflaters(),is(1));
+
+        ext.stop();
+        Assert.assertThat("Active deflaters",pool.getActiveDeflaters(),is(0));
+        Assert.assertThat("Idle deflaters",pool.getIdleDeflaters(),is(1));
+    }
+}
@@ -25,6 +25,12 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.util.BufferUtil;
@@ -406,4 +412,118 @@ public class PerMessageDeflateExtensionTest extends AbstractExtensionTest
 
         tester.assertHasFrames("tora","tora","tora");
     }
+
+    /**
+     * Stopping the extension, as done by the close of the connection from another thread, must not return the inflater to the pool
+     * while a frame is being inflated with it.
+     */
+    @Test
+    public void testStopWhileInflating() throws Exception
+    {
+        final CountDownLatch inflating = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        final AtomicBoolean releasedWhileInflating = new AtomicBoolean();
+        final AtomicBoolean busy = new AtomicBoolean();
+        CompressionPool pool = new CompressionPool()
+        {
+            @Override
+            public Inflater acquireInflater()
+            {
+                super.acquireInflater();
+                return new Inflater(true)
+                {
+                    @Override
+                    public int inflate(byte[] b, int off, int len) throws DataFormatException
+                    {
+                        busy.set(true);
+                        try
+                        {
+                            inflating.countDown();
+                            resume.await(5,TimeUnit.SECONDS);
+                            return super.inflate(b,off,len);
+                        }
+                        catch (InterruptedException x)
+                        {
+                            throw new DataFormatException(x.toString());
+                        }
+                        finally
+                        {
+                            busy.set(false);
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public void releaseInflater(Inflater inflater)
+            {
+                if (busy.get())
+                {
+                    releasedWhileInflating.set(true);
+                }
+                super.releaseInflater(inflater);
+            }
+        };
+
+        final PerMessageDeflateExtension ext = new PerMessageDeflateExtension();
+        ext.setBufferPool(bufferPool);
+        ext.setPolicy(WebSocketPolicy.newServerPolicy());
+        ext.setCompressionPool(pool);
+        ext.setConfig(ExtensionConfig.parse("permessage-deflate"));
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        ext.setNextIncomingFrames(capture);
+        ext.start();
+
+        // Compress the message, without the tail octets
+        byte[] uncompressed = "Hello".getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION,true);
+        deflater.setInput(uncompressed);
+        byte[] compressed = new byte[64];
+        int len = deflater.deflate(compressed,0,compressed.length,Deflater.SYNC_FLUSH);
+        deflater.end();
+        final TextFrame frame = new TextFrame();
+        frame.setPayload(ByteBuffer.wrap(compressed,0,len - 4));
+        frame.setRsv1(true);
+
+        Thread parser = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                ext.incomingFrame(frame);
+            }
+        };
+        parser.start();
+        Assert.assertTrue(inflating.await(5,TimeUnit.SECONDS));
+
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Thread closer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    ext.stop();
+                    stopped.countDown();
+                }
+                catch (Exception x)
+                {
+                    throw new RuntimeException(x);
+                }
+            }
+        };
+        closer.start();
+
+        // The stop waits for the inflation to complete
+        Assert.assertFalse(stopped.await(500,TimeUnit.MILLISECONDS));
+        resume.countDown();
+        Assert.assertTrue(stopped.await(5,TimeUnit.SECONDS));
+        parser.join(5000);
+
+        Assert.assertFalse(releasedWhileInflating.get());
+        Assert.assertThat("Active inflaters",pool.getActiveInflaters(),is(0));
+        capture.assertFrameCount(1);
+        Assert.assertThat("Frame.payload",capture.getFrames().peek().getPayloadAsUTF8(),is("Hello"));
+    }
 }
@@ -0,0 +1,188 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.io;
+
+import static org.hamcrest.Matchers.is;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.io.ByteArrayEndPoint;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.toolchain.test.AdvancedRunner;
+import org.eclipse.jetty.toolchain.test.annotation.Stress;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.extensions.IncomingFrames;
+import org.eclipse.jetty.websocket.common.WebSocketFrame;
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+import org.eclipse.jetty.websocket.common.test.UnitGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Resources held by connections that are idle, waiting for the next read.
+ */
+@RunWith(AdvancedRunner.class)
+public class IdleFootprintTest
+{
+    private static final Logger LOG = Log.getLogger(IdleFootprintTest.class);
+
+    private static class CountingBufferPool extends MappedByteBufferPool
+    {
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        @Override
+        public ByteBuffer acquire(int size, boolean direct)
+        {
+            outstanding.incrementAndGet();
+            return super.acquire(size,direct);
+        }
+
+        @Override
+        public void release(ByteBuffer buffer)
+        {
+            outstanding.decrementAndGet();
+            super.release(buffer);
+        }
+    }
+
+    private static class IdleConnection extends AbstractWebSocketConnection
+    {
+        public IdleConnection(EndPoint endp, WebSocketPolicy policy, ByteBufferPool bufferPool)
+        {
+            super(endp,DIRECT,null,policy,bufferPool);
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress()
+        {
+            return getEndPoint().getLocalAddress();
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress()
+        {
+            return getEndPoint().getRemoteAddress();
+        }
+
+        @Override
+        public void setNextIncomingFrames(IncomingFrames incoming)
+        {
+            getParser().setIncomingFramesHandler(incoming);
+        }
+    }
+
+    private static final Executor DIRECT = new Executor()
+    {
+        @Override
+        public void execute(Runnable command)
+        {
+            command.run();
+        }
+    };
+
+    private final WebSocketPolicy policy = WebSocketPolicy.newServerPolicy();
+    private final CountingBufferPool bufferPool = new CountingBufferPool();
+
+    private AbstractWebSocketConnection newConnection(ByteArrayEndPoint endp)
+    {
+        return new IdleConnection(endp,policy,bufferPool);
+    }
+
+    private ByteBuffer frame(String text)
+    {
+        List<WebSocketFrame> send = new ArrayList<>();
+        send.add(new TextFrame().setPayload(text));
+        return UnitGenerator.generate(send);
+    }
+
+    @Test
+    public void testIdleConnectionHoldsNoBuffer() throws Exception
+    {
+        ByteArrayEndPoint endp = new ByteArrayEndPoint(new byte[0],1024);
+        AbstractWebSocketConnection connection = newConnection(endp);
+
+        // nothing to read
+        connection.onFillable();
+        Assert.assertThat("Buffers held while idle",bufferPool.outstanding.get(),is(0));
+
+        // a whole frame
+        endp.setInput(frame("Hello World"));
+        connection.onFillable();
+        Assert.assertThat("Buffers held after a whole frame",bufferPool.outstanding.get(),is(0));
+    }
+
+    @Test
+    public void testPartialFrameHoldsBuffer() throws Exception
+    {
+        ByteArrayEndPoint endp = new ByteArrayEndPoint(new byte[0],1024);
+        AbstractWebSocketConnection connection = newConnection(endp);
+
+        ByteBuffer whole = frame("Hello World");
+        ByteBuffer partial = whole.slice();
+        partial.limit(10);
+        whole.position(10);
+
+        endp.setInput(partial);
+        connection.onFillable();
+        Assert.assertThat("Buffers held with a partial frame",bufferPool.outstanding.get(),is(1));
+
+        endp.setInput(whole);
+        connection.onFillable();
+        Assert.assertThat("Buffers held once the frame completes",bufferPool.outstanding.get(),is(0));
+    }
+
+    @Stress("High Memory")
+    @Test
+    public void testIdleFootprint() throws Exception
+    {
+        int count = 100000;
+        List<AbstractWebSocketConnection> connections = new ArrayList<>(count);
+        ByteBuffer message = frame("Hello World");
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+
+        for (int i = 0; i < count; i++)
+        {
+            ByteArrayEndPoint endp = new ByteArrayEndPoint(new byte[0],64);
+            AbstractWebSocketConnection connection = newConnection(endp);
+            endp.setInput(message.slice());
+            connection.onFillable();
+            connections.add(connection);
+        }
+
+        System.gc();
+        long after = runtime.totalMemory() - runtime.freeMemory();
+        LOG.info("{} idle connections => {} bytes heap each (including endpoints), {} pooled buffers held",count,(after - before) / count,
+                bufferPool.outstanding.get());
+        Assert.assertThat("Buffers held while idle",bufferPool.outstanding.get(),is(0));
+        Assert.assertThat(connections.size(),is(count));
+    }
+}
@@ -136,4 +136,36 @@ public class MessageWriterTest
         String expected = new String(buf);
         Assert.assertThat("Message",msg,is(expected));
     }
+
+    @Test
+    public void testWriteMultiByteAcrossBuffers() throws Exception
+    {
+        // 3 UTF-8 bytes per char, so many don't fit in a single buffer
+        char buf[] = new char[policy.getMaxTextMessageBufferSize()];
+        Arrays.fill(buf,'\u20AC');
+
+        try (MessageWriter stream = new MessageWriter(session))
+        {
+            stream.write(buf);
+        }
+
+        Assert.assertThat("Socket.messageQueue.size",socket.messageQueue.size(),is(1));
+        String msg = socket.messageQueue.poll();
+        Assert.assertThat("Message",msg,is(new String(buf)));
+    }
+
+    @Test
+    public void testWriteSplitSurrogatePair() throws Exception
+    {
+        try (MessageWriter stream = new MessageWriter(session))
+        {
+            stream.write("Smile \uD83D");
+            stream.flush();
+            stream.write("\uDE00!");
+        }
+
+        Assert.assertThat("Socket.messageQueue.size",socket.messageQueue.size(),is(1));
+        String msg = socket.messageQueue.poll();
+        Assert.assertThat("Message",msg,is("Smile \uD83D\uDE00!"));
+    }
 }
@@ -20,6 +20,7 @@ package org.eclipse.jetty.websocket.common.test;
 
 import static org.hamcrest.Matchers.*;
 
+import java.nio.ByteBuffer;
 import java.util.Queue;
 
 import org.eclipse.jetty.toolchain.test.EventQueue;
@@ -153,6 +154,13 @@ public class IncomingFramesCapture implements IncomingFrames
         WebSocketFrame copy = WebSocketFrame.copy(frame);
         // TODO: might need to make this optional (depending on use by client vs server tests)
         // Assert.assertThat("frame.masking must be set",frame.isMasked(),is(true));
+        // the payload is only valid during this call, so capture a copy of it
+        if (frame.hasPayload())
+        {
+            ByteBuffer payload = ByteBuffer.allocate(frame.getPayloadLength());
+            payload.put(frame.getPayload().slice()).flip();
+            copy.setPayload(payload);
+        }
         frames.add(copy);
     }
 
@@ -21,6 +21,7 @@ package org.eclipse.jetty.websocket.mux.helper;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
 
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
 
 import org.eclipse.jetty.util.BufferUtil;
@@ -133,6 +134,13 @@ public class IncomingFramesCapture implements IncomingFrames
     public void incomingFrame(Frame frame)
     {
         WebSocketFrame copy = WebSocketFrame.copy(frame);
+        // the payload is only valid during this call, so capture a copy of it
+        if (frame.hasPayload())
+        {
+            ByteBuffer payload = ByteBuffer.allocate(frame.getPayloadLength());
+            payload.put(frame.getPayload().slice()).flip();
+            copy.setPayload(payload);
+        }
         frames.add(copy);
     }
 
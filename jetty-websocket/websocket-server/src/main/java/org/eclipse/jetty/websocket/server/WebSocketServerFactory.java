@@ -21,6 +21,7 @@ package org.eclipse.jetty.websocket.server;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -47,13 +48,17 @@ import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
 import org.eclipse.jetty.websocket.api.InvalidWebSocketException;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
 import org.eclipse.jetty.websocket.api.WebSocketException;
 import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.extensions.ExtensionFactory;
 import org.eclipse.jetty.websocket.api.util.QuoteUtil;
 import org.eclipse.jetty.websocket.common.LogicalConnection;
+import org.eclipse.jetty.websocket.common.PreparedMessage;
 import org.eclipse.jetty.websocket.common.SessionFactory;
 import org.eclipse.jetty.websocket.common.SessionListener;
+import org.eclipse.jetty.websocket.common.WebSocketRemoteEndpoint;
 import org.eclipse.jetty.websocket.common.WebSocketSession;
 import org.eclipse.jetty.websocket.common.WebSocketSessionFactory;
 import org.eclipse.jetty.websocket.common.events.EventDriver;
@@ -129,6 +134,7 @@ public class WebSocketServerFactory extends ContainerLifeCycle implements WebSoc
         this.eventDriverFactory = new EventDriverFactory(defaultPolicy);
         this.bufferPool = bufferPool;
         this.extensionFactory = new WebSocketExtensionFactory(defaultPolicy,this.bufferPool);
+        addBean(this.extensionFactory.getCompressionPool());
         this.sessionFactories = new ArrayList<>();
         this.sessionFactories.add(new WebSocketSessionFactory(this));
         this.creator = this;
@@ -319,6 +325,70 @@ public class WebSocketServerFactory extends ContainerLifeCycle implements WebSoc
         return Collections.unmodifiableSet(this.openSessions);
     }
 
+    /**
+     * Send a TEXT message to all open sessions.
+     * 
+     * @param text
+     *            the message
+     * @return the number of sessions the message was queued to
+     * @see #broadcast(PreparedMessage, WriteCallback)
+     */
+    public int broadcast(String text)
+    {
+        return broadcast(new PreparedMessage(text),null);
+    }
+
+    /**
+     * Send a BINARY message to all open sessions.
+     * 
+     * @param data
+     *            the message, which is copied
+     * @return the number of sessions the message was queued to
+     * @see #broadcast(PreparedMessage, WriteCallback)
+     */
+    public int broadcast(ByteBuffer data)
+    {
+        return broadcast(new PreparedMessage(data),null);
+    }
+
+    /**
+     * Send a prepared message to all open sessions.
+     * <p>
+     * The message is encoded once, and the same frame bytes are queued to every session that either has no extensions or only
+     * <code>permessage-deflate</code> without outgoing context takeover. Other sessions are sent the message through their extensions.
+     * 
+     * @param message
+     *            the message
+     * @param callback
+     *            notified once per session of the success or failure of the write, may be null
+     * @return the number of sessions the message was queued to
+     */
+    public int broadcast(PreparedMessage message, WriteCallback callback)
+    {
+        int count = 0;
+        for (WebSocketSession session : openSessions)
+        {
+            try
+            {
+                RemoteEndpoint remote = session.getRemote();
+                if (remote instanceof WebSocketRemoteEndpoint)
+                {
+                    ((WebSocketRemoteEndpoint)remote).sendPreparedMessage(message,callback);
+                    count++;
+                }
+            }
+            catch (RuntimeException e)
+            {
+                LOG.debug(e);
+                if (callback != null)
+                {
+                    callback.writeFailed(e);
+                }
+            }
+        }
+        return count;
+    }
+
     @Override
     public WebSocketPolicy getPolicy()
     {
@@ -38,6 +38,7 @@ import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -46,6 +47,8 @@ import java.util.Properties;
 import java.util.Queue;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.util.ArrayQueue;
@@ -76,6 +79,12 @@ import org.xml.sax.SAXException;
  * The configuration can create and lookup beans by ID.  If multiple configurations are used, then it
  * is good practise to copy the entries from the {@link #getIdMap()} of a configuration to the next 
  * configuration so that they can share an ID space for beans.</p>
+ * <p>
+ * The parsed form of configurations read from a URL is cached (keyed by URL and last modified time),
+ * so that the same file used to configure many objects (eg a jetty-web.xml or a context xml) is
+ * only parsed once. The methods and constructors resolved by reflection for each Set, Call and New
+ * element are also cached against the class on which they were resolved, so that subsequent
+ * configurations can invoke them directly without searching.</p>
  */
 public class XmlConfiguration
 {
@@ -117,6 +126,75 @@ public class XmlConfiguration
         return parser;
     }
 
+    private static volatile int __maxParsed = 64;
+
+    /**
+     * Parsed configurations keyed by URL, bounded so that configurations from transient locations
+     * (for example per deployment temporary directories) are evicted least recently used first.
+     */
+    private static final Map<String, ParsedConfiguration> __parsed = new LinkedHashMap<String, ParsedConfiguration>(16,0.75f,true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ParsedConfiguration> eldest)
+        {
+            return size() > __maxParsed;
+        }
+    };
+    private static volatile boolean __cacheParsed = true;
+
+    /**
+     * Setter methods resolved by reflection, keyed by a signature of the name and argument types.
+     * A ClassValue is used so that the cache does not prevent the class (or its loader) being collected.
+     * Methods and constructors for Call and New elements are resolved and cached by {@link TypeUtil}.
+     */
+    private static final ClassValue<ConcurrentMap<String, Object>> __resolved = new ClassValue<ConcurrentMap<String, Object>>()
+    {
+        @Override
+        protected ConcurrentMap<String, Object> computeValue(Class<?> type)
+        {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /**
+     * @param cache True if parsed configurations read from URLs are cached by URL and last modified time.
+     */
+    public static void setCacheParsedConfigurations(boolean cache)
+    {
+        __cacheParsed = cache;
+        if (!cache)
+        {
+            synchronized (__parsed)
+            {
+                __parsed.clear();
+            }
+        }
+    }
+
+    /**
+     * @return True if parsed configurations read from URLs are cached by URL and last modified time.
+     */
+    public static boolean isCacheParsedConfigurations()
+    {
+        return __cacheParsed;
+    }
+
+    /**
+     * @param max The maximum number of parsed configurations cached, after which the least recently used are evicted.
+     */
+    public static void setMaxCachedParsedConfigurations(int max)
+    {
+        __maxParsed = max;
+    }
+
+    /**
+     * @return The maximum number of parsed configurations cached, after which the least recently used are evicted.
+     */
+    public static int getMaxCachedParsedConfigurations()
+    {
+        return __maxParsed;
+    }
+
     private final Map<String, Object> _idMap = new HashMap<>();
     private final Map<String, String> _propertyMap = new HashMap<>();
     private final URL _url;
@@ -135,11 +213,77 @@ public class XmlConfiguration
         synchronized (__parser)
         {
             _url=configuration;
-            setConfig(__parser.parse(configuration.toString()));
-            _dtd=__parser.getDTD();
+            ParsedConfiguration parsed = parse(configuration);
+            setConfig(parsed._root);
+            _dtd=parsed._dtd;
         }
     }
 
+    /**
+     * Parse a configuration URL, or obtain the previously parsed configuration if it has not been modified.
+     * The parsed nodes are only read by the {@link ConfigurationProcessor}s, so may be shared.
+     */
+    private static ParsedConfiguration parse(URL configuration) throws SAXException, IOException
+    {
+        String key = configuration.toString();
+        long lastModified = -1;
+        if (__cacheParsed)
+        {
+            try (Resource resource = Resource.newResource(configuration))
+            {
+                lastModified = resource.lastModified();
+            }
+
+            synchronized (__parsed)
+            {
+                ParsedConfiguration parsed = __parsed.get(key);
+                if (parsed != null)
+                {
+                    if (parsed._lastModified == lastModified)
+                        return parsed;
+                    // Stale, so do not keep the old nodes while parsing the new ones
+                    __parsed.remove(key);
+                }
+            }
+        }
+
+        ParsedConfiguration parsed = new ParsedConfiguration(__parser.parse(key),__parser.getDTD(),lastModified);
+        // Only cache resources with a known modification time, so that changes are always seen
+        if (__cacheParsed && lastModified > 0)
+        {
+            synchronized (__parsed)
+            {
+                __parsed.put(key,parsed);
+            }
+        }
+        return parsed;
+    }
+
+    private static class ParsedConfiguration
+    {
+        private final XmlParser.Node _root;
+        private final String _dtd;
+        private final long _lastModified;
+
+        private ParsedConfiguration(XmlParser.Node root, String dtd, long lastModified)
+        {
+            _root = root;
+            _dtd = dtd;
+            _lastModified = lastModified;
+        }
+    }
+
+    /**
+     * @return a signature of a setter to key the resolved cache
+     */
+    private static String signature(String name, Object[] args)
+    {
+        StringBuilder signature = new StringBuilder(name).append('(');
+        for (Object arg : args)
+            signature.append(arg == null?"null":arg.getClass().getName()).append(',');
+        return signature.append(')').toString();
+    }
+
     /**
      * Reads and parses the XML configuration string.
      *
@@ -472,11 +616,29 @@ public class XmlConfiguration
             if (LOG.isDebugEnabled())
                 LOG.debug("XML " + (obj != null?obj.toString():oClass.getName()) + "." + name + "(" + value + ")");
 
+            // Try a previously resolved match
+            ConcurrentMap<String, Object> resolved = __resolved.get(oClass);
+            String signature = signature(name,arg);
+            Method cached = (Method)resolved.get(signature);
+            if (cached != null)
+            {
+                try
+                {
+                    cached.invoke(obj,arg);
+                    return;
+                }
+                catch (IllegalArgumentException | IllegalAccessException e)
+                {
+                    LOG.ignore(e);
+                }
+            }
+
             // Try for trivial match
             try
             {
                 Method set = oClass.getMethod(name,vClass);
                 set.invoke(obj,arg);
+                resolved.put(signature,set);
                 return;
             }
             catch (IllegalArgumentException | IllegalAccessException | NoSuchMethodException e)
@@ -491,6 +653,7 @@ public class XmlConfiguration
                 vClass[0] = (Class<?>)type.get(null);
                 Method set = oClass.getMethod(name,vClass);
                 set.invoke(obj,arg);
+                resolved.put(signature,set);
                 return;
             }
             catch (NoSuchFieldException | IllegalArgumentException | IllegalAccessException | NoSuchMethodException e)
@@ -526,6 +689,7 @@ public class XmlConfiguration
                     {
                         set = sets[s];
                         sets[s].invoke(obj,arg);
+                        resolved.put(signature,set);
                         return;
                     }
                     catch (IllegalArgumentException | IllegalAccessException e)
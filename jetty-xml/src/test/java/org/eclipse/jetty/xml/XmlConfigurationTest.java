@@ -26,16 +26,24 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.jetty.toolchain.test.TestingDir;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
 
 public class XmlConfigurationTest
 {
+    @Rule
+    public TestingDir testdir = new TestingDir();
+
     protected String _configure="org/eclipse/jetty/xml/configure.xml";
 
     private static final String STRING_ARRAY_XML = "<Array type=\"String\"><Item type=\"String\">String1</Item><Item type=\"String\">String2</Item></Array>";
@@ -121,6 +129,52 @@ public class XmlConfigurationTest
         assertEquals("literal to static",TestConfiguration.VALUE,42);
     }
 
+    @Test
+    public void testPassedObjectReused() throws Exception
+    {
+        URL url = XmlConfigurationTest.class.getClassLoader().getResource(_configure);
+        for (int i=0;i<3;i++)
+        {
+            XmlConfiguration configuration = new XmlConfiguration(url);
+            TestConfiguration tc = new TestConfiguration("tc"+i);
+            configuration.getProperties().put("whatever", "xxx"+i);
+            configuration.configure(tc);
+
+            assertEquals("Set String","SetValue",tc.testObject);
+            assertEquals("Set Type",2,tc.testInt);
+            assertEquals("Put type",2,tc.get("TestInt"));
+            assertEquals("Property","xxx"+i,tc.get("Property"));
+            assertEquals("Called","Yes",tc.get("Called"));
+            assertEquals("nested call","http://www.eclipse.com/",tc.nested.url.toString());
+        }
+    }
+
+    @Test
+    public void testModifiedConfigurationReparsed() throws Exception
+    {
+        File xml = testdir.getFile("modified.xml");
+        writeTestString(xml,"one");
+        XmlConfiguration configuration = new XmlConfiguration(xml.toURI().toURL());
+        TestConfiguration tc = (TestConfiguration)configuration.configure();
+        assertEquals("one",tc.getTestString());
+
+        writeTestString(xml,"two");
+        xml.setLastModified(xml.lastModified()+2000);
+        configuration = new XmlConfiguration(xml.toURI().toURL());
+        tc = (TestConfiguration)configuration.configure();
+        assertEquals("two",tc.getTestString());
+    }
+
+    private void writeTestString(File xml, String value) throws Exception
+    {
+        try (Writer writer = new FileWriter(xml))
+        {
+            writer.write("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n");
+            writer.write("<!DOCTYPE Configure PUBLIC \"-//Jetty//Configure//EN\" \"http://www.eclipse.org/jetty/configure_9_0.dtd\">\n");
+            writer.write("<Configure class=\"org.eclipse.jetty.xml.TestConfiguration\"><Set name=\"testString\">"+value+"</Set></Configure>\n");
+        }
+    }
+
     @Test
     public void testNewObject() throws Exception
     {